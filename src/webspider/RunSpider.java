@@ -1,5 +1,6 @@
 package webspider;
 import java.io.File;
+import java.util.Arrays;
 import webspider.actions.SpiderActions;
 import webspider.gui.MainGUI;
 import webspider.gui.SearchPanel;
@@ -42,12 +43,19 @@ public class RunSpider {
                 }
             }
         }else if(args[0].equals("-cli")){
-            if(args[1].equals("c")){
+            if(args[1].equals("c") && args.length > 3){
+                // several seeds crawled in one job
+                actions.getCrawlerActions().startSpider(Arrays.asList(args).subList(2, args.length));
+            }else if(args[1].equals("c")){
                 actions.getCrawlerActions().startSpider(args[2]);
             }else if(args[1].equals("i")){
                 actions.getIndexerActions().startIndexer(args[2]);
             }else if(args[1].equals("s")){
                 actions.getSearchActions().startSearch(args[2], args[3]);
+            }else if(args[1].equals("p")){
+                actions.getIndexerActions().startPipeline(args[2]);
+            }else if(args[1].equals("b")){
+                actions.getIndexerActions().convertIndex(args[2], args[3]);
             }
         }
         initOutputFolder();
@@ -58,6 +58,202 @@ public class Settings {
      * output file path
      */
     public static final String DEFAULT_PATH = "./Output/Spider/";
+    /**
+     * Number of fetch workers draining the crawler queue
+     */
+    public static int CRAWLER_THREADS = 4;
+    /**
+     * Switch to run every fetch in a thread of its own, a virtual thread where the JVM has them
+     */
+    public static boolean VIRTUAL_THREADS = false;
+    /**
+     * Switch to index pages on a pool of workers, each building a partial index that is merged at the end, instead of one page at a time
+     */
+    public static boolean PARALLEL_INDEXING = false;
+    /**
+     * Number of workers fetching and tokenizing pages when indexing in parallel
+     */
+    public static int INDEXER_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of pages in a worker's partial index that hands it off to be merged into the index
+     */
+    public static int INDEX_FLUSH_PAGES = 10000;
+    /**
+     * Switch to write the index in the binary format searches map into memory, instead of a keyword and its urls a line of text
+     */
+    public static boolean BINARY_INDEX = true;
+    /**
+     * Number of pages a search returns, the best ranked first, 0 for all
+     */
+    public static int SEARCH_RESULTS = 10;
+    /**
+     * BM25 parameter of how fast the score of a search term stops growing with how often it is on a page
+     */
+    public static double BM25_K1 = 1.2;
+    /**
+     * BM25 parameter of how much shorter pages are favoured, from 0 for not at all to 1
+     */
+    public static double BM25_B = 0.75;
+    /**
+     * Number of threads tokenizing pages when crawling and indexing in one pass
+     */
+    public static int PIPELINE_TOKENIZER_THREADS = 2;
+    /**
+     * Capacity of the queues between the stages of a crawl and index pass, beyond which the stage before waits
+     */
+    public static int PIPELINE_QUEUE_SIZE = 64;
+    /**
+     * Number of fetches allowed in flight to the same host
+     */
+    public static int MAX_FETCHES_PER_HOST = 8;
+    /**
+     * Number of fetches allowed in flight in total when running a thread per fetch
+     */
+    public static int MAX_FETCHES_IN_FLIGHT = 1000;
+    /**
+     * Number of platform threads fetches run on, and so of fetches in flight, on a JVM without virtual threads
+     */
+    public static int MAX_PLATFORM_FETCH_THREADS = 8 * Runtime.getRuntime().availableProcessors();
+    /**
+     * Switch to fetch pages through a shared java.net.http.HttpClient instead of a URLConnection per page
+     */
+    public static boolean HTTP_CLIENT = true;
+    /**
+     * Number of queued urls the crawler keeps in memory, the rest is spilled to disk
+     */
+    public static int FRONTIER_HEAD_SIZE = 10000;
+    /**
+     * Number of urls of one host the crawler keeps waiting for the host's crawl delay in memory,
+     * the rest wait on disk so other hosts are not held up
+     */
+    public static int MAX_WAITING_PER_HOST = 1000;
+    /**
+     * Size in bytes of each file the crawler queue spills to
+     */
+    public static final int FRONTIER_SEGMENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * Hosts crawled along with the hosts of the seeds, instead of being treated as external
+     */
+    public static String[] ALLOWED_HOSTS = {};
+    /**
+     * Number of priority levels of the crawler queue
+     */
+    public static int FRONTIER_PRIORITY_LEVELS = 8;
+    /**
+     * Orders the crawler queue: "depth" for breadth first, "inlinks" for the most linked to urls first, "pattern" by FRONTIER_PRIORITY_PATTERNS
+     */
+    public static String FRONTIER_SCORER = "depth";
+    /**
+     * Regular expressions of the urls crawled first by the "pattern" scorer, most urgent first
+     */
+    public static String[] FRONTIER_PRIORITY_PATTERNS = {};
+    /**
+     * Number of links from the seed beyond which local urls are not crawled, -1 for no limit
+     */
+    public static int MAX_CRAWL_DEPTH = -1;
+    /**
+     * Number of pages fetched from a host at most, -1 for no limit
+     */
+    public static int MAX_PAGES_PER_HOST = -1;
+    /**
+     * Number of pages fetched under a path prefix of a host at most, -1 for no limit
+     */
+    public static int MAX_PAGES_PER_PATH_PREFIX = -1;
+    /**
+     * Number of directories in the path prefixes MAX_PAGES_PER_PATH_PREFIX applies to
+     */
+    public static int PATH_PREFIX_SEGMENTS = 1;
+    /**
+     * Switch for the Bloom filter in front of the crawler's seen url check, which
+     * saves probing the seen url table for new urls at the cost of its memory
+     */
+    public static boolean SEEN_URL_FILTER = false;
+    /**
+     * Number of urls a crawl is expected to find, used to size the seen url filter
+     */
+    public static long EXPECTED_URL_COUNT = 1000000;
+    /**
+     * Target false positive rate of the seen url filter
+     */
+    public static final double SEEN_URL_FILTER_FPP = 0.01;
+    /**
+     * How long a host's robots.txt rules are used before it is fetched again, in milliseconds
+     */
+    public static long ROBOTS_TXT_TTL = 24 * 60 * 60 * 1000L;
+    /**
+     * How long a host whose robots.txt could not be read for a server or
+     * network error is kept from being crawled before it is fetched again, in milliseconds
+     */
+    public static long ROBOTS_TXT_RETRY_TTL = 60 * 1000L;
+    /**
+     * Switch for the crawl journal, which lets a crawl resume after the JVM dies
+     */
+    public static boolean CRAWL_JOURNAL = true;
+    /**
+     * Milliseconds between forcing the crawl journal to disk
+     */
+    public static long JOURNAL_SYNC_INTERVAL = 1000;
+    /**
+     * Number of journal records after which the crawl journal is compacted into a snapshot
+     */
+    public static int CHECKPOINT_INTERVAL = 10000;
+    /**
+     * Switch to keep the urls the crawler classifies in memory as well as in their .bdmc files
+     */
+    public static boolean KEEP_LINKS_IN_MEMORY = true;
+    /**
+     * Number of urls appended to a .bdmc file before they are flushed
+     */
+    public static int LINKS_BATCH_SIZE = 256;
+    /**
+     * Milliseconds between forcing the .bdmc files to disk
+     */
+    public static long LINKS_SYNC_INTERVAL = 1000;
+    /**
+     * Switch to recrawl pages with conditional requests, reusing the links of pages that did not change
+     */
+    public static boolean CONDITIONAL_GET = true;
+    /**
+     * file extension of the page validators kept by the crawler
+     */
+    public static final String VALIDATOR_EXTENSION = ".bdmv";
+    /**
+     * Switch to archive the pages the crawler downloads, so the indexer reads them instead of fetching them again
+     */
+    public static boolean PAGE_ARCHIVE = true;
+    /**
+     * file extension of the page archive kept by the crawler
+     */
+    public static final String ARCHIVE_EXTENSION = ".bdma";
+    /**
+     * Switch to record pages whose text is a near duplicate of a page already crawled as aliases of it
+     */
+    public static boolean NEAR_DUPLICATES = true;
+    /**
+     * Largest number of bits two pages' SimHash fingerprints may differ in to count as near duplicates
+     */
+    public static int NEAR_DUPLICATE_DISTANCE = 3;
+    /**
+     * Number of words a page needs before its fingerprint is compared, as short pages look alike
+     */
+    public static int NEAR_DUPLICATE_MIN_WORDS = 32;
+    /**
+     * Switch to rewrite urls into a canonical form before checking whether they were seen
+     */
+    public static boolean CANONICALIZE_URLS = true;
+    /**
+     * Switch to sort the query parameters of canonical urls
+     */
+    public static boolean CANONICAL_SORT_QUERY = true;
+    /**
+     * Query and path parameters dropped from canonical urls, such as session ids and tracking parameters
+     */
+    public static String[] CANONICAL_DROPPED_PARAMETERS = { "jsessionid", "phpsessid", "sid", "sessionid", "aspsessionid",
+            "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content", "gclid", "fbclid" };
+    /**
+     * Switch to treat a page that names another page with rel=canonical as an alias of that page
+     */
+    public static boolean REL_CANONICAL = true;
     //Indexer Contants
     /**
      * path of file o
@@ -0,0 +1,38 @@
+package webspider.core.crawler;
+
+/**
+ * Receives the pages of a crawl as they are classified, so they can be
+ * processed in the same pass instead of after the crawl
+ */
+public interface CrawlListener {
+
+	/**
+	 * Called each time the crawl starts, before the first page, also when a
+	 * paused crawl is started again
+	 */
+	public void crawlStarted();
+
+	/**
+	 * Called by a fetch worker for each page classified as local. The worker
+	 * waits for the call, so a listener that blocks slows the crawl down.
+	 * 
+	 * @param url
+	 *            the page
+	 * @param content
+	 *            its body, or null if it was not downloaded because it has
+	 *            not changed since the last crawl, or because it was crawled
+	 *            before the crawl was resumed from its checkpoint
+	 */
+	public void pageCrawled(UrlKey url, byte[] content);
+
+	/**
+	 * Called when the crawl stops before it is complete, because it was
+	 * paused or failed. A paused crawl may be started again.
+	 */
+	public void crawlStopped();
+
+	/**
+	 * Called once the crawl is complete, after the files are written
+	 */
+	public void crawlCompleted();
+}
@@ -5,7 +5,9 @@ import static webspider.Settings.DEFAULT_URL;
 import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import webspider.Settings;
 import webspider.actions.SpiderActions;
@@ -17,16 +19,15 @@ import webspider.gui.CrawlPanel;
  *
  */
 public class Crawler implements myIWSpider {
+    /**
+     * The crawl, or null until one is started, as creating one recovers its
+     * journal and opens its files
+     */
     private CrawlerImpl crawler;
     private SpiderActions actions;
 
     public Crawler(SpiderActions actions) {
         this.actions = actions;
-        try {
-			this.crawler = new CrawlerImpl(new URL(DEFAULT_URL), actions);
-		} catch (MalformedURLException e) {
-			e.printStackTrace();
-		}
     }
 
     public Crawler(SpiderActions actions, URL url){
@@ -53,7 +54,8 @@ public class Crawler implements myIWSpider {
 	}
 
 	/**
-	 * Starts the crawler with an initial see
+	 * Starts the crawler with an initial see. If an earlier crawl of the same
+	 * site did not complete, it resumes from its last checkpoint instead.
 	 * @param mySeed the initial site url the web crawler should crawl
 	 */
 	@Override
@@ -67,6 +69,55 @@ public class Crawler implements myIWSpider {
 		
 	}
 
+	/**
+	 * Starts the crawler with an initial seed, handing each local page to a
+	 * listener as it is crawled.
+	 * @param mySeed the initial site url the web crawler should crawl
+	 * @param listener receives the local pages and the end of the crawl
+	 */
+	public void startIWSpider(String mySeed, CrawlListener listener) {
+		try {
+			this.crawler = new CrawlerImpl(new URL(mySeed), this.actions);
+			this.crawler.setCrawlListener(listener);
+			this.crawler.start();
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts the crawler with several seeds, crawling the pages of their
+	 * hosts and of the allowed hosts. The crawl's files are named after the
+	 * host of the first seed.
+	 * @param seeds the urls the web crawler should start from
+	 * @param allowedHosts hosts crawled besides the seeds' hosts, or null
+	 */
+	public void startIWSpider(List<String> seeds, Collection<String> allowedHosts) {
+		startIWSpider(seeds, allowedHosts, null);
+	}
+
+	/**
+	 * Starts the crawler with several seeds, handing each local page to a
+	 * listener as it is crawled.
+	 * @param seeds the urls the web crawler should start from
+	 * @param allowedHosts hosts crawled besides the seeds' hosts, or null
+	 * @param listener receives the local pages and the end of the crawl, or null
+	 */
+	public void startIWSpider(List<String> seeds, Collection<String> allowedHosts,
+			CrawlListener listener) {
+		try {
+			List<URL> urls = new ArrayList<URL>();
+			for (String seed : seeds) {
+				urls.add(new URL(seed));
+			}
+			this.crawler = new CrawlerImpl(urls, allowedHosts, this.actions);
+			this.crawler.setCrawlListener(listener);
+			this.crawler.start();
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Checks that a given url is permitted for parsing by robots.txt
 	 * @param myUrl
@@ -74,7 +125,9 @@ public class Crawler implements myIWSpider {
 	@Override
 	public boolean isIWRobotSafe(String myUrl) {
 		try {
-			return this.crawler.isRobotAllowed(new URL(myUrl));
+			// the rules are shared with the crawl, so none need be started
+			UrlKey url = new UrlKey(new URL(myUrl));
+			return RobotsCache.getShared().getRules(url).isAllowed(url.getFile());
 		} catch (MalformedURLException e) {
 			e.printStackTrace();
 		}
@@ -86,7 +139,16 @@ public class Crawler implements myIWSpider {
 	 * @return
 	 */
 	public long getCrawlDelay(){
-		return this.crawler.getCrawlDelay();
+		if (this.crawler != null) {
+			return this.crawler.getCrawlDelay();
+		}
+		try {
+			return RobotsCache.getShared().getRules(new URL(DEFAULT_URL))
+					.getCrawlDelay();
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+			return 0;
+		}
 	}
 
 	/**
@@ -94,8 +156,9 @@ public class Crawler implements myIWSpider {
 	 */
 	@Override
 	public void stopIWSpider() {
-		
-		this.crawler.stop();
+		if (this.crawler != null) {
+			this.crawler.stop();
+		}
 	}
 
 	/**
@@ -103,7 +166,9 @@ public class Crawler implements myIWSpider {
 	 */
 	@Override
 	public void resumeIWSpider() {
-		this.crawler.start();
+		if (this.crawler != null) {
+			this.crawler.start();
+		}
 	}
 
 	/**
@@ -111,6 +176,9 @@ public class Crawler implements myIWSpider {
 	 */
 	@Override
 	public void killIWSpider() {
+		if (this.crawler == null) {
+			return;
+		}
 		try {
 			this.crawler.stop();
 			this.crawler.printToFile();
@@ -163,12 +231,33 @@ public class Crawler implements myIWSpider {
     public int getDisallowedLinksCount() {
     	return this.crawler.getDisallowedLinks().size();
     }
+    /**
+	 * Gets the number of near duplicate pages this crawler has found
+	 * @return the links count
+	 */
+    public int getDuplicateLinksCount() {
+    	return this.crawler.getDuplicateLinks().size();
+    }
+    /**
+     * Gets the memory use and false positive rate of the seen url filter
+     * @return the filter statistics
+     */
+    public String getSeenFilterStats() {
+    	return this.crawler.getSeenFilterStats();
+    }
+    /**
+     * Gets the number of fetches made and connections reused
+     * @return the fetcher statistics
+     */
+    public String getFetcherStats() {
+    	return this.crawler.getFetcherStats();
+    }
     /**
      * Is the crawler currently running?
      * @return
      */
     public boolean isRunning(){
-    	return this.crawler.isRunning();
+    	return this.crawler != null && this.crawler.isRunning();
     }
 
 
@@ -176,7 +265,7 @@ public class Crawler implements myIWSpider {
      * Gets all the non parsable URLs
      */
 	@Override
-	public Collection<URL> getNonParsableIWURLs() {
+	public Collection<UrlKey> getNonParsableIWURLs() {
 		return this.crawler.getNonParsableLinks().getLinks();
 	}
 
@@ -184,7 +273,7 @@ public class Crawler implements myIWSpider {
      * Gets all the dead URLs
      */
 	@Override
-	public Collection<URL> getDeadIWURLs() {
+	public Collection<UrlKey> getDeadIWURLs() {
 		return this.crawler.getDeadLinks().getLinks();
 
 	}
@@ -193,16 +282,24 @@ public class Crawler implements myIWSpider {
      * Gets all the disallowed URLs
      */
 	@Override
-	public Collection<URL> getDisallowedIWURLs() {
+	public Collection<UrlKey> getDisallowedIWURLs() {
 		return this.crawler.getDisallowedLinks().getLinks();
 
 	}
 
+	/**
+     * Gets all the URLs of near duplicate pages, which are not indexed
+     */
+	public Collection<UrlKey> getDuplicateIWURLs() {
+		return this.crawler.getDuplicateLinks().getLinks();
+
+	}
+
 	/**
      * Gets all the local URLs
      */
 	@Override
-	public Collection<URL> getLocalIWUrls() {
+	public Collection<UrlKey> getLocalIWUrls() {
 		return this.crawler.getLocalLinks().getLinks();
 
 	}
@@ -211,7 +308,7 @@ public class Crawler implements myIWSpider {
      * Gets all the external URLs
      */
 	@Override
-	public Collection<URL> getExternalIWURLs() {
+	public Collection<UrlKey> getExternalIWURLs() {
 		return this.crawler.getExternalLinks().getLinks();
 
 	}
@@ -1,15 +1,13 @@
 package webspider.core.crawler;
 
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.net.*;
 import java.io.*;
 
-import javax.swing.text.*;
-import javax.swing.text.html.*;
-import javax.swing.text.html.parser.ParserDelegator;
-
 import webspider.actions.SpiderActions;
 import static webspider.Settings.*;
 
@@ -34,7 +32,7 @@ public class CrawlerImpl {
 	/**
 	 * Request properties for the crawler crawling the web
 	 */
-	private static final Map<String, String> REQUEST_PROPERTIES = new HashMap<String, String>();
+	static final Map<String, String> REQUEST_PROPERTIES = new HashMap<String, String>();
 	static {
 		REQUEST_PROPERTIES.put(USER_AGENT_FIELD, USER_AGENT_VALUE);
 		REQUEST_PROPERTIES.put(ACCEPT_LANGUAGE_FIELD, ACCEPT_LANGUAGE_VALUE);
@@ -42,24 +40,42 @@ public class CrawlerImpl {
 	}
 
 	/**
-	 * Urls disallowed by robots.txt
+	 * Base url this crawler operates on, the first seed. The crawl's files are
+	 * named after its host.
+	 */
+	private UrlKey base;
+
+	/**
+	 * The urls the crawl starts from
+	 */
+	private final List<UrlKey> seeds = new ArrayList<UrlKey>();
+
+	/**
+	 * Hosts whose pages are crawled, in lower case. Links to other hosts are
+	 * external.
 	 */
-	private Set<URL> robotDisallowedURLs;
+	private final Set<String> allowedHosts = new HashSet<String>();
 
 	/**
-	 * Base url this crawler operates on
+	 * A collection of URLs that are waiting to be processed, by priority
 	 */
-	private URL base;
+	private PriorityFrontier activeLinkQueue;
 
 	/**
-	 * Delay between fetching urls
+	 * Decides the priority of the urls queued
 	 */
-	private long crawlDelay = 0;
+	private final FrontierScorer scorer;
 
 	/**
-	 * A collection of URLs that are waiting to be processed
+	 * Limits the depth of the crawl and the pages fetched from each host and
+	 * path prefix
 	 */
-	private BlockingQueue<URL> activeLinkQueue;
+	private final CrawlBudget budget = CrawlBudget.fromSettings();
+
+	/**
+	 * Every url queued so far, with the state it has been classified as
+	 */
+	private SeenURLIndex seenURLs;
 
 	private Links localLinks;
 
@@ -71,8 +87,65 @@ public class CrawlerImpl {
 
 	private Links disallowedLinks;
 
+	private Links duplicateLinks;
+
+	/**
+	 * The page each near duplicate duplicates
+	 */
+	private final Map<UrlKey, UrlKey> aliases = Collections
+			.synchronizedMap(new LinkedHashMap<UrlKey, UrlKey>());
+
+	/**
+	 * Rewrites urls into their canonical form, or null if CANONICALIZE_URLS is
+	 * off
+	 */
+	private final UrlCanonicalizer canonicalizer = CANONICALIZE_URLS ? UrlCanonicalizer
+			.fromSettings() : null;
+
+	/**
+	 * SimHash fingerprints of the pages crawled, or null if NEAR_DUPLICATES is
+	 * off
+	 */
+	private final NearDuplicateIndex nearDuplicates;
+
+	/**
+	 * The pages downloaded, for the indexer, in an archive per host as the
+	 * indexer looks them up by host, or null if PAGE_ARCHIVE is off
+	 */
+	private final Map<String, PageArchive> archives;
+
+	/**
+	 * Urls of the hosts with MAX_WAITING_PER_HOST urls parked in the
+	 * scheduler, kept in a frontier per host until the host's parked urls
+	 * are taken
+	 */
+	private final Map<String, Frontier> overflow = new HashMap<String, Frontier>();
+
+	/**
+	 * Receives the local pages as they are crawled, or null
+	 */
+	private volatile CrawlListener listener;
+
+	/**
+	 * Are there local pages restored from the journal the listener has not
+	 * been given yet?
+	 */
+	private volatile boolean replayResumed = false;
+
+	/**
+	 * A link extractor for each thread parsing pages, as they reuse their
+	 * buffers
+	 */
+	private final ThreadLocal<LinkExtractor> extractors = new ThreadLocal<LinkExtractor>() {
+		@Override
+		protected LinkExtractor initialValue() {
+			return new LinkExtractor();
+		}
+	};
+
 	/**
-	 * Contains local, external, dead, nonParsable and disallowed links
+	 * Contains local, external, dead, nonParsable, disallowed and duplicate
+	 * links
 	 */
 	private Collection<Links> allLinks;
 
@@ -82,14 +155,56 @@ public class CrawlerImpl {
 	private volatile String status;
 
 	/**
-	 * The path to robots.txt
+	 * The crawler thread, which runs the fetch workers and waits for them
 	 */
-	private String robotsPath;
+	private Thread processingThread;
 
 	/**
-	 * The crawler thread
+	 * Number of urls that are queued or being processed by a worker. The crawl
+	 * is over when it drops to zero.
 	 */
-	private Thread processingThread;
+	private final AtomicInteger pendingURLs = new AtomicInteger();
+
+	/**
+	 * Urls waiting for their host's crawl delay to pass
+	 */
+	private final HostScheduler<UrlKey> scheduler = new HostScheduler<UrlKey>();
+
+	/**
+	 * Limits the fetches in flight to each host
+	 */
+	private final HostLimiter hostLimiter = new HostLimiter(MAX_FETCHES_PER_HOST);
+
+	/**
+	 * Fetches the pages, shared with the indexer
+	 */
+	private final PageFetcher fetcher = Fetchers.getShared();
+
+	/**
+	 * The robots.txt rules of each host, shared with the indexer
+	 */
+	private final RobotsCache robots = RobotsCache.getShared();
+
+	/**
+	 * Journal of queued and classified urls, or null if CRAWL_JOURNAL is off
+	 */
+	private final CrawlJournal journal;
+
+	/**
+	 * Validators and links of the pages of the last crawl, or null if
+	 * CONDITIONAL_GET is off
+	 */
+	private final ValidatorStore validators;
+
+	/**
+	 * Logged when the crawler starts, if it resumed from a checkpoint
+	 */
+	private String resumeMessage;
+
+	/**
+	 * Guards starting and resuming the crawler
+	 */
+	private final Object controlLock = new Object();
 
 	/**
 	 * Is the crawler working at the moment?
@@ -103,8 +218,9 @@ public class CrawlerImpl {
 	private SpiderActions actions;
 
 	/**
-	 * The constructor intitalizes the base url, the file paths and reads
-	 * robots.txt
+	 * The constructor intitalizes the base url and the file paths. If a crawl
+	 * of the same site did not complete, it resumes from its checkpoint. Hosts
+	 * in Settings.ALLOWED_HOSTS are crawled along with the base host.
 	 * 
 	 * @param base
 	 *            host of the site to crawl
@@ -113,10 +229,47 @@ public class CrawlerImpl {
 	 * 
 	 */
 	public CrawlerImpl(URL base, SpiderActions actions) {
+		this(Collections.singletonList(base), Arrays.asList(ALLOWED_HOSTS),
+				actions);
+	}
+
+	/**
+	 * Creates a crawler of the pages of several hosts, starting from several
+	 * seeds. Each host is fetched from with its own robots.txt rules and crawl
+	 * delay. The files of the crawl are named after the host of the first
+	 * seed.
+	 * 
+	 * @param seeds
+	 *            the urls to start from, at least one
+	 * @param allowedHosts
+	 *            hosts whose pages are crawled besides the seeds' hosts, or
+	 *            null
+	 * @param actions
+	 *            Gui to update
+	 */
+	public CrawlerImpl(List<URL> seeds, Collection<String> allowedHosts,
+			SpiderActions actions) {
 		this.actions = actions;
-		this.base = base;
-		this.activeLinkQueue = new LinkedBlockingQueue<URL>();
-		this.robotDisallowedURLs = new HashSet<URL>();
+		URL base = seeds.get(0);
+		for (URL seed : seeds) {
+			UrlKey url = canonicalize(new UrlKey(seed));
+			if (!this.seeds.contains(url)) {
+				this.seeds.add(url);
+			}
+			this.allowedHosts.add(url.getHost());
+		}
+		if (allowedHosts != null) {
+			for (String host : allowedHosts) {
+				this.allowedHosts.add(host.toLowerCase());
+			}
+		}
+		this.base = this.seeds.get(0);
+		this.activeLinkQueue = new PriorityFrontier(DEFAULT_PATH
+				+ base.getHost() + "_frontier", FRONTIER_HEAD_SIZE,
+				FRONTIER_SEGMENT_SIZE, FRONTIER_PRIORITY_LEVELS);
+		this.scorer = FrontierScorers.fromSettings(FRONTIER_PRIORITY_LEVELS);
+		this.seenURLs = new SeenURLIndex(SEEN_URL_FILTER ? new BloomFilter(
+				EXPECTED_URL_COUNT, SEEN_URL_FILTER_FPP) : null);
 		this.localLinks = new Links(DEFAULT_PATH + base.getHost()
 				+ "_localIWURLs" + CRAWLER_EXTENSION);
 		this.externalLinks = new Links(DEFAULT_PATH + base.getHost()
@@ -128,10 +281,126 @@ public class CrawlerImpl {
 		this.disallowedLinks = new Links(DEFAULT_PATH + base.getHost()
 				+ "_disallowedIWURLs" + CRAWLER_EXTENSION);
 
-		getActiveLinkQueue().add(base);
+		this.duplicateLinks = new Links(DEFAULT_PATH + base.getHost()
+				+ "_duplicateIWURLs" + CRAWLER_EXTENSION);
+		this.nearDuplicates = NEAR_DUPLICATES ? new NearDuplicateIndex(
+				NEAR_DUPLICATE_DISTANCE) : null;
+		this.validators = CONDITIONAL_GET ? new ValidatorStore(DEFAULT_PATH
+				+ base.getHost() + "_validators" + VALIDATOR_EXTENSION) : null;
+		this.archives = PAGE_ARCHIVE ? new HashMap<String, PageArchive>() : null;
+		this.journal = CRAWL_JOURNAL ? new CrawlJournal(DEFAULT_PATH
+				+ base.getHost() + "_crawl", JOURNAL_SYNC_INTERVAL,
+				CHECKPOINT_INTERVAL) : null;
+
+		if (this.journal != null && this.journal.hasCheckpoint()) {
+			resumeFromCheckpoint();
+		}
+		// the seeds are not journaled, so a crawler that never runs leaves
+		// no checkpoint behind; a resumed crawl queues those it has not
+		// classified yet again, as one may have died before its page was
+		for (UrlKey seed : this.seeds) {
+			if (this.seenURLs.markQueued(seed.getFingerprint())) {
+				this.pendingURLs.incrementAndGet();
+				getActiveLinkQueue().add(seed, this.scorer.score(seed, 0, 1));
+			}
+		}
 		initAllLinks();
 	}
 
+	/**
+	 * Restores the urls crawled and queued from the journal of a crawl that
+	 * did not complete
+	 */
+	private void resumeFromCheckpoint() {
+		Map<String, Byte> states;
+		Map<String, Integer> depths = new HashMap<String, Integer>();
+		try {
+			states = this.journal.recover(depths);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (states.isEmpty()) {
+			return;
+		}
+		int queued = 0;
+		for (Map.Entry<String, Byte> entry : states.entrySet()) {
+			UrlKey url;
+			try {
+				url = new UrlKey(entry.getKey());
+			} catch (MalformedURLException e) {
+				continue;
+			}
+			byte state = entry.getValue().byteValue();
+			Integer queuedDepth = depths.get(entry.getKey());
+			int depth = (queuedDepth == null) ? 0 : queuedDepth.intValue();
+			this.seenURLs.markQueued(url.getFingerprint(), depth);
+			Links links = linksFor(state);
+			if (state == SeenURLIndex.OVER_BUDGET) {
+				this.seenURLs.setState(url.getFingerprint(), state);
+			} else if (links == null) {
+				this.pendingURLs.incrementAndGet();
+				getActiveLinkQueue().add(url, this.scorer.score(url, depth, 1));
+				queued++;
+			} else {
+				links.add(url);
+				this.seenURLs.setState(url.getFingerprint(), state);
+				if (state == SeenURLIndex.LOCAL) {
+					this.replayResumed = true;
+				}
+				if (state != SeenURLIndex.DISALLOWED && isLocal(url)) {
+					// fetched before, so it counts against the crawl budget
+					this.budget.recordFetched(url);
+				}
+			}
+		}
+		this.resumeMessage = "Resumed from checkpoint: "
+				+ (states.size() - queued) + " urls crawled, " + queued
+				+ " queued";
+	}
+
+	/**
+	 * @param state
+	 *            a state in the seen url index
+	 * @return the links collection of urls in the state, or null for queued
+	 *         urls
+	 */
+	private Links linksFor(byte state) {
+		switch (state) {
+		case SeenURLIndex.LOCAL:
+			return this.localLinks;
+		case SeenURLIndex.EXTERNAL:
+			return this.externalLinks;
+		case SeenURLIndex.DEAD:
+			return this.deadLinks;
+		case SeenURLIndex.NON_PARSABLE:
+			return this.nonParsableLinks;
+		case SeenURLIndex.DISALLOWED:
+			return this.disallowedLinks;
+		case SeenURLIndex.DUPLICATE:
+			return this.duplicateLinks;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a record to the crawl journal, if there is one
+	 */
+	private void journal(byte state, UrlKey url) {
+		journal(state, url, 0);
+	}
+
+	/**
+	 * Appends a record of a url found some links from a seed to the crawl
+	 * journal, if there is one
+	 */
+	private void journal(byte state, UrlKey url, int depth) {
+		if (this.journal != null) {
+			this.journal.append(state, url, depth);
+		}
+	}
+
 	private void initAllLinks() {
 		this.allLinks = new ArrayList<Links>();
 		this.allLinks.add(this.localLinks);
@@ -139,132 +408,375 @@ public class CrawlerImpl {
 		this.allLinks.add(this.deadLinks);
 		this.allLinks.add(this.nonParsableLinks);
 		this.allLinks.add(this.disallowedLinks);
+		this.allLinks.add(this.duplicateLinks);
 
 	}
 
 	/**
-	 * Set up disallowed urls from robots.txt
+	 * Get the URLs that were waiting to be processed. You should add one URL to
+	 * this collection to begin the crawler.
+	 * 
+	 * @return A collection of URLs.
+	 */
+	public PriorityFrontier getActiveLinkQueue() {
+		return this.activeLinkQueue;
+	}
+
+	/**
+	 * Add a URL for processing, if it hasn't been visited before. The url is
+	 * put into its canonical form first, so other spellings of a url already
+	 * seen are not fetched again.
+	 * 
+	 * @param url
 	 */
-	private void readRobotsTxt() {
-		try {
-			log("Reading robots.txt");
+	public void addURL(UrlKey url) {
+		addURL(url, 0);
+	}
 
-			if (this.base.equals(new URL(DEFAULT_URL))) {
-				this.robotsPath = DEFAULT_ROBOTS_TXT_URL;
-			} else {
-				this.robotsPath = this.base.getHost() + "/robots.txt";
+	/**
+	 * Add a URL found some links away from the seed for processing, if it
+	 * hasn't been visited before, at the priority the scorer gives it. A url
+	 * seen before is queued again if another link to it raises its priority;
+	 * the copy left behind is skipped when it is taken. Local urls beyond the
+	 * crawl budget are not queued.
+	 * 
+	 * @param url
+	 * @param depth
+	 *            number of links from the seed to the url
+	 */
+	public void addURL(UrlKey url, int depth) {
+		url = canonicalize(url);
+		long fingerprint = url.getFingerprint();
+		if (!this.seenURLs.markQueued(fingerprint, depth)) {
+			int inLinks = this.seenURLs.addInLink(fingerprint);
+			if (inLinks > 1
+					&& this.seenURLs.getState(fingerprint) == SeenURLIndex.QUEUED) {
+				int queuedDepth = this.seenURLs.getDepth(fingerprint);
+				int priority = this.scorer.score(url, queuedDepth, inLinks);
+				if (priority < this.scorer.score(url, queuedDepth, inLinks - 1)) {
+					getActiveLinkQueue().add(url, priority);
+				}
 			}
+			return;
+		}
+		if (isLocal(url)
+				&& (!this.budget.allowsDepth(depth) || !this.budget.hasBudget(url))) {
+			// taken out of the queued state, so it is never queued again
+			this.seenURLs.claim(fingerprint);
+			return;
+		}
 
-			URL robotURL = new URL(this.robotsPath);
-			URLConnection robotConn = robotURL.openConnection();
-			Scanner reader = new Scanner(robotConn.getInputStream());
-			boolean userAgentMatched = false;
+		log("Adding to workload: " + url);
+		this.pendingURLs.incrementAndGet();
+		journal(SeenURLIndex.QUEUED, url, depth);
+		getActiveLinkQueue().add(url, this.scorer.score(url, depth, 1));
 
-			final String USER_AGENT_ENTRY = "user-agent:";
-			final String DISALLOW_ENTRY = "disallow:";
-			final String CRAWL_DELAY_ENTRY = "crawl-delay:";
+	}
 
-			while (reader.hasNextLine()) {
-				String line = reader.nextLine();
-				line = line.trim().toLowerCase();
+	/**
+	 * @param url
+	 *            a url queued before
+	 * @return the depth of the urls linked from it
+	 */
+	private int linkDepth(UrlKey url) {
+		return this.seenURLs.getDepth(url.getFingerprint()) + 1;
+	}
 
-				if (line.startsWith(USER_AGENT_ENTRY)) {
+	/**
+	 * Rewrites a url into its canonical form, if CANONICALIZE_URLS is set
+	 * 
+	 * @param url
+	 *            the url
+	 * @return the canonical url
+	 */
+	public UrlKey canonicalize(UrlKey url) {
+		return (this.canonicalizer == null) ? url : this.canonicalizer
+				.canonicalize(url);
+	}
 
-					String userAgentEntryValue = line.substring(
-							USER_AGENT_ENTRY.length()).trim();
-					if (userAgentEntryValue.equals(USER_AGENT_VALUE)
-							|| userAgentEntryValue.equals("*")) {
-						userAgentMatched = true;
-					} else {
-						userAgentMatched = false;
+	/**
+	 * Processes the active queue with the fetch workers, or with one thread
+	 * per fetch if VIRTUAL_THREADS is set, and waits for them. Then prints to
+	 * file in the end. Stops if paused. The listener hears of the start, of
+	 * the pages crawled before a resume, and of the end, also when the crawl
+	 * is paused or fails.
+	 */
+	public void processActiveQueue() {
+		CrawlListener listener = this.listener;
+		if (listener != null) {
+			listener.crawlStarted();
+			replayResumedPages(listener);
+		}
+		boolean completed = false;
+		try {
+			if (VIRTUAL_THREADS) {
+				dispatchQueuedURLs();
+			} else {
+				runWorkers();
+			}
+			// print to file, if ended normally
+			if (this.running) {
+				try {
+					printToFile();
+					for (Links links : this.allLinks) {
+						links.close();
 					}
-				} else if (line.startsWith(DISALLOW_ENTRY)) {
-					if (!userAgentMatched) {
-						continue;
+					if (this.archives != null) {
+						for (PageArchive archive : archives()) {
+							archive.close();
+						}
 					}
-
-					String disallowedEntryValue = line.substring(
-							DISALLOW_ENTRY.length()).trim();
-					if (disallowedEntryValue.endsWith("/")){
-						disallowedEntryValue = disallowedEntryValue.substring(0,disallowedEntryValue.length()-1);
+					getActiveLinkQueue().clear();
+					if (this.journal != null) {
+						// nothing left to resume
+						this.journal.delete();
 					}
-					URL disallowedURL = new URL(this.base, disallowedEntryValue);
-					this.robotDisallowedURLs.add(disallowedURL);
-
-				} else if (line.startsWith(CRAWL_DELAY_ENTRY)) {
 
-					String crawlDelayValue = line.substring(
-							CRAWL_DELAY_ENTRY.length()).trim();
-					this.crawlDelay = (long) (Double
-							.parseDouble(crawlDelayValue) * 1000);
+					log("Completed crawling");
+					log(getFrontierStats());
+					if (this.seenURLs.getFilter() != null) {
+						log(getSeenFilterStats());
+					}
+					log(this.fetcher.getStats());
+					if (this.validators != null) {
+						log(this.validators.getStats());
+					}
+					this.actions.getCrawlerActions().resetButtons();
+					completed = true;
+					if (listener != null) {
+						listener.crawlCompleted();
+					}
+				} catch (FileNotFoundException e) {
+					e.printStackTrace();
 				}
 			}
-		} catch (MalformedURLException e) {
-			log("robots.txt doesn't exist");
-		} catch (IOException e) {
-			log("robots.txt doesn't exist");
-		} 
+			if (this.journal != null) {
+				this.journal.sync();
+			}
+			if (this.validators != null) {
+				try {
+					// forget pages that are gone only once the crawl is complete
+					this.validators.save(this.running);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			this.running = false;
+			log("webCrawler stopped");
+		} finally {
+			if (!completed && listener != null) {
+				listener.crawlStopped();
+			}
+		}
 	}
-	
+
 	/**
-	 * Get the URLs that were waiting to be processed. You should add one URL to
-	 * this collection to begin the crawler.
-	 * 
-	 * @return A collection of URLs.
+	 * Hands the local pages crawled before the crawl was resumed to a
+	 * listener, once, so it sees every page of the crawl. Their bodies are
+	 * not at hand, so they are passed without.
 	 */
-	public BlockingQueue<URL> getActiveLinkQueue() {
-		return this.activeLinkQueue;
+	private void replayResumedPages(CrawlListener listener) {
+		if (!this.replayResumed) {
+			return;
+		}
+		this.replayResumed = false;
+		for (UrlKey url : this.localLinks) {
+			listener.pageCrawled(url, null);
+		}
 	}
 
 	/**
-	 * Add a URL for processing, if it hasn't been visited before
-	 * 
-	 * @param url
+	 * Takes urls from the active queue and processes each one in a thread of
+	 * its own, a virtual thread where the JVM has them. The number of fetches
+	 * is bounded per host by the host limiter and overall by
+	 * MAX_FETCHES_IN_FLIGHT, or by the platform threads fetches run on
+	 * without virtual threads. Returns once every started fetch has finished.
 	 */
-	public void addURL(URL url) {
-		if (getActiveLinkQueue().contains(url)) {
-			return;
-		}
-		for (Links links : this.allLinks) {
-			if (links.contains(url)) {
-				return;
+	private void dispatchQueuedURLs() {
+		log("Fetching in " + FetchThreads.describe());
+		ExecutorService executor = FetchThreads.newPerTaskExecutor("webCrawler-fetch");
+		final Semaphore inFlight = new Semaphore(FetchThreads.getMaxInFlight());
+		try {
+			while (this.running && this.pendingURLs.get() > 0) {
+				inFlight.acquire();
+				final UrlKey currUrl = nextURL();
+				if (currUrl == null) {
+					inFlight.release();
+					continue;
+				}
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							processURL(currUrl);
+						} finally {
+							CrawlerImpl.this.pendingURLs.decrementAndGet();
+							inFlight.release();
+						}
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
 			}
 		}
-
-		log("Adding to workload: " + url);
-		getActiveLinkQueue().add(url);
-
 	}
 
 	/**
-	 * Takes a url from the active queue and processes it, then prints to file
-	 * in the end. Stops if paused.
+	 * Runs CRAWLER_THREADS fetch workers on the active queue and waits for
+	 * them
 	 */
-	public synchronized void processActiveQueue() {
-		while (!getActiveLinkQueue().isEmpty() && this.running) {
+	private void runWorkers() {
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < Math.max(1, CRAWLER_THREADS); i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					processQueuedURLs();
+				}
+			}, "webCrawler-worker-" + i);
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
 
-			URL currUrl = getActiveLinkQueue().poll();
-			processURL(currUrl);
+	/**
+	 * Run by each fetch worker: takes urls from the active queue until it is
+	 * drained and no other worker can add to it any more, or the crawler is
+	 * paused.
+	 */
+	private void processQueuedURLs() {
+		while (this.running && this.pendingURLs.get() > 0) {
+			UrlKey currUrl;
 			try {
-				Thread.sleep(getCrawlDelay());
+				currUrl = nextURL();
 			} catch (InterruptedException e) {
 				e.printStackTrace();
+				continue;
 			}
+			if (currUrl == null) {
+				continue;
+			}
+			try {
+				processURL(currUrl);
+			} finally {
+				this.pendingURLs.decrementAndGet();
+			}
+		}
+	}
 
+	/**
+	 * Takes the next url that may be processed right away: first a url whose
+	 * host's crawl delay has just passed, otherwise the next url from the
+	 * active queue. Urls that need no fetch, such as external and disallowed
+	 * ones, never wait. A url whose host was fetched from too recently is
+	 * parked in the scheduler instead, and null is returned. A host parks
+	 * MAX_WAITING_PER_HOST urls at most, and its further urls wait in a
+	 * frontier of its own, so a slow host cannot fill the scheduler and hold
+	 * up the others.
+	 * 
+	 * @return the url to process, or null if there is none at the moment
+	 * @throws InterruptedException
+	 */
+	private UrlKey nextURL() throws InterruptedException {
+		UrlKey url = released(this.scheduler.pollReady());
+		if (url != null) {
+			return url;
 		}
-		// print to file, if ended normally
-		if (this.running) {
-			try {
-				printToFile();
+		if (this.scheduler.getWaitingCount() >= FRONTIER_HEAD_SIZE) {
+			// enough urls parked in memory, wait for a host instead
+			return released(this.scheduler.pollReady(100));
+		}
+		url = getActiveLinkQueue().poll(
+				Math.min(100, this.scheduler.millisUntilReady()),
+				TimeUnit.MILLISECONDS);
+		if (url == null) {
+			return null;
+		}
+		if (!this.seenURLs.claim(url.getFingerprint())) {
+			// a copy left behind when the url was queued again at a higher
+			// priority
+			return null;
+		}
+		if (!needsFetch(url)) {
+			return url;
+		}
+		long delay = this.robots.getRules(url).getCrawlDelay();
+		if (this.scheduler.tryAcquire(url.getHost(), delay)) {
+			return url;
+		}
+		String host = url.getHost().toLowerCase();
+		synchronized (this.overflow) {
+			Frontier waiting = this.overflow.get(host);
+			if (waiting == null
+					&& this.scheduler.getWaitingCount(host) >= MAX_WAITING_PER_HOST) {
+				waiting = new Frontier(DEFAULT_PATH + this.base.getHost()
+						+ "_waiting_" + host + "_", MAX_WAITING_PER_HOST,
+						FRONTIER_SEGMENT_SIZE);
+				this.overflow.put(host, waiting);
+			}
+			if (waiting != null) {
+				waiting.add(url);
+				return null;
+			}
+		}
+		this.scheduler.defer(host, url, delay);
+		return null;
+	}
 
-				log("Completed crawling");
-				this.actions.getCrawlerActions().resetButtons();
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
+	/**
+	 * Parks the next url waiting in the frontier of a url's host, if there is
+	 * one, as the url has left the scheduler
+	 * 
+	 * @param url
+	 *            a url taken from the scheduler, or null
+	 * @return the url
+	 * @throws InterruptedException
+	 */
+	private UrlKey released(UrlKey url) throws InterruptedException {
+		if (url == null) {
+			return null;
+		}
+		String host = url.getHost().toLowerCase();
+		synchronized (this.overflow) {
+			Frontier waiting = this.overflow.get(host);
+			if (waiting != null) {
+				UrlKey next = waiting.poll(0, TimeUnit.MILLISECONDS);
+				if (next == null) {
+					waiting.clear();
+					this.overflow.remove(host);
+				} else {
+					this.scheduler.defer(host, next, this.robots
+							.getRules(next).getCrawlDelay());
+				}
 			}
 		}
-		this.running = false;
-		log("webCrawler stopped");
+		return url;
+	}
+
+	/**
+	 * Checks that processing a url means fetching it, so its host's crawl
+	 * delay applies
+	 * 
+	 * @param url
+	 *            the url to check
+	 * @return is the url local and allowed by robots.txt?
+	 */
+	private boolean needsFetch(UrlKey url) {
+		return isLocal(url) && isRobotAllowed(url);
 	}
 
 	/**
@@ -273,46 +785,261 @@ public class CrawlerImpl {
 	 * @param url
 	 *            The URL to be processed.
 	 */
-	public void processURL(URL url) {
+	public void processURL(UrlKey url) {
 		log("Processing: " + url);
 		try {
 
 			if (!isLocal(url)) {
 				log("External link - " + url);
-				this.externalLinks.add(url);
+				classify(url, this.externalLinks, SeenURLIndex.EXTERNAL);
 				return;
 			}
 			if (!isRobotAllowed(url)) {
 				log("Disallowed by robots.txt - " + url);
-				this.disallowedLinks.add(url);
+				classify(url, this.disallowedLinks, SeenURLIndex.DISALLOWED);
 				return;
 			}
-
-			URLConnection connection = url.openConnection();
-			setRequestProperties(connection);
-			if (!isParseable(connection)) {
-				log("Not parsable content type: " + connection.getContentType()
-						+ " - " + url);
-				this.nonParsableLinks.add(url);
+			if (!this.budget.tryFetch(url)) {
+				log("Over crawl budget - " + url);
+				// journaled, so a resumed crawl neither queues nor counts it
+				journal(SeenURLIndex.OVER_BUDGET, url);
+				this.seenURLs.setState(url.getFingerprint(),
+						SeenURLIndex.OVER_BUDGET);
 				return;
 			}
 
-			// read the URL
-			InputStream is = connection.getInputStream();
-			Reader r = new InputStreamReader(is);
-			// parse the URL
-			ParserDelegator parser = new ParserDelegator();
-			parser.parse(r, new Parser(url), true);
-
-			// mark URL as complete
-			this.localLinks.add(url);
-			log("Complete: " + url);
+			this.hostLimiter.acquire(url.getHost());
+			try {
+				fetchAndParse(url);
+			} finally {
+				this.hostLimiter.release(url.getHost());
+			}
 		} catch (IOException e) {
-			this.deadLinks.add(url);
+			classify(url, this.deadLinks, SeenURLIndex.DEAD);
 			log("Error: " + url);
 		}
 	}
 
+	/**
+	 * Fetches a local, allowed url and parses it for links. A page crawled
+	 * before is fetched with a conditional request, and if it has not changed
+	 * the links stored for it are queued instead of parsing it again.
+	 * 
+	 * @param url
+	 *            the url to fetch
+	 * @throws IOException
+	 */
+	private void fetchAndParse(UrlKey url) throws IOException {
+		ValidatorStore.Validators previous = (this.validators == null) ? null
+				: this.validators.get(url);
+		ValidatorStore.Validators page;
+		byte[] content = null;
+		long fetchTime = System.currentTimeMillis();
+		FetchResponse response = this.fetcher.fetch(url.toURL(),
+				(previous == null) ? null : previous.getConditionalHeaders());
+		try {
+			if (previous != null
+					&& response.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				log("Not modified: " + url);
+				this.validators.countNotModified();
+				if (this.archives != null) {
+					archiveFor(url).revisit(url, fetchTime,
+							previous.getContentHash());
+				}
+				page = previous.refresh(response.getHeader("ETag"),
+						response.getHeader("Last-Modified"));
+			} else {
+				if (!isParseable(response.getContentType())) {
+					log("Not parsable content type: "
+							+ response.getContentType() + " - " + url);
+					classify(url, this.nonParsableLinks,
+							SeenURLIndex.NON_PARSABLE);
+					return;
+				}
+				if (response.isError()) {
+					throw new IOException("HTTP " + response.getStatusCode());
+				}
+
+				// read the URL
+				content = readFully(response.getBody());
+				long hash = ValidatorStore.hash(content);
+				if (this.archives != null) {
+					archiveFor(url).write(url, fetchTime, response, hash, content);
+				}
+				if (previous != null && previous.getContentHash() == hash) {
+					log("Unchanged: " + url);
+					this.validators.countDownloaded(false);
+					page = previous.refresh(response.getHeader("ETag"),
+							response.getHeader("Last-Modified"));
+				} else {
+					if (this.validators != null) {
+						this.validators.countDownloaded(true);
+					}
+					// parse the URL
+					page = parse(url, content, response.getHeader("ETag"),
+							response.getHeader("Last-Modified"), hash);
+				}
+			}
+		} finally {
+			response.close();
+		}
+		if (this.validators != null) {
+			this.validators.put(url, page);
+		}
+
+		UrlKey original = findCanonical(url, page);
+		if (original != null) {
+			// the page names another as the one to crawl and index
+			log("Canonical is " + original + ": " + url);
+			this.aliases.put(url, original);
+			classify(url, this.duplicateLinks, SeenURLIndex.DUPLICATE);
+			addURL(original, linkDepth(url) - 1);
+			return;
+		}
+		original = findOriginal(url, page);
+		if (original != null) {
+			// a near duplicate is neither expanded nor indexed
+			log("Near duplicate of " + original + ": " + url);
+			this.aliases.put(url, original);
+			classify(url, this.duplicateLinks, SeenURLIndex.DUPLICATE);
+			return;
+		}
+		addLinks(page.getLinks(), linkDepth(url));
+
+		// mark URL as complete
+		classify(url, this.localLinks, SeenURLIndex.LOCAL);
+		log("Complete: " + url);
+		CrawlListener listener = this.listener;
+		if (listener != null) {
+			listener.pageCrawled(url, content);
+		}
+	}
+
+	/**
+	 * Parses a page for its links and the SimHash of its text
+	 * 
+	 * @param url
+	 *            the page
+	 * @param content
+	 *            the page content
+	 * @param etag
+	 *            the ETag header, or null
+	 * @param lastModified
+	 *            the Last-Modified header, or null
+	 * @param hash
+	 *            hash of the page content
+	 * @return what was learned about the page
+	 * @throws IOException
+	 */
+	private ValidatorStore.Validators parse(UrlKey url, byte[] content,
+			String etag, String lastModified, long hash) throws IOException {
+		Collection<UrlKey> found = new LinkedHashSet<UrlKey>();
+		Parser parser = new Parser(url, found);
+		this.extractors.get().parse(content, parser);
+		String[] links = new String[found.size()];
+		int i = 0;
+		for (UrlKey link : found) {
+			links[i++] = link.toString();
+		}
+		UrlKey canonical = parser.getCanonical();
+		return new ValidatorStore.Validators(etag, lastModified, hash,
+				parser.getSimHash().getFingerprint(),
+				parser.getSimHash().getWordCount(),
+				(canonical == null) ? null : canonical.toString(), links);
+	}
+
+	/**
+	 * Gets the page a page names with rel=canonical, if it is another local
+	 * page
+	 * 
+	 * @param url
+	 *            the page
+	 * @param page
+	 *            what was learned about the page
+	 * @return the canonical page, or null
+	 */
+	private UrlKey findCanonical(UrlKey url, ValidatorStore.Validators page) {
+		if (!REL_CANONICAL || page.getCanonical() == null) {
+			return null;
+		}
+		try {
+			UrlKey canonical = canonicalize(new UrlKey(page.getCanonical()));
+			// a page that is itself an alias cannot be canonical, which
+			// also breaks cycles of pages naming each other
+			if (canonical.equals(url) || !isLocal(canonical)
+					|| this.seenURLs.getState(canonical.getFingerprint()) == SeenURLIndex.DUPLICATE) {
+				return null;
+			}
+			return canonical;
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Looks for a page already crawled that a page is a near duplicate of
+	 * 
+	 * @param url
+	 *            the page
+	 * @param page
+	 *            what was learned about the page
+	 * @return the page it duplicates, or null
+	 */
+	private UrlKey findOriginal(UrlKey url, ValidatorStore.Validators page) {
+		if (this.nearDuplicates == null
+				|| page.getWordCount() < NEAR_DUPLICATE_MIN_WORDS) {
+			return null;
+		}
+		return this.nearDuplicates.findOrAdd(url, page.getSimHash());
+	}
+
+	/**
+	 * Queues the links stored for a page that has not changed
+	 * 
+	 * @param links
+	 *            the links found on the page when it was last parsed
+	 * @param depth
+	 *            number of links from the seed to the links
+	 */
+	private void addLinks(String[] links, int depth) {
+		for (String link : links) {
+			try {
+				addURL(new UrlKey(link), depth);
+			} catch (MalformedURLException e) {
+				log("Found malformed URL: " + link);
+			}
+		}
+	}
+
+	/**
+	 * Reads a response body into memory, so it can be hashed before parsing
+	 */
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Records the outcome of processing a url
+	 * 
+	 * @param url
+	 *            the processed url
+	 * @param links
+	 *            the links collection the url belongs to
+	 * @param state
+	 *            the matching state in the seen url index
+	 */
+	private void classify(UrlKey url, Links links, byte state) {
+		journal(state, url);
+		links.add(url);
+		this.seenURLs.setState(url.getFingerprint(), state);
+	}
+
 	/**
 	 * Adds the Crawler's headers to the connection
 	 * 
@@ -326,28 +1053,55 @@ public class CrawlerImpl {
 	}
 
 	/**
-	 * Called to start the crawler
+	 * Called to start the crawler, or to resume it after a pause
 	 */
 	public void start() {
-		this.processingThread = new Thread(new Runnable() {
-			@Override
-			public void run() {
-				processActiveQueue();
-			}
-		});
-		this.processingThread.start();
-		this.running = true;
+		synchronized (this.controlLock) {
+			if (this.running) {
+				return;
+			}
+			// let the workers of a paused run finish their current urls first
+			if (this.processingThread != null) {
+				try {
+					this.processingThread.join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+			this.running = true;
+			this.processingThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					processActiveQueue();
+				}
+			});
+			this.processingThread.start();
+		}
 		log("webCrawler started");
+		if (this.resumeMessage != null) {
+			log(this.resumeMessage);
+			this.resumeMessage = null;
+		}
 
 	}
 
 	/**
-	 * Pauses the crawler
+	 * Pauses the crawler. Every worker stops after the url it is processing.
 	 */
 	public void stop() {
 		this.running = false;
 	}
 
+	/**
+	 * Sets the listener that receives the local pages as they are crawled
+	 * 
+	 * @param listener
+	 *            the listener, or null
+	 */
+	public void setCrawlListener(CrawlListener listener) {
+		this.listener = listener;
+	}
+
 	/**
 	 * 
 	 * @return is the parser running?
@@ -366,7 +1120,18 @@ public class CrawlerImpl {
 	 * @return is it parsable?
 	 */
 	public boolean isParseable(URLConnection connection) {
-		String contentType = connection.getContentType();
+		return isParseable(connection.getContentType());
+	}
+
+	/**
+	 * Checks that a content type is parsable, in the same way as
+	 * isParseable(URLConnection)
+	 * 
+	 * @param contentType
+	 *            the MIME type, or null if there was none
+	 * @return is it parsable?
+	 */
+	public boolean isParseable(String contentType) {
 		if (contentType == null) {
 			return true;
 		}
@@ -380,14 +1145,25 @@ public class CrawlerImpl {
 	}
 
 	/**
-	 * Checks that a url is local
+	 * Checks that a url is local, on one of the hosts crawled
 	 * 
 	 * @param url
 	 *            the url to check
 	 * @return is it local?
 	 */
 	public boolean isLocal(URL url) {
-		return url.getHost().equalsIgnoreCase(this.base.getHost());
+		return this.allowedHosts.contains(url.getHost().toLowerCase());
+	}
+
+	/**
+	 * Checks that a url is local, on one of the hosts crawled
+	 * 
+	 * @param url
+	 *            the url to check
+	 * @return is it local?
+	 */
+	public boolean isLocal(UrlKey url) {
+		return this.allowedHosts.contains(url.getHost());
 	}
 
 	/**
@@ -398,19 +1174,25 @@ public class CrawlerImpl {
 	 * @return is the url allowed?
 	 */
 	public boolean isRobotAllowed(URL checkURL) {
-		if (!isRobotsTxtRead()) {
-			readRobotsTxt();
-		}
-		for (URL disallowedUrl : this.robotDisallowedURLs) {
-			if (checkURL.getPath().startsWith(disallowedUrl.getPath())) {
-				return false;
-			}
-		}
-		return true;
+		return isRobotAllowed(new UrlKey(checkURL));
 	}
-	
+
+	/**
+	 * Checks that a url is allowed by robots.txt
+	 * 
+	 * @param checkURL
+	 *            the url to check
+	 * @return is the url allowed?
+	 */
+	public boolean isRobotAllowed(UrlKey checkURL) {
+		return this.robots.getRules(checkURL).isAllowed(checkURL.getFile());
+	}
+
+	/**
+	 * @return have the base host's robots.txt rules been read?
+	 */
 	public boolean isRobotsTxtRead(){
-		return this.robotsPath != null;
+		return this.robots.isCached(this.base);
 	}
 
 	/**
@@ -428,7 +1210,8 @@ public class CrawlerImpl {
 	}
 
 	/**
-	 * Prints all urls to separate files
+	 * Prints all urls to separate files. The urls are appended as they are
+	 * classified, so this makes sure they have reached the disk.
 	 * 
 	 * @throws FileNotFoundException
 	 */
@@ -436,6 +1219,55 @@ public class CrawlerImpl {
 		for (Links links : this.allLinks) {
 			links.print();
 		}
+		if (this.archives != null) {
+			for (PageArchive archive : archives()) {
+				archive.flush();
+			}
+		}
+		printAliases();
+	}
+
+	/**
+	 * @param url
+	 *            a page downloaded
+	 * @return the archive of the page's host, opened the first time
+	 */
+	private PageArchive archiveFor(UrlKey url) {
+		String host = url.getHost().toLowerCase();
+		synchronized (this.archives) {
+			PageArchive archive = this.archives.get(host);
+			if (archive == null) {
+				archive = new PageArchive(PageArchive.pathFor(host));
+				this.archives.put(host, archive);
+			}
+			return archive;
+		}
+	}
+
+	/**
+	 * @return the archives opened so far
+	 */
+	private List<PageArchive> archives() {
+		synchronized (this.archives) {
+			return new ArrayList<PageArchive>(this.archives.values());
+		}
+	}
+
+	/**
+	 * Prints each near duplicate followed by the page it duplicates
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	private void printAliases() throws FileNotFoundException {
+		PrintWriter aliasWriter = new PrintWriter(new File(DEFAULT_PATH
+				+ this.base.getHost() + "_aliasIWURLs" + CRAWLER_EXTENSION));
+		synchronized (this.aliases) {
+			for (Map.Entry<UrlKey, UrlKey> alias : this.aliases.entrySet()) {
+				aliasWriter.println(alias.getKey() + " " + alias.getValue());
+			}
+		}
+		aliasWriter.flush();
+		aliasWriter.close();
 	}
 
 	/**
@@ -473,6 +1305,75 @@ public class CrawlerImpl {
 		return this.disallowedLinks;
 	}
 
+	/**
+	 * @return the links to near duplicates of pages already crawled
+	 */
+	public Links getDuplicateLinks() {
+		return this.duplicateLinks;
+	}
+
+	/**
+	 * @return the page each near duplicate duplicates
+	 */
+	public Map<UrlKey, UrlKey> getAliases() {
+		return this.aliases;
+	}
+
+	/**
+	 * @return the urls the crawl starts from
+	 */
+	public List<UrlKey> getSeeds() {
+		return Collections.unmodifiableList(this.seeds);
+	}
+
+	/**
+	 * @return the hosts whose pages are crawled
+	 */
+	public Set<String> getAllowedHosts() {
+		return Collections.unmodifiableSet(this.allowedHosts);
+	}
+
+	/**
+	 * @return the index of every url seen so far
+	 */
+	public SeenURLIndex getSeenURLs() {
+		return this.seenURLs;
+	}
+
+	/**
+	 * @return a description of the fetches made and connections reused
+	 */
+	public String getFetcherStats() {
+		return this.fetcher.getStats();
+	}
+
+	/**
+	 * Describes the urls left queued and the urls the crawl budget turned away
+	 * 
+	 * @return the frontier statistics
+	 */
+	public String getFrontierStats() {
+		return "Frontier : " + getActiveLinkQueue().size() + " queued, "
+				+ getActiveLinkQueue().spilledSize() + " on disk. "
+				+ this.budget.getStats();
+	}
+
+	/**
+	 * Describes the memory use and false positive rate of the seen url filter
+	 * 
+	 * @return the filter statistics
+	 */
+	public String getSeenFilterStats() {
+		BloomFilter filter = this.seenURLs.getFilter();
+		if (filter == null) {
+			return "Seen URL filter : off";
+		}
+		return String.format("Seen URL filter : %.1f KB, %.2f%% false positives (%.2f%% expected)",
+				filter.getMemoryBytes() / 1024.0,
+				this.seenURLs.getObservedFalsePositiveRate() * 100,
+				filter.getExpectedFalsePositiveRate() * 100);
+	}
+
 	/**
 	 * @return the status
 	 */
@@ -494,7 +1395,7 @@ public class CrawlerImpl {
 	 * @return
 	 */
 	public Set<URL> getRobotDisallowedURLs() {
-		return this.robotDisallowedURLs;
+		return this.robots.getRules(this.base).getDisallowedURLs();
 	}
 
 	/**
@@ -502,77 +1403,127 @@ public class CrawlerImpl {
 	 * @return
 	 */
 	public long getCrawlDelay(){
-		if (!isRobotsTxtRead()){
-			readRobotsTxt();
-		}
-		return this.crawlDelay;
+		return this.robots.getRules(this.base).getCrawlDelay();
 	}
 	/**
-	 * A HTML parser callback used by this class to detect links
+	 * A callback of the link extractor used by this class to detect links
 	 * 
 	 */
-	public class Parser extends HTMLEditorKit.ParserCallback {
+	public class Parser extends LinkExtractor.Callback {
+		/**
+		 * The page being parsed
+		 */
+		private final UrlKey page;
+
+		/**
+		 * The url links are relative to, the page unless it has a base tag
+		 */
+		private UrlKey parserBase;
+
+		/**
+		 * Collects the links found, or null
+		 */
+		private Collection<UrlKey> outLinks;
+
+		/**
+		 * Fingerprint of the text of the page
+		 */
+		private final SimHash simHash = new SimHash();
+
 		/**
-		 * The url addres to parse
+		 * The url the page names with rel=canonical, or null
 		 */
-		private URL parserBase;
+		private UrlKey canonical;
 
 		/**
-		 * Creates a new HTMLEditorKit.ParserCallback
+		 * Creates a new callback that adds the links it finds to the
+		 * processing queue
 		 * 
 		 * @param base
 		 *            te link to parse
 		 */
-		public Parser(URL base) {
+		public Parser(UrlKey base) {
+			this.page = base;
 			this.parserBase = base;
 		}
 
 		/**
-		 * Handles a simple html tag. A link if found if the tag has a href or
-		 * src attribute. #'s are checked in the link and subsequent characters
-		 * are removed. mailto links are ignored.
+		 * Creates a new callback that collects the links it finds instead of
+		 * adding them to the processing queue
+		 * 
+		 * @param base
+		 *            te link to parse
+		 * @param outLinks
+		 *            collects the links found on the page
 		 */
-		@Override
-		public void handleSimpleTag(HTML.Tag tag,
-				MutableAttributeSet attributes, int pos) {
-			String href = (String) attributes.getAttribute(HTML.Attribute.HREF);
-
-			if (href == null)
-				href = (String) attributes.getAttribute(HTML.Attribute.SRC);
-
-			if (href == null)
-				return;
-
-			int i = href.indexOf('#');
-			if (i != -1)
-				href = href.substring(0, i);
+		public Parser(UrlKey base, Collection<UrlKey> outLinks) {
+			this(base);
+			this.outLinks = outLinks;
+		}
 
-			if (href.toLowerCase().startsWith("mailto:")) {
-				return;
+		/**
+		 * Resolves the links after a base tag against it
+		 */
+		@Override
+		public void handleBase(String href) {
+			try {
+				this.parserBase = this.parserBase.resolve(href);
+			} catch (MalformedURLException e) {
+				log("Found malformed URL: " + href);
 			}
+		}
 
-			handleLink(href);
+		/**
+		 * Remembers the url the page names with rel=canonical
+		 */
+		@Override
+		public void handleCanonical(String href) {
+			try {
+				this.canonical = this.parserBase.resolve(href);
+			} catch (MalformedURLException e) {
+				log("Found malformed URL: " + href);
+			}
 		}
 
 		/**
-		 * Handles the beginning of a tag the same way. Links are stored in a
-		 * Set so they are not added twice
+		 * Adds the words of the text to the SimHash of the page
 		 */
 		@Override
-		public void handleStartTag(HTML.Tag t, MutableAttributeSet a, int pos) {
-			handleSimpleTag(t, a, pos); // handle the same way
+		public void handleText(char[] text, int offset, int length) {
+			this.simHash.addText(text, offset, length);
+			this.simHash.endWord();
 		}
 
 		/**
-		 * Checks that a link is valid and adds it to the processing queue.
+		 * @return the url the page names with rel=canonical, or null
+		 */
+		public UrlKey getCanonical() {
+			return this.canonical;
+		}
+
+		/**
+		 * @return the SimHash of the text read so far
+		 */
+		public SimHash getSimHash() {
+			return this.simHash;
+		}
+
+		/**
+		 * Checks that a link is valid and adds it to the processing queue, or
+		 * to the collected links.
 		 * 
 		 * @param link
 		 */
-		protected void handleLink(String link) {
+		@Override
+		public void handleLink(String link) {
 			try {
-				URL url = new URL(this.parserBase, link);
-				if (!url.equals(this.parserBase)){
-					addURL(url);
+				UrlKey url = this.parserBase.resolve(link);
+				if (!url.equals(this.page)){
+					if (this.outLinks != null) {
+						this.outLinks.add(url);
+					} else {
+						addURL(url, linkDepth(this.page));
+					}
 				}
 			} catch (MalformedURLException e) {
 				log("Found malformed URL: " + link);
@@ -0,0 +1,112 @@
+package webspider.core.crawler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import webspider.Settings;
+
+/**
+ * Creates executors that run every fetch in a thread of its own. On a JVM
+ * with virtual threads each fetch gets a virtual thread, so thousands of
+ * blocking requests can be in flight without as many operating system
+ * threads. Older JVMs fall back to a pool of at most
+ * Settings.MAX_PLATFORM_FETCH_THREADS platform threads, and fewer fetches are
+ * let in flight, as each one holds an operating system thread while it
+ * blocks.
+ */
+public class FetchThreads {
+
+	/**
+	 * Does this JVM run fetches in virtual threads?
+	 */
+	private static final boolean VIRTUAL = virtualThreadsEnabled();
+
+	private FetchThreads() {
+	}
+
+	/**
+	 * Creates an executor starting a new thread for each task, or running
+	 * the tasks on a bounded pool of platform threads without virtual threads
+	 * 
+	 * @param name
+	 *            name prefix for platform threads
+	 * @return the executor
+	 */
+	public static ExecutorService newPerTaskExecutor(final String name) {
+		if (VIRTUAL) {
+			try {
+				return newVirtualThreadPerTaskExecutor();
+			} catch (Exception e) {
+				// checked when the class was loaded, so it does not happen
+			}
+		}
+		return Executors.newFixedThreadPool(getPlatformThreads(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, name + "-"
+								+ this.count.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @return does this JVM run fetches in virtual threads?
+	 */
+	public static boolean isVirtual() {
+		return VIRTUAL;
+	}
+
+	/**
+	 * The number of fetches to let in flight at once: up to
+	 * Settings.MAX_FETCHES_IN_FLIGHT in virtual threads, and no more than
+	 * there are platform threads without them
+	 * 
+	 * @return the number of fetches, 1 or more
+	 */
+	public static int getMaxInFlight() {
+		int max = Math.max(1, Settings.MAX_FETCHES_IN_FLIGHT);
+		return VIRTUAL ? max : Math.min(max, getPlatformThreads());
+	}
+
+	/**
+	 * @return a description of the threads fetches run in, for the log
+	 */
+	public static String describe() {
+		return VIRTUAL ? "virtual threads, up to " + getMaxInFlight()
+				+ " fetches in flight" : getPlatformThreads()
+				+ " platform threads, as this JVM has no virtual threads";
+	}
+
+	private static int getPlatformThreads() {
+		return Math.max(1, Settings.MAX_PLATFORM_FETCH_THREADS);
+	}
+
+	/**
+	 * Virtual threads may be missing, or there only as a disabled preview
+	 * feature, so one executor is created to find out
+	 */
+	private static boolean virtualThreadsEnabled() {
+		try {
+			newVirtualThreadPerTaskExecutor().shutdown();
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor()
+			throws Exception {
+		// looked up at runtime, so the spider still builds for older JVMs
+		Method factory = Executors.class
+				.getMethod("newVirtualThreadPerTaskExecutor");
+		return (ExecutorService) factory.invoke(null);
+	}
+}
@@ -0,0 +1,35 @@
+package webspider.core.crawler;
+
+import webspider.Settings;
+
+/**
+ * Holds the page fetcher shared by the crawler and the indexer
+ */
+public class Fetchers {
+
+	/**
+	 * The shared fetcher, created on first use
+	 */
+	private static PageFetcher shared;
+
+	private Fetchers() {
+	}
+
+	/**
+	 * Gets the shared fetcher, backed by java.net.http.HttpClient if
+	 * Settings.HTTP_CLIENT is set and by URLConnection otherwise. Either way
+	 * it sends the crawler's request headers.
+	 * 
+	 * @return the shared fetcher
+	 */
+	public static synchronized PageFetcher getShared() {
+		if (shared == null) {
+			if (Settings.HTTP_CLIENT) {
+				shared = new HttpClientFetcher(CrawlerImpl.REQUEST_PROPERTIES);
+			} else {
+				shared = new URLConnectionFetcher(CrawlerImpl.REQUEST_PROPERTIES);
+			}
+		}
+		return shared;
+	}
+}
@@ -0,0 +1,281 @@
+package webspider.core.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue of urls waiting to be crawled. Only a bounded head of the queue is
+ * kept in memory; once it is full, further urls are appended to memory mapped
+ * segment files and read back in batches as the head drains. The order urls
+ * are handed out in is the order they were added in.
+ */
+public class Frontier {
+
+	/**
+	 * Extension of the segment files
+	 */
+	public static final String SEGMENT_EXTENSION = ".seg";
+
+	/**
+	 * Encoding of the urls in the segment files
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Urls held in memory, oldest first
+	 */
+	private final Deque<UrlKey> head = new ArrayDeque<UrlKey>();
+
+	/**
+	 * Maximum number of urls held in memory
+	 */
+	private final int headCapacity;
+
+	/**
+	 * Size of each segment file in bytes
+	 */
+	private final int segmentSize;
+
+	/**
+	 * Path and file name prefix of the segment files
+	 */
+	private final String segmentPrefix;
+
+	/**
+	 * Segments holding the spilled tail of the queue, oldest first
+	 */
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+	/**
+	 * Number of urls in the segment files
+	 */
+	private int spilled = 0;
+
+	/**
+	 * Number of the next segment file to create
+	 */
+	private int nextSegment = 0;
+
+	/**
+	 * Creates a frontier spilling to files starting with the given prefix. Any
+	 * segments left behind by an earlier crawl are removed.
+	 *
+	 * @param segmentPrefix
+	 *            path and file name prefix of the segment files
+	 * @param headCapacity
+	 *            maximum number of urls to hold in memory
+	 * @param segmentSize
+	 *            size of each segment file in bytes
+	 */
+	public Frontier(String segmentPrefix, int headCapacity, int segmentSize) {
+		this.segmentPrefix = segmentPrefix;
+		this.headCapacity = Math.max(1, headCapacity);
+		this.segmentSize = segmentSize;
+		deleteSegmentFiles();
+	}
+
+	/**
+	 * Adds a url to the end of the queue
+	 *
+	 * @param url
+	 *            the url to add
+	 */
+	public synchronized void add(UrlKey url) {
+		if (this.spilled == 0 && this.head.size() < this.headCapacity) {
+			this.head.addLast(url);
+		} else {
+			try {
+				spill(url);
+			} catch (IOException e) {
+				// keep the url rather than lose it
+				e.printStackTrace();
+				this.head.addLast(url);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Takes the url at the front of the queue, waiting for one to be added if
+	 * the queue is empty
+	 *
+	 * @param timeout
+	 *            how long to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return the url, or null if none was added in time
+	 * @throws InterruptedException
+	 */
+	public synchronized UrlKey poll(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (isEmpty()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return null;
+			}
+			wait(remaining);
+		}
+		if (this.head.isEmpty()) {
+			refill();
+		}
+		return this.head.pollFirst();
+	}
+
+	/**
+	 * @return is the queue empty?
+	 */
+	public synchronized boolean isEmpty() {
+		return this.head.isEmpty() && this.spilled == 0;
+	}
+
+	/**
+	 * @return the number of urls in the queue
+	 */
+	public synchronized int size() {
+		return this.head.size() + this.spilled;
+	}
+
+	/**
+	 * @return the number of urls waiting in segment files
+	 */
+	public synchronized int spilledSize() {
+		return this.spilled;
+	}
+
+	/**
+	 * Empties the queue and removes its segment files
+	 */
+	public synchronized void clear() {
+		this.head.clear();
+		for (Segment segment : this.segments) {
+			segment.delete();
+		}
+		this.segments.clear();
+		this.spilled = 0;
+	}
+
+	/**
+	 * Appends a url to the newest segment, starting a new one when it is full
+	 */
+	private void spill(UrlKey url) throws IOException {
+		byte[] bytes = url.toString().getBytes(UTF8);
+		Segment segment = this.segments.peekLast();
+		if (segment == null || !segment.append(bytes)) {
+			segment = new Segment(new File(this.segmentPrefix
+					+ (this.nextSegment++) + SEGMENT_EXTENSION), this.segmentSize);
+			this.segments.addLast(segment);
+			if (!segment.append(bytes)) {
+				throw new IOException("url does not fit in a segment: " + url);
+			}
+		}
+		this.spilled++;
+	}
+
+	/**
+	 * Moves the next batch of spilled urls into the head
+	 */
+	private void refill() {
+		int batch = Math.max(1, this.headCapacity / 2);
+		while (this.head.size() < batch && this.spilled > 0) {
+			Segment segment = this.segments.peekFirst();
+			byte[] bytes = segment.next();
+			if (bytes == null) {
+				// fully read, and a newer segment exists since urls are left
+				segment.delete();
+				this.segments.pollFirst();
+				continue;
+			}
+			this.spilled--;
+			try {
+				this.head.addLast(new UrlKey(new String(bytes, UTF8)));
+			} catch (MalformedURLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Removes segment files left by an earlier crawl with the same prefix
+	 */
+	private void deleteSegmentFiles() {
+		File prefix = new File(this.segmentPrefix);
+		File dir = prefix.getAbsoluteFile().getParentFile();
+		File[] files = (dir == null) ? null : dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.getName().startsWith(prefix.getName())
+					&& file.getName().endsWith(SEGMENT_EXTENSION)) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * An append only file of length prefixed urls, mapped into memory
+	 */
+	private static class Segment {
+		private final File file;
+		private final RandomAccessFile raf;
+		private final MappedByteBuffer buffer;
+		private int writePosition = 0;
+		private int readPosition = 0;
+
+		Segment(File file, int size) throws IOException {
+			this.file = file;
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null) {
+				dir.mkdirs();
+			}
+			this.raf = new RandomAccessFile(file, "rw");
+			this.buffer = this.raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+
+		/**
+		 * @return false if the segment is full
+		 */
+		boolean append(byte[] bytes) {
+			if (this.writePosition + 4 + bytes.length > this.buffer.capacity()) {
+				return false;
+			}
+			this.buffer.putInt(this.writePosition, bytes.length);
+			this.buffer.put(this.writePosition + 4, bytes);
+			this.writePosition += 4 + bytes.length;
+			return true;
+		}
+
+		/**
+		 * @return the next unread url, or null if all have been read
+		 */
+		byte[] next() {
+			if (this.readPosition >= this.writePosition) {
+				return null;
+			}
+			int length = this.buffer.getInt(this.readPosition);
+			byte[] bytes = new byte[length];
+			this.buffer.get(this.readPosition + 4, bytes);
+			this.readPosition += 4 + length;
+			return bytes;
+		}
+
+		void delete() {
+			try {
+				this.raf.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			this.file.delete();
+		}
+	}
+}
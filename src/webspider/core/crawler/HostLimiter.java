@@ -0,0 +1,63 @@
+package webspider.core.crawler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many fetches may be in flight to each host at the same time,
+ * independently of how many threads are fetching.
+ */
+public class HostLimiter {
+
+	/**
+	 * A semaphore for every host fetched from so far
+	 */
+	private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+	/**
+	 * Number of fetches allowed per host
+	 */
+	private final int permitsPerHost;
+
+	/**
+	 * @param permitsPerHost
+	 *            number of fetches allowed per host at the same time
+	 */
+	public HostLimiter(int permitsPerHost) {
+		this.permitsPerHost = Math.max(1, permitsPerHost);
+	}
+
+	/**
+	 * Waits until a fetch from the host is allowed
+	 * 
+	 * @param host
+	 *            the host to fetch from
+	 */
+	public void acquire(String host) {
+		semaphore(host).acquireUninterruptibly();
+	}
+
+	/**
+	 * Ends a fetch started with acquire
+	 * 
+	 * @param host
+	 *            the host fetched from
+	 */
+	public void release(String host) {
+		semaphore(host).release();
+	}
+
+	private Semaphore semaphore(String host) {
+		String key = host.toLowerCase();
+		Semaphore semaphore = this.permits.get(key);
+		if (semaphore == null) {
+			Semaphore created = new Semaphore(this.permitsPerHost);
+			semaphore = this.permits.putIfAbsent(key, created);
+			if (semaphore == null) {
+				semaphore = created;
+			}
+		}
+		return semaphore;
+	}
+}
@@ -0,0 +1,198 @@
+package webspider.core.crawler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces fetches to each host by the host's crawl delay without putting
+ * threads to sleep. A fetch to a host whose delay has passed may go ahead at
+ * once; otherwise the item is parked with its host, and released by pollReady
+ * when the host's next slot comes up. Hosts with parked items wait in a delay
+ * queue ordered by their next slot, so other hosts are never held up.
+ *
+ * @param <T>
+ *            the type of the items scheduled, such as urls
+ */
+public class HostScheduler<T> {
+
+	/**
+	 * Every host fetched from so far
+	 */
+	private final Map<String, Host<T>> hosts = new HashMap<String, Host<T>>();
+
+	/**
+	 * Hosts with parked items, ordered by their next slot
+	 */
+	private final DelayQueue<Host<T>> waitingHosts = new DelayQueue<Host<T>>();
+
+	/**
+	 * Number of items parked
+	 */
+	private int waiting = 0;
+
+	/**
+	 * Takes the host's next slot if it has already come up and nothing is
+	 * parked for the host
+	 *
+	 * @param host
+	 *            the host to fetch from
+	 * @param delay
+	 *            the host's crawl delay in milliseconds
+	 * @return true if the fetch may go ahead now
+	 */
+	public synchronized boolean tryAcquire(String host, long delay) {
+		Host<T> entry = host(host);
+		entry.delay = delay;
+		long now = System.currentTimeMillis();
+		if (!entry.items.isEmpty() || entry.nextSlot > now) {
+			return false;
+		}
+		entry.nextSlot = now + delay;
+		return true;
+	}
+
+	/**
+	 * Parks an item until its host's next slot
+	 *
+	 * @param host
+	 *            the host the item will be fetched from
+	 * @param item
+	 *            the item to park
+	 * @param delay
+	 *            the host's crawl delay in milliseconds
+	 */
+	public synchronized void defer(String host, T item, long delay) {
+		Host<T> entry = host(host);
+		entry.delay = delay;
+		entry.items.addLast(item);
+		this.waiting++;
+		if (entry.items.size() == 1) {
+			this.waitingHosts.add(entry);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Takes a parked item whose host's slot has come up, if there is one
+	 *
+	 * @return the item, or null if none is ready
+	 */
+	public synchronized T pollReady() {
+		Host<T> entry = this.waitingHosts.poll();
+		if (entry == null) {
+			return null;
+		}
+		T item = entry.items.pollFirst();
+		this.waiting--;
+		entry.nextSlot = System.currentTimeMillis() + entry.delay;
+		if (!entry.items.isEmpty()) {
+			this.waitingHosts.add(entry);
+		}
+		return item;
+	}
+
+	/**
+	 * Waits for a parked item to become ready
+	 *
+	 * @param timeout
+	 *            how long to wait in milliseconds
+	 * @return the item, or null if none became ready in time
+	 * @throws InterruptedException
+	 */
+	public synchronized T pollReady(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			T item = pollReady();
+			if (item != null) {
+				return item;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return null;
+			}
+			wait(Math.max(1, Math.min(remaining, millisUntilReady())));
+		}
+	}
+
+	/**
+	 * @return milliseconds until the next parked item is ready, or
+	 *         Long.MAX_VALUE if nothing is parked
+	 */
+	public synchronized long millisUntilReady() {
+		Host<T> entry = this.waitingHosts.peek();
+		return (entry == null) ? Long.MAX_VALUE : Math.max(0,
+				entry.getDelay(TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * @return the number of parked items
+	 */
+	public synchronized int getWaitingCount() {
+		return this.waiting;
+	}
+
+	/**
+	 * @param host
+	 *            a host
+	 * @return the number of items parked for the host
+	 */
+	public synchronized int getWaitingCount(String host) {
+		Host<T> entry = this.hosts.get(host.toLowerCase());
+		return (entry == null) ? 0 : entry.items.size();
+	}
+
+	/**
+	 * Removes every parked item
+	 *
+	 * @return the items removed
+	 */
+	public synchronized List<T> drain() {
+		List<T> items = new ArrayList<T>();
+		for (Host<T> entry : this.waitingHosts) {
+			items.addAll(entry.items);
+			entry.items.clear();
+		}
+		this.waitingHosts.clear();
+		this.waiting = 0;
+		return items;
+	}
+
+	private Host<T> host(String host) {
+		String key = host.toLowerCase();
+		Host<T> entry = this.hosts.get(key);
+		if (entry == null) {
+			entry = new Host<T>();
+			this.hosts.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * The next slot and parked items of a host
+	 */
+	private static class Host<T> implements Delayed {
+		private final Deque<T> items = new ArrayDeque<T>();
+		private long nextSlot = 0;
+		private long delay = 0;
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(this.nextSlot - System.currentTimeMillis(),
+					TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			long diff = getDelay(TimeUnit.MILLISECONDS)
+					- other.getDelay(TimeUnit.MILLISECONDS);
+			return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+		}
+	}
+}
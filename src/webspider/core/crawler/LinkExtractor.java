@@ -0,0 +1,581 @@
+package webspider.core.crawler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A streaming scanner that finds the links of an HTML page in its bytes,
+ * without building a document or an attribute set per tag. It reports the
+ * href or src of every tag, the href of &lt;base&gt;, the href of a link
+ * with rel=canonical, the url of a meta refresh and the text between tags,
+ * leaving out comments, scripts and styles.
+ * <p>
+ * The bytes are read as UTF-8, falling back to ISO-8859-1 for bytes that are
+ * not valid UTF-8, which both agree with on the ASCII markup. Text is handed
+ * out in a buffer that is reused, so an extractor is not thread safe, but it
+ * can parse any number of pages one after another.
+ */
+public class LinkExtractor {
+
+	private static final byte[] SCRIPT = { 's', 'c', 'r', 'i', 'p', 't' };
+	private static final byte[] STYLE = { 's', 't', 'y', 'l', 'e' };
+	private static final byte[] BASE = { 'b', 'a', 's', 'e' };
+	private static final byte[] LINK = { 'l', 'i', 'n', 'k' };
+	private static final byte[] META = { 'm', 'e', 't', 'a' };
+	private static final byte[] HREF = { 'h', 'r', 'e', 'f' };
+	private static final byte[] SRC = { 's', 'r', 'c' };
+	private static final byte[] REL = { 'r', 'e', 'l' };
+	private static final byte[] HTTP_EQUIV = { 'h', 't', 't', 'p', '-', 'e',
+			'q', 'u', 'i', 'v' };
+	private static final byte[] CONTENT = { 'c', 'o', 'n', 't', 'e', 'n', 't' };
+
+	/**
+	 * The names of the characters U+00A0 to U+00FF, in order
+	 */
+	private static final String[] LATIN_1_ENTITIES = {
+			"nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar",
+			"sect", "uml", "copy", "ordf", "laquo", "not", "shy", "reg",
+			"macr", "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para",
+			"middot", "cedil", "sup1", "ordm", "raquo", "frac14", "frac12",
+			"frac34", "iquest", "Agrave", "Aacute", "Acirc", "Atilde", "Auml",
+			"Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc", "Euml",
+			"Igrave", "Iacute", "Icirc", "Iuml", "ETH", "Ntilde", "Ograve",
+			"Oacute", "Ocirc", "Otilde", "Ouml", "times", "Oslash", "Ugrave",
+			"Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig", "agrave",
+			"aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+			"egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc",
+			"iuml", "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde",
+			"ouml", "divide", "oslash", "ugrave", "uacute", "ucirc", "uuml",
+			"yacute", "thorn", "yuml" };
+
+	/**
+	 * The characters of the named references decoded, the HTML 4 entities of
+	 * Latin-1 and the markup characters, and the punctuation most often
+	 * written as a reference
+	 */
+	private static final Map<String, Integer> ENTITIES = new HashMap<String, Integer>();
+
+	static {
+		for (int i = 0; i < LATIN_1_ENTITIES.length; i++) {
+			ENTITIES.put(LATIN_1_ENTITIES[i], Integer.valueOf(0xa0 + i));
+		}
+		// a space rather than U+00A0, so it separates words
+		ENTITIES.put("nbsp", Integer.valueOf(' '));
+		String[] names = { "lt", "gt", "amp", "quot", "apos", "OElig",
+				"oelig", "Scaron", "scaron", "Yuml", "fnof", "circ", "tilde",
+				"ensp", "emsp", "thinsp", "ndash", "mdash", "lsquo", "rsquo",
+				"sbquo", "ldquo", "rdquo", "bdquo", "dagger", "Dagger", "bull",
+				"hellip", "permil", "lsaquo", "rsaquo", "euro", "trade" };
+		int[] codes = { '<', '>', '&', '"', '\'', 0x152, 0x153, 0x160, 0x161,
+				0x178, 0x192, 0x2c6, 0x2dc, 0x2002, 0x2003, 0x2009, 0x2013,
+				0x2014, 0x2018, 0x2019, 0x201a, 0x201c, 0x201d, 0x201e, 0x2020,
+				0x2021, 0x2022, 0x2026, 0x2030, 0x2039, 0x203a, 0x20ac, 0x2122 };
+		for (int i = 0; i < names.length; i++) {
+			ENTITIES.put(names[i], Integer.valueOf(codes[i]));
+		}
+	}
+
+	/**
+	 * Receives what the extractor finds. The methods do nothing by default.
+	 */
+	public static class Callback {
+
+		/**
+		 * A link, without its fragment. mailto links are left out.
+		 *
+		 * @param href
+		 *            the link as written, relative to the base
+		 */
+		public void handleLink(String href) {
+		}
+
+		/**
+		 * The href of a &lt;base&gt; tag, which the links after it are
+		 * relative to
+		 *
+		 * @param href
+		 *            the base as written
+		 */
+		public void handleBase(String href) {
+		}
+
+		/**
+		 * The href of a &lt;link rel="canonical"&gt; tag
+		 *
+		 * @param href
+		 *            the canonical url as written
+		 */
+		public void handleCanonical(String href) {
+		}
+
+		/**
+		 * A piece of text between two tags
+		 *
+		 * @param text
+		 *            a buffer holding the text, only valid during the call
+		 * @param offset
+		 *            start of the text
+		 * @param length
+		 *            number of characters
+		 */
+		public void handleText(char[] text, int offset, int length) {
+		}
+	}
+
+	/**
+	 * The decoded characters of the last text or attribute value
+	 */
+	private char[] chars = new char[1024];
+
+	/**
+	 * Positions of the attributes of the current tag, -1 if missing
+	 */
+	private int hrefStart, hrefEnd, srcStart, srcEnd, relStart, relEnd,
+			equivStart, equivEnd, contentStart, contentEnd;
+
+	/**
+	 * Parses a page
+	 *
+	 * @param page
+	 *            the bytes of the page
+	 * @param callback
+	 *            receives the links and text found
+	 */
+	public void parse(byte[] page, Callback callback) {
+		parse(page, 0, page.length, callback);
+	}
+
+	/**
+	 * Parses part of a buffer holding a page
+	 *
+	 * @param page
+	 *            the buffer
+	 * @param offset
+	 *            start of the page
+	 * @param length
+	 *            number of bytes
+	 * @param callback
+	 *            receives the links and text found
+	 */
+	public void parse(byte[] page, int offset, int length, Callback callback) {
+		int end = offset + length;
+		int i = offset;
+		while (i < end) {
+			int lt = indexOf(page, (byte) '<', i, end);
+			if (lt > i) {
+				text(page, i, lt, callback);
+			}
+			if (lt == end) {
+				break;
+			}
+			i = tag(page, lt, end, callback);
+		}
+	}
+
+	/**
+	 * Reads the markup starting at a '&lt;'
+	 *
+	 * @return the position after it
+	 */
+	private int tag(byte[] b, int lt, int end, Callback callback) {
+		int i = lt + 1;
+		if (i >= end) {
+			text(b, lt, end, callback);
+			return end;
+		}
+		byte c = b[i];
+		if (c == '!') {
+			if (i + 2 < end && b[i + 1] == '-' && b[i + 2] == '-') {
+				int close = commentEnd(b, i + 3, end);
+				return (close == end) ? end : close + 3;
+			}
+			return skipPast(b, (byte) '>', i, end);
+		}
+		if (c == '?') {
+			return skipPast(b, (byte) '>', i, end);
+		}
+		if (c == '/') {
+			return skipPast(b, (byte) '>', i, end);
+		}
+		if (!isLetter(c)) {
+			// a lone '<' in the text
+			text(b, lt, lt + 1, callback);
+			return lt + 1;
+		}
+
+		int nameStart = i;
+		while (i < end && !isSpace(b[i]) && b[i] != '>' && b[i] != '/') {
+			i++;
+		}
+		int nameEnd = i;
+		this.hrefStart = this.srcStart = this.relStart = this.equivStart = this.contentStart = -1;
+		i = attributes(b, i, end);
+
+		if (nameIs(b, nameStart, nameEnd, SCRIPT)) {
+			// the src of a script is a link, its body is not text
+			attributeLink(b, callback);
+			return skipRawText(b, i, end, SCRIPT);
+		}
+		if (nameIs(b, nameStart, nameEnd, STYLE)) {
+			attributeLink(b, callback);
+			return skipRawText(b, i, end, STYLE);
+		}
+		if (nameIs(b, nameStart, nameEnd, BASE)) {
+			if (this.hrefStart != -1) {
+				callback.handleBase(value(b, this.hrefStart, this.hrefEnd));
+			}
+			return i;
+		}
+		if (nameIs(b, nameStart, nameEnd, LINK) && this.hrefStart != -1
+				&& this.relStart != -1
+				&& hasToken(value(b, this.relStart, this.relEnd), "canonical")) {
+			callback.handleCanonical(value(b, this.hrefStart, this.hrefEnd));
+			return i;
+		}
+		if (nameIs(b, nameStart, nameEnd, META) && this.equivStart != -1
+				&& this.contentStart != -1
+				&& "refresh".equalsIgnoreCase(value(b, this.equivStart,
+						this.equivEnd))) {
+			String url = refreshURL(value(b, this.contentStart,
+					this.contentEnd));
+			if (url != null) {
+				link(url, callback);
+			}
+			return i;
+		}
+		attributeLink(b, callback);
+		return i;
+	}
+
+	/**
+	 * Reports the href of the tag just read, or its src if it has none
+	 */
+	private void attributeLink(byte[] b, Callback callback) {
+		if (this.hrefStart != -1) {
+			link(value(b, this.hrefStart, this.hrefEnd), callback);
+		} else if (this.srcStart != -1) {
+			link(value(b, this.srcStart, this.srcEnd), callback);
+		}
+	}
+
+	/**
+	 * Reads the attributes of a tag, noting where the interesting values are
+	 *
+	 * @return the position after the end of the tag
+	 */
+	private int attributes(byte[] b, int i, int end) {
+		while (i < end) {
+			byte c = b[i];
+			if (c == '>') {
+				return i + 1;
+			}
+			if (isSpace(c) || c == '/') {
+				i++;
+				continue;
+			}
+			int nameStart = i;
+			while (i < end && !isSpace(b[i]) && b[i] != '=' && b[i] != '>'
+					&& b[i] != '/') {
+				i++;
+			}
+			int nameEnd = i;
+			while (i < end && isSpace(b[i])) {
+				i++;
+			}
+			int valueStart = -1;
+			int valueEnd = -1;
+			if (i < end && b[i] == '=') {
+				i++;
+				while (i < end && isSpace(b[i])) {
+					i++;
+				}
+				if (i < end && (b[i] == '"' || b[i] == '\'')) {
+					byte quote = b[i];
+					valueStart = i + 1;
+					valueEnd = indexOf(b, quote, valueStart, end);
+					i = Math.min(valueEnd + 1, end);
+				} else {
+					valueStart = i;
+					while (i < end && !isSpace(b[i]) && b[i] != '>') {
+						i++;
+					}
+					valueEnd = i;
+				}
+			}
+			if (valueStart == -1) {
+				continue;
+			}
+			if (nameIs(b, nameStart, nameEnd, HREF)) {
+				this.hrefStart = valueStart;
+				this.hrefEnd = valueEnd;
+			} else if (nameIs(b, nameStart, nameEnd, SRC)) {
+				this.srcStart = valueStart;
+				this.srcEnd = valueEnd;
+			} else if (nameIs(b, nameStart, nameEnd, REL)) {
+				this.relStart = valueStart;
+				this.relEnd = valueEnd;
+			} else if (nameIs(b, nameStart, nameEnd, HTTP_EQUIV)) {
+				this.equivStart = valueStart;
+				this.equivEnd = valueEnd;
+			} else if (nameIs(b, nameStart, nameEnd, CONTENT)) {
+				this.contentStart = valueStart;
+				this.contentEnd = valueEnd;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Skips the content of a script or style up to its end tag
+	 *
+	 * @return the position after the end tag
+	 */
+	private static int skipRawText(byte[] b, int i, int end, byte[] name) {
+		while (i < end) {
+			int lt = indexOf(b, (byte) '<', i, end);
+			if (lt + 1 + name.length >= end) {
+				return end;
+			}
+			if (b[lt + 1] == '/'
+					&& nameIs(b, lt + 2, lt + 2 + name.length, name)) {
+				byte after = b[lt + 2 + name.length];
+				if (after == '>' || isSpace(after) || after == '/') {
+					return skipPast(b, (byte) '>', lt + 2 + name.length, end);
+				}
+			}
+			i = lt + 1;
+		}
+		return end;
+	}
+
+	/**
+	 * Reports a link unless it is a mailto link, without its fragment
+	 */
+	private static void link(String href, Callback callback) {
+		int hash = href.indexOf('#');
+		if (hash != -1) {
+			href = href.substring(0, hash);
+		}
+		if (href.regionMatches(true, 0, "mailto:", 0, 7)) {
+			return;
+		}
+		callback.handleLink(href);
+	}
+
+	/**
+	 * Gets the url of a meta refresh, written as "5; url=page.html"
+	 *
+	 * @return the url, or null if there is none
+	 */
+	static String refreshURL(String content) {
+		int semicolon = content.indexOf(';');
+		if (semicolon == -1) {
+			semicolon = content.indexOf(',');
+		}
+		if (semicolon == -1) {
+			return null;
+		}
+		String url = content.substring(semicolon + 1).trim();
+		if (url.regionMatches(true, 0, "url", 0, 3)) {
+			String rest = url.substring(3).trim();
+			if (rest.startsWith("=")) {
+				url = rest.substring(1).trim();
+			}
+		}
+		if (url.length() > 1
+				&& (url.charAt(0) == '\'' || url.charAt(0) == '"')) {
+			int close = url.indexOf(url.charAt(0), 1);
+			url = url.substring(1, (close == -1) ? url.length() : close);
+		}
+		return (url.length() == 0) ? null : url;
+	}
+
+	/**
+	 * @return does a space separated list hold a token, in any case?
+	 */
+	private static boolean hasToken(String list, String token) {
+		int i = 0;
+		int length = list.length();
+		while (i < length) {
+			while (i < length && list.charAt(i) <= ' ') {
+				i++;
+			}
+			int start = i;
+			while (i < length && list.charAt(i) > ' ') {
+				i++;
+			}
+			if (i - start == token.length()
+					&& list.regionMatches(true, start, token, 0, i - start)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes a piece of text and hands it to the callback
+	 */
+	private void text(byte[] b, int start, int end, Callback callback) {
+		int length = decode(b, start, end);
+		if (length > 0) {
+			callback.handleText(this.chars, 0, length);
+		}
+	}
+
+	/**
+	 * @return an attribute value, decoded and trimmed
+	 */
+	private String value(byte[] b, int start, int end) {
+		while (start < end && isSpace(b[start])) {
+			start++;
+		}
+		while (end > start && isSpace(b[end - 1])) {
+			end--;
+		}
+		return new String(this.chars, 0, decode(b, start, end));
+	}
+
+	/**
+	 * Decodes bytes and character references into the char buffer
+	 *
+	 * @return the number of characters decoded
+	 */
+	private int decode(byte[] b, int start, int end) {
+		if (this.chars.length < end - start) {
+			this.chars = new char[Math.max(end - start, this.chars.length * 2)];
+		}
+		char[] out = this.chars;
+		int n = 0;
+		int i = start;
+		while (i < end) {
+			int c = b[i] & 0xff;
+			if (c == '&') {
+				int semicolon = -1;
+				for (int j = i + 1; j < end && j < i + 10; j++) {
+					if (b[j] == ';') {
+						semicolon = j;
+						break;
+					}
+				}
+				int ref = (semicolon == -1) ? -1 : reference(b, i + 1,
+						semicolon);
+				if (ref != -1) {
+					n += Character.toChars(ref, out, n);
+					i = semicolon + 1;
+					continue;
+				}
+				out[n++] = '&';
+				i++;
+			} else if (c < 0x80) {
+				out[n++] = (char) c;
+				i++;
+			} else {
+				int length = (c >= 0xf0) ? 4 : (c >= 0xe0) ? 3 : (c >= 0xc0) ? 2
+						: 0;
+				int code = (length == 4) ? c & 0x07 : (length == 3) ? c & 0x0f
+						: c & 0x1f;
+				boolean valid = length > 0 && i + length <= end;
+				for (int j = 1; valid && j < length; j++) {
+					int next = b[i + j] & 0xff;
+					valid = (next & 0xc0) == 0x80;
+					code = (code << 6) | (next & 0x3f);
+				}
+				if (valid && code <= Character.MAX_CODE_POINT) {
+					n += Character.toChars(code, out, n);
+					i += length;
+				} else {
+					out[n++] = (char) c;
+					i++;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the character of a reference such as "amp", "eacute" or "#x2F",
+	 *         or -1
+	 */
+	private static int reference(byte[] b, int start, int end) {
+		if (start >= end) {
+			return -1;
+		}
+		if (b[start] == '#') {
+			int radix = 10;
+			int i = start + 1;
+			if (i < end && (b[i] == 'x' || b[i] == 'X')) {
+				radix = 16;
+				i++;
+			}
+			if (i == end) {
+				return -1;
+			}
+			int code = 0;
+			for (; i < end; i++) {
+				int digit = Character.digit(b[i], radix);
+				if (digit == -1) {
+					return -1;
+				}
+				code = code * radix + digit;
+			}
+			return (code > 0 && code <= Character.MAX_CODE_POINT) ? code : -1;
+		}
+		if (end - start > 8) {
+			return -1;
+		}
+		Integer code = ENTITIES.get(new String(b, start, end - start,
+				StandardCharsets.ISO_8859_1));
+		return (code == null) ? -1 : code.intValue();
+	}
+
+	/**
+	 * @return is the name between start and end the lower case name given,
+	 *         in any case?
+	 */
+	private static boolean nameIs(byte[] b, int start, int end, byte[] name) {
+		if (end - start != name.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if ((b[start + i] | 0x20) != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] b, byte c, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (b[i] == c) {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return the position of the "--&gt;" ending a comment, or end
+	 */
+	private static int commentEnd(byte[] b, int start, int end) {
+		for (int i = start; i + 2 < end; i++) {
+			if (b[i] == '-' && b[i + 1] == '-' && b[i + 2] == '>') {
+				return i;
+			}
+		}
+		return end;
+	}
+
+	private static int skipPast(byte[] b, byte c, int start, int end) {
+		int i = indexOf(b, c, start, end);
+		return (i == end) ? end : i + 1;
+	}
+
+	private static boolean isLetter(byte c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+}
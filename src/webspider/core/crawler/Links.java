@@ -1,98 +1,288 @@
 package webspider.core.crawler;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.net.URL;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import webspider.Settings;
 
 /**
- * A collection of links and operations on them
- * 
+ * A collection of links and operations on them. Every url added is appended
+ * to the print path as it arrives, one per line, so the file always holds
+ * the links found so far. Lines are flushed in batches and the file is forced
+ * to disk at most every sync interval. The urls are also kept in memory only
+ * if asked to, otherwise they are read back from the file when iterated, and
+ * only their fingerprints are kept to tell whether a url has been added.
+ *
  * @author Zsolt Bitvai
  */
-public class Links implements Iterable<URL> {
+public class Links implements Iterable<UrlKey> {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * the urls to hold, or null if they are only kept in the file
+	 */
+	private final Collection<UrlKey> urls;
 
 	/**
-	 * the urls to hold
+	 * the fingerprints of the urls, or null if the urls are held
 	 */
-	private Collection<URL> urls;
+	private final SeenURLIndex fingerprints;
 
 	/**
 	 * * the path to print the urls The path to print the urls
 	 */
 	private String printPath;
 
+	/**
+	 * Number of urls added
+	 */
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * Number of lines written before they are flushed
+	 */
+	private final int batchSize;
+
+	/**
+	 * Milliseconds between forcing the file to disk
+	 */
+	private final long syncInterval;
+
+	/**
+	 * The open file, or null before the first url and after closing
+	 */
+	private FileOutputStream stream;
+	private Writer writer;
+
+	/**
+	 * Has the file been started? It is truncated when first opened and
+	 * appended to when opened again.
+	 */
+	private boolean started = false;
+
+	/**
+	 * Lines written since the last flush
+	 */
+	private int unflushed = 0;
+
+	/**
+	 * When the file was last forced to disk
+	 */
+	private long lastSync = System.currentTimeMillis();
+
+	/**
+	 * Creates links configured by Settings.KEEP_LINKS_IN_MEMORY,
+	 * Settings.LINKS_BATCH_SIZE and Settings.LINKS_SYNC_INTERVAL
+	 *
+	 * @param printPath
+	 *            the file the urls are written to
+	 */
 	public Links(String printPath) {
+		this(printPath, Settings.KEEP_LINKS_IN_MEMORY,
+				Settings.LINKS_BATCH_SIZE, Settings.LINKS_SYNC_INTERVAL);
+	}
+
+	/**
+	 * @param printPath
+	 *            the file the urls are written to
+	 * @param keepInMemory
+	 *            keep a copy of the urls in memory?
+	 * @param batchSize
+	 *            number of lines written before they are flushed
+	 * @param syncInterval
+	 *            milliseconds between forcing the file to disk
+	 */
+	public Links(String printPath, boolean keepInMemory, int batchSize,
+			long syncInterval) {
 		this.printPath = printPath;
-		this.urls = Collections.synchronizedSet(new LinkedHashSet<URL>());
+		this.urls = keepInMemory ? Collections
+				.synchronizedSet(new LinkedHashSet<UrlKey>()) : null;
+		this.fingerprints = keepInMemory ? null : new SeenURLIndex();
+		this.batchSize = Math.max(1, batchSize);
+		this.syncInterval = syncInterval;
 	}
 
 	/**
-	 * print the urls
-	 * 
+	 * print the urls. They are already in the file, so it is only flushed and
+	 * forced to disk, and created if no url was added.
+	 *
 	 * @throws FileNotFoundException
 	 */
-	public void print() throws FileNotFoundException {
-		File outfile = new File(this.printPath);
-		PrintWriter urlWriter = new PrintWriter(outfile);
-		synchronized (this.urls) {
-			for (URL url : this.urls) {
-				urlWriter.println(url);
-			}
+	public synchronized void print() throws FileNotFoundException {
+		if (this.writer == null) {
+			open();
 		}
-		urlWriter.flush();
-		urlWriter.close();
-
+		sync();
 	}
 
 	/**
-	 * Add a new url to the collection
-	 * 
+	 * Add a new url to the collection and append it to the file, unless it
+	 * has been added before
+	 *
 	 * @param url
 	 */
-	public void add(URL url) {
-		this.urls.add(url);
+	public synchronized void add(UrlKey url) {
+		if (this.urls != null ? !this.urls.add(url) : !this.fingerprints
+				.markQueued(url.getFingerprint())) {
+			return;
+		}
+		this.count.incrementAndGet();
+		try {
+			if (this.writer == null) {
+				open();
+			}
+			this.writer.write(url.toString());
+			this.writer.write('\n');
+			if (++this.unflushed >= this.batchSize) {
+				this.writer.flush();
+				this.unflushed = 0;
+			}
+			if (System.currentTimeMillis() - this.lastSync >= this.syncInterval) {
+				sync();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Flushes the file, forces it to disk and closes it. Urls added later are
+	 * appended.
+	 */
+	public synchronized void close() {
+		if (this.writer == null) {
+			return;
+		}
+		sync();
+		try {
+			this.writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.writer = null;
+		this.stream = null;
 	}
 
 	/**
 	 * Get the number of links to collection holds
-	 * 
+	 *
 	 * @return the size of the collection
 	 */
 	public int size() {
-		return this.urls.size();
+		return this.count.get();
 	}
 
 	/**
-	 * Check that an url is in the collection already
-	 * 
+	 * Check that an url is in the collection already. Without the copy in
+	 * memory its fingerprint is looked up.
+	 *
 	 * @param checkUrl
 	 *            the url to check
 	 * @return is the url contained by the collection?
 	 */
-	public boolean contains(URL checkUrl) {
-		return this.urls.contains(checkUrl);
+	public boolean contains(UrlKey checkUrl) {
+		if (this.urls != null) {
+			return this.urls.contains(checkUrl);
+		}
+		return this.fingerprints.contains(checkUrl.getFingerprint());
 	}
 
 	/**
 	 * Iterate over all urls in this collection
 	 */
 	@Override
-	public Iterator<URL> iterator() {
-		return this.urls.iterator();
+	public Iterator<UrlKey> iterator() {
+		return getLinks().iterator();
 	}
 
 	/**
-	 * Returns all the links in the collection
-	 * 
+	 * Returns all the links in the collection. Without the copy in memory
+	 * they are read from the file.
+	 *
 	 * @return the links
 	 */
-	public Collection<URL> getLinks() {
-		return this.urls;
+	public Collection<UrlKey> getLinks() {
+		if (this.urls != null) {
+			return this.urls;
+		}
+		return readLinks();
+	}
+
+	/**
+	 * Reads the urls written so far
+	 */
+	private synchronized List<UrlKey> readLinks() {
+		List<UrlKey> links = new ArrayList<UrlKey>(size());
+		if (!this.started) {
+			return links;
+		}
+		try {
+			if (this.writer != null) {
+				this.writer.flush();
+				this.unflushed = 0;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(this.printPath), UTF8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					try {
+						links.add(new UrlKey(line));
+					} catch (MalformedURLException e) {
+						// not written by this collection
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return links;
+	}
+
+	private void sync() {
+		if (this.writer == null) {
+			return;
+		}
+		try {
+			this.writer.flush();
+			this.stream.getChannel().force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.unflushed = 0;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	private void open() throws FileNotFoundException {
+		File file = new File(this.printPath);
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		this.stream = new FileOutputStream(file, this.started);
+		this.writer = new BufferedWriter(new OutputStreamWriter(this.stream,
+				UTF8));
+		this.started = true;
 	}
 
 }
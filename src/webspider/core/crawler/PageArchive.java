@@ -0,0 +1,743 @@
+package webspider.core.crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import webspider.Settings;
+
+/**
+ * An append-only archive of the pages the crawler downloaded, so the indexer
+ * reads them from disk instead of fetching them again. The file is a
+ * sequence of WARC-like records, each a block of header lines followed by
+ * the deflated body:
+ *
+ * <pre>
+ * WARC/1.0
+ * WARC-Type: response
+ * WARC-Target-URI: http://host/page.html
+ * WARC-Date: 2012-04-01T10:00:00Z
+ * WARC-Payload-Digest: fnv64:...
+ * ...
+ * Content-Length: 1234
+ * </pre>
+ *
+ * Bodies are addressed by their content hash and stored once: a page whose
+ * content is already in the archive, because it did not change since the
+ * last crawl or because another url has the same content, gets a revisit
+ * record naming the digest instead. The archive is kept from crawl to crawl,
+ * and the last record of a url is its current content. The records it
+ * replaces are dropped when the archive is opened, if they make up most of
+ * it.
+ */
+public class PageArchive implements Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String RESPONSE = "response";
+	private static final String REVISIT = "revisit";
+
+	/**
+	 * Largest header block read before giving up on a record
+	 */
+	private static final int MAX_HEADER_LENGTH = 64 * 1024;
+
+	/**
+	 * Size of the part of the file mapped at a time when reading
+	 */
+	private static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+	/**
+	 * Number of deflaters kept for reuse at most
+	 */
+	private static final int MAX_POOLED_DEFLATERS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * The file of the archive
+	 */
+	private final File file;
+
+	/**
+	 * Digests of the bodies in the archive
+	 */
+	private final Set<Long> digests = Collections.synchronizedSet(new HashSet<Long>());
+
+	/**
+	 * The open archive, or null before the first record and after closing
+	 */
+	private OutputStream out;
+
+	/**
+	 * Deflaters free for the threads writing pages, so pages are compressed
+	 * outside the lock. Each holds native memory, so only a few are kept and
+	 * the rest are ended as soon as they are used.
+	 */
+	private final ArrayDeque<Deflater> deflaters = new ArrayDeque<Deflater>();
+
+	/**
+	 * Opens the archive kept in a file, learning which bodies it holds. A
+	 * record torn by a crash is cut off, and the archive compacted if most
+	 * of its records have been replaced.
+	 *
+	 * @param path
+	 *            the file of the archive
+	 */
+	public PageArchive(String path) {
+		this.file = new File(path);
+		if (this.file.exists()) {
+			try {
+				Set<String> urls = new HashSet<String>();
+				int records = 0;
+				Reader reader = new Reader(this.file);
+				try {
+					while (reader.next()) {
+						records++;
+						urls.add(reader.getUrl());
+						if (RESPONSE.equals(reader.getType())) {
+							this.digests.add(Long.valueOf(reader.getDigest()));
+						}
+					}
+				} finally {
+					reader.close();
+				}
+				if (reader.getEnd() < this.file.length()) {
+					truncate(reader.getEnd());
+				}
+				if (records > 2 * urls.size()) {
+					compact();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @param host
+	 *            a host
+	 * @return the file the pages of the host are archived in
+	 */
+	public static String pathFor(String host) {
+		return Settings.DEFAULT_PATH + host + "_pages"
+				+ Settings.ARCHIVE_EXTENSION;
+	}
+
+	/**
+	 * @param digest
+	 *            a content hash
+	 * @return is a body with the hash in the archive?
+	 */
+	public boolean contains(long digest) {
+		return this.digests.contains(Long.valueOf(digest));
+	}
+
+	/**
+	 * Archives a downloaded page, or a revisit record if its content is
+	 * already in the archive
+	 *
+	 * @param url
+	 *            the page
+	 * @param fetchTime
+	 *            when it was fetched, in milliseconds
+	 * @param response
+	 *            the response it was fetched with
+	 * @param digest
+	 *            the content hash of the body, as ValidatorStore.hash
+	 * @param content
+	 *            the body
+	 */
+	public void write(UrlKey url, long fetchTime, FetchResponse response,
+			long digest, byte[] content) {
+		if (contains(digest)) {
+			revisit(url, fetchTime, digest);
+			return;
+		}
+		byte[] compressed = deflate(content);
+		StringBuilder header = header(RESPONSE, url, fetchTime, digest);
+		header(header, "HTTP-Status", String.valueOf(response.getStatusCode()));
+		header(header, "Content-Type", response.getContentType());
+		header(header, "ETag", response.getHeader("ETag"));
+		header(header, "Last-Modified", response.getHeader("Last-Modified"));
+		header(header, "Content-Encoding", "deflate");
+		header(header, "Uncompressed-Length", String.valueOf(content.length));
+		synchronized (this) {
+			if (!this.digests.add(Long.valueOf(digest))) {
+				compressed = new byte[0];
+				header = header(REVISIT, url, fetchTime, digest);
+			}
+			append(header, compressed);
+		}
+	}
+
+	/**
+	 * Records that a page still has content already in the archive, as when
+	 * the server answers 304 Not Modified
+	 *
+	 * @param url
+	 *            the page
+	 * @param fetchTime
+	 *            when it was fetched, in milliseconds
+	 * @param digest
+	 *            the content hash of the body
+	 * @return false if the body is not in the archive, so nothing was written
+	 */
+	public synchronized boolean revisit(UrlKey url, long fetchTime, long digest) {
+		if (!contains(digest)) {
+			return false;
+		}
+		append(header(REVISIT, url, fetchTime, digest), new byte[0]);
+		return true;
+	}
+
+	/**
+	 * Writes the records appended so far to the file
+	 */
+	public synchronized void flush() {
+		if (this.out == null) {
+			return;
+		}
+		try {
+			this.out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Closes the file and frees the deflaters. Records appended later open it
+	 * again.
+	 */
+	@Override
+	public synchronized void close() {
+		synchronized (this.deflaters) {
+			for (Deflater deflater : this.deflaters) {
+				deflater.end();
+			}
+			this.deflaters.clear();
+		}
+		if (this.out == null) {
+			return;
+		}
+		try {
+			this.out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.out = null;
+	}
+
+	/**
+	 * Rewrites the archive without the records that are no longer read: it
+	 * keeps the last record of each url, and the record holding the body
+	 * each of those names. The records stay in order.
+	 *
+	 * @return the number of records dropped
+	 * @throws IOException
+	 *             if the archive could not be rewritten
+	 */
+	public synchronized int compact() throws IOException {
+		close();
+		if (!this.file.exists()) {
+			return 0;
+		}
+		Map<String, Long> latest = new HashMap<String, Long>();
+		Map<String, Long> latestDigests = new HashMap<String, Long>();
+		Map<Long, Long> bodies = new HashMap<Long, Long>();
+		int records = 0;
+		Reader reader = new Reader(this.file);
+		try {
+			while (reader.next()) {
+				records++;
+				Long digest = Long.valueOf(reader.getDigest());
+				if (RESPONSE.equals(reader.getType())
+						&& !bodies.containsKey(digest)) {
+					bodies.put(digest, Long.valueOf(reader.getOffset()));
+				}
+				latest.put(reader.getUrl(), Long.valueOf(reader.getOffset()));
+				latestDigests.put(reader.getUrl(), digest);
+			}
+		} finally {
+			reader.close();
+		}
+
+		Set<Long> live = new HashSet<Long>(latestDigests.values());
+		Set<Long> kept = new HashSet<Long>(latest.values());
+		for (Long digest : live) {
+			Long body = bodies.get(digest);
+			if (body != null) {
+				kept.add(body);
+			}
+		}
+		if (kept.size() == records) {
+			return 0;
+		}
+
+		File compacted = new File(this.file.getPath() + ".compact");
+		FileOutputStream out = new FileOutputStream(compacted);
+		reader = new Reader(this.file);
+		try {
+			FileChannel target = out.getChannel();
+			while (reader.next()) {
+				if (kept.contains(Long.valueOf(reader.getOffset()))) {
+					reader.transferTo(target);
+				}
+			}
+			target.force(false);
+		} finally {
+			reader.close();
+			out.close();
+		}
+		Files.move(compacted.toPath(), this.file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		this.digests.retainAll(live);
+		return records - kept.size();
+	}
+
+	private void append(StringBuilder header, byte[] body) {
+		header(header, "Content-Length", String.valueOf(body.length));
+		header.append("\r\n");
+		try {
+			if (this.out == null) {
+				File dir = this.file.getAbsoluteFile().getParentFile();
+				if (dir != null) {
+					dir.mkdirs();
+				}
+				this.out = new BufferedOutputStream(new FileOutputStream(
+						this.file, true), 64 * 1024);
+			}
+			this.out.write(header.toString().getBytes(UTF8));
+			this.out.write(body);
+			this.out.write(new byte[] { '\r', '\n', '\r', '\n' });
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static StringBuilder header(String type, UrlKey url,
+			long fetchTime, long digest) {
+		StringBuilder header = new StringBuilder(256);
+		header.append("WARC/1.0\r\n");
+		header(header, "WARC-Type", type);
+		header(header, "WARC-Target-URI", url.toString());
+		header(header, "WARC-Date", Instant.ofEpochMilli(fetchTime).toString());
+		header(header, "WARC-Payload-Digest", "fnv64:" + toHex(digest));
+		return header;
+	}
+
+	private static void header(StringBuilder header, String name, String value) {
+		if (value != null) {
+			header.append(name).append(": ").append(value).append("\r\n");
+		}
+	}
+
+	private byte[] deflate(byte[] content) {
+		Deflater deflater;
+		synchronized (this.deflaters) {
+			deflater = this.deflaters.poll();
+		}
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		try {
+			return deflate(deflater, content);
+		} finally {
+			deflater.reset();
+			boolean pooled;
+			synchronized (this.deflaters) {
+				pooled = this.deflaters.size() < MAX_POOLED_DEFLATERS
+						&& this.deflaters.offer(deflater);
+			}
+			if (!pooled) {
+				deflater.end();
+			}
+		}
+	}
+
+	private static byte[] deflate(Deflater deflater, byte[] content) {
+		deflater.setInput(content);
+		deflater.finish();
+		byte[] buffer = new byte[Math.max(64, content.length / 2)];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == buffer.length) {
+				byte[] bigger = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, bigger, 0, length);
+				buffer = bigger;
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		byte[] compressed = new byte[length];
+		System.arraycopy(buffer, 0, compressed, 0, length);
+		return compressed;
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String toHex(long digest) {
+		String hex = Long.toHexString(digest);
+		while (hex.length() < 16) {
+			hex = "0" + hex;
+		}
+		return hex;
+	}
+
+	/**
+	 * Receives the pages read from an archive
+	 */
+	public interface PageHandler {
+
+		/**
+		 * @param url
+		 *            the page
+		 * @param content
+		 *            its body
+		 * @return false to stop reading
+		 */
+		boolean handlePage(String url, byte[] content);
+	}
+
+	/**
+	 * Reads the current content of some pages from an archive. The records
+	 * are first scanned without reading the bodies to find the last one of
+	 * each page, then the bodies are read in the order they are in the file.
+	 *
+	 * @param path
+	 *            the file of the archive
+	 * @param urls
+	 *            the pages to read
+	 * @param handler
+	 *            receives each page found in the archive
+	 * @return the pages read, which are all found unless the handler stopped
+	 * @throws IOException
+	 */
+	public static Set<String> readPages(String path, Collection<String> urls,
+			PageHandler handler) throws IOException {
+		Set<String> read = new HashSet<String>();
+		File file = new File(path);
+		if (!file.exists()) {
+			return read;
+		}
+		Set<String> wanted = new HashSet<String>(urls);
+		Map<String, Long> latest = new LinkedHashMap<String, Long>();
+		Map<Long, Long> bodies = new HashMap<Long, Long>();
+		Reader reader = new Reader(file);
+		try {
+			while (reader.next()) {
+				Long digest = Long.valueOf(reader.getDigest());
+				if (RESPONSE.equals(reader.getType())
+						&& !bodies.containsKey(digest)) {
+					bodies.put(digest, Long.valueOf(reader.getOffset()));
+				}
+				if (wanted.contains(reader.getUrl())) {
+					latest.put(reader.getUrl(), digest);
+				}
+			}
+
+			List<Map.Entry<String, Long>> pages = new ArrayList<Map.Entry<String, Long>>();
+			final Map<String, Long> offsets = new HashMap<String, Long>();
+			for (Map.Entry<String, Long> page : latest.entrySet()) {
+				Long offset = bodies.get(page.getValue());
+				if (offset != null) {
+					pages.add(page);
+					offsets.put(page.getKey(), offset);
+				}
+			}
+			Collections.sort(pages, new Comparator<Map.Entry<String, Long>>() {
+				@Override
+				public int compare(Map.Entry<String, Long> a,
+						Map.Entry<String, Long> b) {
+					return offsets.get(a.getKey()).compareTo(
+							offsets.get(b.getKey()));
+				}
+			});
+			for (Map.Entry<String, Long> page : pages) {
+				reader.seek(offsets.get(page.getKey()).longValue());
+				if (!reader.next()) {
+					continue;
+				}
+				byte[] content = reader.getBody();
+				read.add(page.getKey());
+				if (!handler.handlePage(page.getKey(), content)) {
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return read;
+	}
+
+	/**
+	 * Reads the records of an archive in order through a memory mapped
+	 * window of the file. Bodies are only inflated when asked for.
+	 */
+	public static class Reader implements Closeable {
+
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private final long size;
+
+		/**
+		 * The mapped part of the file, and where it starts
+		 */
+		private MappedByteBuffer window;
+		private long windowStart;
+
+		private final Inflater inflater = new Inflater();
+
+		/**
+		 * Start of the next record
+		 */
+		private long position = 0;
+
+		/**
+		 * End of the last complete record read
+		 */
+		private long end = 0;
+
+		/**
+		 * The current record
+		 */
+		private long offset;
+		private final Map<String, String> headers = new HashMap<String, String>();
+		private long bodyStart;
+		private int bodyLength;
+
+		/**
+		 * @param file
+		 *            the file of the archive
+		 * @throws IOException
+		 */
+		public Reader(File file) throws IOException {
+			this.raf = new RandomAccessFile(file, "r");
+			this.channel = this.raf.getChannel();
+			this.size = this.channel.size();
+		}
+
+		/**
+		 * Moves to the record starting at an offset
+		 *
+		 * @param offset
+		 *            the offset of a record, from getOffset
+		 */
+		public void seek(long offset) {
+			this.position = offset;
+		}
+
+		/**
+		 * Reads the header of the next record
+		 *
+		 * @return false at the end of the archive or at a torn record
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException {
+			if (this.position >= this.size) {
+				return false;
+			}
+			int available = (int) Math.min(MAX_HEADER_LENGTH, this.size
+					- this.position);
+			map(this.position, available);
+			int start = (int) (this.position - this.windowStart);
+			int headerEnd = -1;
+			for (int i = start; i + 3 < start + available; i++) {
+				if (this.window.get(i) == '\r' && this.window.get(i + 1) == '\n'
+						&& this.window.get(i + 2) == '\r'
+						&& this.window.get(i + 3) == '\n') {
+					headerEnd = i;
+					break;
+				}
+			}
+			if (headerEnd == -1) {
+				return false;
+			}
+			byte[] header = new byte[headerEnd - start];
+			for (int i = 0; i < header.length; i++) {
+				header[i] = this.window.get(start + i);
+			}
+			this.headers.clear();
+			String[] lines = new String(header, UTF8).split("\r\n");
+			if (lines.length == 0 || !lines[0].startsWith("WARC/")) {
+				return false;
+			}
+			for (int i = 1; i < lines.length; i++) {
+				int colon = lines[i].indexOf(':');
+				if (colon > 0) {
+					this.headers.put(lines[i].substring(0, colon),
+							lines[i].substring(colon + 1).trim());
+				}
+			}
+			try {
+				this.bodyLength = Integer.parseInt(this.headers.get("Content-Length"));
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			this.offset = this.position;
+			this.bodyStart = this.windowStart + headerEnd + 4;
+			long recordEnd = this.bodyStart + this.bodyLength + 4;
+			if (recordEnd > this.size || getDigestHeader() == null) {
+				return false;
+			}
+			this.position = recordEnd;
+			this.end = recordEnd;
+			return true;
+		}
+
+		/**
+		 * Copies the current record as it is in the file
+		 *
+		 * @param target
+		 *            the channel to append it to
+		 * @throws IOException
+		 */
+		public void transferTo(FileChannel target) throws IOException {
+			long start = this.offset;
+			while (start < this.end) {
+				start += this.channel.transferTo(start, this.end - start, target);
+			}
+		}
+
+		/**
+		 * @return the offset of the current record
+		 */
+		public long getOffset() {
+			return this.offset;
+		}
+
+		/**
+		 * @return the end of the last complete record read
+		 */
+		public long getEnd() {
+			return this.end;
+		}
+
+		/**
+		 * @return the type of the current record, "response" or "revisit"
+		 */
+		public String getType() {
+			return this.headers.get("WARC-Type");
+		}
+
+		/**
+		 * @return the url of the current record
+		 */
+		public String getUrl() {
+			return this.headers.get("WARC-Target-URI");
+		}
+
+		/**
+		 * @param name
+		 *            a header name
+		 * @return a header of the current record, or null
+		 */
+		public String getHeader(String name) {
+			return this.headers.get(name);
+		}
+
+		/**
+		 * @return the content hash of the body of the current record
+		 */
+		public long getDigest() {
+			String digest = getDigestHeader();
+			return (digest == null) ? 0 : Long.parseUnsignedLong(digest, 16);
+		}
+
+		private String getDigestHeader() {
+			String digest = this.headers.get("WARC-Payload-Digest");
+			if (digest == null || !digest.startsWith("fnv64:")) {
+				return null;
+			}
+			return digest.substring(6);
+		}
+
+		/**
+		 * @return the inflated body of the current record, empty for a
+		 *         revisit
+		 * @throws IOException
+		 */
+		public byte[] getBody() throws IOException {
+			if (this.bodyLength == 0) {
+				return new byte[0];
+			}
+			map(this.bodyStart, this.bodyLength);
+			byte[] compressed = new byte[this.bodyLength];
+			this.window.position((int) (this.bodyStart - this.windowStart));
+			this.window.get(compressed);
+			int length;
+			try {
+				length = Integer.parseInt(this.headers.get("Uncompressed-Length"));
+			} catch (NumberFormatException e) {
+				throw new IOException("no length in record at " + this.offset);
+			}
+			byte[] content = new byte[length];
+			this.inflater.reset();
+			this.inflater.setInput(compressed);
+			try {
+				int n = 0;
+				while (n < length && !this.inflater.finished()) {
+					int inflated = this.inflater.inflate(content, n, length - n);
+					if (inflated == 0 && this.inflater.needsInput()) {
+						break;
+					}
+					n += inflated;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("corrupt record at " + this.offset, e);
+			}
+			return content;
+		}
+
+		/**
+		 * Maps a window of the file holding a range, if the current one does
+		 * not
+		 */
+		private void map(long start, int length) throws IOException {
+			if (this.window != null && start >= this.windowStart
+					&& start + length <= this.windowStart + this.window.capacity()) {
+				return;
+			}
+			long mapped = Math.min(this.size - start, Math.max(length,
+					MAP_WINDOW));
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY,
+					start, mapped);
+			this.windowStart = start;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.inflater.end();
+			this.raf.close();
+		}
+	}
+}
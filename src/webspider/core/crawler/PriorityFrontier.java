@@ -0,0 +1,149 @@
+package webspider.core.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue of urls waiting to be crawled, ordered by priority. Each priority
+ * level is a Frontier of its own, so the levels keep their urls in the order
+ * they were added in and spill to disk the same way. A url is taken from the
+ * most urgent level that is not empty, level 0 first.
+ */
+public class PriorityFrontier {
+
+	/**
+	 * The frontier of each level, most urgent first
+	 */
+	private final List<Frontier> levels;
+
+	/**
+	 * Creates a frontier whose levels spill to files starting with the given
+	 * prefix followed by their level
+	 *
+	 * @param segmentPrefix
+	 *            path and file name prefix of the segment files
+	 * @param headCapacity
+	 *            maximum number of urls to hold in memory, shared by the
+	 *            levels
+	 * @param segmentSize
+	 *            size of each segment file in bytes
+	 * @param levelCount
+	 *            number of priority levels
+	 */
+	public PriorityFrontier(String segmentPrefix, int headCapacity,
+			int segmentSize, int levelCount) {
+		levelCount = Math.max(1, levelCount);
+		this.levels = new ArrayList<Frontier>(levelCount);
+		for (int i = 0; i < levelCount; i++) {
+			this.levels.add(new Frontier(segmentPrefix + "_p" + i + "_",
+					Math.max(1, headCapacity / levelCount), segmentSize));
+		}
+	}
+
+	/**
+	 * @return the number of priority levels
+	 */
+	public int getLevelCount() {
+		return this.levels.size();
+	}
+
+	/**
+	 * Adds a url at the most urgent level
+	 *
+	 * @param url
+	 *            the url to add
+	 */
+	public void add(UrlKey url) {
+		add(url, 0);
+	}
+
+	/**
+	 * Adds a url to the end of a level
+	 *
+	 * @param url
+	 *            the url to add
+	 * @param priority
+	 *            its level, 0 for the most urgent; levels beyond the last are
+	 *            the last
+	 */
+	public void add(UrlKey url, int priority) {
+		int level = Math.max(0, Math.min(this.levels.size() - 1, priority));
+		this.levels.get(level).add(url);
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Takes the url at the front of the most urgent level that is not empty,
+	 * waiting for one to be added if all are empty
+	 *
+	 * @param timeout
+	 *            how long to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return the url, or null if none was added in time
+	 * @throws InterruptedException
+	 */
+	public synchronized UrlKey poll(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (true) {
+			for (Frontier level : this.levels) {
+				UrlKey url = level.poll(0, TimeUnit.MILLISECONDS);
+				if (url != null) {
+					return url;
+				}
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return null;
+			}
+			wait(remaining);
+		}
+	}
+
+	/**
+	 * @return is every level empty?
+	 */
+	public boolean isEmpty() {
+		for (Frontier level : this.levels) {
+			if (!level.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of urls in the queue
+	 */
+	public int size() {
+		int size = 0;
+		for (Frontier level : this.levels) {
+			size += level.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of urls waiting in segment files
+	 */
+	public int spilledSize() {
+		int size = 0;
+		for (Frontier level : this.levels) {
+			size += level.spilledSize();
+		}
+		return size;
+	}
+
+	/**
+	 * Empties the queue and removes its segment files
+	 */
+	public void clear() {
+		for (Frontier level : this.levels) {
+			level.clear();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package webspider.core.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import webspider.Settings;
+
+/**
+ * Holds the compiled robots.txt rules of every host, shared by the crawler
+ * and the indexer. A host's robots.txt is fetched the first time one of its
+ * urls is checked and again once its entry is older than
+ * Settings.ROBOTS_TXT_TTL. Hosts without a robots.txt, answering with a 4xx
+ * status, allow everything. Hosts whose robots.txt fails with a 5xx status or
+ * a network error allow nothing, until it is fetched again after the shorter
+ * Settings.ROBOTS_TXT_RETRY_TTL, so a passing failure neither lifts the
+ * rules for long nor stops the crawl of the host.
+ */
+public class RobotsCache {
+
+	/**
+	 * The shared cache, created on first use
+	 */
+	private static RobotsCache shared;
+
+	/**
+	 * Entries by scheme, host and port
+	 */
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Fetches robots.txt
+	 */
+	private final PageFetcher fetcher;
+
+	/**
+	 * How long an entry is used before robots.txt is fetched again, in
+	 * milliseconds
+	 */
+	private final long ttl;
+
+	/**
+	 * How long the entry of a robots.txt that could not be read is used, in
+	 * milliseconds
+	 */
+	private final long retryTtl;
+
+	/**
+	 * @param fetcher
+	 *            fetches robots.txt
+	 * @param ttl
+	 *            how long an entry is used, in milliseconds
+	 * @param retryTtl
+	 *            how long the entry of a robots.txt that could not be read is
+	 *            used, in milliseconds
+	 */
+	public RobotsCache(PageFetcher fetcher, long ttl, long retryTtl) {
+		this.fetcher = fetcher;
+		this.ttl = ttl;
+		this.retryTtl = retryTtl;
+	}
+
+	/**
+	 * Gets the cache shared by the crawler and the indexer
+	 *
+	 * @return the shared cache
+	 */
+	public static synchronized RobotsCache getShared() {
+		if (shared == null) {
+			shared = new RobotsCache(Fetchers.getShared(),
+					Settings.ROBOTS_TXT_TTL, Settings.ROBOTS_TXT_RETRY_TTL);
+		}
+		return shared;
+	}
+
+	/**
+	 * Gets the rules for the host of a url, fetching its robots.txt if there
+	 * is no fresh entry
+	 *
+	 * @param url
+	 *            a url of the host
+	 * @return the rules of the host
+	 */
+	public RobotRules getRules(UrlKey url) {
+		String origin = url.getOrigin();
+		Entry entry = this.entries.get(origin);
+		if (entry == null) {
+			Entry created = new Entry();
+			entry = this.entries.putIfAbsent(origin, created);
+			if (entry == null) {
+				entry = created;
+			}
+		}
+		return entry.getRules(origin);
+	}
+
+	/**
+	 * Gets the rules for the host of a url
+	 *
+	 * @param url
+	 *            a url of the host
+	 * @return the rules of the host
+	 */
+	public RobotRules getRules(URL url) {
+		return getRules(new UrlKey(url));
+	}
+
+	/**
+	 * @param url
+	 *            a url of the host
+	 * @return are fresh rules held for the host?
+	 */
+	public boolean isCached(UrlKey url) {
+		Entry entry = this.entries.get(url.getOrigin());
+		return entry != null && entry.isFresh();
+	}
+
+	/**
+	 * Fetches and compiles the robots.txt of a host
+	 */
+	private RobotRules load(String origin) {
+		URL robotsURL;
+		URL base;
+		try {
+			// the default site keeps its robots.txt next to its pages
+			URL defaultURL = new URL(Settings.DEFAULT_URL);
+			if (origin.equals(new UrlKey(defaultURL).getOrigin())) {
+				robotsURL = new URL(Settings.DEFAULT_ROBOTS_TXT_URL);
+				base = defaultURL;
+			} else {
+				robotsURL = new URL(origin + "/robots.txt");
+				base = new URL(origin + "/");
+			}
+		} catch (MalformedURLException e) {
+			return RobotRules.ALLOW_ALL;
+		}
+		try {
+			FetchResponse response = this.fetcher.fetch(robotsURL);
+			try {
+				if (response.getStatusCode() >= 500) {
+					// the server is failing, not the robots.txt missing
+					return RobotRules.DISALLOW_ALL;
+				}
+				if (response.isError()) {
+					return RobotRules.ALLOW_ALL;
+				}
+				return RobotRules.parse(read(response.getBody()), base,
+						CrawlerImpl.USER_AGENT_VALUE);
+			} finally {
+				response.close();
+			}
+		} catch (IOException e) {
+			return RobotRules.DISALLOW_ALL;
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toString("UTF-8");
+	}
+
+	/**
+	 * The rules of one host and when they were fetched. Loading is
+	 * synchronized on the entry, so a host's robots.txt is fetched once even
+	 * if several threads ask for it, without holding up other hosts.
+	 */
+	private class Entry {
+		private volatile RobotRules rules;
+		private volatile long expires = 0;
+
+		boolean isFresh() {
+			return this.rules != null
+					&& System.currentTimeMillis() < this.expires;
+		}
+
+		RobotRules getRules(String origin) {
+			if (isFresh()) {
+				return this.rules;
+			}
+			synchronized (this) {
+				if (!isFresh()) {
+					this.rules = load(origin);
+					this.expires = System.currentTimeMillis()
+							+ ((this.rules == RobotRules.DISALLOW_ALL) ? RobotsCache.this.retryTtl
+									: RobotsCache.this.ttl);
+				}
+				return this.rules;
+			}
+		}
+	}
+}
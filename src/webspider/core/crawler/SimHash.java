@@ -0,0 +1,101 @@
+package webspider.core.crawler;
+
+/**
+ * Computes a 64 bit SimHash of the words of a page. Every word votes on each
+ * bit of the fingerprint with the matching bit of its own hash, so pages that
+ * share most of their words get fingerprints that differ in only a few bits.
+ * Words are read incrementally, as the parser hands out text.
+ */
+public class SimHash {
+
+	/**
+	 * Votes for each bit of the fingerprint
+	 */
+	private final int[] votes = new int[64];
+
+	/**
+	 * Number of words read
+	 */
+	private int words = 0;
+
+	/**
+	 * The word being read
+	 */
+	private final StringBuilder word = new StringBuilder();
+
+	/**
+	 * Reads a piece of text. A word may continue in the next piece.
+	 *
+	 * @param text
+	 *            the characters of the text
+	 * @param offset
+	 *            start of the text
+	 * @param length
+	 *            number of characters
+	 */
+	public void addText(char[] text, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			char c = text[i];
+			if (Character.isLetterOrDigit(c)) {
+				this.word.append(Character.toLowerCase(c));
+			} else {
+				endWord();
+			}
+		}
+	}
+
+	/**
+	 * Ends the word being read, as at a tag boundary
+	 */
+	public void endWord() {
+		if (this.word.length() > 0) {
+			addWord(UrlKey.fingerprint(this.word));
+			this.word.setLength(0);
+		}
+	}
+
+	/**
+	 * Adds the hash of a word
+	 *
+	 * @param hash
+	 *            the 64 bit hash of the word
+	 */
+	public void addWord(long hash) {
+		for (int bit = 0; bit < 64; bit++) {
+			this.votes[bit] += ((hash >>> bit) & 1) != 0 ? 1 : -1;
+		}
+		this.words++;
+	}
+
+	/**
+	 * @return the number of words read
+	 */
+	public int getWordCount() {
+		return this.words;
+	}
+
+	/**
+	 * @return the fingerprint of the words read so far
+	 */
+	public long getFingerprint() {
+		endWord();
+		long fingerprint = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			if (this.votes[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @param a
+	 *            a fingerprint
+	 * @param b
+	 *            another fingerprint
+	 * @return the number of bits the fingerprints differ in
+	 */
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+}
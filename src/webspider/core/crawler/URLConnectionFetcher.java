@@ -0,0 +1,95 @@
+package webspider.core.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fetches pages with a new java.net.URLConnection each time
+ */
+public class URLConnectionFetcher implements PageFetcher {
+
+	/**
+	 * Headers sent with every request
+	 */
+	private final Map<String, String> requestProperties;
+
+	/**
+	 * Number of pages fetched
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * @param requestProperties
+	 *            headers to send with every request
+	 */
+	public URLConnectionFetcher(Map<String, String> requestProperties) {
+		this.requestProperties = requestProperties;
+	}
+
+	@Override
+	public FetchResponse fetch(URL url) throws IOException {
+		return fetch(url, null);
+	}
+
+	@Override
+	public FetchResponse fetch(URL url, Map<String, String> extraHeaders)
+			throws IOException {
+		URLConnection connection = url.openConnection();
+		for (String key : this.requestProperties.keySet()) {
+			connection.setRequestProperty(key, this.requestProperties.get(key));
+		}
+		if (extraHeaders != null) {
+			for (String key : extraHeaders.keySet()) {
+				connection.setRequestProperty(key, extraHeaders.get(key));
+			}
+		}
+		this.requests.incrementAndGet();
+		int status = 200;
+		InputStream body;
+		if (connection instanceof HttpURLConnection) {
+			status = ((HttpURLConnection) connection).getResponseCode();
+		}
+		if (status >= 400) {
+			body = ((HttpURLConnection) connection).getErrorStream();
+		} else {
+			body = connection.getInputStream();
+		}
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> header : connection
+				.getHeaderFields().entrySet()) {
+			if (header.getKey() != null) {
+				headers.put(header.getKey().toLowerCase(), header.getValue());
+			}
+		}
+		return new FetchResponse(url, status, headers, body, "HTTP/1.1", null);
+	}
+
+	@Override
+	public CompletableFuture<FetchResponse> fetchAsync(final URL url) {
+		return CompletableFuture.supplyAsync(new Supplier<FetchResponse>() {
+			@Override
+			public FetchResponse get() {
+				try {
+					return fetch(url);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public String getStats() {
+		return "Fetches : " + this.requests.get() + " (new connection each)";
+	}
+}
@@ -0,0 +1,289 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import webspider.Settings;
+
+/**
+ * Rewrites urls into a canonical form, so different spellings of the same
+ * page are recognized as one url before it is checked against the urls seen.
+ * On top of what UrlKey already does (lower casing the scheme and host and
+ * dropping the fragment) the canonicalizer
+ * <ul>
+ * <li>removes a trailing dot from the host and the default port of http and
+ * https,</li>
+ * <li>resolves "." and ".." segments in the path,</li>
+ * <li>decodes percent-encoded unreserved characters, upper cases the hex
+ * digits of the others and percent-encodes spaces and non ASCII
+ * characters,</li>
+ * <li>drops query and path parameters such as session ids and tracking
+ * parameters, and</li>
+ * <li>optionally sorts the query parameters.</li>
+ * </ul>
+ */
+public class UrlCanonicalizer {
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Sort the query parameters?
+	 */
+	private final boolean sortQuery;
+
+	/**
+	 * Names of the parameters to drop, lower cased
+	 */
+	private final Set<String> droppedParameters;
+
+	/**
+	 * @param sortQuery
+	 *            sort the query parameters?
+	 * @param droppedParameters
+	 *            names of the query and path parameters to drop, in any case
+	 */
+	public UrlCanonicalizer(boolean sortQuery,
+			Collection<String> droppedParameters) {
+		this.sortQuery = sortQuery;
+		Set<String> dropped = new HashSet<String>();
+		for (String name : droppedParameters) {
+			dropped.add(name.toLowerCase());
+		}
+		this.droppedParameters = Collections.unmodifiableSet(dropped);
+	}
+
+	/**
+	 * Creates a canonicalizer configured by Settings.CANONICAL_SORT_QUERY and
+	 * Settings.CANONICAL_DROPPED_PARAMETERS
+	 *
+	 * @return the canonicalizer
+	 */
+	public static UrlCanonicalizer fromSettings() {
+		return new UrlCanonicalizer(Settings.CANONICAL_SORT_QUERY,
+				Arrays.asList(Settings.CANONICAL_DROPPED_PARAMETERS));
+	}
+
+	/**
+	 * Rewrites a url into its canonical form
+	 *
+	 * @param url
+	 *            the url
+	 * @return the canonical url, which is the same object if nothing changed
+	 */
+	public UrlKey canonicalize(UrlKey url) {
+		String file = url.getFile();
+		int q = file.indexOf('?');
+		String path = (q == -1) ? file : file.substring(0, q);
+		String query = (q == -1) ? null : file.substring(q + 1);
+
+		StringBuilder canonical = new StringBuilder(url.toString().length());
+		canonical.append(canonicalOrigin(url));
+		String canonicalPath = normalizeEncoding(removeDotSegments(dropPathParameters(path)));
+		canonical.append(canonicalPath.length() == 0 ? "/" : canonicalPath);
+		String canonicalQuery = (query == null) ? null
+				: canonicalQuery(query);
+		if (canonicalQuery != null && canonicalQuery.length() > 0) {
+			canonical.append('?').append(canonicalQuery);
+		}
+
+		if (canonical.toString().equals(url.toString())) {
+			return url;
+		}
+		try {
+			return new UrlKey(canonical.toString());
+		} catch (MalformedURLException e) {
+			return url;
+		}
+	}
+
+	/**
+	 * The scheme, host and port without a trailing dot or default port
+	 */
+	private static String canonicalOrigin(UrlKey url) {
+		String origin = url.getOrigin();
+		int hostStart = origin.indexOf("://") + 3;
+		String scheme = origin.substring(0, hostStart - 3);
+		String authority = origin.substring(hostStart);
+		String port = null;
+		int colon = authority.lastIndexOf(':');
+		if (colon != -1 && authority.indexOf(']') < colon) {
+			port = authority.substring(colon + 1);
+			authority = authority.substring(0, colon);
+		}
+		if (authority.endsWith(".")) {
+			authority = authority.substring(0, authority.length() - 1);
+		}
+		if (("http".equals(scheme) && "80".equals(port))
+				|| ("https".equals(scheme) && "443".equals(port))) {
+			port = null;
+		}
+		return scheme + "://" + authority + ((port == null) ? "" : ":" + port);
+	}
+
+	/**
+	 * Removes dropped parameters from the ";name=value" parameters of the
+	 * path segments
+	 */
+	private String dropPathParameters(String path) {
+		if (path.indexOf(';') == -1) {
+			return path;
+		}
+		StringBuilder result = new StringBuilder(path.length());
+		int start = 0;
+		while (start <= path.length()) {
+			int end = path.indexOf('/', start);
+			if (end == -1) {
+				end = path.length();
+			}
+			String[] parts = path.substring(start, end).split(";", -1);
+			result.append(parts[0]);
+			for (int i = 1; i < parts.length; i++) {
+				if (!isDropped(parts[i])) {
+					result.append(';').append(parts[i]);
+				}
+			}
+			if (end < path.length()) {
+				result.append('/');
+			}
+			start = end + 1;
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Resolves "." and ".." segments, as in section 5.2.4 of RFC 3986
+	 */
+	static String removeDotSegments(String path) {
+		if (path.indexOf("/.") == -1 && !path.startsWith(".")) {
+			return path;
+		}
+		List<String> segments = new ArrayList<String>();
+		String[] parts = path.split("/", -1);
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i];
+			boolean last = i == parts.length - 1;
+			if (part.equals(".")) {
+				if (last) {
+					segments.add("");
+				}
+			} else if (part.equals("..")) {
+				if (segments.size() > 1) {
+					segments.remove(segments.size() - 1);
+				}
+				if (last) {
+					segments.add("");
+				}
+			} else {
+				segments.add(part);
+			}
+		}
+		StringBuilder result = new StringBuilder(path.length());
+		for (int i = 0; i < segments.size(); i++) {
+			if (i > 0) {
+				result.append('/');
+			}
+			result.append(segments.get(i));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Drops parameters and sorts the rest if configured
+	 */
+	private String canonicalQuery(String query) {
+		List<String> parameters = new ArrayList<String>();
+		for (String parameter : query.split("&")) {
+			if (parameter.length() > 0 && !isDropped(parameter)) {
+				parameters.add(normalizeEncoding(parameter));
+			}
+		}
+		if (this.sortQuery) {
+			Collections.sort(parameters);
+		}
+		StringBuilder result = new StringBuilder(query.length());
+		for (String parameter : parameters) {
+			if (result.length() > 0) {
+				result.append('&');
+			}
+			result.append(parameter);
+		}
+		return result.toString();
+	}
+
+	private boolean isDropped(String parameter) {
+		int equals = parameter.indexOf('=');
+		String name = (equals == -1) ? parameter : parameter.substring(0,
+				equals);
+		return this.droppedParameters.contains(name.toLowerCase());
+	}
+
+	/**
+	 * Decodes percent-encoded unreserved characters, upper cases the hex
+	 * digits of other escapes and encodes spaces, controls and non ASCII
+	 * characters as UTF-8
+	 */
+	static String normalizeEncoding(String s) {
+		StringBuilder result = null;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			String replacement = null;
+			if (c == '%' && i + 2 < s.length() && isHex(s.charAt(i + 1))
+					&& isHex(s.charAt(i + 2))) {
+				int value = Character.digit(s.charAt(i + 1), 16) * 16
+						+ Character.digit(s.charAt(i + 2), 16);
+				if (isUnreserved((char) value)) {
+					replacement = String.valueOf((char) value);
+				} else {
+					replacement = "%" + HEX[value >> 4] + HEX[value & 15];
+				}
+				if (result == null) {
+					result = new StringBuilder(s.length()).append(s, 0, i);
+				}
+				result.append(replacement);
+				i += 2;
+				continue;
+			}
+			if (c <= ' ' || c >= 0x7f) {
+				if (result == null) {
+					result = new StringBuilder(s.length()).append(s, 0, i);
+				}
+				int end = i + 1;
+				if (Character.isHighSurrogate(c) && end < s.length()) {
+					end++;
+				}
+				appendEncoded(result, s.substring(i, end));
+				i = end - 1;
+				continue;
+			}
+			if (result != null) {
+				result.append(c);
+			}
+		}
+		return (result == null) ? s : result.toString();
+	}
+
+	private static void appendEncoded(StringBuilder result, String s) {
+		for (byte b : s.getBytes(UTF8)) {
+			result.append('%').append(HEX[(b >> 4) & 15]).append(HEX[b & 15]);
+		}
+	}
+
+	private static boolean isHex(char c) {
+		return Character.digit(c, 16) != -1 && c < 0x80;
+	}
+
+	private static boolean isUnreserved(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+				|| c == '~';
+	}
+}
@@ -0,0 +1,187 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * An immutable, normalized url used to identify pages during a crawl. Unlike
+ * java.net.URL, equality and hashing only look at the normalized string and
+ * a precomputed 64 bit fingerprint, so they never resolve host names.
+ */
+public final class UrlKey {
+
+	/**
+	 * FNV-1a 64 bit offset basis
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	/**
+	 * FNV-1a 64 bit prime
+	 */
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * The normalized url
+	 */
+	private final String url;
+
+	/**
+	 * Start of the host in the normalized url
+	 */
+	private final int hostStart;
+
+	/**
+	 * End of the host (and port) in the normalized url
+	 */
+	private final int hostEnd;
+
+	/**
+	 * 64 bit fingerprint of the normalized url
+	 */
+	private final long fingerprint;
+
+	/**
+	 * Creates a key for a url. The scheme and host are lower cased, the
+	 * fragment is dropped and an empty path becomes "/".
+	 *
+	 * @param url
+	 *            the url to identify
+	 */
+	public UrlKey(URL url) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(url.getProtocol().toLowerCase()).append("://");
+		int start = builder.length();
+		builder.append(url.getHost().toLowerCase());
+		if (url.getPort() != -1) {
+			builder.append(':').append(url.getPort());
+		}
+		int end = builder.length();
+		String file = url.getFile();
+		builder.append(file.length() == 0 ? "/" : file);
+		this.url = builder.toString();
+		this.hostStart = start;
+		this.hostEnd = end;
+		this.fingerprint = fingerprint(this.url);
+	}
+
+	/**
+	 * Creates a key for a url given as a string
+	 *
+	 * @param url
+	 *            the url to identify
+	 * @throws MalformedURLException
+	 */
+	public UrlKey(String url) throws MalformedURLException {
+		this(new URL(url));
+	}
+
+	/**
+	 * Resolves a possibly relative link against this url
+	 *
+	 * @param link
+	 *            the link to resolve
+	 * @return the key of the resolved link
+	 * @throws MalformedURLException
+	 */
+	public UrlKey resolve(String link) throws MalformedURLException {
+		return new UrlKey(new URL(toURL(), link));
+	}
+
+	/**
+	 * Computes the FNV-1a fingerprint of a string
+	 *
+	 * @param s
+	 *            the string to hash
+	 * @return the 64 bit fingerprint
+	 */
+	public static long fingerprint(CharSequence s) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			hash ^= (c & 0xff);
+			hash *= FNV_PRIME;
+			hash ^= (c >>> 8);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the 64 bit fingerprint of the normalized url
+	 */
+	public long getFingerprint() {
+		return this.fingerprint;
+	}
+
+	/**
+	 * @return the lower cased host, without the port
+	 */
+	public String getHost() {
+		String host = this.url.substring(this.hostStart, this.hostEnd);
+		int colon = host.lastIndexOf(':');
+		if (colon != -1 && host.indexOf(']') < colon) {
+			host = host.substring(0, colon);
+		}
+		return host;
+	}
+
+	/**
+	 * @return the scheme, host and port of the url, such as
+	 *         "http://localhost:8080"
+	 */
+	public String getOrigin() {
+		return this.url.substring(0, this.hostEnd);
+	}
+
+	/**
+	 * @return the path of the url, without the query
+	 */
+	public String getPath() {
+		String file = getFile();
+		int query = file.indexOf('?');
+		return (query == -1) ? file : file.substring(0, query);
+	}
+
+	/**
+	 * @return the path and query of the url
+	 */
+	public String getFile() {
+		return this.url.substring(this.hostEnd);
+	}
+
+	/**
+	 * Converts the key back to a java.net.URL, for opening connections
+	 *
+	 * @return the url
+	 * @throws MalformedURLException
+	 */
+	public URL toURL() throws MalformedURLException {
+		return new URL(this.url);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof UrlKey)) {
+			return false;
+		}
+		UrlKey other = (UrlKey) obj;
+		return this.fingerprint == other.fingerprint
+				&& this.url.equals(other.url);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.fingerprint ^ (this.fingerprint >>> 32));
+	}
+
+	/**
+	 * @return the normalized url
+	 */
+	@Override
+	public String toString() {
+		return this.url;
+	}
+}
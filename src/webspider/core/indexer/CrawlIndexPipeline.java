@@ -0,0 +1,288 @@
+package webspider.core.indexer;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import webspider.core.crawler.CrawlListener;
+import webspider.core.crawler.UrlKey;
+
+/**
+ * Indexes the pages of a crawl as the crawler finds them, instead of reading
+ * the list of local URLs and fetching every page again once the crawl is
+ * over. Pages go from the crawler's fetch workers through a bounded queue to
+ * tokenizer threads, and from those through another bounded queue to one
+ * thread adding the words to the index. A full queue blocks the stage
+ * feeding it, so a slow indexer slows the crawl down instead of filling the
+ * memory.
+ * <p>
+ * Pages the crawler did not download because they had not changed, or
+ * because they were crawled before the crawl was resumed, are indexed from
+ * the page archive once the crawl is complete, and then the index is
+ * written.
+ * <p>
+ * The stages run on daemon threads, and end once they have finished the
+ * pages queued when the crawl stops, so a paused or failed crawl does not
+ * keep the JVM alive. They start again with the crawl.
+ */
+public class CrawlIndexPipeline implements CrawlListener {
+
+	/**
+	 * Marks the end of the pages in a queue
+	 */
+	private static final Page END = new Page(null, null, null);
+
+	/**
+	 * The indexer the words are added to
+	 */
+	private final IndexerImpl indexer;
+
+	/**
+	 * File the index is written to
+	 */
+	private final String outputFileName;
+
+	/**
+	 * Pages waiting to be tokenized, and tokenized pages waiting to be indexed
+	 */
+	private final BlockingQueue<Page> crawled;
+	private final BlockingQueue<Page> tokenized;
+
+	/**
+	 * Pages that were not downloaded, indexed after the crawl
+	 */
+	private final Collection<URL> unchanged = new ArrayList<URL>();
+
+	/**
+	 * Number of threads tokenizing pages
+	 */
+	private final int tokenizerThreads;
+
+	/**
+	 * The threads of the stages, while they run
+	 */
+	private final List<Thread> tokenizers = new ArrayList<Thread>();
+	private Thread indexing;
+
+	/**
+	 * Are the stages running? Pages crawled while they are not are indexed
+	 * after the crawl, as the pages not downloaded are.
+	 */
+	private volatile boolean stagesRunning = false;
+
+	/**
+	 * @param indexer
+	 *            the indexer the words are added to
+	 * @param outputFileName
+	 *            file the index is written to
+	 * @param tokenizerThreads
+	 *            number of threads tokenizing pages
+	 * @param queueSize
+	 *            capacity of each queue between stages
+	 */
+	public CrawlIndexPipeline(IndexerImpl indexer, String outputFileName,
+			int tokenizerThreads, int queueSize) {
+		this.indexer = indexer;
+		this.outputFileName = outputFileName;
+		this.crawled = new ArrayBlockingQueue<Page>(Math.max(1, queueSize));
+		this.tokenized = new ArrayBlockingQueue<Page>(Math.max(1, queueSize));
+		this.tokenizerThreads = Math.max(1, tokenizerThreads);
+	}
+
+	/**
+	 * Starts the tokenizer and index threads
+	 */
+	public void start() {
+		this.indexer.addStopWords();
+		startStages();
+		this.indexer.log("Pipeline started");
+	}
+
+	/**
+	 * Starts the stages again when a paused crawl is started again
+	 */
+	@Override
+	public void crawlStarted() {
+		startStages();
+	}
+
+	/**
+	 * Queues a crawled page for tokenizing, waiting while the queue is full
+	 */
+	@Override
+	public void pageCrawled(UrlKey url, byte[] content) {
+		URL page;
+		try {
+			page = url.toURL();
+		} catch (MalformedURLException e) {
+			return;
+		}
+		if (content == null || !this.stagesRunning) {
+			synchronized (this.unchanged) {
+				this.unchanged.add(page);
+			}
+			return;
+		}
+		put(this.crawled, new Page(page, content, null));
+	}
+
+	/**
+	 * Lets the stages finish the pages queued and end, keeping the pages not
+	 * downloaded for when the crawl completes
+	 */
+	@Override
+	public void crawlStopped() {
+		stopStages();
+		this.indexer.setIndexerRunning(false);
+		this.indexer.log("Pipeline stopped");
+	}
+
+	/**
+	 * Lets the stages finish the pages queued, indexes the pages that were
+	 * not downloaded and writes the index
+	 */
+	@Override
+	public void crawlCompleted() {
+		stopStages();
+		try {
+			synchronized (this.unchanged) {
+				if (!this.unchanged.isEmpty()) {
+					this.indexer.indexPages(this.unchanged);
+				}
+			}
+			this.indexer.log(this.indexer.getTokenizerStats());
+			this.indexer.log("Writing index to outputfile "
+					+ this.outputFileName);
+			this.indexer.writeIndexToFile(this.outputFileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.indexer.setIndexerRunning(false);
+	}
+
+	/**
+	 * Starts the tokenizer and index threads, unless they are running
+	 */
+	private synchronized void startStages() {
+		if (this.stagesRunning) {
+			return;
+		}
+		this.indexer.setIndexerRunning(true);
+		this.tokenizers.clear();
+		for (int i = 0; i < this.tokenizerThreads; i++) {
+			this.tokenizers.add(daemon(new Runnable() {
+				@Override
+				public void run() {
+					tokenize();
+				}
+			}, "webIndexer-tokenizer-" + i));
+		}
+		this.indexing = daemon(new Runnable() {
+			@Override
+			public void run() {
+				index();
+			}
+		}, "webIndexer-index");
+		this.stagesRunning = true;
+	}
+
+	/**
+	 * Puts the end of the pages on both queues, after the pages queued, and
+	 * waits for the stages to finish them
+	 */
+	private synchronized void stopStages() {
+		if (!this.stagesRunning) {
+			return;
+		}
+		this.stagesRunning = false;
+		for (int i = 0; i < this.tokenizers.size(); i++) {
+			put(this.crawled, END);
+		}
+		join(this.tokenizers);
+		put(this.tokenized, END);
+		List<Thread> indexing = new ArrayList<Thread>();
+		indexing.add(this.indexing);
+		join(indexing);
+	}
+
+	private static Thread daemon(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Tokenizes pages until the end of the crawled pages
+	 */
+	private void tokenize() {
+		while (true) {
+			Page page = take(this.crawled);
+			if (page == END) {
+				return;
+			}
+			put(this.tokenized, new Page(page.url, null,
+					this.indexer.terms(page.content)));
+		}
+	}
+
+	/**
+	 * Adds tokenized pages to the index until the end of them
+	 */
+	private void index() {
+		while (true) {
+			Page page = take(this.tokenized);
+			if (page == END) {
+				return;
+			}
+			this.indexer.addToIndex(page.url, page.words);
+		}
+	}
+
+	private static void put(BlockingQueue<Page> queue, Page page) {
+		try {
+			queue.put(page);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static Page take(BlockingQueue<Page> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return END;
+		}
+	}
+
+	private static void join(List<Thread> threads) {
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * A page on its way through the pipeline
+	 */
+	private static class Page {
+		private final URL url;
+		private final byte[] content;
+		private final PageTerms words;
+
+		Page(URL url, byte[] content, PageTerms words) {
+			this.url = url;
+			this.content = content;
+			this.words = words;
+		}
+	}
+}
@@ -0,0 +1,558 @@
+package webspider.core.indexer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An index in the binary .bdmi format, opened by mapping the file into
+ * memory. Opening reads the header only; a lookup binary searches the term
+ * dictionary and decodes the posting list of the term it finds, so an index
+ * is read as it is searched, however large it is.
+ * <p>
+ * Version 3 of the format, numbers big endian:
+ *
+ * <pre>
+ * header      "BDMI" | version | terms | pages (ints) | offsets of the
+ *             dictionary, terms, URL offsets, URLs and lengths |
+ *             terms on all pages (longs)
+ * postings    the posting list of each term, packed blocks then varint tail
+ *             then varint frequencies, then for each block its first ID,
+ *             block offset and frequency offset (ints)
+ * dictionary  for each term in UTF-8 byte order: term offset (long) |
+ *             term length (int) | postings offset (long) | IDs |
+ *             block bytes | tail bytes | last ID | frequency bytes (ints)
+ * terms       the UTF-8 bytes of the terms
+ * URL offsets the offset of each page's URL, and the end of the last (longs)
+ * URLs        the UTF-8 bytes of the URLs
+ * lengths     the number of terms on each page (ints)
+ * </pre>
+ *
+ * Version 1 files, without frequencies, lengths and the fields for them,
+ * are still read, with every frequency 1 and every length unknown, and so
+ * are version 2 files, without the skip data, which is rebuilt for a list
+ * when it is searched.
+ *
+ * An index file is thread safe.
+ */
+public class IndexFile extends TermIndex {
+
+	/**
+	 * "BDMI", which starts every binary index
+	 */
+	static final int MAGIC = 0x42444d49;
+
+	/**
+	 * Version of the format written
+	 */
+	static final int VERSION = 3;
+
+	private static final int HEADER_BYTES = 64;
+	private static final int ENTRY_BYTES = 40;
+
+	/**
+	 * Sizes of the header and dictionary entries of version 1
+	 */
+	private static final int V1_HEADER_BYTES = 48;
+	private static final int V1_ENTRY_BYTES = 36;
+
+	/**
+	 * Bytes mapped by each buffer, as one buffer maps 2GB at most
+	 */
+	private static final long SEGMENT_BYTES = 1L << 30;
+
+	private final FileChannel channel;
+	private final ByteBuffer[] segments;
+
+	private final int version;
+	private final int entryBytes;
+	private final int termCount;
+	private final int pageCount;
+	private final long dictionary;
+	private final long termBytes;
+	private final long urlOffsets;
+	private final long urlBytes;
+	private final long lengths;
+	private final long totalLength;
+
+	private IndexFile(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long size = channel.size();
+		if (size < V1_HEADER_BYTES) {
+			throw new IOException("Not a binary index");
+		}
+		this.segments = new ByteBuffer[(int) ((size + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < this.segments.length; i++) {
+			long start = i * SEGMENT_BYTES;
+			this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					start, Math.min(SEGMENT_BYTES, size - start));
+		}
+		ByteBuffer header = read(0, V1_HEADER_BYTES);
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a binary index");
+		}
+		this.version = header.getInt();
+		if (this.version < 1 || this.version > VERSION) {
+			throw new IOException("Unsupported index version " + this.version);
+		}
+		this.entryBytes = (this.version == 1) ? V1_ENTRY_BYTES : ENTRY_BYTES;
+		this.termCount = header.getInt();
+		this.pageCount = header.getInt();
+		this.dictionary = header.getLong();
+		this.termBytes = header.getLong();
+		this.urlOffsets = header.getLong();
+		this.urlBytes = header.getLong();
+		if (this.version == 1) {
+			this.lengths = -1;
+			this.totalLength = 0;
+		} else {
+			header = read(V1_HEADER_BYTES, HEADER_BYTES - V1_HEADER_BYTES);
+			this.lengths = header.getLong();
+			this.totalLength = header.getLong();
+		}
+	}
+
+	/**
+	 * Opens a binary index
+	 *
+	 * @param file
+	 *            the index file
+	 * @return the index
+	 * @throws IOException
+	 *             if the file could not be mapped or is not a binary index
+	 */
+	public static IndexFile open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			return new IndexFile(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Tells a binary index from one in the text format
+	 *
+	 * @param file
+	 *            the index file
+	 * @return true if the file starts as a binary index
+	 */
+	public static boolean isBinary(File file) {
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				return in.readInt() == MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes an index in the binary format
+	 *
+	 * @param index
+	 *            the index
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public static void write(InvertedIndex index, File file) throws IOException {
+		Writer writer = new Writer(file);
+		try {
+			for (String term : index.terms()) {
+				writer.add(term, index.get(term));
+			}
+			writer.finish(index.getDocuments());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Converts an index in the text format, one term and its URLs a line, to
+	 * the binary format. The text is read a line at a time and each posting
+	 * list written as it is read, so only the terms and URLs are held in
+	 * memory.
+	 *
+	 * @param text
+	 *            the index in the text format
+	 * @param binary
+	 *            the file to write
+	 * @throws IOException
+	 *             if either file could not be used or a URL is malformed
+	 */
+	public static void convert(File text, File binary) throws IOException {
+		DocumentTable documents = new DocumentTable();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(text)));
+		try {
+			Writer writer = new Writer(binary);
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] parts = line.split(" ");
+					writer.add(parts[0], parsePostings(parts, documents));
+				}
+				writer.finish(documents);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Gives IDs to the URLs of a line of an index in the text format
+	 *
+	 * @param parts
+	 *            the line split at spaces, the term first
+	 * @param documents
+	 *            the table to take the IDs from
+	 * @return the IDs of the URLs
+	 * @throws MalformedURLException
+	 *             if a URL is malformed
+	 */
+	static PostingList parsePostings(String[] parts, DocumentTable documents)
+			throws MalformedURLException {
+		int[] docs = new int[parts.length - 1];
+		for (int x = 1; x < parts.length; x++) {
+			// Check the URL is well formed before giving it an ID.
+			new URL(parts[x]);
+			docs[x - 1] = documents.idFor(parts[x]);
+			// the text format keeps no lengths, so a page is as long as the
+			// number of terms it is listed under
+			documents.addLength(docs[x - 1], 1);
+		}
+		Arrays.sort(docs);
+		int length = 0;
+		for (int doc : docs) {
+			if (length == 0 || docs[length - 1] != doc) {
+				docs[length++] = doc;
+			}
+		}
+		return PostingList.of(docs, length);
+	}
+
+	@Override
+	public PostingList get(String term) {
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = this.termCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			ByteBuffer entry = entry(middle);
+			int compare = Arrays.compareUnsigned(term(entry), key);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				long postings = entry.getLong(12);
+				int blockBytes = entry.getInt(24);
+				int tailBytes = entry.getInt(28);
+				int frequencyBytes = (this.version == 1) ? 0 : entry.getInt(36);
+				byte[] blocks = new byte[blockBytes];
+				byte[] tail = new byte[tailBytes];
+				byte[] frequencies = new byte[frequencyBytes];
+				read(postings, blocks, 0, blockBytes);
+				read(postings + blockBytes, tail, 0, tailBytes);
+				read(postings + blockBytes + tailBytes, frequencies, 0,
+						frequencyBytes);
+				int size = entry.getInt(20);
+				ByteBuffer skips = null;
+				if (this.version >= 3) {
+					skips = read(postings + blockBytes + tailBytes
+							+ frequencyBytes, (size / PostingList.BLOCK_SIZE) * 12);
+				}
+				return PostingList.wrap(blocks, tail, frequencies, size,
+						entry.getInt(32), skips);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getUrl(int doc) {
+		if (doc < 0 || doc >= this.pageCount) {
+			throw new IndexOutOfBoundsException("No page " + doc);
+		}
+		ByteBuffer offsets = read(this.urlOffsets + doc * 8L, 16);
+		long start = offsets.getLong();
+		byte[] url = new byte[(int) (offsets.getLong() - start)];
+		read(this.urlBytes + start, url, 0, url.length);
+		return new String(url, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int getLength(int doc) {
+		if (doc < 0 || doc >= this.pageCount) {
+			throw new IndexOutOfBoundsException("No page " + doc);
+		}
+		return (this.lengths < 0) ? 0 : read(this.lengths + doc * 4L, 4)
+				.getInt();
+	}
+
+	@Override
+	public long getTotalLength() {
+		return this.totalLength;
+	}
+
+	@Override
+	public Set<String> terms() {
+		return new AbstractSet<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int next = 0;
+
+					@Override
+					public boolean hasNext() {
+						return this.next < IndexFile.this.termCount;
+					}
+
+					@Override
+					public String next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return new String(term(entry(this.next++)),
+								StandardCharsets.UTF_8);
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object term) {
+				return (term instanceof String) && get((String) term) != null;
+			}
+
+			@Override
+			public int size() {
+				return IndexFile.this.termCount;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.termCount;
+	}
+
+	@Override
+	public int getPageCount() {
+		return this.pageCount;
+	}
+
+	/**
+	 * Closes the file. The mapping goes away once the index is collected.
+	 *
+	 * @throws IOException
+	 *             if the file could not be closed
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private ByteBuffer entry(int i) {
+		return read(this.dictionary + (long) i * this.entryBytes,
+				this.entryBytes);
+	}
+
+	private byte[] term(ByteBuffer entry) {
+		byte[] term = new byte[entry.getInt(8)];
+		read(this.termBytes + entry.getLong(0), term, 0, term.length);
+		return term;
+	}
+
+	private ByteBuffer read(long position, int length) {
+		byte[] bytes = new byte[length];
+		read(position, bytes, 0, length);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Copies bytes out of the mapped segments, across the end of one if need
+	 * be
+	 */
+	private void read(long position, byte[] bytes, int offset, int length) {
+		while (length > 0) {
+			ByteBuffer segment = this.segments[(int) (position / SEGMENT_BYTES)];
+			int index = (int) (position % SEGMENT_BYTES);
+			int count = Math.min(length, segment.limit() - index);
+			segment.get(index, bytes, offset, count);
+			position += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Writes a binary index, the posting lists first as they come and the
+	 * dictionary and URLs at the end
+	 */
+	public static class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final DataOutputStream out;
+
+		/**
+		 * Position in the file the next bytes are written at
+		 */
+		private long position = HEADER_BYTES;
+
+		private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+		/**
+		 * @param file
+		 *            the file to write
+		 * @throws IOException
+		 *             if the file could not be created
+		 */
+		public Writer(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.channel.position(HEADER_BYTES);
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					Channels.newOutputStream(this.channel), 64 * 1024));
+		}
+
+		/**
+		 * Writes the posting list of a term. A term added again replaces the
+		 * list it had.
+		 *
+		 * @param term
+		 *            the term
+		 * @param list
+		 *            the IDs of its pages
+		 * @throws IOException
+		 *             if the list could not be written
+		 */
+		public void add(String term, PostingList list) throws IOException {
+			this.entries.put(term, new Entry(term, this.position, list));
+			list.writeTo(this.out);
+			this.position += list.getEncodedBytes() + list.getSkipBytes();
+		}
+
+		/**
+		 * Writes the dictionary, the URLs of the pages and the header
+		 *
+		 * @param documents
+		 *            the table the IDs of the pages came from
+		 * @throws IOException
+		 *             if the file could not be written
+		 */
+		public void finish(DocumentTable documents) throws IOException {
+			List<Entry> sorted = new ArrayList<Entry>(this.entries.values());
+			Collections.sort(sorted, new Comparator<Entry>() {
+				@Override
+				public int compare(Entry a, Entry b) {
+					return Arrays.compareUnsigned(a.term, b.term);
+				}
+			});
+			long dictionary = this.position;
+			long termOffset = 0;
+			for (Entry entry : sorted) {
+				this.out.writeLong(termOffset);
+				this.out.writeInt(entry.term.length);
+				this.out.writeLong(entry.postings);
+				this.out.writeInt(entry.size);
+				this.out.writeInt(entry.blockBytes);
+				this.out.writeInt(entry.tailBytes);
+				this.out.writeInt(entry.last);
+				this.out.writeInt(entry.frequencyBytes);
+				termOffset += entry.term.length;
+			}
+			long termBytes = dictionary + (long) sorted.size() * ENTRY_BYTES;
+			for (Entry entry : sorted) {
+				this.out.write(entry.term);
+			}
+			long urlOffsets = termBytes + termOffset;
+			int pages = documents.size();
+			long urlOffset = 0;
+			for (int doc = 0; doc < pages; doc++) {
+				this.out.writeLong(urlOffset);
+				urlOffset += documents.getUrl(doc).getBytes(StandardCharsets.UTF_8).length;
+			}
+			this.out.writeLong(urlOffset);
+			long urlBytes = urlOffsets + (pages + 1) * 8L;
+			for (int doc = 0; doc < pages; doc++) {
+				this.out.write(documents.getUrl(doc).getBytes(StandardCharsets.UTF_8));
+			}
+			long lengths = urlBytes + urlOffset;
+			for (int doc = 0; doc < pages; doc++) {
+				this.out.writeInt(documents.getLength(doc));
+			}
+			this.out.flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(sorted.size())
+					.putInt(pages).putLong(dictionary).putLong(termBytes)
+					.putLong(urlOffsets).putLong(urlBytes).putLong(lengths)
+					.putLong(documents.getTotalLength()).flip();
+			long at = 0;
+			while (header.hasRemaining()) {
+				at += this.channel.write(header, at);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+	/**
+	 * Where the posting list of a term was written
+	 */
+	private static class Entry {
+		final byte[] term;
+		final long postings;
+		final int size;
+		final int blockBytes;
+		final int tailBytes;
+		final int last;
+		final int frequencyBytes;
+
+		Entry(String term, long postings, PostingList list) {
+			this.term = term.getBytes(StandardCharsets.UTF_8);
+			this.postings = postings;
+			this.size = list.size();
+			this.blockBytes = list.getBlockBytes();
+			this.frequencyBytes = list.getFrequencyBytes();
+			this.tailBytes = list.getEncodedBytes() - list.getBlockBytes()
+					- this.frequencyBytes;
+			this.last = list.getLast();
+		}
+	}
+}
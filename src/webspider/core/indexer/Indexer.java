@@ -52,6 +52,23 @@ public class Indexer implements myIWSearchEngine{
         this.indexer.startIndexing();
     }
 
+    /**
+     * Crawls a site and indexes each local page as it is crawled, writing the
+     * index once the crawl is complete.
+     * 
+     * @param seed the initial site url to crawl
+     * @param outputFileName output file name
+     */
+    public void crawlAndIndex(String seed, String outputFileName)
+    {
+        this.indexer = new IndexerImpl(actions);
+        CrawlIndexPipeline pipeline = new CrawlIndexPipeline(this.indexer,
+                outputFileName, Settings.PIPELINE_TOKENIZER_THREADS,
+                Settings.PIPELINE_QUEUE_SIZE);
+        pipeline.start();
+        actions.getCrawler().startIWSpider(seed, pipeline);
+    }
+
     /**
      * Calls the startLoadIndex function which loads the index from a file in
      * a new thread.
@@ -101,9 +118,9 @@ public class Indexer implements myIWSearchEngine{
     }
 
     /**
-     * Prints the search results to the screen.
+     * Prints the search results to the screen, numbered by rank.
      * 
-     * @param search Set of URLs containing a keyword
+     * @param search Set of URLs containing a keyword, best ranked first
      */
     private void printSearchResults(Set<URL> search)
     {
@@ -117,9 +134,10 @@ public class Indexer implements myIWSearchEngine{
             log("No search results found");
         }
 
+        int rank = 1;
         while(seIt.hasNext())
         {
-            log(seIt.next().toString());
+            log(rank++ + ". " + seIt.next().toString());
         }
     }
 
@@ -0,0 +1,189 @@
+package webspider.core.indexer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps each term to the pages it is on. Pages are held as IDs from a
+ * document table in a compressed posting list per term, which takes a few
+ * bytes a posting where a set of URLs took tens.
+ * <p>
+ * An inverted index is not thread safe.
+ */
+public class InvertedIndex extends TermIndex {
+
+	private final DocumentTable documents;
+
+	private final Map<String, PostingList> postings = new HashMap<String, PostingList>();
+
+	/**
+	 * @param documents
+	 *            the table the IDs of the pages come from
+	 */
+	public InvertedIndex(DocumentTable documents) {
+		this.documents = documents;
+	}
+
+	/**
+	 * Adds a page to the pages of a term
+	 *
+	 * @param term
+	 *            the term
+	 * @param doc
+	 *            the ID of the page
+	 */
+	public void add(String term, int doc) {
+		add(term, doc, 1);
+	}
+
+	/**
+	 * Adds a page to the pages of a term
+	 *
+	 * @param term
+	 *            the term
+	 * @param doc
+	 *            the ID of the page
+	 * @param frequency
+	 *            how often the term is on the page
+	 */
+	public void add(String term, int doc, int frequency) {
+		PostingList list = this.postings.get(term);
+		if (list == null) {
+			list = new PostingList();
+			this.postings.put(term, list);
+		}
+		list.add(doc, frequency);
+	}
+
+	/**
+	 * Adds the terms of a page, each found once
+	 *
+	 * @param doc
+	 *            the ID of the page
+	 * @param terms
+	 *            the terms on the page
+	 */
+	public void add(int doc, String[] terms) {
+		add(doc, new PageTerms(terms));
+	}
+
+	/**
+	 * Adds the terms of a page and sets its length
+	 *
+	 * @param doc
+	 *            the ID of the page
+	 * @param page
+	 *            the terms on the page
+	 */
+	public void add(int doc, PageTerms page) {
+		String[] terms = page.getTerms();
+		int[] frequencies = page.getFrequencies();
+		for (int i = 0; i < terms.length; i++) {
+			add(terms[i], doc, frequencies[i]);
+		}
+		this.documents.setLength(doc, page.getLength());
+	}
+
+	/**
+	 * Sets the pages of a term
+	 *
+	 * @param term
+	 *            the term
+	 * @param list
+	 *            the IDs of the pages
+	 */
+	public void put(String term, PostingList list) {
+		this.postings.put(term, list);
+	}
+
+	/**
+	 * Adds the terms and pages of another index on the same document table,
+	 * which must not be used afterwards as its posting lists may be taken
+	 * over
+	 *
+	 * @param other
+	 *            the index to merge in
+	 */
+	public void merge(InvertedIndex other) {
+		for (Map.Entry<String, PostingList> entry : other.postings.entrySet()) {
+			PostingList list = this.postings.get(entry.getKey());
+			if (list == null) {
+				this.postings.put(entry.getKey(), entry.getValue());
+			} else {
+				this.postings.put(entry.getKey(),
+						PostingList.union(list, entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * @param term
+	 *            the term
+	 * @return the IDs of the pages the term is on, or null if it is on none
+	 */
+	@Override
+	public PostingList get(String term) {
+		return this.postings.get(term);
+	}
+
+	@Override
+	public String getUrl(int doc) {
+		return this.documents.getUrl(doc);
+	}
+
+	@Override
+	public Set<String> terms() {
+		return this.postings.keySet();
+	}
+
+	@Override
+	public int size() {
+		return this.postings.size();
+	}
+
+	@Override
+	public int getPageCount() {
+		return this.documents.size();
+	}
+
+	@Override
+	public int getLength(int doc) {
+		return this.documents.getLength(doc);
+	}
+
+	@Override
+	public long getTotalLength() {
+		return this.documents.getTotalLength();
+	}
+
+	/**
+	 * @return the table the IDs of the pages come from
+	 */
+	public DocumentTable getDocuments() {
+		return this.documents;
+	}
+
+	/**
+	 * Forgets every term
+	 */
+	public void clear() {
+		this.postings.clear();
+	}
+
+	/**
+	 * @return the number of terms and postings, and the bytes the postings
+	 *         take up
+	 */
+	public String getStats() {
+		long count = 0;
+		long bytes = 0;
+		for (PostingList list : this.postings.values()) {
+			count += list.size();
+			bytes += list.getEncodedBytes();
+		}
+		return "Index: " + this.postings.size() + " terms, " + count
+				+ " postings in " + bytes + " bytes, "
+				+ this.documents.size() + " pages";
+	}
+}
@@ -0,0 +1,65 @@
+package webspider.core.indexer;
+
+import java.util.Arrays;
+
+/**
+ * The distinct terms of a page, how often each is on it, and the number of
+ * terms on it in all, which BM25 ranks pages by.
+ */
+public class PageTerms {
+
+	private final String[] terms;
+	private final int[] frequencies;
+	private final int length;
+
+	/**
+	 * @param terms
+	 *            the distinct terms
+	 * @param frequencies
+	 *            how often each term is on the page
+	 * @param length
+	 *            the number of terms on the page
+	 */
+	public PageTerms(String[] terms, int[] frequencies, int length) {
+		this.terms = terms;
+		this.frequencies = frequencies;
+		this.length = length;
+	}
+
+	/**
+	 * Creates the terms of a page each found once
+	 *
+	 * @param terms
+	 *            the distinct terms
+	 */
+	public PageTerms(String[] terms) {
+		this(terms, ones(terms.length), terms.length);
+	}
+
+	/**
+	 * @return the distinct terms
+	 */
+	public String[] getTerms() {
+		return this.terms;
+	}
+
+	/**
+	 * @return how often each term is on the page
+	 */
+	public int[] getFrequencies() {
+		return this.frequencies;
+	}
+
+	/**
+	 * @return the number of terms on the page
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	private static int[] ones(int length) {
+		int[] ones = new int[length];
+		Arrays.fill(ones, 1);
+		return ones;
+	}
+}
@@ -0,0 +1,156 @@
+package webspider.core.indexer;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The index of the pages one worker has indexed, mapping each term to the
+ * pages it is on. The pages are given their IDs from the document table of
+ * the whole index as they are added, so partial indexes merge by their IDs.
+ * A worker adds to its partial index without locking, and
+ * the partial indexes of all workers are merged pairwise in a fork-join
+ * reduction.
+ * <p>
+ * A partial index is not thread safe.
+ */
+public class PartialIndex {
+
+	/**
+	 * Number of partial indexes below which a reduction merges them in the
+	 * calling thread instead of forking
+	 */
+	private static final int SEQUENTIAL_THRESHOLD = 2;
+
+	private final InvertedIndex index;
+
+	/**
+	 * Number of pages indexed
+	 */
+	private int pages = 0;
+
+	/**
+	 * @param documents
+	 *            the table the IDs of the pages come from
+	 */
+	public PartialIndex(DocumentTable documents) {
+		this.index = new InvertedIndex(documents);
+	}
+
+	/**
+	 * Adds the terms of a page, each found once
+	 *
+	 * @param url
+	 *            the page
+	 * @param terms
+	 *            the terms on the page
+	 */
+	public void add(URL url, String[] terms) {
+		add(url, new PageTerms(terms));
+	}
+
+	/**
+	 * Adds the terms of a page
+	 *
+	 * @param url
+	 *            the page
+	 * @param page
+	 *            the terms on the page and how often each is on it
+	 */
+	public void add(URL url, PageTerms page) {
+		this.index.add(this.index.getDocuments().idFor(url), page);
+		this.pages++;
+	}
+
+	/**
+	 * Adds the terms and pages of another partial index, which must not be
+	 * used afterwards as its posting lists may be taken over
+	 *
+	 * @param other
+	 *            the partial index to merge in
+	 */
+	public void merge(PartialIndex other) {
+		this.index.merge(other.index);
+		this.pages += other.pages;
+	}
+
+	/**
+	 * @return the terms and the IDs of their pages
+	 */
+	public InvertedIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return the number of pages indexed
+	 */
+	public int getPageCount() {
+		return this.pages;
+	}
+
+	/**
+	 * Merges partial indexes into one, in a fork-join reduction on the common
+	 * pool
+	 *
+	 * @param documents
+	 *            the table the IDs of the pages come from
+	 * @param partials
+	 *            the partial indexes, which must not be used afterwards
+	 * @return the merged index
+	 */
+	public static PartialIndex reduce(DocumentTable documents,
+			List<PartialIndex> partials) {
+		if (partials.isEmpty()) {
+			return new PartialIndex(documents);
+		}
+		return ForkJoinPool.commonPool().invoke(
+				new Reduction(partials, 0, partials.size()));
+	}
+
+	/**
+	 * Merges a range of partial indexes, each half in a task of its own
+	 */
+	private static class Reduction extends RecursiveTask<PartialIndex> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<PartialIndex> partials;
+		private final int from;
+		private final int to;
+
+		Reduction(List<PartialIndex> partials, int from, int to) {
+			this.partials = partials;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected PartialIndex compute() {
+			if (this.to - this.from <= SEQUENTIAL_THRESHOLD) {
+				PartialIndex merged = this.partials.get(this.from);
+				for (int i = this.from + 1; i < this.to; i++) {
+					merged = mergeLarger(merged, this.partials.get(i));
+				}
+				return merged;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			Reduction left = new Reduction(this.partials, this.from, middle);
+			left.fork();
+			PartialIndex right = new Reduction(this.partials, middle, this.to)
+					.compute();
+			return mergeLarger(left.join(), right);
+		}
+
+		/**
+		 * Merges the smaller of two partial indexes into the larger
+		 */
+		private static PartialIndex mergeLarger(PartialIndex a, PartialIndex b) {
+			if (a.index.size() < b.index.size()) {
+				b.merge(a);
+				return b;
+			}
+			a.merge(b);
+			return a;
+		}
+	}
+}
@@ -0,0 +1,889 @@
+package webspider.core.indexer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The sorted document IDs of the pages a term is on, compressed. IDs are
+ * stored as the gaps between them, which are small for common terms. The
+ * first BLOCK_SIZE gaps of a list, and every BLOCK_SIZE after them, are
+ * packed into a block with a PForDelta-style codec; the gaps after the last
+ * full block are stored as varints, so short lists only ever use varints.
+ * <p>
+ * A block is packed with the number of bits that fits most of its gaps, and
+ * the few gaps that do not fit are patched in as exceptions after it:
+ *
+ * <pre>
+ * bits (1 byte) | exceptions (1 byte) | BLOCK_SIZE gaps of bits bits each,
+ * low bits first | exceptions: position (1 byte), high bits (varint)
+ * </pre>
+ *
+ * Each ID has a frequency, how often the term is on the page, stored as
+ * varints in the order of the IDs.
+ * <p>
+ * Each block has skip data: its first ID, where it starts and where the
+ * frequency of its first ID starts. A cursor uses it to jump over the blocks
+ * that cannot hold the IDs it looks for, so it only decodes the blocks that
+ * may.
+ * <p>
+ * IDs are normally added in increasing order. An ID lower than the last one
+ * added is merged in by decoding and encoding the list again. A posting list
+ * is not thread safe.
+ */
+public class PostingList {
+
+	/**
+	 * Number of gaps in a packed block
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	private static final byte[] EMPTY = new byte[0];
+	private static final int[] NO_SKIPS = new int[0];
+
+	/**
+	 * The packed blocks
+	 */
+	private byte[] blocks = EMPTY;
+	private int blocksLength = 0;
+
+	/**
+	 * The varint gaps after the last block
+	 */
+	private byte[] tail = EMPTY;
+	private int tailLength = 0;
+	private int tailCount = 0;
+
+	/**
+	 * The varint frequency of each ID
+	 */
+	private byte[] frequencies = EMPTY;
+	private int frequenciesLength = 0;
+
+	/**
+	 * The first ID of each block, where the block starts and where the
+	 * frequency of its first ID starts, or null until they are rebuilt for a
+	 * list read without them
+	 */
+	private int[] skipIds = NO_SKIPS;
+	private int[] skipOffsets = NO_SKIPS;
+	private int[] skipFrequencies = NO_SKIPS;
+	private int skipCount = 0;
+
+	/**
+	 * The first ID of the tail and where its frequencies start, for the skip
+	 * data of the block it becomes
+	 */
+	private int tailFirst = -1;
+	private int tailFrequencies = 0;
+
+	/**
+	 * Number of IDs, and the last one
+	 */
+	private int size = 0;
+	private int last = -1;
+
+	/**
+	 * Creates a list of IDs
+	 *
+	 * @param ids
+	 *            IDs in increasing order without repeats
+	 * @param length
+	 *            number of IDs to take from the start of the array
+	 * @return the list
+	 */
+	public static PostingList of(int[] ids, int length) {
+		return of(ids, null, length);
+	}
+
+	/**
+	 * Creates a list of IDs and their frequencies
+	 *
+	 * @param ids
+	 *            IDs in increasing order without repeats
+	 * @param frequencies
+	 *            the frequency of each ID, or null for 1 each
+	 * @param length
+	 *            number of IDs to take from the start of the arrays
+	 * @return the list
+	 */
+	public static PostingList of(int[] ids, int[] frequencies, int length) {
+		PostingList list = new PostingList();
+		for (int i = 0; i < length; i++) {
+			list.append(ids[i], (frequencies == null) ? 1 : frequencies[i]);
+		}
+		return list;
+	}
+
+	/**
+	 * Creates a list over IDs already encoded, as written by writeTo
+	 *
+	 * @param blocks
+	 *            the packed blocks
+	 * @param tail
+	 *            the varint gaps after the last block
+	 * @param frequencies
+	 *            the varint frequencies, or none for 1 each
+	 * @param size
+	 *            number of IDs
+	 * @param last
+	 *            the last ID
+	 * @param skips
+	 *            the skip data of the blocks, as written by writeTo, or null
+	 *            to rebuild it when it is needed
+	 * @return the list
+	 */
+	static PostingList wrap(byte[] blocks, byte[] tail, byte[] frequencies,
+			int size, int last, ByteBuffer skips) {
+		PostingList list = new PostingList();
+		list.blocks = blocks;
+		list.blocksLength = blocks.length;
+		list.tail = tail;
+		list.tailLength = tail.length;
+		list.tailCount = size % BLOCK_SIZE;
+		list.frequencies = frequencies;
+		list.frequenciesLength = frequencies.length;
+		list.size = size;
+		list.last = last;
+		if (skips == null) {
+			list.skipIds = null;
+		} else {
+			int count = size / BLOCK_SIZE;
+			list.skipIds = new int[count];
+			list.skipOffsets = new int[count];
+			list.skipFrequencies = new int[count];
+			for (int i = 0; i < count; i++) {
+				list.skipIds[i] = skips.getInt();
+				list.skipOffsets[i] = skips.getInt();
+				list.skipFrequencies[i] = skips.getInt();
+			}
+			list.skipCount = count;
+			list.locateTail((count == 0) ? 0 : skipVarInts(frequencies,
+					list.skipFrequencies[count - 1], frequencies.length,
+					BLOCK_SIZE));
+		}
+		return list;
+	}
+
+	/**
+	 * Adds a document ID found once
+	 *
+	 * @param id
+	 *            the ID, 0 or more
+	 * @return false if the list already held it
+	 */
+	public boolean add(int id) {
+		return add(id, 1);
+	}
+
+	/**
+	 * Adds a document ID
+	 *
+	 * @param id
+	 *            the ID, 0 or more
+	 * @param frequency
+	 *            how often the term is on the page, 1 or more
+	 * @return false if the list already held it
+	 */
+	public boolean add(int id, int frequency) {
+		if (id > this.last) {
+			append(id, frequency);
+			return true;
+		}
+		int[] ids = toArray();
+		int insert = Arrays.binarySearch(ids, id);
+		if (insert >= 0) {
+			return false;
+		}
+		insert = -insert - 1;
+		int[] frequencies = getFrequencies();
+		int[] mergedIds = new int[ids.length + 1];
+		int[] mergedFrequencies = new int[ids.length + 1];
+		System.arraycopy(ids, 0, mergedIds, 0, insert);
+		System.arraycopy(frequencies, 0, mergedFrequencies, 0, insert);
+		mergedIds[insert] = id;
+		mergedFrequencies[insert] = frequency;
+		System.arraycopy(ids, insert, mergedIds, insert + 1, ids.length - insert);
+		System.arraycopy(frequencies, insert, mergedFrequencies, insert + 1,
+				ids.length - insert);
+		reset();
+		for (int i = 0; i < mergedIds.length; i++) {
+			append(mergedIds[i], mergedFrequencies[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the union of two lists
+	 *
+	 * @param a
+	 *            a list
+	 * @param b
+	 *            another list
+	 * @return a list of the IDs of both
+	 */
+	public static PostingList union(PostingList a, PostingList b) {
+		if (b.size == 0) {
+			return a;
+		}
+		if (a.size == 0) {
+			return b;
+		}
+		int[] y = b.toArray();
+		int[] yf = b.getFrequencies();
+		if (a.last < y[0]) {
+			// all of b goes after a, as when pages are indexed in order
+			for (int j = 0; j < y.length; j++) {
+				a.append(y[j], yf[j]);
+			}
+			return a;
+		}
+		int[] x = a.toArray();
+		int[] xf = a.getFrequencies();
+		int[] merged = new int[x.length + y.length];
+		int[] frequencies = new int[x.length + y.length];
+		int i = 0, j = 0, n = 0;
+		while (i < x.length && j < y.length) {
+			if (x[i] < y[j]) {
+				frequencies[n] = xf[i];
+				merged[n++] = x[i++];
+			} else if (x[i] > y[j]) {
+				frequencies[n] = yf[j];
+				merged[n++] = y[j++];
+			} else {
+				frequencies[n] = xf[i];
+				merged[n++] = x[i++];
+				j++;
+			}
+		}
+		while (i < x.length) {
+			frequencies[n] = xf[i];
+			merged[n++] = x[i++];
+		}
+		while (j < y.length) {
+			frequencies[n] = yf[j];
+			merged[n++] = y[j++];
+		}
+		return of(merged, frequencies, n);
+	}
+
+	/**
+	 * @return the number of IDs
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the bytes the compressed IDs and frequencies take up
+	 */
+	public int getEncodedBytes() {
+		return this.blocksLength + this.tailLength + this.frequenciesLength;
+	}
+
+	/**
+	 * @return the bytes the packed blocks take up, which are written before
+	 *         the tail
+	 */
+	int getBlockBytes() {
+		return this.blocksLength;
+	}
+
+	/**
+	 * @return the bytes the frequencies take up, which are written after the
+	 *         tail
+	 */
+	int getFrequencyBytes() {
+		return this.frequenciesLength;
+	}
+
+	/**
+	 * @return the bytes the skip data takes up, which is written after the
+	 *         frequencies
+	 */
+	int getSkipBytes() {
+		return (this.size / BLOCK_SIZE) * 12;
+	}
+
+	/**
+	 * @return the last ID, or -1 if there is none
+	 */
+	int getLast() {
+		return this.last;
+	}
+
+	/**
+	 * Writes the packed blocks followed by the varint tail and frequencies,
+	 * then the skip data of each block as three ints
+	 *
+	 * @param out
+	 *            where to write them
+	 * @throws IOException
+	 *             if they could not be written
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.write(this.blocks, 0, this.blocksLength);
+		out.write(this.tail, 0, this.tailLength);
+		out.write(this.frequencies, 0, this.frequenciesLength);
+		buildSkips();
+		for (int i = 0; i < this.skipCount; i++) {
+			out.writeInt(this.skipIds[i]);
+			out.writeInt(this.skipOffsets[i]);
+			out.writeInt(this.skipFrequencies[i]);
+		}
+	}
+
+	/**
+	 * @return a cursor before the first ID
+	 */
+	public Cursor cursor() {
+		buildSkips();
+		return new Cursor();
+	}
+
+	/**
+	 * Decodes the IDs
+	 *
+	 * @return the IDs in increasing order
+	 */
+	public int[] toArray() {
+		int[] ids = new int[this.size];
+		int[] gaps = new int[BLOCK_SIZE];
+		int n = 0;
+		int id = -1;
+		int pos = 0;
+		while (pos < this.blocksLength) {
+			pos = decodeBlock(this.blocks, pos, gaps);
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				id += gaps[i];
+				ids[n++] = id;
+			}
+		}
+		pos = 0;
+		while (pos < this.tailLength) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = this.tail[pos++];
+				gap |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			id += gap;
+			ids[n++] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * Decodes the frequencies
+	 *
+	 * @return the frequency of each ID, in the order of the IDs
+	 */
+	public int[] getFrequencies() {
+		int[] frequencies = new int[this.size];
+		if (this.frequenciesLength == 0) {
+			// a list read from a file written without frequencies
+			Arrays.fill(frequencies, 1);
+			return frequencies;
+		}
+		int pos = 0;
+		for (int n = 0; n < this.size; n++) {
+			int frequency = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = this.frequencies[pos++];
+				frequency |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			frequencies[n] = frequency;
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Gives unused capacity back, once the list is complete
+	 */
+	public void trim() {
+		if (this.blocks.length > this.blocksLength) {
+			this.blocks = Arrays.copyOf(this.blocks, this.blocksLength);
+		}
+		if (this.tail.length > this.tailLength) {
+			this.tail = Arrays.copyOf(this.tail, this.tailLength);
+		}
+		if (this.frequencies.length > this.frequenciesLength) {
+			this.frequencies = Arrays.copyOf(this.frequencies,
+					this.frequenciesLength);
+		}
+		if (this.skipIds != null && this.skipIds.length > this.skipCount) {
+			this.skipIds = Arrays.copyOf(this.skipIds, this.skipCount);
+			this.skipOffsets = Arrays.copyOf(this.skipOffsets, this.skipCount);
+			this.skipFrequencies = Arrays.copyOf(this.skipFrequencies,
+					this.skipCount);
+		}
+	}
+
+	private void reset() {
+		this.blocks = EMPTY;
+		this.blocksLength = 0;
+		this.tail = EMPTY;
+		this.tailLength = 0;
+		this.tailCount = 0;
+		this.frequencies = EMPTY;
+		this.frequenciesLength = 0;
+		this.skipIds = NO_SKIPS;
+		this.skipOffsets = NO_SKIPS;
+		this.skipFrequencies = NO_SKIPS;
+		this.skipCount = 0;
+		this.size = 0;
+		this.last = -1;
+	}
+
+	/**
+	 * Adds an ID greater than the last
+	 */
+	private void append(int id, int frequency) {
+		buildSkips();
+		if (this.tailCount == 0) {
+			this.tailFirst = id;
+			this.tailFrequencies = this.frequenciesLength;
+		}
+		if (this.frequencies.length - this.frequenciesLength < 5) {
+			this.frequencies = Arrays.copyOf(this.frequencies, Math.max(8,
+					this.frequencies.length + (this.frequencies.length >> 1)));
+		}
+		this.frequenciesLength = writeVarInt(this.frequencies,
+				this.frequenciesLength, frequency);
+		int gap = id - this.last;
+		this.last = id;
+		this.size++;
+		if (this.tail.length - this.tailLength < 5) {
+			this.tail = Arrays.copyOf(this.tail,
+					Math.max(8, this.tail.length + (this.tail.length >> 1)));
+		}
+		this.tailLength = writeVarInt(this.tail, this.tailLength, gap);
+		if (++this.tailCount == BLOCK_SIZE) {
+			packTail();
+		}
+	}
+
+	/**
+	 * Packs the varint gaps of the tail into a block
+	 */
+	private void packTail() {
+		int[] gaps = new int[BLOCK_SIZE];
+		int pos = 0;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = this.tail[pos++];
+				gap |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			gaps[i] = gap;
+		}
+		// at most a header, 32 bits a gap and no exceptions
+		int max = 2 + BLOCK_SIZE * 4;
+		if (this.blocks.length - this.blocksLength < max) {
+			this.blocks = Arrays.copyOf(this.blocks, Math.max(
+					this.blocksLength + max, this.blocks.length
+							+ (this.blocks.length >> 1)));
+		}
+		if (this.skipCount == this.skipIds.length) {
+			int capacity = Math.max(4, this.skipCount * 2);
+			this.skipIds = Arrays.copyOf(this.skipIds, capacity);
+			this.skipOffsets = Arrays.copyOf(this.skipOffsets, capacity);
+			this.skipFrequencies = Arrays.copyOf(this.skipFrequencies, capacity);
+		}
+		this.skipIds[this.skipCount] = this.tailFirst;
+		this.skipOffsets[this.skipCount] = this.blocksLength;
+		this.skipFrequencies[this.skipCount] = this.tailFrequencies;
+		this.skipCount++;
+		this.blocksLength = encodeBlock(gaps, this.blocks, this.blocksLength);
+		this.tailLength = 0;
+		this.tailCount = 0;
+	}
+
+	/**
+	 * Rebuilds the skip data of a list read without it, by decoding the
+	 * blocks once
+	 */
+	private void buildSkips() {
+		if (this.skipIds != null) {
+			return;
+		}
+		int count = this.size / BLOCK_SIZE;
+		this.skipIds = new int[count];
+		this.skipOffsets = new int[count];
+		this.skipFrequencies = new int[count];
+		int[] gaps = new int[BLOCK_SIZE];
+		int id = -1;
+		int pos = 0;
+		int frequencyPos = 0;
+		for (int block = 0; block < count; block++) {
+			this.skipOffsets[block] = pos;
+			this.skipFrequencies[block] = frequencyPos;
+			pos = decodeBlock(this.blocks, pos, gaps);
+			this.skipIds[block] = id + gaps[0];
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				id += gaps[i];
+			}
+			frequencyPos = skipVarInts(this.frequencies, frequencyPos,
+					this.frequenciesLength, BLOCK_SIZE);
+		}
+		this.skipCount = count;
+		locateTail(frequencyPos);
+	}
+
+	/**
+	 * Finds the first ID of the tail of a list read from a file, counting
+	 * back from the last
+	 *
+	 * @param frequencyPos
+	 *            where the frequencies of the tail start
+	 */
+	private void locateTail(int frequencyPos) {
+		this.tailFrequencies = frequencyPos;
+		int id = this.last;
+		int pos = 0;
+		boolean first = true;
+		while (pos < this.tailLength) {
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = this.tail[pos++];
+				gap |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			if (!first) {
+				id -= gap;
+			}
+			first = false;
+		}
+		this.tailFirst = (this.tailLength == 0) ? -1 : id;
+	}
+
+	/**
+	 * @return the position after a number of varints, at most an end
+	 */
+	private static int skipVarInts(byte[] in, int pos, int end, int count) {
+		for (int n = 0; n < count && pos < end; pos++) {
+			if (in[pos] >= 0) {
+				n++;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Reads the IDs of a list in increasing order, decoding a block at a time
+	 * and only the blocks it stops in. A cursor is not thread safe, and the
+	 * list must not change while it is used.
+	 */
+	public class Cursor {
+
+		/**
+		 * Returned once the IDs run out
+		 */
+		public static final int END = Integer.MAX_VALUE;
+
+		private final int[] ids = new int[BLOCK_SIZE];
+		private final int[] frequencies = new int[BLOCK_SIZE];
+		private final int[] gaps = new int[BLOCK_SIZE];
+
+		/**
+		 * The block decoded, the tail being the one after the last packed
+		 * block, and the number of IDs in it
+		 */
+		private int block = -1;
+		private int count = 0;
+
+		/**
+		 * Position of the current ID in the block
+		 */
+		private int index = -1;
+
+		/**
+		 * Block whose frequencies are decoded
+		 */
+		private int frequencyBlock = -1;
+
+		private int doc = -1;
+
+		/**
+		 * @return the current ID, -1 before the first and END after the last
+		 */
+		public int doc() {
+			return this.doc;
+		}
+
+		/**
+		 * Moves to the next ID
+		 *
+		 * @return the ID, or END if there are no more
+		 */
+		public int next() {
+			if (this.doc == END) {
+				return END;
+			}
+			if (this.index + 1 < this.count) {
+				return this.doc = this.ids[++this.index];
+			}
+			return load(this.block + 1, this.doc + 1);
+		}
+
+		/**
+		 * Moves to the first ID not below a target, skipping the blocks that
+		 * end before it without decoding them
+		 *
+		 * @param target
+		 *            the ID looked for
+		 * @return the first ID not below it, or END if there is none
+		 */
+		public int advance(int target) {
+			if (this.doc >= target) {
+				return this.doc;
+			}
+			if (target > PostingList.this.last) {
+				return this.doc = END;
+			}
+			if (this.count > 0 && this.ids[this.count - 1] >= target) {
+				this.index = search(this.index + 1, target);
+				return this.doc = this.ids[this.index];
+			}
+			// the last block starting at or before the target
+			int low = this.block + 1;
+			int high = PostingList.this.skipCount - 1;
+			int found = low;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (PostingList.this.skipIds[middle] <= target) {
+					found = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return load(found, target);
+		}
+
+		/**
+		 * @return the frequency of the current ID
+		 */
+		public int frequency() {
+			if (PostingList.this.frequenciesLength == 0) {
+				return 1;
+			}
+			if (this.frequencyBlock != this.block) {
+				int pos = (this.block < PostingList.this.skipCount) ? PostingList.this.skipFrequencies[this.block]
+						: PostingList.this.tailFrequencies;
+				for (int n = 0; n < this.count; n++) {
+					int frequency = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = PostingList.this.frequencies[pos++];
+						frequency |= (b & 0x7f) << shift;
+						shift += 7;
+					} while (b < 0);
+					this.frequencies[n] = frequency;
+				}
+				this.frequencyBlock = this.block;
+			}
+			return this.frequencies[this.index];
+		}
+
+		/**
+		 * Decodes blocks from one on until one holds an ID not below a target
+		 * and moves to that ID
+		 */
+		private int load(int block, int target) {
+			while (decode(block)) {
+				if (this.ids[this.count - 1] >= target) {
+					this.index = search(0, target);
+					return this.doc = this.ids[this.index];
+				}
+				block++;
+			}
+			this.count = 0;
+			return this.doc = END;
+		}
+
+		/**
+		 * Decodes a block, or the tail after the last
+		 *
+		 * @return false if there is no such block
+		 */
+		private boolean decode(int block) {
+			PostingList list = PostingList.this;
+			if (block < list.skipCount) {
+				decodeBlock(list.blocks, list.skipOffsets[block], this.gaps);
+				int id = list.skipIds[block];
+				this.ids[0] = id;
+				for (int i = 1; i < BLOCK_SIZE; i++) {
+					id += this.gaps[i];
+					this.ids[i] = id;
+				}
+				this.count = BLOCK_SIZE;
+			} else if (block == list.skipCount && list.tailLength > 0) {
+				int n = 0;
+				int pos = 0;
+				while (pos < list.tailLength) {
+					int gap = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = list.tail[pos++];
+						gap |= (b & 0x7f) << shift;
+						shift += 7;
+					} while (b < 0);
+					this.gaps[n++] = gap;
+				}
+				// the tail's gaps run from the end of the last block, so its
+				// IDs are counted back from the last
+				int id = list.last;
+				for (int i = n - 1; i >= 0; i--) {
+					this.ids[i] = id;
+					id -= this.gaps[i];
+				}
+				this.count = n;
+			} else {
+				return false;
+			}
+			this.block = block;
+			this.index = -1;
+			return true;
+		}
+
+		/**
+		 * @return the first position from a start in the block whose ID is
+		 *         not below a target, which the block holds
+		 */
+		private int search(int from, int target) {
+			int high = this.count - 1;
+			while (from < high) {
+				int middle = (from + high) >>> 1;
+				if (this.ids[middle] < target) {
+					from = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return from;
+		}
+	}
+
+	/**
+	 * Packs BLOCK_SIZE gaps with the number of bits that makes the block
+	 * smallest, counting the exceptions it leaves
+	 *
+	 * @return the position after the block
+	 */
+	static int encodeBlock(int[] gaps, byte[] out, int pos) {
+		int bits = 32;
+		int best = Integer.MAX_VALUE;
+		for (int b = 0; b <= 32; b++) {
+			int size = (BLOCK_SIZE * b + 7) / 8;
+			int exceptions = 0;
+			for (int i = 0; i < BLOCK_SIZE && size < best; i++) {
+				int high = (b == 32) ? 0 : gaps[i] >>> b;
+				if (high != 0) {
+					size += 1 + varIntLength(high);
+					exceptions++;
+				}
+			}
+			if (size < best && exceptions <= 255) {
+				best = size;
+				bits = b;
+			}
+		}
+		long mask = (1L << bits) - 1;
+		int exceptionsPos = pos + 1;
+		out[pos] = (byte) bits;
+		pos += 2;
+		long buffer = 0;
+		int buffered = 0;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			buffer |= (gaps[i] & mask) << buffered;
+			buffered += bits;
+			while (buffered >= 8) {
+				out[pos++] = (byte) buffer;
+				buffer >>>= 8;
+				buffered -= 8;
+			}
+		}
+		if (buffered > 0) {
+			out[pos++] = (byte) buffer;
+		}
+		int exceptions = 0;
+		for (int i = 0; i < BLOCK_SIZE && bits < 32; i++) {
+			int high = gaps[i] >>> bits;
+			if (high != 0) {
+				out[pos++] = (byte) i;
+				pos = writeVarInt(out, pos, high);
+				exceptions++;
+			}
+		}
+		out[exceptionsPos] = (byte) exceptions;
+		return pos;
+	}
+
+	/**
+	 * Unpacks a block of BLOCK_SIZE gaps
+	 *
+	 * @return the position after the block
+	 */
+	static int decodeBlock(byte[] in, int pos, int[] gaps) {
+		int bits = in[pos];
+		int exceptions = in[pos + 1] & 0xff;
+		pos += 2;
+		long mask = (1L << bits) - 1;
+		long buffer = 0;
+		int buffered = 0;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			while (buffered < bits) {
+				buffer |= (in[pos++] & 0xffL) << buffered;
+				buffered += 8;
+			}
+			gaps[i] = (int) (buffer & mask);
+			buffer >>>= bits;
+			buffered -= bits;
+		}
+		for (int e = 0; e < exceptions; e++) {
+			int i = in[pos++] & 0xff;
+			int high = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = in[pos++];
+				high |= (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			gaps[i] |= high << bits;
+		}
+		return pos;
+	}
+
+	static int writeVarInt(byte[] out, int pos, int value) {
+		while ((value & ~0x7f) != 0) {
+			out[pos++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out[pos++] = (byte) value;
+		return pos;
+	}
+
+	static int varIntLength(int value) {
+		int length = 1;
+		while ((value & ~0x7f) != 0) {
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+}
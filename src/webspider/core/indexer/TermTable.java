@@ -0,0 +1,198 @@
+package webspider.core.indexer;
+
+/**
+ * An open addressing hash set of terms that is looked up with a slice of a
+ * char array, so a term is only turned into a String the first time it is
+ * seen. Each term can be marked with the number of the page it was last
+ * found on, which picks out the distinct terms of a page without a set per
+ * page, and with where the term was put among them, which counts how often
+ * each is on the page.
+ * <p>
+ * A table is not thread safe.
+ */
+public class TermTable {
+
+	private String[] terms = new String[1024];
+	private int[] marks = new int[1024];
+	private int[] positions;
+	private int size = 0;
+
+	/**
+	 * Adds a term
+	 *
+	 * @param term
+	 *            the term
+	 */
+	public void add(String term) {
+		char[] chars = term.toCharArray();
+		intern(chars, 0, chars.length);
+	}
+
+	/**
+	 * @param term
+	 *            the term
+	 * @return is the term in the table?
+	 */
+	public boolean contains(String term) {
+		char[] chars = term.toCharArray();
+		return contains(chars, 0, chars.length);
+	}
+
+	/**
+	 * @param text
+	 *            buffer holding the term
+	 * @param offset
+	 *            start of the term
+	 * @param length
+	 *            number of characters
+	 * @return is the term in the table?
+	 */
+	public boolean contains(char[] text, int offset, int length) {
+		return this.terms[slot(text, offset, length)] != null;
+	}
+
+	/**
+	 * Gets the String of a term, adding the term if it is not in the table
+	 *
+	 * @param text
+	 *            buffer holding the term
+	 * @param offset
+	 *            start of the term
+	 * @param length
+	 *            number of characters
+	 * @return the same String for every slice holding the term
+	 */
+	public String intern(char[] text, int offset, int length) {
+		int slot = insert(text, offset, length);
+		return this.terms[slot];
+	}
+
+	/**
+	 * Gets the String of a term unless it was already marked with a mark,
+	 * and marks it
+	 *
+	 * @param text
+	 *            buffer holding the term
+	 * @param offset
+	 *            start of the term
+	 * @param length
+	 *            number of characters
+	 * @param mark
+	 *            a number other than 0, such as the number of the page
+	 * @return the term, or null if it already had the mark
+	 */
+	public String mark(char[] text, int offset, int length, int mark) {
+		int slot = insert(text, offset, length);
+		if (this.marks[slot] == mark) {
+			return null;
+		}
+		this.marks[slot] = mark;
+		return this.terms[slot];
+	}
+
+	/**
+	 * Gets the position a term was given when it was marked with a mark,
+	 * and marks it and gives it a position if it was not
+	 *
+	 * @param text
+	 *            buffer holding the term
+	 * @param offset
+	 *            start of the term
+	 * @param length
+	 *            number of characters
+	 * @param mark
+	 *            a number other than 0, such as the number of the page
+	 * @param position
+	 *            the position to give the term if it was not marked
+	 * @return the position of the term, the one passed if it was not marked
+	 */
+	public int position(char[] text, int offset, int length, int mark,
+			int position) {
+		if (this.positions == null) {
+			this.positions = new int[this.terms.length];
+		}
+		int slot = insert(text, offset, length);
+		if (this.marks[slot] != mark) {
+			this.marks[slot] = mark;
+			this.positions[slot] = position;
+		}
+		return this.positions[slot];
+	}
+
+	/**
+	 * @return the number of terms in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private int insert(char[] text, int offset, int length) {
+		int slot = slot(text, offset, length);
+		if (this.terms[slot] == null) {
+			this.terms[slot] = new String(text, offset, length);
+			if (++this.size * 2 > this.terms.length) {
+				grow();
+				slot = slot(text, offset, length);
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * @return the slot holding a term, or the empty slot it belongs in
+	 */
+	private int slot(char[] text, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + text[i];
+		}
+		int mask = this.terms.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (this.terms[slot] != null
+				&& !matches(this.terms[slot], text, offset, length)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static boolean matches(String term, char[] text, int offset,
+			int length) {
+		if (term.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (term.charAt(i) != text[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void grow() {
+		String[] oldTerms = this.terms;
+		int[] oldMarks = this.marks;
+		int[] oldPositions = this.positions;
+		this.terms = new String[oldTerms.length * 2];
+		this.marks = new int[oldTerms.length * 2];
+		if (oldPositions != null) {
+			this.positions = new int[oldTerms.length * 2];
+		}
+		int mask = this.terms.length - 1;
+		for (int i = 0; i < oldTerms.length; i++) {
+			String term = oldTerms[i];
+			if (term != null) {
+				// String.hashCode is the same hash as slot computes
+				int hash = term.hashCode();
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (this.terms[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				this.terms[slot] = term;
+				this.marks[slot] = oldMarks[i];
+				if (oldPositions != null) {
+					this.positions[slot] = oldPositions[i];
+				}
+			}
+		}
+	}
+}
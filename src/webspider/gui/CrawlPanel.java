@@ -36,7 +36,7 @@ public class CrawlPanel extends JPanel{
         JPanel panel = new JPanel();
             TitledBorder title = BorderFactory.createTitledBorder("Statistics");
             panel.setBorder(title);
-            panel.setLayout(new GridLayout(6,0));
+            panel.setLayout(new GridLayout(7,0));
 
             JLabel stats_status = new JLabel("Status : Stopped");
             panel.add(stats_status);
@@ -62,6 +62,10 @@ public class CrawlPanel extends JPanel{
             panel.add(stats_disallowed);
             actions.getCrawlerActions().initDisallowed(stats_disallowed);
 
+            JLabel stats_filter = new JLabel("Seen URL filter : -");
+            panel.add(stats_filter);
+            actions.getCrawlerActions().initFilter(stats_filter);
+
             actions.getCrawlerActions().updateStats();
         return panel;
     }
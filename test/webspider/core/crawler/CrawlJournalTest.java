@@ -0,0 +1,81 @@
+package webspider.core.crawler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class CrawlJournalTest extends TestCase {
+
+	private File dir;
+
+	@Override
+	public void setUp() throws Exception {
+		this.dir = new File(System.getProperty("java.io.tmpdir"), "journaltest");
+		this.dir.mkdirs();
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+	}
+
+	public void testRecoversAcrossSnapshots() throws Exception {
+		String prefix = this.dir.getPath() + "/host_crawl";
+		// a snapshot is taken every three records
+		CrawlJournal journal = new CrawlJournal(prefix, 0, 3);
+		assertFalse(journal.hasCheckpoint());
+		for (int i = 0; i < 10; i++) {
+			journal.append(SeenURLIndex.QUEUED, new UrlKey("http://localhost/page" + i + ".html"));
+		}
+		for (int i = 0; i < 5; i++) {
+			journal.append(SeenURLIndex.LOCAL, new UrlKey("http://localhost/page" + i + ".html"));
+		}
+		journal.append(SeenURLIndex.QUEUED, new UrlKey("http://localhost/page0.html"));
+		journal.sync();
+		assertTrue(journal.hasCheckpoint());
+
+		Map<String, Byte> states = journal.recover();
+		assertEquals(10, states.size());
+		assertEquals("http://localhost/page0.html", states.keySet().iterator().next());
+		assertEquals(SeenURLIndex.LOCAL, states.get("http://localhost/page0.html").byteValue());
+		assertEquals(SeenURLIndex.LOCAL, states.get("http://localhost/page4.html").byteValue());
+		assertEquals(SeenURLIndex.QUEUED, states.get("http://localhost/page5.html").byteValue());
+
+		journal.delete();
+		assertFalse(journal.hasCheckpoint());
+	}
+
+	public void testRecoversDepths() throws Exception {
+		String prefix = this.dir.getPath() + "/depth_crawl";
+		CrawlJournal journal = new CrawlJournal(prefix, 0, 2);
+		journal.append(SeenURLIndex.QUEUED, new UrlKey("http://localhost/a.html"), 3);
+		journal.append(SeenURLIndex.QUEUED, new UrlKey("http://localhost/b.html"), 4);
+		journal.append(SeenURLIndex.LOCAL, new UrlKey("http://localhost/b.html"));
+		journal.append(SeenURLIndex.QUEUED, new UrlKey("http://localhost/c.html"));
+		journal.sync();
+		Map<String, Integer> depths = new HashMap<String, Integer>();
+		Map<String, Byte> states = journal.recover(depths);
+		assertEquals(3, states.size());
+		assertEquals(SeenURLIndex.LOCAL, states.get("http://localhost/b.html").byteValue());
+		assertEquals(Integer.valueOf(3), depths.get("http://localhost/a.html"));
+		// the depths of urls no longer queued, or queued at a seed, are left out
+		assertEquals(1, depths.size());
+
+		// and they survive the snapshot
+		depths.clear();
+		new CrawlJournal(prefix, 0, 2).recover(depths);
+		assertEquals(Integer.valueOf(3), depths.get("http://localhost/a.html"));
+		journal.delete();
+	}
+
+	public void testIgnoresTornRecord() throws Exception {
+		String prefix = this.dir.getPath() + "/torn_crawl";
+		FileWriter writer = new FileWriter(prefix + CrawlJournal.JOURNAL_EXTENSION);
+		writer.write("1 http://localhost/a.html\n2 http://localhost/a.html\n2 http://loc");
+		writer.close();
+		Map<String, Byte> states = new CrawlJournal(prefix, 0, 100).recover();
+		assertEquals(1, states.size());
+		assertEquals(SeenURLIndex.LOCAL, states.get("http://localhost/a.html").byteValue());
+	}
+}
@@ -0,0 +1,39 @@
+package webspider.core.crawler;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class FrontierTest extends TestCase {
+
+	private File dir;
+
+	@Override
+	public void setUp() throws Exception {
+		this.dir = new File(System.getProperty("java.io.tmpdir"), "frontiertest");
+		this.dir.mkdirs();
+	}
+
+	public void testSpillsAndKeepsOrder() throws Exception {
+		// a tiny head and segment force several spills and refills
+		Frontier frontier = new Frontier(this.dir.getPath() + "/host_frontier", 4, 256);
+		for (int i = 0; i < 100; i++) {
+			frontier.add(new UrlKey("http://localhost/page" + i + ".html"));
+		}
+		assertEquals(100, frontier.size());
+		assertTrue(frontier.spilledSize() > 0);
+		for (int i = 0; i < 100; i++) {
+			if (i == 50) {
+				frontier.add(new UrlKey("http://localhost/late.html"));
+			}
+			assertEquals("http://localhost/page" + i + ".html",
+					frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		}
+		assertEquals("http://localhost/late.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertTrue(frontier.isEmpty());
+		assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+		frontier.clear();
+		assertEquals(0, this.dir.list().length);
+	}
+}
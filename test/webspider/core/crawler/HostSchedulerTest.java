@@ -0,0 +1,42 @@
+package webspider.core.crawler;
+
+import junit.framework.TestCase;
+
+public class HostSchedulerTest extends TestCase {
+
+	public void testSlowHostDoesNotHoldUpOthers() throws Exception {
+		HostScheduler<String> scheduler = new HostScheduler<String>();
+		assertTrue(scheduler.tryAcquire("slow.test", 60000));
+		for (int i = 0; i < 3; i++) {
+			assertFalse(scheduler.tryAcquire("slow.test", 60000));
+			scheduler.defer("slow.test", "slow" + i, 60000);
+		}
+		assertTrue(scheduler.tryAcquire("fast.test", 10));
+		assertFalse(scheduler.tryAcquire("fast.test", 10));
+		scheduler.defer("fast.test", "fast0", 10);
+
+		assertEquals(4, scheduler.getWaitingCount());
+		assertEquals(3, scheduler.getWaitingCount("SLOW.test"));
+		assertEquals(1, scheduler.getWaitingCount("fast.test"));
+		assertEquals(0, scheduler.getWaitingCount("other.test"));
+		assertEquals("fast0", scheduler.pollReady(1000));
+		assertNull(scheduler.pollReady(50));
+		assertEquals(3, scheduler.getWaitingCount("slow.test"));
+	}
+
+	public void testHostsAreKeptApart() throws Exception {
+		HostScheduler<String> scheduler = new HostScheduler<String>();
+		assertTrue(scheduler.tryAcquire("a.test", 20));
+		assertTrue(scheduler.tryAcquire("b.test", 20));
+		scheduler.defer("a.test", "a1", 20);
+		scheduler.defer("b.test", "b1", 20);
+		scheduler.defer("a.test", "a2", 20);
+		String first = scheduler.pollReady(1000);
+		String second = scheduler.pollReady(1000);
+		// one of each host before the second of a, which waits for a's next slot
+		assertTrue(first.charAt(0) != second.charAt(0));
+		assertEquals("a2", scheduler.pollReady(1000));
+		assertEquals(0, scheduler.getWaitingCount());
+		assertEquals(0, scheduler.drain().size());
+	}
+}
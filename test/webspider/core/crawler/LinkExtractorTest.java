@@ -0,0 +1,95 @@
+package webspider.core.crawler;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LinkExtractorTest extends TestCase {
+
+	/**
+	 * Records what the extractor finds as "kind:value" strings
+	 */
+	private static class Recorder extends LinkExtractor.Callback {
+		final List<String> found = new ArrayList<String>();
+		final StringBuilder text = new StringBuilder();
+
+		@Override
+		public void handleLink(String href) {
+			this.found.add("link:" + href);
+		}
+
+		@Override
+		public void handleBase(String href) {
+			this.found.add("base:" + href);
+		}
+
+		@Override
+		public void handleCanonical(String href) {
+			this.found.add("canonical:" + href);
+		}
+
+		@Override
+		public void handleText(char[] text, int offset, int length) {
+			this.text.append(text, offset, length);
+		}
+	}
+
+	private Recorder parse(String html) throws UnsupportedEncodingException {
+		Recorder recorder = new Recorder();
+		new LinkExtractor().parse(html.getBytes("UTF-8"), recorder);
+		return recorder;
+	}
+
+	public void testHrefAndSrc() throws UnsupportedEncodingException {
+		Recorder r = parse("<A HREF=\"a.html\">a</A><img src='b.png'>"
+				+ "<a href=c.html#top>c</a><a name=x>no link</a>");
+		assertEquals("[link:a.html, link:b.png, link:c.html]", r.found.toString());
+	}
+
+	public void testBaseCanonicalAndRefresh() throws UnsupportedEncodingException {
+		Recorder r = parse("<head><base href=\"http://host/dir/\">"
+				+ "<link rel=\"Canonical\" href=\"/page\">"
+				+ "<link rel=stylesheet href=s.css>"
+				+ "<meta http-equiv=\"refresh\" content=\"5; URL='next.html'\">"
+				+ "</head>");
+		assertEquals("[base:http://host/dir/, canonical:/page, link:s.css, link:next.html]",
+				r.found.toString());
+	}
+
+	public void testIgnoredMarkup() throws UnsupportedEncodingException {
+		Recorder r = parse("<!-- <a href=\"comment.html\"> -->"
+				+ "<script>document.write('<a href=\"script.html\">')</script>"
+				+ "<style>a { }</style>"
+				+ "<a href=\"mailto:me@host\">mail</a><a href=\"ok.html\">ok</a>");
+		assertEquals("[link:ok.html]", r.found.toString());
+		assertEquals("mailok", r.text.toString());
+	}
+
+	public void testScriptSrc() throws UnsupportedEncodingException {
+		Recorder r = parse("<script src=\"lib.js\"></script>"
+				+ "<SCRIPT type=text/javascript src=app.js>var a = '<a href=x.html>';</SCRIPT>"
+				+ "<a href=\"after.html\">after</a>");
+		assertEquals("[link:lib.js, link:app.js, link:after.html]", r.found.toString());
+		assertEquals("after", r.text.toString());
+	}
+
+	public void testDecoding() throws UnsupportedEncodingException {
+		Recorder r = parse("<a href=\"q?a=1&amp;b=2\">caf\u00e9 &lt;&#65;&#x42;&gt; 1 < 2</a>");
+		assertEquals("[link:q?a=1&b=2]", r.found.toString());
+		assertEquals("caf\u00e9 <AB> 1 < 2", r.text.toString());
+	}
+
+	public void testNamedReferences() throws UnsupportedEncodingException {
+		Recorder r = parse("<p>caf&eacute; &copy;2012 &Uuml;ber&mdash;&euro;5 &unknown; &amp</p>");
+		assertEquals("caf\u00e9 \u00a92012 \u00dcber\u2014\u20ac5 &unknown; &amp",
+				r.text.toString());
+	}
+
+	public void testRefreshURL() {
+		assertEquals("a.html", LinkExtractor.refreshURL("0;url=a.html"));
+		assertEquals("a.html", LinkExtractor.refreshURL("0; URL = \"a.html\""));
+		assertNull(LinkExtractor.refreshURL("30"));
+	}
+}
@@ -0,0 +1,81 @@
+package webspider.core.crawler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class LinksTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.file = File.createTempFile("links", ".txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.file.delete();
+	}
+
+	public void testInMemory() throws Exception {
+		checkLinks(new Links(this.file.getPath(), true, 2, 1000));
+	}
+
+	public void testFileOnly() throws Exception {
+		checkLinks(new Links(this.file.getPath(), false, 2, 1000));
+	}
+
+	public void testAppendsAfterClose() throws Exception {
+		Links links = new Links(this.file.getPath(), false, 1, 1000);
+		links.add(new UrlKey("http://localhost/a.html"));
+		links.close();
+		links.add(new UrlKey("http://localhost/b.html"));
+		links.add(new UrlKey("http://localhost/a.html"));
+		links.close();
+		assertEquals(2, readLines().size());
+		assertEquals(2, links.getLinks().size());
+	}
+
+	private void checkLinks(Links links) throws Exception {
+		UrlKey a = new UrlKey("http://localhost/a.html");
+		UrlKey b = new UrlKey("http://localhost/b.html");
+		assertFalse(links.contains(a));
+		assertEquals(0, links.getLinks().size());
+		links.add(a);
+		links.add(b);
+		links.add(new UrlKey("http://localhost/a.html"));
+		assertEquals(2, links.size());
+		assertTrue(links.contains(a));
+		assertTrue(links.contains(new UrlKey("http://localhost/b.html")));
+		assertFalse(links.contains(new UrlKey("http://localhost/c.html")));
+
+		List<String> iterated = new ArrayList<String>();
+		for (UrlKey url : links) {
+			iterated.add(url.toString());
+		}
+		assertEquals("[http://localhost/a.html, http://localhost/b.html]",
+				iterated.toString());
+		links.print();
+		assertEquals(iterated, readLines());
+		links.close();
+	}
+
+	private List<String> readLines() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(this.file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,51 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+
+import junit.framework.TestCase;
+
+public class NearDuplicateIndexTest extends TestCase {
+
+	private static long simHash(String text) {
+		SimHash simHash = new SimHash();
+		char[] chars = text.toCharArray();
+		simHash.addText(chars, 0, chars.length);
+		return simHash.getFingerprint();
+	}
+
+	private static String words(int count, String prefix) {
+		// words repeat with different frequencies, as in real text
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append(prefix).append(i * i % 23).append(' ');
+		}
+		return text.toString();
+	}
+
+	public void testFindsNearDuplicates() throws MalformedURLException {
+		String text = words(200, "venue");
+		long original = simHash(text);
+		long variant = simHash(text + " xml");
+		long other = simHash(words(200, "paper"));
+		assertTrue(SimHash.distance(original, variant) <= 3);
+		assertTrue(SimHash.distance(original, other) > 3);
+
+		NearDuplicateIndex index = new NearDuplicateIndex(3);
+		UrlKey page = new UrlKey("http://localhost/?q=venue/194");
+		assertNull(index.findOrAdd(page, original));
+		assertEquals(page, index.findOrAdd(new UrlKey("http://localhost/?q=venue/194/xml"), variant));
+		assertNull(index.findOrAdd(new UrlKey("http://localhost/?q=paper/1"), other));
+	}
+
+	public void testBandsCatchEveryCloseFingerprint() throws MalformedURLException {
+		NearDuplicateIndex index = new NearDuplicateIndex(3);
+		UrlKey page = new UrlKey("http://localhost/a.html");
+		long fingerprint = 0x123456789abcdef0L;
+		assertNull(index.findOrAdd(page, fingerprint));
+		// flip three bits spread over different bands
+		long close = fingerprint ^ (1L << 2) ^ (1L << 30) ^ (1L << 63);
+		assertEquals(page, index.findOrAdd(new UrlKey("http://localhost/b.html"), close));
+		long far = fingerprint ^ 0xf000f000f000f000L;
+		assertNull(index.findOrAdd(new UrlKey("http://localhost/c.html"), far));
+	}
+}
@@ -0,0 +1,127 @@
+package webspider.core.crawler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class PageArchiveTest extends TestCase {
+
+	private File file;
+
+	@Override
+	public void setUp() throws Exception {
+		this.file = new File(System.getProperty("java.io.tmpdir"), "archivetest.bdma");
+		this.file.delete();
+	}
+
+	private void write(PageArchive archive, String url, String content) throws Exception {
+		byte[] bytes = content.getBytes("UTF-8");
+		FetchResponse response = new FetchResponse(new UrlKey(url).toURL(), 200,
+				Collections.singletonMap("content-type", Arrays.asList("text/html")),
+				null, "HTTP/1.1", null);
+		archive.write(new UrlKey(url), 0, response, ValidatorStore.hash(bytes), bytes);
+	}
+
+	private Map<String, String> read(List<String> urls) throws Exception {
+		final Map<String, String> pages = new HashMap<String, String>();
+		PageArchive.readPages(this.file.getPath(), urls, new PageArchive.PageHandler() {
+			@Override
+			public boolean handlePage(String url, byte[] content) {
+				try {
+					pages.put(url, new String(content, "UTF-8"));
+				} catch (Exception e) {
+					fail(e.toString());
+				}
+				return true;
+			}
+		});
+		return pages;
+	}
+
+	public void testStoresEachBodyOnce() throws Exception {
+		PageArchive archive = new PageArchive(this.file.getPath());
+		write(archive, "http://host/a.html", "<p>same page</p>");
+		write(archive, "http://host/b.html", "<p>same page</p>");
+		write(archive, "http://host/a.html", "<p>changed page</p>");
+		archive.close();
+
+		Map<String, String> pages = read(Arrays.asList("http://host/a.html",
+				"http://host/b.html", "http://host/missing.html"));
+		assertEquals(2, pages.size());
+		assertEquals("<p>changed page</p>", pages.get("http://host/a.html"));
+		assertEquals("<p>same page</p>", pages.get("http://host/b.html"));
+	}
+
+	public void testRevisitKeepsBodyAcrossCrawls() throws Exception {
+		PageArchive archive = new PageArchive(this.file.getPath());
+		write(archive, "http://host/a.html", "<p>first crawl</p>");
+		archive.close();
+
+		long digest = ValidatorStore.hash("<p>first crawl</p>".getBytes("UTF-8"));
+		archive = new PageArchive(this.file.getPath());
+		assertTrue(archive.contains(digest));
+		assertTrue(archive.revisit(new UrlKey("http://host/a.html"), 1, digest));
+		assertFalse(archive.revisit(new UrlKey("http://host/a.html"), 1, digest + 1));
+		archive.close();
+
+		assertEquals("<p>first crawl</p>", read(Arrays.asList("http://host/a.html")).get("http://host/a.html"));
+	}
+
+	public void testCompactsReplacedRecords() throws Exception {
+		PageArchive archive = new PageArchive(this.file.getPath());
+		write(archive, "http://host/a.html", "<p>shared</p>");
+		write(archive, "http://host/b.html", "<p>shared</p>");
+		for (int version = 0; version < 5; version++) {
+			write(archive, "http://host/a.html", "<p>version " + version + "</p>");
+		}
+		archive.close();
+		long length = this.file.length();
+
+		// reopening drops the four replaced versions of a, keeping b's body
+		archive = new PageArchive(this.file.getPath());
+		assertTrue(this.file.length() < length);
+		assertEquals(0, archive.compact());
+		assertTrue(archive.contains(ValidatorStore.hash("<p>shared</p>".getBytes("UTF-8"))));
+		assertFalse(archive.contains(ValidatorStore.hash("<p>version 0</p>".getBytes("UTF-8"))));
+		write(archive, "http://host/c.html", "<p>after compacting</p>");
+		archive.close();
+
+		Map<String, String> pages = read(Arrays.asList("http://host/a.html",
+				"http://host/b.html", "http://host/c.html"));
+		assertEquals("<p>version 4</p>", pages.get("http://host/a.html"));
+		assertEquals("<p>shared</p>", pages.get("http://host/b.html"));
+		assertEquals("<p>after compacting</p>", pages.get("http://host/c.html"));
+	}
+
+	public void testCutsOffTornRecord() throws Exception {
+		PageArchive archive = new PageArchive(this.file.getPath());
+		write(archive, "http://host/a.html", "<p>complete</p>");
+		archive.close();
+		long length = this.file.length();
+		FileOutputStream out = new FileOutputStream(this.file, true);
+		out.write("WARC/1.0\r\nWARC-Type: response\r\nContent-Len".getBytes("UTF-8"));
+		out.close();
+
+		archive = new PageArchive(this.file.getPath());
+		assertEquals(length, this.file.length());
+		write(archive, "http://host/b.html", "<p>after the crash</p>");
+		archive.close();
+
+		Set<String> read = PageArchive.readPages(this.file.getPath(),
+				Arrays.asList("http://host/a.html", "http://host/b.html"),
+				new PageArchive.PageHandler() {
+					@Override
+					public boolean handlePage(String url, byte[] content) {
+						return true;
+					}
+				});
+		assertEquals(2, read.size());
+	}
+}
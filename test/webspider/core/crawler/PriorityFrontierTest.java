@@ -0,0 +1,64 @@
+package webspider.core.crawler;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class PriorityFrontierTest extends TestCase {
+
+	private File dir;
+
+	@Override
+	public void setUp() throws Exception {
+		this.dir = new File(System.getProperty("java.io.tmpdir"), "priorityfrontiertest");
+		this.dir.mkdirs();
+	}
+
+	public void testTakesMostUrgentLevelFirst() throws Exception {
+		PriorityFrontier frontier = new PriorityFrontier(this.dir.getPath() + "/host_frontier", 8, 256, 3);
+		frontier.add(new UrlKey("http://localhost/deep.html"), 2);
+		frontier.add(new UrlKey("http://localhost/deeper.html"), 7);
+		frontier.add(new UrlKey("http://localhost/seed.html"), 0);
+		frontier.add(new UrlKey("http://localhost/a.html"), 1);
+		frontier.add(new UrlKey("http://localhost/b.html"), 1);
+		assertEquals(5, frontier.size());
+		assertEquals("http://localhost/seed.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertEquals("http://localhost/a.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertEquals("http://localhost/b.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertEquals("http://localhost/deep.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertEquals("http://localhost/deeper.html", frontier.poll(0, TimeUnit.MILLISECONDS).toString());
+		assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+		frontier.clear();
+	}
+
+	public void testScorers() throws Exception {
+		UrlKey url = new UrlKey("http://localhost/docs/a.html");
+		assertEquals(3, FrontierScorers.byDepth().score(url, 3, 1));
+		FrontierScorer inLinks = FrontierScorers.byInLinks(8);
+		assertEquals(7, inLinks.score(url, 3, 1));
+		assertEquals(6, inLinks.score(url, 3, 2));
+		assertEquals(5, inLinks.score(url, 3, 5));
+		assertEquals(0, inLinks.score(url, 3, 255));
+		FrontierScorer pattern = FrontierScorers.byPattern(new String[] { ".*/docs/.*", ".*\\.html" });
+		assertEquals(0, pattern.score(url, 3, 1));
+		assertEquals(1, pattern.score(new UrlKey("http://localhost/b.html"), 3, 1));
+		assertEquals(2, pattern.score(new UrlKey("http://localhost/b.txt"), 3, 1));
+	}
+
+	public void testBudget() throws Exception {
+		CrawlBudget budget = new CrawlBudget(2, 3, 2, 1);
+		assertTrue(budget.allowsDepth(2));
+		assertFalse(budget.allowsDepth(3));
+		assertEquals("localhost/docs/", budget.prefix(new UrlKey("http://localhost/docs/a/b.html")));
+		assertEquals("localhost/", budget.prefix(new UrlKey("http://localhost/index.html")));
+
+		assertTrue(budget.tryFetch(new UrlKey("http://localhost/docs/a.html")));
+		assertTrue(budget.tryFetch(new UrlKey("http://localhost/docs/b.html")));
+		assertFalse(budget.hasBudget(new UrlKey("http://localhost/docs/c.html")));
+		assertFalse(budget.tryFetch(new UrlKey("http://localhost/docs/c.html")));
+		assertTrue(budget.tryFetch(new UrlKey("http://localhost/index.html")));
+		assertFalse(budget.tryFetch(new UrlKey("http://localhost/about.html")));
+		assertTrue(budget.tryFetch(new UrlKey("http://otherhost/index.html")));
+	}
+}
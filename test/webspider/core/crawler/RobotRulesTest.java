@@ -0,0 +1,74 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class RobotRulesTest extends TestCase {
+
+	private static final String ROBOTS = "User-agent: other\n"
+			+ "Disallow: /\n"
+			+ "\n"
+			+ "User-agent: *\n"
+			+ "Disallow: /private/\n"
+			+ "Allow: /private/public/\n"
+			+ "Disallow: /*.cgi$\n"
+			+ "Disallow: /tmp\n"
+			+ "Crawl-delay: 1.5\n";
+
+	public void testLongestMatchWins() throws MalformedURLException {
+		RobotRules rules = RobotRules.parse(ROBOTS, new URL("http://localhost/"), "crawler");
+		assertTrue(rules.isAllowed("/index.html"));
+		assertFalse(rules.isAllowed("/private/a.html"));
+		assertTrue(rules.isAllowed("/private/public/a.html"));
+		assertTrue(rules.isAllowed("/private"));
+		assertFalse(rules.isAllowed("/tmp/a?x=1"));
+		assertFalse(rules.isAllowed("/tmpfile"));
+		assertEquals(1500, rules.getCrawlDelay());
+	}
+
+	public void testEndAnchor() throws MalformedURLException {
+		RobotRules rules = RobotRules.parse(ROBOTS, new URL("http://localhost/"), "crawler");
+		assertFalse(rules.isAllowed("/foo.cgi"));
+		assertFalse(rules.isAllowed("/a/b.cgi"));
+		assertTrue(rules.isAllowed("/foo.cgi/x"));
+		assertTrue(rules.isAllowed("/foo.cgix"));
+	}
+
+	public void testWildcards() throws MalformedURLException {
+		RobotRules rules = RobotRules.parse("User-agent: *\nDisallow: /*/private/\n"
+				+ "Allow: /shop/*/private/open\nDisallow: /*?session=\nDisallow: /a**z\n",
+				new URL("http://localhost/"), "crawler");
+		assertFalse(rules.isAllowed("/shop/private/a.html"));
+		assertFalse(rules.isAllowed("/x/y/private/"));
+		assertTrue(rules.isAllowed("/private/a.html"));
+		assertTrue(rules.isAllowed("/shop/2/private/open.html"));
+		assertFalse(rules.isAllowed("/list?session=1&page=2"));
+		assertTrue(rules.isAllowed("/list?page=2"));
+		assertFalse(rules.isAllowed("/az"));
+		assertFalse(rules.isAllowed("/abcz/d"));
+		assertTrue(rules.isAllowed("/abc"));
+	}
+
+	public void testNamedGroupTakesPrecedence() throws MalformedURLException {
+		RobotRules rules = RobotRules.parse(ROBOTS, new URL("http://localhost/"), "Other");
+		assertFalse(rules.isAllowed("/index.html"));
+		assertEquals(0, rules.getCrawlDelay());
+	}
+
+	public void testRelativeRulesResolveAgainstBase() throws MalformedURLException {
+		URL base = new URL("http://localhost/~u0082/intelweb2/");
+		RobotRules rules = RobotRules.parse("User-agent: *\nDisallow: maintainers.txt\nDisallow:\n", base, "crawler");
+		assertFalse(rules.isAllowed("/~u0082/intelweb2/maintainers.txt"));
+		assertTrue(rules.isAllowed("/~u0082/intelweb2/index.html"));
+		assertTrue(rules.getDisallowedURLs().contains(new URL(base, "maintainers.txt")));
+	}
+
+	public void testPathsAreCaseSensitive() throws MalformedURLException {
+		RobotRules rules = RobotRules.parse("USER-AGENT: *\nDISALLOW: /Private\n",
+				new URL("http://localhost/"), "crawler");
+		assertFalse(rules.isAllowed("/Private/a.html"));
+		assertTrue(rules.isAllowed("/private/a.html"));
+	}
+}
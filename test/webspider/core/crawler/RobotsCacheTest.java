@@ -0,0 +1,78 @@
+package webspider.core.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import junit.framework.TestCase;
+
+public class RobotsCacheTest extends TestCase {
+
+	/**
+	 * Answers each robots.txt with a status, or fails it with an error for a
+	 * status of 0
+	 */
+	private static class StatusFetcher implements PageFetcher {
+		int status;
+		int fetches = 0;
+
+		@Override
+		public FetchResponse fetch(URL url) throws IOException {
+			this.fetches++;
+			if (this.status == 0) {
+				throw new IOException("connection timed out");
+			}
+			return new FetchResponse(url, this.status,
+					Collections.<String, List<String>> emptyMap(),
+					new ByteArrayInputStream("User-agent: *\nDisallow: /private/\n"
+							.getBytes("UTF-8")), "HTTP/1.1", null);
+		}
+
+		@Override
+		public FetchResponse fetch(URL url, Map<String, String> headers)
+				throws IOException {
+			return fetch(url);
+		}
+
+		@Override
+		public CompletableFuture<FetchResponse> fetchAsync(URL url) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getStats() {
+			return "";
+		}
+	}
+
+	public void testMissingRobotsTxtAllowsAll() throws Exception {
+		StatusFetcher fetcher = new StatusFetcher();
+		fetcher.status = 404;
+		RobotsCache cache = new RobotsCache(fetcher, 60000, 0);
+		assertTrue(cache.getRules(new UrlKey("http://a.test/")).isAllowed("/private/x"));
+		assertTrue(cache.isCached(new UrlKey("http://a.test/")));
+	}
+
+	public void testFailuresDisallowAllUntilRetried() throws Exception {
+		StatusFetcher fetcher = new StatusFetcher();
+		// retried at once, so the next check fetches again
+		RobotsCache cache = new RobotsCache(fetcher, 60000, 0);
+		for (int status : new int[] { 0, 503 }) {
+			fetcher.status = status;
+			UrlKey url = new UrlKey("http://s" + status + ".test/");
+			assertFalse(cache.getRules(url).isAllowed("/index.html"));
+			fetcher.status = 200;
+			RobotRules rules = cache.getRules(url);
+			assertTrue(rules.isAllowed("/index.html"));
+			assertFalse(rules.isAllowed("/private/x"));
+		}
+		assertEquals(4, fetcher.fetches);
+		// read rules are kept for the full time
+		cache.getRules(new UrlKey("http://s0.test/a.html"));
+		assertEquals(4, fetcher.fetches);
+	}
+}
@@ -0,0 +1,70 @@
+package webspider.core.crawler;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SeenURLIndexTest extends TestCase {
+
+	public void testMarkQueuedOnce() {
+		for (SeenURLIndex index : new SeenURLIndex[] { new SeenURLIndex(),
+				new SeenURLIndex(new BloomFilter(1000, 0.01)) }) {
+			for (long fingerprint = 0; fingerprint < 5000; fingerprint++) {
+				assertTrue(index.markQueued(fingerprint * 0x9e3779b97f4a7c15L, 3));
+			}
+			for (long fingerprint = 0; fingerprint < 5000; fingerprint++) {
+				long key = fingerprint * 0x9e3779b97f4a7c15L;
+				assertFalse(index.markQueued(key));
+				assertEquals(SeenURLIndex.QUEUED, index.getState(key));
+				assertEquals(3, index.getDepth(key));
+			}
+			assertEquals(5000, index.size());
+			assertEquals(SeenURLIndex.UNSEEN, index.getState(-7));
+		}
+	}
+
+	public void testConcurrentMarkQueuedOnce() throws Exception {
+		final int threads = 8;
+		final int rounds = 200;
+		final SeenURLIndex index = new SeenURLIndex(new BloomFilter(10000, 0.01));
+		final CyclicBarrier barrier = new CyclicBarrier(threads);
+		final AtomicInteger added = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (long round = 1; round <= rounds; round++) {
+							// every thread queues the same new url at once
+							barrier.await();
+							if (index.markQueued(round * 0x9e3779b97f4a7c15L)) {
+								added.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(rounds, added.get());
+		assertEquals(rounds, index.size());
+	}
+
+	public void testStates() {
+		SeenURLIndex index = new SeenURLIndex(new BloomFilter(100, 0.01));
+		index.setState(42, SeenURLIndex.DEAD);
+		assertEquals(SeenURLIndex.DEAD, index.getState(42));
+		assertFalse(index.markQueued(42));
+		assertTrue(index.markQueued(43));
+		assertTrue(index.claim(43));
+		assertFalse(index.claim(43));
+		assertEquals(2, index.addInLink(43));
+	}
+}
@@ -5,7 +5,10 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -83,4 +86,49 @@ public class SpiderTest extends TestCase {
 		final URL notAllowedUrl = new URL("http://poplar.dcs.shef.ac.uk/~u0082/intelweb2/MAINTAINERS.txt".toLowerCase());
 		assertTrue(this.spider.isLocal(notAllowedUrl));
 	}
+
+	public void testMultipleSeedsAndAllowedHosts() throws Exception{
+		CrawlerImpl multi = new CrawlerImpl(Arrays.asList(new URL("http://seed-one.test/"),
+				new URL("http://SEED-two.test/start.html")),
+				Arrays.asList("Allowed.test"), new SpiderActions());
+		assertTrue(multi.isLocal(new URL("http://seed-one.test/a.html")));
+		assertTrue(multi.isLocal(new URL("http://seed-two.test/b.html")));
+		assertTrue(multi.isLocal(new UrlKey("http://allowed.test/c.html")));
+		assertFalse(multi.isLocal(new URL("http://other.test/")));
+
+		Set<String> queued = new HashSet<String>();
+		UrlKey url;
+		while ((url = multi.getActiveLinkQueue().poll(0, TimeUnit.MILLISECONDS)) != null) {
+			queued.add(url.getHost());
+		}
+		assertEquals(new HashSet<String>(Arrays.asList("seed-one.test", "seed-two.test")), queued);
+	}
+
+	public void testResumeKeepsDepthsAndBudget() throws Exception{
+		int maxPages = Settings.MAX_PAGES_PER_HOST;
+		CrawlJournal journal = new CrawlJournal(Settings.DEFAULT_PATH + "resume.test_crawl", 0, 100);
+		journal.delete();
+		try {
+			Settings.MAX_PAGES_PER_HOST = 2;
+			journal.append(SeenURLIndex.QUEUED, new UrlKey("http://resume.test/a.html"), 1);
+			journal.append(SeenURLIndex.LOCAL, new UrlKey("http://resume.test/a.html"));
+			journal.append(SeenURLIndex.QUEUED, new UrlKey("http://resume.test/b.html"), 1);
+			journal.append(SeenURLIndex.LOCAL, new UrlKey("http://resume.test/b.html"));
+			journal.append(SeenURLIndex.QUEUED, new UrlKey("http://resume.test/c.html"), 2);
+			journal.sync();
+
+			CrawlerImpl resumed = new CrawlerImpl(new URL("http://resume.test/"), new SpiderActions());
+			SeenURLIndex seen = resumed.getSeenURLs();
+			UrlKey queued = new UrlKey("http://resume.test/c.html");
+			assertEquals(SeenURLIndex.QUEUED, seen.getState(queued.getFingerprint()));
+			assertEquals(2, seen.getDepth(queued.getFingerprint()));
+			// the two pages fetched before the resume spent the host's budget
+			UrlKey over = new UrlKey("http://resume.test/d.html");
+			resumed.addURL(over, 1);
+			assertEquals(SeenURLIndex.CLAIMED, seen.getState(over.getFingerprint()));
+		} finally {
+			Settings.MAX_PAGES_PER_HOST = maxPages;
+			journal.delete();
+		}
+	}
 }
@@ -0,0 +1,46 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class UrlCanonicalizerTest extends TestCase {
+
+	private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(true,
+			Arrays.asList("jsessionid", "utm_source"));
+
+	private String canonical(String url) throws MalformedURLException {
+		return this.canonicalizer.canonicalize(new UrlKey(url)).toString();
+	}
+
+	public void testSpellingsOfOnePage() throws MalformedURLException {
+		assertEquals("http://host/b?x=1&y=2", canonical("http://Host:80/a/../b?x=1&y=2"));
+		assertEquals("http://host/b?x=1&y=2", canonical("http://host/b?y=2&x=1"));
+		assertEquals("https://host/", canonical("https://HOST.:443"));
+		assertEquals("http://host:8080/", canonical("http://host:8080/"));
+	}
+
+	public void testDotSegments() throws MalformedURLException {
+		assertEquals("http://host/a/c", canonical("http://host/a/./b/../c"));
+		assertEquals("http://host/", canonical("http://host/../.."));
+		assertEquals("http://host/a/", canonical("http://host/a/b/.."));
+	}
+
+	public void testPercentEncoding() throws MalformedURLException {
+		assertEquals("http://host/b~c", canonical("http://host/%62%7e%63"));
+		assertEquals("http://host/a%2Fb", canonical("http://host/a%2fb"));
+		assertEquals("http://host/a%20b", canonical("http://host/a b"));
+	}
+
+	public void testDroppedParameters() throws MalformedURLException {
+		assertEquals("http://host/a?q=venue", canonical("http://host/a?utm_source=x&q=venue"));
+		assertEquals("http://host/a", canonical("http://host/a?UTM_SOURCE=x"));
+		assertEquals("http://host/a/b", canonical("http://host/a;jsessionid=123/b"));
+	}
+
+	public void testUnchangedUrlIsSameKey() throws MalformedURLException {
+		UrlKey url = new UrlKey("http://host/a?x=1");
+		assertSame(url, this.canonicalizer.canonicalize(url));
+	}
+}
@@ -0,0 +1,31 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class UrlKeyTest extends TestCase {
+
+	public void testNormalizesSchemeHostAndFragment() throws MalformedURLException {
+		UrlKey key = new UrlKey("HTTP://Poplar.DCS.shef.ac.uk/~u0082/Index.html#top");
+		assertEquals("http://poplar.dcs.shef.ac.uk/~u0082/Index.html", key.toString());
+		assertEquals(new UrlKey("http://poplar.dcs.shef.ac.uk"), new UrlKey("http://poplar.dcs.shef.ac.uk/"));
+	}
+
+	public void testEqualKeysShareFingerprint() throws MalformedURLException {
+		UrlKey first = new UrlKey(new URL("http://google.com/a?q=1"));
+		UrlKey second = new UrlKey("http://GOOGLE.com/a?q=1#x");
+		assertEquals(first, second);
+		assertEquals(first.getFingerprint(), second.getFingerprint());
+		assertFalse(first.getFingerprint() == new UrlKey("http://google.com/a?q=2").getFingerprint());
+	}
+
+	public void testParts() throws MalformedURLException {
+		UrlKey key = new UrlKey("http://localhost:8080/a/b.html?x=1");
+		assertEquals("localhost", key.getHost());
+		assertEquals("/a/b.html", key.getPath());
+		assertEquals("/a/b.html?x=1", key.getFile());
+		assertEquals(new UrlKey("http://localhost:8080/a/c.html"), key.resolve("c.html"));
+	}
+}
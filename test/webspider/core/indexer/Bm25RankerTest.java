@@ -0,0 +1,106 @@
+package webspider.core.indexer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class Bm25RankerTest extends TestCase {
+
+	private DocumentTable documents;
+	private InvertedIndex index;
+
+	@Override
+	protected void setUp() {
+		this.documents = new DocumentTable();
+		this.index = new InvertedIndex(this.documents);
+		// filler pages, so spider and web are rare
+		for (int page = 0; page < 20; page++) {
+			add("http://localhost/filler" + page, new String[] { "filler" },
+					new int[] { 10 }, 10);
+		}
+	}
+
+	public void testMoreFrequentFirst() {
+		int once = add("http://localhost/once", new String[] { "spider" }, new int[] { 1 }, 10);
+		int often = add("http://localhost/often", new String[] { "spider" }, new int[] { 5 }, 10);
+		assertTrue(Arrays.equals(new int[] { often, once }, search("spider", 10)));
+	}
+
+	public void testShorterFirst() {
+		int longer = add("http://localhost/long", new String[] { "spider" }, new int[] { 2 }, 100);
+		int shorter = add("http://localhost/short", new String[] { "spider" }, new int[] { 2 }, 5);
+		assertTrue(Arrays.equals(new int[] { shorter, longer }, search("spider", 10)));
+	}
+
+	public void testRarerTermFirst() {
+		for (int page = 0; page < 5; page++) {
+			add("http://localhost/web" + page, new String[] { "web" }, new int[] { 1 }, 10);
+		}
+		int spider = add("http://localhost/spider", new String[] { "spider" }, new int[] { 1 }, 10);
+		assertEquals(spider, search("spider OR web", 10)[0]);
+	}
+
+	public void testBoundedToK() {
+		assertEquals(3, search("filler", 3).length);
+		assertEquals(20, search("filler", 0).length);
+		// equal scores are ordered by ID
+		assertTrue(Arrays.equals(new int[] { 0, 1, 2 }, search("filler", 3)));
+	}
+
+	public void testFrequenciesAcrossBlocks() {
+		int[] spiders = new int[3];
+		int n = 0;
+		for (int page = 0; page < 400; page++) {
+			if (page == 150 || page == 300 || page == 390) {
+				int frequency = (page == 150) ? 1 : (page == 300) ? 9 : 4;
+				spiders[n++] = add("http://localhost/web" + page,
+						new String[] { "spider", "web" }, new int[] { 1, frequency }, 10);
+			} else {
+				add("http://localhost/web" + page, new String[] { "web" },
+						new int[] { 1 + page % 3 }, 10);
+			}
+		}
+		// the frequencies of web are read from its second and third blocks
+		assertTrue(Arrays.equals(new int[] { spiders[1], spiders[2], spiders[0] },
+				search("spider web", 10)));
+	}
+
+	public void testTopMatchesFullSort() {
+		Random random = new Random(25);
+		for (int round = 0; round < 20; round++) {
+			Bm25Ranker.TopPages top = new Bm25Ranker.TopPages(7);
+			final double[] scores = new double[100];
+			Integer[] order = new Integer[scores.length];
+			for (int doc = 0; doc < scores.length; doc++) {
+				scores[doc] = random.nextInt(30);
+				order[doc] = Integer.valueOf(doc);
+				top.offer(doc, scores[doc]);
+			}
+			Arrays.sort(order, new java.util.Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int byScore = Double.compare(scores[b.intValue()], scores[a.intValue()]);
+					return (byScore != 0) ? byScore : a.compareTo(b);
+				}
+			});
+			int[] expected = new int[7];
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = order[i].intValue();
+			}
+			assertTrue(Arrays.equals(expected, top.best()));
+		}
+	}
+
+	private int add(String url, String[] terms, int[] frequencies, int length) {
+		int doc = this.documents.idFor(url);
+		this.index.add(doc, new PageTerms(terms, frequencies, length));
+		return doc;
+	}
+
+	private int[] search(String text, int k) {
+		Query query = Query.parse(text, null);
+		return new Bm25Ranker(this.index, 1.2, 0.75).top(query,
+				query.evaluate(this.index), k);
+	}
+}
@@ -0,0 +1,166 @@
+package webspider.core.indexer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class IndexFileTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.file = File.createTempFile("index", ".bdmi");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.file.delete();
+	}
+
+	public void testWriteAndOpen() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		InvertedIndex index = new InvertedIndex(documents);
+		for (int page = 0; page < 300; page++) {
+			int doc = documents.idFor("http://localhost/page" + page + ".html");
+			index.add(doc, new String[] { "all", "mod" + (page % 7), "caf\u00e9" });
+		}
+		IndexFile.write(index, this.file);
+		assertTrue(IndexFile.isBinary(this.file));
+
+		IndexFile opened = IndexFile.open(this.file);
+		try {
+			assertEquals(index.size(), opened.size());
+			assertEquals(300, opened.getPageCount());
+			assertEquals(index.terms(), new HashSet<String>(opened.terms()));
+			for (String term : index.terms()) {
+				assertEquals(term, toStrings(index.getPages(term)),
+						toStrings(opened.getPages(term)));
+			}
+			assertEquals(300, opened.get("caf\u00e9").size());
+			assertNull(opened.get("missing"));
+			assertNull(opened.get(""));
+			assertEquals("http://localhost/page42.html", opened.getUrl(42));
+			assertEquals(3, opened.getLength(42));
+			assertEquals(900, opened.getTotalLength());
+		} finally {
+			opened.close();
+		}
+	}
+
+	public void testFrequenciesAndLengths() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		InvertedIndex index = new InvertedIndex(documents);
+		index.add(documents.idFor("http://localhost/a"), new PageTerms(
+				new String[] { "spider", "web" }, new int[] { 4, 1 }, 12));
+		index.add(documents.idFor("http://localhost/b"), new PageTerms(
+				new String[] { "spider" }, new int[] { 300 }, 400));
+		IndexFile.write(index, this.file);
+		IndexFile opened = IndexFile.open(this.file);
+		try {
+			assertTrue(Arrays.equals(new int[] { 4, 300 }, opened.get("spider")
+					.getFrequencies()));
+			assertTrue(Arrays.equals(new int[] { 1 }, opened.get("web")
+					.getFrequencies()));
+			assertEquals(12, opened.getLength(0));
+			assertEquals(400, opened.getLength(1));
+			assertEquals(412, opened.getTotalLength());
+		} finally {
+			opened.close();
+		}
+	}
+
+	public void testCursorSkipsBlocks() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		InvertedIndex index = new InvertedIndex(documents);
+		for (int page = 0; page < 1000; page++) {
+			int doc = documents.idFor("http://localhost/page" + page + ".html");
+			index.add(doc, new PageTerms(new String[] { "all" },
+					new int[] { page % 9 + 1 }, 1));
+		}
+		IndexFile.write(index, this.file);
+		IndexFile opened = IndexFile.open(this.file);
+		try {
+			PostingList.Cursor cursor = opened.get("all").cursor();
+			assertEquals(700, cursor.advance(700));
+			assertEquals(700 % 9 + 1, cursor.frequency());
+			assertEquals(999, cursor.advance(999));
+			assertEquals(PostingList.Cursor.END, cursor.next());
+		} finally {
+			opened.close();
+		}
+	}
+
+	public void testTermsSorted() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		InvertedIndex index = new InvertedIndex(documents);
+		index.add(documents.idFor("http://localhost/"), new String[] { "b", "c", "a" });
+		IndexFile.write(index, this.file);
+		IndexFile opened = IndexFile.open(this.file);
+		try {
+			List<String> terms = new ArrayList<String>(opened.terms());
+			assertEquals("[a, b, c]", terms.toString());
+		} finally {
+			opened.close();
+		}
+	}
+
+	public void testConvertText() throws Exception {
+		File text = File.createTempFile("index", ".txt");
+		try {
+			FileWriter out = new FileWriter(text);
+			out.write("apple http://localhost/a.html http://localhost/b.html \n");
+			out.write("pear http://localhost/b.html \n");
+			out.close();
+			assertFalse(IndexFile.isBinary(text));
+			IndexFile.convert(text, this.file);
+		} finally {
+			text.delete();
+		}
+		IndexFile opened = IndexFile.open(this.file);
+		try {
+			assertEquals(2, opened.size());
+			assertEquals(2, opened.getPageCount());
+			assertEquals(2, opened.getPages("apple").size());
+			assertEquals(1, opened.getPages("pear").size());
+			assertEquals("http://localhost/b.html", opened.getPages("pear")
+					.iterator().next().toString());
+		} finally {
+			opened.close();
+		}
+	}
+
+	public void testRejectsOtherVersions() throws Exception {
+		IndexFile.write(new InvertedIndex(new DocumentTable()), this.file);
+		RandomAccessFile raw = new RandomAccessFile(this.file, "rw");
+		raw.seek(4);
+		raw.writeInt(IndexFile.VERSION + 1);
+		raw.close();
+		try {
+			IndexFile.open(this.file).close();
+			fail("opened an unknown version");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Compares the pages as strings, as URL.equals resolves hosts
+	 */
+	private static Set<String> toStrings(Set<URL> urls) {
+		Set<String> strings = new HashSet<String>();
+		for (URL url : urls) {
+			strings.add(url.toString());
+		}
+		return strings;
+	}
+}
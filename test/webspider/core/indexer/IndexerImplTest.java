@@ -0,0 +1,47 @@
+package webspider.core.indexer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.net.URL;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import webspider.actions.SpiderActions;
+
+public class IndexerImplTest extends TestCase {
+
+	private File stopFile;
+	private File indexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.stopFile = File.createTempFile("stop", ".txt");
+		FileWriter out = new FileWriter(this.stopFile);
+		out.write("the\r\nof\r\n");
+		out.close();
+		this.indexFile = File.createTempFile("index", ".bdmi");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.stopFile.delete();
+		this.indexFile.delete();
+	}
+
+	public void testSearchLoadedIndexDropsStopWords() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		InvertedIndex index = new InvertedIndex(documents);
+		index.add(documents.idFor("http://localhost/a.html"), new String[] { "spider", "web" });
+		index.add(documents.idFor("http://localhost/b.html"), new String[] { "web" });
+		IndexFile.write(index, this.indexFile);
+
+		// a search-only indexer, which has not read the stop words to index
+		IndexerImpl indexer = new IndexerImpl(new SpiderActions());
+		indexer.setStopFileName(this.stopFile.getPath());
+		indexer.loadIndexTable(this.indexFile.getPath());
+		Set<URL> pages = indexer.search("the spider of the web");
+		assertNotNull(pages);
+		assertEquals(1, pages.size());
+		assertEquals("http://localhost/a.html", pages.iterator().next().toString());
+	}
+}
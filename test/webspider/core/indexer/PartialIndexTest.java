@@ -0,0 +1,52 @@
+package webspider.core.indexer;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class PartialIndexTest extends TestCase {
+
+	public void testReduceMatchesOneIndex() throws Exception {
+		DocumentTable documents = new DocumentTable();
+		PartialIndex whole = new PartialIndex(new DocumentTable());
+		List<PartialIndex> partials = new ArrayList<PartialIndex>();
+		for (int i = 0; i < 7; i++) {
+			partials.add(new PartialIndex(documents));
+		}
+		for (int page = 0; page < 200; page++) {
+			URL url = new URL("http://localhost/page" + page + ".html");
+			String[] terms = { "all", "mod" + (page % 5), "page" + page };
+			whole.add(url, terms);
+			partials.get(page % partials.size()).add(url, terms);
+		}
+		PartialIndex merged = PartialIndex.reduce(documents, partials);
+		assertEquals(200, merged.getPageCount());
+		assertEquals(whole.getIndex().terms(), merged.getIndex().terms());
+		for (String term : whole.getIndex().terms()) {
+			assertEquals(term, toStrings(whole.getIndex().getPages(term)),
+					toStrings(merged.getIndex().getPages(term)));
+		}
+		assertEquals(200, merged.getIndex().get("all").size());
+		assertEquals(40, merged.getIndex().get("mod3").size());
+	}
+
+	public void testReduceNothing() {
+		assertTrue(PartialIndex.reduce(new DocumentTable(),
+				new ArrayList<PartialIndex>()).getIndex().isEmpty());
+	}
+
+	/**
+	 * Compares the pages as strings, as URL.equals resolves hosts
+	 */
+	private static Set<String> toStrings(Set<URL> urls) {
+		Set<String> strings = new HashSet<String>();
+		for (URL url : urls) {
+			strings.add(url.toString());
+		}
+		return strings;
+	}
+}
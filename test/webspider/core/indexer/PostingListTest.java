@@ -0,0 +1,193 @@
+package webspider.core.indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PostingListTest extends TestCase {
+
+	public void testRoundTrip() {
+		Random random = new Random(22);
+		for (int length : new int[] { 0, 1, 127, 128, 129, 1000 }) {
+			int[] ids = new int[length];
+			int id = -1;
+			for (int i = 0; i < length; i++) {
+				// mostly small gaps, with a large one now and then
+				id += (random.nextInt(20) == 0) ? 1 + random.nextInt(100000)
+						: 1 + random.nextInt(4);
+				ids[i] = id;
+			}
+			PostingList list = PostingList.of(ids, length);
+			assertEquals(length, list.size());
+			assertTrue(Arrays.equals(ids, list.toArray()));
+		}
+	}
+
+	public void testSmallGapsCompress() {
+		PostingList list = new PostingList();
+		for (int id = 0; id < 10000; id++) {
+			list.add(id);
+		}
+		// one bit a gap and a small header per block, besides the frequencies
+		assertTrue(list.getEncodedBytes() - list.getFrequencyBytes() < 10000 / 4);
+	}
+
+	public void testLargeIds() {
+		int[] ids = { 0, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+		assertTrue(Arrays.equals(ids, PostingList.of(ids, 3).toArray()));
+	}
+
+	public void testAddOutOfOrder() {
+		PostingList list = new PostingList();
+		for (int id = 0; id < 300; id += 2) {
+			list.add(id);
+		}
+		assertTrue(list.add(151));
+		assertFalse(list.add(150));
+		assertFalse(list.add(298));
+		assertEquals(151, list.size());
+		int[] ids = list.toArray();
+		assertEquals(151, ids[76]);
+		assertEquals(152, ids[77]);
+	}
+
+	public void testUnion() {
+		PostingList evens = new PostingList();
+		PostingList odds = new PostingList();
+		for (int id = 0; id < 500; id++) {
+			((id % 2 == 0) ? evens : odds).add(id);
+		}
+		odds.add(1000);
+		PostingList union = PostingList.union(evens, odds);
+		assertEquals(501, union.size());
+		int[] ids = union.toArray();
+		for (int id = 0; id < 500; id++) {
+			assertEquals(id, ids[id]);
+		}
+		assertEquals(1000, ids[500]);
+	}
+
+	public void testUnionAppends() {
+		PostingList a = PostingList.of(new int[] { 1, 2, 3 }, 3);
+		PostingList b = PostingList.of(new int[] { 3, 4, 5 }, 2);
+		PostingList c = PostingList.of(new int[] { 7, 9 }, 2);
+		PostingList ab = PostingList.union(a, b);
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3, 4 }, ab.toArray()));
+		PostingList abc = PostingList.union(ab, c);
+		assertTrue(Arrays.equals(new int[] { 1, 2, 3, 4, 7, 9 }, abc.toArray()));
+	}
+
+	public void testFrequencies() {
+		PostingList list = new PostingList();
+		for (int id = 0; id < 300; id += 2) {
+			list.add(id, id + 1);
+		}
+		assertTrue(list.add(151, 7));
+		int[] frequencies = list.getFrequencies();
+		assertEquals(151, frequencies.length);
+		assertEquals(1, frequencies[0]);
+		assertEquals(151, frequencies[75]);
+		assertEquals(7, frequencies[76]);
+		assertEquals(153, frequencies[77]);
+
+		PostingList other = PostingList.of(new int[] { 1, 1000 }, new int[] { 5, 9 }, 2);
+		int[] merged = PostingList.union(list, other).getFrequencies();
+		assertEquals(5, merged[1]);
+		assertEquals(9, merged[merged.length - 1]);
+		assertTrue(Arrays.equals(new int[] { 1, 1 }, PostingList.of(new int[] { 3, 4 }, 2)
+				.getFrequencies()));
+	}
+
+	public void testCursor() {
+		PostingList list = new PostingList();
+		for (int id = 0; id < 1000; id += 3) {
+			list.add(id, id % 5 + 1);
+		}
+		PostingList.Cursor cursor = list.cursor();
+		assertEquals(-1, cursor.doc());
+		assertEquals(0, cursor.next());
+		assertEquals(3, cursor.next());
+		assertEquals(3, cursor.advance(2));
+		// into the third block, skipping the second
+		assertEquals(801, cursor.advance(800));
+		assertEquals(801 % 5 + 1, cursor.frequency());
+		assertEquals(804, cursor.next());
+		// into the tail
+		assertEquals(999, cursor.advance(998));
+		assertEquals(999 % 5 + 1, cursor.frequency());
+		assertEquals(PostingList.Cursor.END, cursor.next());
+		assertEquals(PostingList.Cursor.END, list.cursor().advance(1000));
+		assertEquals(PostingList.Cursor.END, new PostingList().cursor().next());
+	}
+
+	public void testCursorReadsEveryId() {
+		Random random = new Random(24);
+		for (int length : new int[] { 1, 127, 128, 129, 1000 }) {
+			int[] ids = new int[length];
+			int id = -1;
+			for (int i = 0; i < length; i++) {
+				id += 1 + random.nextInt(50);
+				ids[i] = id;
+			}
+			PostingList list = PostingList.of(ids, length);
+			PostingList.Cursor cursor = list.cursor();
+			for (int i = 0; i < length; i++) {
+				assertEquals(ids[i], cursor.next());
+			}
+			assertEquals(PostingList.Cursor.END, cursor.next());
+			// every ID is found, and each gap finds the ID after it
+			cursor = list.cursor();
+			for (int i = 0; i < length; i++) {
+				int after = (i == 0) ? 0 : ids[i - 1] + 1;
+				assertEquals(ids[i], cursor.advance(Math.max(after, ids[i] - 1
+						- random.nextInt(2))));
+				assertEquals(ids[i], cursor.advance(ids[i]));
+			}
+		}
+	}
+
+	public void testCursorWithoutSkipData() throws Exception {
+		int[] ids = new int[300];
+		int[] frequencies = new int[300];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i * 7;
+			frequencies[i] = i + 1;
+		}
+		PostingList list = PostingList.of(ids, frequencies, ids.length);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		list.writeTo(new DataOutputStream(bytes));
+		assertEquals(list.getEncodedBytes() + list.getSkipBytes(), bytes.size());
+		byte[] all = bytes.toByteArray();
+		int blockBytes = list.getBlockBytes();
+		int frequencyBytes = list.getFrequencyBytes();
+		int tailBytes = list.getEncodedBytes() - blockBytes - frequencyBytes;
+		byte[] blocks = Arrays.copyOfRange(all, 0, blockBytes);
+		byte[] tail = Arrays.copyOfRange(all, blockBytes, blockBytes + tailBytes);
+		byte[] encodedFrequencies = Arrays.copyOfRange(all, blockBytes + tailBytes,
+				blockBytes + tailBytes + frequencyBytes);
+		ByteBuffer skips = ByteBuffer.wrap(all, list.getEncodedBytes(),
+				list.getSkipBytes());
+		for (PostingList wrapped : new PostingList[] {
+				PostingList.wrap(blocks, tail, encodedFrequencies, 300, 299 * 7, skips),
+				PostingList.wrap(blocks, tail, encodedFrequencies, 300, 299 * 7, null) }) {
+			PostingList.Cursor cursor = wrapped.cursor();
+			assertEquals(140, cursor.advance(138));
+			assertEquals(21, cursor.frequency());
+			assertEquals(280 * 7, cursor.advance(280 * 7));
+			assertEquals(281, cursor.frequency());
+			// appending after reading keeps the skip data of the tail's block
+			for (int i = 300; i < 400; i++) {
+				wrapped.add(i * 7, i + 1);
+			}
+			cursor = wrapped.cursor();
+			assertEquals(260 * 7, cursor.advance(260 * 7 - 3));
+			assertEquals(261, cursor.frequency());
+			assertEquals(399 * 7, cursor.advance(399 * 7));
+			assertEquals(400, cursor.frequency());
+		}
+	}
+}
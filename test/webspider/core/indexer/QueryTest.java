@@ -0,0 +1,119 @@
+package webspider.core.indexer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class QueryTest extends TestCase {
+
+	private InvertedIndex index;
+
+	@Override
+	protected void setUp() {
+		DocumentTable documents = new DocumentTable();
+		this.index = new InvertedIndex(documents);
+		// page n holds "all", "even" or "odd", and "three" if n % 3 == 0
+		for (int page = 0; page < 30; page++) {
+			int doc = documents.idFor("http://localhost/" + page);
+			this.index.add("all", doc);
+			this.index.add((page % 2 == 0) ? "even" : "odd", doc);
+			if (page % 3 == 0) {
+				this.index.add("three", doc);
+			}
+		}
+	}
+
+	public void testParse() {
+		assertEquals("spider", Query.parse("Spider", null).toString());
+		assertEquals("(spider AND web)", Query.parse("spider web", null).toString());
+		assertEquals("(spider AND web)", Query.parse("spider AND web", null).toString());
+		assertEquals("(a OR (b AND NOT c))", Query.parse("a OR b NOT c", null).toString());
+		assertEquals("((a OR b) AND c)", Query.parse("(a OR b) c", null).toString());
+	}
+
+	public void testStopWordsDropped() {
+		TermTable stopWords = new TermTable();
+		stopWords.add("the");
+		assertEquals("spider", Query.parse("the spider", stopWords).toString());
+		assertNull(Query.parse("the", stopWords));
+		assertNull(Query.parse("   ", stopWords));
+	}
+
+	public void testMalformed() {
+		for (String query : new String[] { "a AND", "(a", "a)", "OR a", "NOT" }) {
+			try {
+				Query.parse(query, null);
+				fail(query);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testEvaluate() {
+		assertEquals(5, search("even three").length);
+		assertEquals(5, search("even AND three").length);
+		assertEquals(20, search("even OR three").length);
+		assertEquals(10, search("even NOT three").length);
+		assertEquals(10, search("NOT three AND all NOT odd").length);
+		assertEquals(20, search("NOT three").length);
+		assertEquals(0, search("even odd").length);
+		assertEquals(0, search("missing all").length);
+		assertEquals(30, search("missing OR all").length);
+		assertTrue(Arrays.equals(new int[] { 0, 6, 12, 18, 24 },
+				search("(three AND even) OR (three AND missing)")));
+	}
+
+	public void testSetOperationsMatchNaive() {
+		Random random = new Random(24);
+		for (int round = 0; round < 50; round++) {
+			int[] a = randomIds(random, random.nextInt(50));
+			int[] b = randomIds(random, random.nextInt(2000));
+			TreeSet<Integer> and = new TreeSet<Integer>();
+			TreeSet<Integer> or = new TreeSet<Integer>();
+			TreeSet<Integer> not = new TreeSet<Integer>();
+			for (int id : a) {
+				or.add(id);
+				not.add(id);
+			}
+			for (int id : b) {
+				if (or.contains(id)) {
+					and.add(id);
+				}
+				or.add(id);
+				not.remove(id);
+			}
+			assertEquals(and.toString(), toString(Query.intersect(a, b)));
+			assertEquals(and.toString(), toString(Query.intersect(b, a)));
+			assertEquals(or.toString(), toString(Query.union(a, b)));
+			assertEquals(not.toString(), toString(Query.difference(a, b)));
+		}
+	}
+
+	private int[] search(String query) {
+		return Query.parse(query, null).evaluate(this.index);
+	}
+
+	private static int[] randomIds(Random random, int count) {
+		TreeSet<Integer> ids = new TreeSet<Integer>();
+		while (ids.size() < count) {
+			ids.add(Integer.valueOf(random.nextInt(5000)));
+		}
+		int[] array = new int[count];
+		int i = 0;
+		for (Integer id : ids) {
+			array[i++] = id.intValue();
+		}
+		return array;
+	}
+
+	private static String toString(int[] ids) {
+		TreeSet<Integer> set = new TreeSet<Integer>();
+		for (int id : ids) {
+			set.add(Integer.valueOf(id));
+		}
+		return set.toString();
+	}
+}
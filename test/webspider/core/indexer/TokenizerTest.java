@@ -0,0 +1,75 @@
+package webspider.core.indexer;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TokenizerTest extends TestCase {
+
+	private String[] terms(Tokenizer tokenizer, String html) throws Exception {
+		return tokenizer.distinctTerms(html.getBytes("UTF-8"));
+	}
+
+	public void testFoldsCaseAndDropsPunctuation() throws Exception {
+		Tokenizer tokenizer = new Tokenizer(null);
+		assertEquals(Arrays.asList("dont", "stop", "me", "now", "2010"),
+				Arrays.asList(terms(tokenizer, "<p>Don't STOP me,\tnow!</p> <b>2010</b> me")));
+		assertEquals(Arrays.asList("caf\u00e9", "bar"),
+				Arrays.asList(terms(tokenizer, "Caf&#233;&nbsp;bar")));
+		assertEquals(Arrays.asList("caf\u00e9", "2012", "na\u00efve"),
+				Arrays.asList(terms(tokenizer, "caf&eacute; &copy;2012 na&iuml;ve")));
+	}
+
+	public void testSkipsMarkupAndUrls() throws Exception {
+		Tokenizer tokenizer = new Tokenizer(null);
+		assertEquals(Arrays.asList("title", "see", "and", "httpnot", "a", "url", "b"),
+				Arrays.asList(terms(tokenizer, "<title>Title</title><script>var x = 1;</script>"
+						+ "<!-- comment --><p>see http://example.com/a?b=c and http:not a url</p>"
+						+ "<style>p { color: red }</style>a<i>b</i>")));
+	}
+
+	public void testDropsStopWords() throws Exception {
+		TermTable stopWords = new TermTable();
+		stopWords.add("the");
+		stopWords.add("of");
+		Tokenizer tokenizer = new Tokenizer(stopWords);
+		assertEquals(Arrays.asList("end", "world"),
+				Arrays.asList(terms(tokenizer, "The end of the World")));
+	}
+
+	public void testReusesTermStrings() throws Exception {
+		Tokenizer tokenizer = new Tokenizer(null);
+		String first = terms(tokenizer, "<p>shared</p>")[0];
+		assertSame(first, terms(tokenizer, "<p>Shared word</p>")[0]);
+	}
+
+	public void testTermTableGrows() throws Exception {
+		TermTable table = new TermTable();
+		for (int i = 0; i < 5000; i++) {
+			table.add("term" + i);
+		}
+		assertEquals(5000, table.size());
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(table.contains("term" + i));
+		}
+		assertFalse(table.contains("term5000"));
+		char[] term = "term42".toCharArray();
+		assertEquals("term42", table.mark(term, 0, term.length, 1));
+		assertNull(table.mark(term, 0, term.length, 1));
+		assertEquals("term42", table.mark(term, 0, term.length, 2));
+	}
+
+	public void testCountsTerms() throws Exception {
+		TermTable stopWords = new TermTable();
+		stopWords.add("the");
+		Tokenizer tokenizer = new Tokenizer(stopWords);
+		PageTerms page = tokenizer.pageTerms("<p>Spider the web, spider</p> SPIDER"
+				.getBytes("UTF-8"));
+		assertEquals(Arrays.asList("spider", "web"), Arrays.asList(page.getTerms()));
+		assertTrue(Arrays.equals(new int[] { 3, 1 }, page.getFrequencies()));
+		assertEquals(4, page.getLength());
+		// positions start over on the next page
+		page = tokenizer.pageTerms("<p>web web</p>".getBytes("UTF-8"));
+		assertTrue(Arrays.equals(new int[] { 2 }, page.getFrequencies()));
+	}
+}
@@ -2,6 +2,8 @@ package webspider.actions;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -25,6 +27,7 @@ public class CrawlerActions implements ActionListener{
     private JLabel stats_internal;
     private JLabel stats_external;
     private JLabel stats_disallowed;
+    private JLabel stats_filter;
     
     private SpiderActions actions;
     /**
@@ -77,6 +80,15 @@ public class CrawlerActions implements ActionListener{
     public void startSpider(String url){
         crawler.startIWSpider(url);
     }
+
+    /**
+     * function starts crawling from several seeds, crawling the pages of
+     * their hosts and of Settings.ALLOWED_HOSTS
+     * @param seeds the urls to start from
+     */
+    public void startSpider(List<String> seeds){
+        crawler.startIWSpider(seeds, Arrays.asList(Settings.ALLOWED_HOSTS));
+    }
     
     /**
      * reset GUI buttons to orignal state
@@ -102,6 +114,7 @@ public class CrawlerActions implements ActionListener{
             stats_internal.setText("Non-Parsable Links : " + crawler.getNonParsableLinksCount());
             stats_external.setText("External Links : " + crawler.getExternalLinksCount());
             stats_disallowed.setText("Disallowed Links : " + crawler.getDisallowedLinksCount());
+            stats_filter.setText(crawler.getSeenFilterStats());
         }
     }
     /**
@@ -152,6 +165,14 @@ public class CrawlerActions implements ActionListener{
         this.stats_disallowed = stats_disallowed;
     }
 
+    /**
+     * seen url filter label setter
+     * @param stats_filter
+     */
+    public void initFilter(JLabel stats_filter){
+        this.stats_filter = stats_filter;
+    }
+
     //ELEMENTS
     /**
      * control button setter
@@ -3,11 +3,15 @@ package webspider.actions;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import webspider.Settings;
+import webspider.core.indexer.IndexFile;
 import webspider.core.indexer.Indexer;
 
 /**
@@ -93,6 +97,36 @@ public class IndexerActions implements ActionListener{
         indexer.IndexCrawledPages(inputFile.getAbsolutePath(), outputFile);
     }
 
+    /**
+     * crawls a site and indexes its pages in the same pass
+     * @param url the base url
+     */
+    public void startPipeline(String url){
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            actions.log("Invalid URL: " + url);
+            return;
+        }
+        String outputFile = Settings.DEFAULT_PATH + "/" + host + "_index" + Settings.FILE_INDEX_EXTENSION;
+        indexer.crawlAndIndex(url, outputFile);
+    }
+
+    /**
+     * converts an index written in the text format to the binary format
+     * @param inputpath the index in the text format
+     * @param outputpath the binary index to write
+     */
+    public void convertIndex(String inputpath, String outputpath){
+        try {
+            IndexFile.convert(new File(inputpath), new File(outputpath));
+            actions.log("Index converted to " + outputpath);
+        } catch (IOException e) {
+            actions.log("Could not convert " + inputpath + ": " + e.getMessage());
+        }
+    }
+
     // Statistics elements
     /**
      * Update GUI statistic information
@@ -0,0 +1,115 @@
+package webspider.core.crawler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Bloom filter over 64 bit url fingerprints, kept outside the Java heap in
+ * a direct buffer. It answers "definitely not seen" or "possibly seen"; only
+ * the second answer has to be confirmed by an exact lookup.
+ */
+public class BloomFilter {
+
+	/**
+	 * The bits of the filter
+	 */
+	private final ByteBuffer bits;
+
+	/**
+	 * Number of bits in the filter
+	 */
+	private final long bitCount;
+
+	/**
+	 * Number of bits set per fingerprint
+	 */
+	private final int hashCount;
+
+	/**
+	 * Number of fingerprints added
+	 */
+	private volatile long insertions = 0;
+
+	/**
+	 * Creates a filter sized for an expected number of fingerprints and a
+	 * target false positive rate
+	 *
+	 * @param expectedInsertions
+	 *            number of fingerprints expected to be added
+	 * @param falsePositiveRate
+	 *            target false positive rate, between 0 and 1
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		long n = Math.max(1, expectedInsertions);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate)
+				/ (Math.log(2) * Math.log(2)));
+		// a direct buffer is indexed by int, so the filter is capped at 2^34 bits
+		m = Math.max(64, Math.min(m, (long) Integer.MAX_VALUE * 8));
+		this.bitCount = m;
+		this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+		this.bits = ByteBuffer.allocateDirect((int) ((m + 7) / 8));
+	}
+
+	/**
+	 * Adds a fingerprint
+	 *
+	 * @param fingerprint
+	 *            the fingerprint to add
+	 */
+	public synchronized void put(long fingerprint) {
+		int h1 = (int) fingerprint;
+		int h2 = (int) (fingerprint >>> 32);
+		for (int i = 1; i <= this.hashCount; i++) {
+			long bit = index(h1 + (long) i * h2);
+			int offset = (int) (bit >>> 3);
+			this.bits.put(offset, (byte) (this.bits.get(offset) | (1 << (bit & 7))));
+		}
+		this.insertions++;
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint to check
+	 * @return false if the fingerprint has definitely not been added
+	 */
+	public boolean mightContain(long fingerprint) {
+		int h1 = (int) fingerprint;
+		int h2 = (int) (fingerprint >>> 32);
+		for (int i = 1; i <= this.hashCount; i++) {
+			long bit = index(h1 + (long) i * h2);
+			if ((this.bits.get((int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the off heap memory used by the filter in bytes
+	 */
+	public long getMemoryBytes() {
+		return this.bits.capacity();
+	}
+
+	/**
+	 * @return the number of fingerprints added
+	 */
+	public long getInsertions() {
+		return this.insertions;
+	}
+
+	/**
+	 * The false positive rate expected at the current number of insertions
+	 *
+	 * @return the expected false positive rate, between 0 and 1
+	 */
+	public double getExpectedFalsePositiveRate() {
+		double fill = 1 - Math.exp(-(double) this.hashCount * this.insertions
+				/ this.bitCount);
+		return Math.pow(fill, this.hashCount);
+	}
+
+	private long index(long hash) {
+		// flip negative hashes, as in the Kirsch-Mitzenmacher construction
+		return ((hash < 0) ? ~hash : hash) % this.bitCount;
+	}
+}
@@ -0,0 +1,199 @@
+package webspider.core.crawler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import webspider.Settings;
+
+/**
+ * Limits how far a crawl goes: how many links deep from a seed, and how many
+ * pages it fetches from each host and from each path prefix of a host, such
+ * as the first directory of the path. A limit below zero is no limit. The
+ * urls turned away are counted, so the stats show which budget ran out.
+ */
+public class CrawlBudget {
+
+	private final int maxDepth;
+	private final int maxPagesPerHost;
+	private final int maxPagesPerPrefix;
+
+	/**
+	 * Number of path segments in a path prefix
+	 */
+	private final int prefixSegments;
+
+	/**
+	 * Pages fetched by host, and by host and path prefix
+	 */
+	private final ConcurrentMap<String, AtomicInteger> hostPages = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentMap<String, AtomicInteger> prefixPages = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Urls turned away by each limit
+	 */
+	private final AtomicLong overDepth = new AtomicLong();
+	private final AtomicLong overHostBudget = new AtomicLong();
+	private final AtomicLong overPrefixBudget = new AtomicLong();
+
+	/**
+	 * @param maxDepth
+	 *            largest number of links from a seed to a url crawled
+	 * @param maxPagesPerHost
+	 *            largest number of pages fetched from a host
+	 * @param maxPagesPerPrefix
+	 *            largest number of pages fetched under a path prefix
+	 * @param prefixSegments
+	 *            number of path segments in a path prefix
+	 */
+	public CrawlBudget(int maxDepth, int maxPagesPerHost,
+			int maxPagesPerPrefix, int prefixSegments) {
+		this.maxDepth = maxDepth;
+		this.maxPagesPerHost = maxPagesPerHost;
+		this.maxPagesPerPrefix = maxPagesPerPrefix;
+		this.prefixSegments = Math.max(1, prefixSegments);
+	}
+
+	/**
+	 * Creates a budget configured by Settings.MAX_CRAWL_DEPTH,
+	 * Settings.MAX_PAGES_PER_HOST, Settings.MAX_PAGES_PER_PATH_PREFIX and
+	 * Settings.PATH_PREFIX_SEGMENTS
+	 *
+	 * @return the budget
+	 */
+	public static CrawlBudget fromSettings() {
+		return new CrawlBudget(Settings.MAX_CRAWL_DEPTH,
+				Settings.MAX_PAGES_PER_HOST, Settings.MAX_PAGES_PER_PATH_PREFIX,
+				Settings.PATH_PREFIX_SEGMENTS);
+	}
+
+	/**
+	 * Checks that a url is not too deep to queue, counting it if it is
+	 *
+	 * @param depth
+	 *            number of links from a seed to the url
+	 * @return may it be queued?
+	 */
+	public boolean allowsDepth(int depth) {
+		if (this.maxDepth >= 0 && depth > this.maxDepth) {
+			this.overDepth.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that the host and path prefix of a url have pages left to fetch,
+	 * without using them. Urls of a spent budget need not be queued.
+	 *
+	 * @param url
+	 *            the url
+	 * @return is there budget left for the url?
+	 */
+	public boolean hasBudget(UrlKey url) {
+		if (this.maxPagesPerHost >= 0
+				&& count(this.hostPages, url.getHost()).get() >= this.maxPagesPerHost) {
+			this.overHostBudget.incrementAndGet();
+			return false;
+		}
+		if (this.maxPagesPerPrefix >= 0
+				&& count(this.prefixPages, prefix(url)).get() >= this.maxPagesPerPrefix) {
+			this.overPrefixBudget.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Uses a page of the budget of a url's host and path prefix, before it is
+	 * fetched
+	 *
+	 * @param url
+	 *            the url
+	 * @return false if either budget is spent, so the url is not fetched
+	 */
+	public boolean tryFetch(UrlKey url) {
+		if (!take(count(this.hostPages, url.getHost()), this.maxPagesPerHost)) {
+			this.overHostBudget.incrementAndGet();
+			return false;
+		}
+		if (!take(count(this.prefixPages, prefix(url)), this.maxPagesPerPrefix)) {
+			// give the host's page back
+			count(this.hostPages, url.getHost()).decrementAndGet();
+			this.overPrefixBudget.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Counts a page fetched before, by a crawl this one resumes, into the
+	 * budget of its host and path prefix, whether or not there is budget
+	 * left for it
+	 *
+	 * @param url
+	 *            the url of the page
+	 */
+	public void recordFetched(UrlKey url) {
+		count(this.hostPages, url.getHost()).incrementAndGet();
+		count(this.prefixPages, prefix(url)).incrementAndGet();
+	}
+
+	/**
+	 * @return a description of the urls each limit turned away
+	 */
+	public String getStats() {
+		return "Over max depth : " + this.overDepth.get()
+				+ ", over host budget : " + this.overHostBudget.get()
+				+ ", over path prefix budget : " + this.overPrefixBudget.get();
+	}
+
+	/**
+	 * @return the host and the first path segments of a url
+	 */
+	String prefix(UrlKey url) {
+		String file = url.getFile();
+		int end = file.indexOf('?');
+		String path = (end == -1) ? file : file.substring(0, end);
+		int slash = 0;
+		for (int i = 0; i < this.prefixSegments; i++) {
+			int next = path.indexOf('/', slash + 1);
+			if (next == -1) {
+				// the last segment is a page, not a directory
+				break;
+			}
+			slash = next;
+		}
+		return url.getHost() + path.substring(0, slash + 1);
+	}
+
+	private static boolean take(AtomicInteger count, int max) {
+		if (max < 0) {
+			count.incrementAndGet();
+			return true;
+		}
+		while (true) {
+			int current = count.get();
+			if (current >= max) {
+				return false;
+			}
+			if (count.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private static AtomicInteger count(ConcurrentMap<String, AtomicInteger> counts,
+			String key) {
+		AtomicInteger count = counts.get(key);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = counts.putIfAbsent(key, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		return count;
+	}
+}
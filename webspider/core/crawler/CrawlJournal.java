@@ -0,0 +1,409 @@
+package webspider.core.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A write-ahead journal of a crawl, so a crawl can be resumed after the JVM
+ * dies. Every url added to the frontier and every classification of a url is
+ * appended as a line "state url", where state is a SeenURLIndex state; a url
+ * queued more than one link from a seed is appended as "state depth url", so
+ * a resumed crawl keeps to its depth limit. The
+ * journal is flushed and forced to disk at most every sync interval, and as
+ * it is written in order, whatever survives a crash is a consistent prefix of
+ * the crawl.
+ * <p>
+ * Once enough records have been appended, the journal is rotated and folded
+ * into a compacted snapshot in the background, holding one line per url with
+ * its latest state. Recovery reads the snapshot and then the journals.
+ */
+public class CrawlJournal {
+
+	/**
+	 * Extension of the current journal
+	 */
+	public static final String JOURNAL_EXTENSION = "_journal.log";
+
+	/**
+	 * Extension of a rotated journal being folded into the snapshot
+	 */
+	public static final String ROTATED_EXTENSION = "_journal.old";
+
+	/**
+	 * Extension of the snapshot
+	 */
+	public static final String SNAPSHOT_EXTENSION = "_checkpoint.snap";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File journalFile;
+	private final File rotatedFile;
+	private final File snapshotFile;
+
+	/**
+	 * Milliseconds between forcing the journal to disk
+	 */
+	private final long syncInterval;
+
+	/**
+	 * Number of records after which a snapshot is taken
+	 */
+	private final int checkpointInterval;
+
+	/**
+	 * The open journal, or null before the first record
+	 */
+	private FileOutputStream stream;
+	private Writer writer;
+
+	/**
+	 * Records appended since the last rotation
+	 */
+	private int records = 0;
+
+	/**
+	 * When the journal was last forced to disk
+	 */
+	private long lastSync = System.currentTimeMillis();
+
+	/**
+	 * The thread folding a rotated journal into the snapshot, or null
+	 */
+	private Thread compaction;
+
+	/**
+	 * @param prefix
+	 *            path and file name prefix of the journal and snapshot files
+	 * @param syncInterval
+	 *            milliseconds between forcing the journal to disk
+	 * @param checkpointInterval
+	 *            number of records after which a snapshot is taken
+	 */
+	public CrawlJournal(String prefix, long syncInterval, int checkpointInterval) {
+		this.journalFile = new File(prefix + JOURNAL_EXTENSION);
+		this.rotatedFile = new File(prefix + ROTATED_EXTENSION);
+		this.snapshotFile = new File(prefix + SNAPSHOT_EXTENSION);
+		this.syncInterval = syncInterval;
+		this.checkpointInterval = Math.max(1, checkpointInterval);
+	}
+
+	/**
+	 * @return is there a checkpoint to resume from?
+	 */
+	public boolean hasCheckpoint() {
+		return this.snapshotFile.exists() || this.rotatedFile.exists()
+				|| this.journalFile.length() > 0;
+	}
+
+	/**
+	 * Reads the latest state of every url in the checkpoint. The journals are
+	 * folded into the snapshot, so new records start a fresh journal.
+	 *
+	 * @return the state of each url, in the order the urls were first queued
+	 * @throws IOException
+	 */
+	public Map<String, Byte> recover() throws IOException {
+		return recover(new HashMap<String, Integer>());
+	}
+
+	/**
+	 * Reads the latest state of every url in the checkpoint, and the depth
+	 * of the urls still queued. The journals are folded into the snapshot, so
+	 * new records start a fresh journal.
+	 *
+	 * @param depths
+	 *            receives the link depth of each url still queued, if it is
+	 *            more than 0
+	 * @return the state of each url, in the order the urls were first queued
+	 * @throws IOException
+	 */
+	public synchronized Map<String, Byte> recover(Map<String, Integer> depths)
+			throws IOException {
+		awaitCompaction();
+		close();
+		Map<String, Byte> states = new LinkedHashMap<String, Byte>();
+		fold(this.snapshotFile, states, depths);
+		fold(this.rotatedFile, states, depths);
+		fold(this.journalFile, states, depths);
+		writeSnapshot(states, depths);
+		this.rotatedFile.delete();
+		this.journalFile.delete();
+		this.records = 0;
+		return states;
+	}
+
+	/**
+	 * Appends a record. The journal is opened on the first record.
+	 *
+	 * @param state
+	 *            the new state of the url
+	 * @param url
+	 *            the url
+	 */
+	public void append(byte state, UrlKey url) {
+		append(state, url, 0);
+	}
+
+	/**
+	 * Appends a record of a url found some links from a seed. The journal is
+	 * opened on the first record.
+	 *
+	 * @param state
+	 *            the new state of the url
+	 * @param url
+	 *            the url
+	 * @param depth
+	 *            number of links from a seed to the url
+	 */
+	public synchronized void append(byte state, UrlKey url, int depth) {
+		try {
+			if (this.writer == null) {
+				open();
+			}
+			this.writer.write(Byte.toString(state));
+			this.writer.write(' ');
+			if (depth > 0) {
+				this.writer.write(Integer.toString(depth));
+				this.writer.write(' ');
+			}
+			this.writer.write(url.toString());
+			this.writer.write('\n');
+			long now = System.currentTimeMillis();
+			if (now - this.lastSync >= this.syncInterval) {
+				sync();
+			}
+			if (++this.records >= this.checkpointInterval
+					&& this.compaction == null) {
+				checkpoint();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Flushes the journal and forces it to disk
+	 */
+	public synchronized void sync() {
+		if (this.writer == null) {
+			return;
+		}
+		try {
+			this.writer.flush();
+			this.stream.getChannel().force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Removes the journal and snapshot, once the crawl is complete
+	 */
+	public synchronized void delete() {
+		awaitCompaction();
+		close();
+		this.journalFile.delete();
+		this.rotatedFile.delete();
+		this.snapshotFile.delete();
+		this.records = 0;
+	}
+
+	/**
+	 * Rotates the journal and folds it into the snapshot in the background
+	 */
+	private void checkpoint() throws IOException {
+		if (this.rotatedFile.exists()) {
+			// a fold that did not finish before a crash, redo it first
+			compact();
+		}
+		close();
+		if (!this.journalFile.renameTo(this.rotatedFile)) {
+			throw new IOException("could not rotate " + this.journalFile);
+		}
+		this.records = 0;
+		open();
+		this.compaction = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				synchronized (CrawlJournal.this) {
+					CrawlJournal.this.compaction = null;
+					CrawlJournal.this.notifyAll();
+				}
+			}
+		}, "webCrawler-checkpoint");
+		this.compaction.setDaemon(true);
+		this.compaction.start();
+	}
+
+	/**
+	 * Folds the snapshot and the rotated journal into a new snapshot
+	 */
+	private void compact() throws IOException {
+		Map<String, Byte> states = new LinkedHashMap<String, Byte>();
+		Map<String, Integer> depths = new HashMap<String, Integer>();
+		fold(this.snapshotFile, states, depths);
+		fold(this.rotatedFile, states, depths);
+		writeSnapshot(states, depths);
+		this.rotatedFile.delete();
+	}
+
+	/**
+	 * Writes a new snapshot next to the old one and moves it into place
+	 */
+	private void writeSnapshot(Map<String, Byte> states,
+			Map<String, Integer> depths) throws IOException {
+		File dir = this.snapshotFile.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		File tmp = new File(this.snapshotFile.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			Writer w = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+			for (Map.Entry<String, Byte> entry : states.entrySet()) {
+				w.write(entry.getValue().toString());
+				w.write(' ');
+				Integer depth = depths.get(entry.getKey());
+				if (depth != null) {
+					w.write(depth.toString());
+					w.write(' ');
+				}
+				w.write(entry.getKey());
+				w.write('\n');
+			}
+			w.flush();
+			out.getChannel().force(false);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), this.snapshotFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Applies the records of a file to the states read so far. A queued
+	 * record never overrides a classification, so files may be replayed
+	 * twice. A torn last line is ignored.
+	 */
+	private static void fold(File file, Map<String, Byte> states,
+			Map<String, Integer> depths) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		boolean torn = !endsWithNewline(file);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), UTF8));
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				String next = reader.readLine();
+				if (next != null || !torn) {
+					apply(line, states, depths);
+				}
+				line = next;
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void apply(String line, Map<String, Byte> states,
+			Map<String, Integer> depths) {
+		int space = line.indexOf(' ');
+		if (space <= 0 || space == line.length() - 1) {
+			return;
+		}
+		byte state;
+		int depth = 0;
+		try {
+			state = Byte.parseByte(line.substring(0, space));
+			// a url starts with its scheme, so a number before it is a depth
+			int next = line.indexOf(' ', space + 1);
+			if (next > space + 1 && Character.isDigit(line.charAt(space + 1))) {
+				depth = Integer.parseInt(line.substring(space + 1, next));
+				space = next;
+			}
+		} catch (NumberFormatException e) {
+			return;
+		}
+		String url = line.substring(space + 1);
+		if (state != SeenURLIndex.QUEUED) {
+			states.put(url, Byte.valueOf(state));
+			depths.remove(url);
+		} else if (!states.containsKey(url)) {
+			states.put(url, Byte.valueOf(state));
+			if (depth > 0) {
+				depths.put(url, Integer.valueOf(depth));
+			}
+		}
+	}
+
+	private static boolean endsWithNewline(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() == 0) {
+				return true;
+			}
+			raf.seek(raf.length() - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void open() throws IOException {
+		File dir = this.journalFile.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		this.stream = new FileOutputStream(this.journalFile, true);
+		this.writer = new BufferedWriter(new OutputStreamWriter(this.stream,
+				UTF8));
+	}
+
+	private void close() {
+		if (this.writer == null) {
+			return;
+		}
+		sync();
+		try {
+			this.writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.writer = null;
+		this.stream = null;
+	}
+
+	private void awaitCompaction() {
+		while (this.compaction != null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package webspider.core.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response to a page fetch: status, headers and a streamed body. The
+ * body has to be closed, which close does, so the connection can be reused.
+ */
+public class FetchResponse implements Closeable {
+
+	/**
+	 * The url that was fetched
+	 */
+	private final URL url;
+
+	/**
+	 * HTTP status code, 200 for protocols without one
+	 */
+	private final int statusCode;
+
+	/**
+	 * Response headers, keys in lower case
+	 */
+	private final Map<String, List<String>> headers;
+
+	/**
+	 * The streamed body of the response
+	 */
+	private final InputStream body;
+
+	/**
+	 * Protocol version the response was received with
+	 */
+	private final String protocol;
+
+	/**
+	 * Called once the response is closed, or null
+	 */
+	private final Runnable onClose;
+
+	private boolean closed = false;
+
+	/**
+	 * @param url
+	 *            the url that was fetched
+	 * @param statusCode
+	 *            HTTP status code
+	 * @param headers
+	 *            response headers, keys in lower case
+	 * @param body
+	 *            the body of the response, or null for an empty body
+	 * @param protocol
+	 *            protocol version, such as HTTP/1.1
+	 * @param onClose
+	 *            called once the response is closed, or null
+	 */
+	public FetchResponse(URL url, int statusCode,
+			Map<String, List<String>> headers, InputStream body,
+			String protocol, Runnable onClose) {
+		this.url = url;
+		this.statusCode = statusCode;
+		this.headers = headers;
+		this.body = (body == null) ? new ByteArrayInputStream(new byte[0]) : body;
+		this.protocol = protocol;
+		this.onClose = onClose;
+	}
+
+	/**
+	 * @return the url that was fetched
+	 */
+	public URL getUrl() {
+		return this.url;
+	}
+
+	/**
+	 * @return the HTTP status code
+	 */
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+
+	/**
+	 * @return is the status an HTTP error?
+	 */
+	public boolean isError() {
+		return this.statusCode >= 400;
+	}
+
+	/**
+	 * @param name
+	 *            the header name, in any case
+	 * @return the first value of the header, or null
+	 */
+	public String getHeader(String name) {
+		List<String> values = this.headers.get(name.toLowerCase());
+		return (values == null || values.isEmpty()) ? null : values.get(0);
+	}
+
+	/**
+	 * @return the content type, or null if the server sent none
+	 */
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	/**
+	 * @return the streamed body
+	 */
+	public InputStream getBody() {
+		return this.body;
+	}
+
+	/**
+	 * @return the protocol version of the response
+	 */
+	public String getProtocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * Closes the body and releases the connection
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.body.close();
+		} finally {
+			if (this.onClose != null) {
+				this.onClose.run();
+			}
+		}
+	}
+}
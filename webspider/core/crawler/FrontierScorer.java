@@ -0,0 +1,21 @@
+package webspider.core.crawler;
+
+/**
+ * Decides how urgently a url is crawled, as the priority level of the
+ * frontier it is queued at. Lower scores are crawled first.
+ */
+public interface FrontierScorer {
+
+	/**
+	 * Scores a url
+	 * 
+	 * @param url
+	 *            the url
+	 * @param depth
+	 *            number of links from a seed to the url
+	 * @param inLinks
+	 *            number of links to the url found so far
+	 * @return the priority level, 0 for the most urgent
+	 */
+	public int score(UrlKey url, int depth, int inLinks);
+}
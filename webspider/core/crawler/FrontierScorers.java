@@ -0,0 +1,93 @@
+package webspider.core.crawler;
+
+import java.util.regex.Pattern;
+
+import webspider.Settings;
+
+/**
+ * The frontier scorers the crawler can be configured with
+ */
+public class FrontierScorers {
+
+	private FrontierScorers() {
+	}
+
+	/**
+	 * Gets the scorer named by Settings.FRONTIER_SCORER: "depth", "inlinks"
+	 * or "pattern"
+	 * 
+	 * @param levels
+	 *            number of priority levels of the frontier
+	 * @return the scorer, by depth if the name is not known
+	 */
+	public static FrontierScorer fromSettings(int levels) {
+		if ("inlinks".equalsIgnoreCase(Settings.FRONTIER_SCORER)) {
+			return byInLinks(levels);
+		}
+		if ("pattern".equalsIgnoreCase(Settings.FRONTIER_SCORER)) {
+			return byPattern(Settings.FRONTIER_PRIORITY_PATTERNS);
+		}
+		return byDepth();
+	}
+
+	/**
+	 * Crawls breadth first: urls fewer links away from a seed go first
+	 * 
+	 * @return the scorer
+	 */
+	public static FrontierScorer byDepth() {
+		return new FrontierScorer() {
+			@Override
+			public int score(UrlKey url, int depth, int inLinks) {
+				return depth;
+			}
+		};
+	}
+
+	/**
+	 * Crawls urls many pages link to first. Each doubling of the links found
+	 * to a url moves it up a level, and the crawler queues it again when it
+	 * does.
+	 * 
+	 * @param levels
+	 *            number of priority levels of the frontier
+	 * @return the scorer
+	 */
+	public static FrontierScorer byInLinks(final int levels) {
+		return new FrontierScorer() {
+			@Override
+			public int score(UrlKey url, int depth, int inLinks) {
+				int log = 31 - Integer.numberOfLeadingZeros(Math.max(1, inLinks));
+				return Math.max(0, levels - 1 - log);
+			}
+		};
+	}
+
+	/**
+	 * Crawls urls matching the first pattern first, then the second and so
+	 * on, and urls matching none last. Urls of the same level go breadth
+	 * first.
+	 * 
+	 * @param patterns
+	 *            regular expressions matched against the whole url
+	 * @return the scorer
+	 */
+	public static FrontierScorer byPattern(String[] patterns) {
+		final Pattern[] compiled = new Pattern[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			compiled[i] = Pattern.compile(patterns[i]);
+		}
+		return new FrontierScorer() {
+			@Override
+			public int score(UrlKey url, int depth, int inLinks) {
+				String s = url.toString();
+				for (int i = 0; i < compiled.length; i++) {
+					if (compiled[i].matcher(s).matches()) {
+						return i;
+					}
+				}
+				return compiled.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,237 @@
+package webspider.core.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Fetches pages through one shared java.net.http.HttpClient. The client
+ * keeps connections alive between requests, multiplexes requests over a
+ * single connection to HTTP/2 servers and streams response bodies.
+ * <p>
+ * The client does not expose its connection pool, so reuse is estimated: an
+ * HTTP/2 host needs one connection, an HTTP/1.1 host as many as the most
+ * requests it ever had in flight at once, plus one for every response that
+ * closed its connection. Every other request is counted as having reused a
+ * connection.
+ */
+public class HttpClientFetcher implements PageFetcher {
+
+	/**
+	 * The shared client
+	 */
+	private final HttpClient client;
+
+	/**
+	 * Headers sent with every request
+	 */
+	private final Map<String, String> requestProperties;
+
+	/**
+	 * Number of requests sent
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Number of responses received over HTTP/2
+	 */
+	private final AtomicLong http2Responses = new AtomicLong();
+
+	/**
+	 * Connection use of every host fetched from
+	 */
+	private final ConcurrentMap<String, HostConnections> hosts = new ConcurrentHashMap<String, HostConnections>();
+
+	/**
+	 * @param requestProperties
+	 *            headers to send with every request
+	 */
+	public HttpClientFetcher(Map<String, String> requestProperties) {
+		this.requestProperties = requestProperties;
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofSeconds(30)).build();
+	}
+
+	@Override
+	public FetchResponse fetch(URL url) throws IOException {
+		return fetch(url, null);
+	}
+
+	@Override
+	public FetchResponse fetch(URL url, Map<String, String> headers)
+			throws IOException {
+		try {
+			return fetchAsync(url, headers).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted fetching " + url);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not fetch " + url, e.getCause());
+		}
+	}
+
+	@Override
+	public CompletableFuture<FetchResponse> fetchAsync(URL url) {
+		return fetchAsync(url, null);
+	}
+
+	/**
+	 * Fetches a page with extra request headers without waiting for it
+	 * 
+	 * @param url
+	 *            the page to fetch
+	 * @param headers
+	 *            headers to send besides the usual ones, or null
+	 * @return the future response, which the caller has to close
+	 */
+	public CompletableFuture<FetchResponse> fetchAsync(final URL url,
+			Map<String, String> headers) {
+		HttpRequest.Builder builder;
+		try {
+			builder = HttpRequest.newBuilder(url.toURI()).GET();
+		} catch (URISyntaxException e) {
+			return failed(new IOException("Malformed url " + url, e));
+		} catch (IllegalArgumentException e) {
+			return failed(new IOException("Unsupported url " + url, e));
+		}
+		for (String key : this.requestProperties.keySet()) {
+			builder.header(key, this.requestProperties.get(key));
+		}
+		if (headers != null) {
+			for (String key : headers.keySet()) {
+				builder.header(key, headers.get(key));
+			}
+		}
+		final HostConnections host = host(url);
+		host.begin();
+		this.requests.incrementAndGet();
+		return this.client
+				.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream())
+				.handle(new BiFunction<HttpResponse<InputStream>, Throwable, FetchResponse>() {
+					@Override
+					public FetchResponse apply(HttpResponse<InputStream> response,
+							Throwable failure) {
+						if (failure != null) {
+							host.end(false);
+							throw (failure instanceof RuntimeException) ? (RuntimeException) failure
+									: new CompletionException(failure);
+						}
+						return toFetchResponse(url, response, host);
+					}
+				});
+	}
+
+	/**
+	 * Wraps a client response, ending the host's request once it is closed
+	 */
+	private FetchResponse toFetchResponse(URL url,
+			HttpResponse<InputStream> response, final HostConnections host) {
+		final boolean http2 = response.version() == HttpClient.Version.HTTP_2;
+		if ("close".equalsIgnoreCase(response.headers()
+				.firstValue("Connection").orElse(null))) {
+			host.closed();
+		}
+		if (http2) {
+			this.http2Responses.incrementAndGet();
+		}
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> header : response.headers().map()
+				.entrySet()) {
+			headers.put(header.getKey().toLowerCase(), header.getValue());
+		}
+		return new FetchResponse(url, response.statusCode(), headers,
+				response.body(), http2 ? "HTTP/2" : "HTTP/1.1", new Runnable() {
+					@Override
+					public void run() {
+						host.end(http2);
+					}
+				});
+	}
+
+	@Override
+	public String getStats() {
+		long connections = 0;
+		for (HostConnections host : this.hosts.values()) {
+			connections += host.connections();
+		}
+		long sent = this.requests.get();
+		return "Fetches : " + sent + ", HTTP/2 : " + this.http2Responses.get()
+				+ ", connections reused : " + Math.max(0, sent - connections)
+				+ " (estimated)";
+	}
+
+	/**
+	 * @return the number of requests sent
+	 */
+	public long getRequestCount() {
+		return this.requests.get();
+	}
+
+	private HostConnections host(URL url) {
+		String key = url.getProtocol() + "://" + url.getAuthority();
+		HostConnections host = this.hosts.get(key);
+		if (host == null) {
+			HostConnections created = new HostConnections();
+			host = this.hosts.putIfAbsent(key, created);
+			if (host == null) {
+				host = created;
+			}
+		}
+		return host;
+	}
+
+	private static CompletableFuture<FetchResponse> failed(IOException e) {
+		CompletableFuture<FetchResponse> future = new CompletableFuture<FetchResponse>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Tracks the requests in flight to a host to estimate its connections
+	 */
+	private static class HostConnections {
+		private int active = 0;
+		private int peak = 0;
+		private boolean http2 = false;
+		private int closes = 0;
+
+		synchronized void begin() {
+			this.active++;
+			this.peak = Math.max(this.peak, this.active);
+		}
+
+		synchronized void end(boolean overHttp2) {
+			this.active--;
+			this.http2 |= overHttp2;
+		}
+
+		synchronized void closed() {
+			this.closes++;
+		}
+
+		synchronized int connections() {
+			return this.http2 ? 1 : this.peak + this.closes;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package webspider.core.crawler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds pages whose SimHash fingerprints are within a few bits of each
+ * other. The 64 bits are split into one more band than the distance allowed,
+ * so two fingerprints that differ in at most that many bits agree exactly on
+ * at least one band. Each band has a table from its value to the pages
+ * sharing it, and only those pages are compared bit by bit.
+ */
+public class NearDuplicateIndex {
+
+	/**
+	 * Largest number of differing bits for a near duplicate
+	 */
+	private final int maxDistance;
+
+	/**
+	 * Number of bands, and the width of each
+	 */
+	private final int bands;
+	private final int bandWidth;
+
+	/**
+	 * Pages by the value of each band
+	 */
+	private final List<Map<Long, List<Page>>> tables;
+
+	/**
+	 * @param maxDistance
+	 *            largest number of differing bits for a near duplicate,
+	 *            between 0 and 63
+	 */
+	public NearDuplicateIndex(int maxDistance) {
+		this.maxDistance = Math.max(0, Math.min(63, maxDistance));
+		this.bands = this.maxDistance + 1;
+		this.bandWidth = (64 + this.bands - 1) / this.bands;
+		this.tables = new ArrayList<Map<Long, List<Page>>>(this.bands);
+		for (int i = 0; i < this.bands; i++) {
+			this.tables.add(new HashMap<Long, List<Page>>());
+		}
+	}
+
+	/**
+	 * Looks for a page near the fingerprint, and adds the url under it if
+	 * there is none
+	 *
+	 * @param url
+	 *            the page the fingerprint belongs to
+	 * @param fingerprint
+	 *            the SimHash of the page
+	 * @return the page the url is a near duplicate of, or null if it was added
+	 */
+	public synchronized UrlKey findOrAdd(UrlKey url, long fingerprint) {
+		for (int band = 0; band < this.bands; band++) {
+			List<Page> pages = this.tables.get(band).get(
+					Long.valueOf(band(fingerprint, band)));
+			if (pages == null) {
+				continue;
+			}
+			for (Page page : pages) {
+				if (SimHash.distance(page.fingerprint, fingerprint) <= this.maxDistance
+						&& !page.url.equals(url)) {
+					return page.url;
+				}
+			}
+		}
+		Page page = new Page(url, fingerprint);
+		for (int band = 0; band < this.bands; band++) {
+			Long key = Long.valueOf(band(fingerprint, band));
+			List<Page> pages = this.tables.get(band).get(key);
+			if (pages == null) {
+				pages = new ArrayList<Page>(1);
+				this.tables.get(band).put(key, pages);
+			}
+			pages.add(page);
+		}
+		return null;
+	}
+
+	private long band(long fingerprint, int band) {
+		int shift = band * this.bandWidth;
+		int width = Math.min(this.bandWidth, 64 - shift);
+		long mask = (width == 64) ? -1L : (1L << width) - 1;
+		return (fingerprint >>> shift) & mask;
+	}
+
+	/**
+	 * A page and its fingerprint
+	 */
+	private static class Page {
+		private final UrlKey url;
+		private final long fingerprint;
+
+		Page(UrlKey url, long fingerprint) {
+			this.url = url;
+			this.fingerprint = fingerprint;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package webspider.core.crawler;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches pages for the crawler and the indexer
+ */
+public interface PageFetcher {
+
+	/**
+	 * Fetches a page and waits for the response headers
+	 * 
+	 * @param url
+	 *            the page to fetch
+	 * @return the response, which the caller has to close
+	 * @throws IOException
+	 *             if the page could not be fetched
+	 */
+	public FetchResponse fetch(URL url) throws IOException;
+
+	/**
+	 * Fetches a page with extra request headers, such as the validators of a
+	 * conditional request, and waits for the response headers
+	 * 
+	 * @param url
+	 *            the page to fetch
+	 * @param headers
+	 *            headers to send besides the usual ones, or null
+	 * @return the response, which the caller has to close
+	 * @throws IOException
+	 *             if the page could not be fetched
+	 */
+	public FetchResponse fetch(URL url, Map<String, String> headers)
+			throws IOException;
+
+	/**
+	 * Fetches a page without waiting for it
+	 * 
+	 * @param url
+	 *            the page to fetch
+	 * @return the future response, which the caller has to close
+	 */
+	public CompletableFuture<FetchResponse> fetchAsync(URL url);
+
+	/**
+	 * @return a description of the fetches made and connections reused
+	 */
+	public String getStats();
+}
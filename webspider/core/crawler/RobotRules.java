@@ -0,0 +1,350 @@
+package webspider.core.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+
+/**
+ * The rules of one host's robots.txt that apply to this crawler, compiled into
+ * a prefix trie. Checking a path walks the trie once along the path, and the
+ * longest matching Allow or Disallow rule decides; on a tie Allow wins. A "*"
+ * matches any run of characters, a trailing one being ignored, and a trailing
+ * "$" anchors a rule at the end of the path.
+ * <p>
+ * A "*" is an edge of the trie that loops on every character, so a walk may
+ * be at several nodes at once. For rules without one it is at a single node,
+ * as in a plain prefix trie.
+ */
+public class RobotRules {
+
+	/**
+	 * Rules that allow everything, for hosts without a robots.txt
+	 */
+	public static final RobotRules ALLOW_ALL = new RobotRules();
+
+	/**
+	 * Rules that allow nothing, for hosts whose robots.txt could not be read
+	 * for a server or network error
+	 */
+	public static final RobotRules DISALLOW_ALL = new RobotRules();
+
+	private static final byte NONE = 0;
+	private static final byte ALLOW = 1;
+	private static final byte DISALLOW = 2;
+
+	/**
+	 * Root of the rule trie, matching the empty path
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * The urls of the Disallow rules, kept as strings as a URL resolves its
+	 * host to hash
+	 */
+	private final List<String> disallowedURLs = new ArrayList<String>();
+
+	/**
+	 * Delay between fetching pages of the host in milliseconds
+	 */
+	private long crawlDelay = 0;
+
+	static {
+		DISALLOW_ALL.root.rule = DISALLOW;
+	}
+
+	private RobotRules() {
+	}
+
+	/**
+	 * Compiles the rules of a robots.txt that apply to a user agent. The rules
+	 * of a group naming the user agent take precedence over those of the "*"
+	 * group.
+	 *
+	 * @param content
+	 *            the robots.txt
+	 * @param base
+	 *            url that relative rule paths are resolved against
+	 * @param userAgent
+	 *            the user agent of the crawler
+	 * @return the compiled rules
+	 */
+	public static RobotRules parse(String content, URL base, String userAgent) {
+		RobotRules named = new RobotRules();
+		RobotRules wildcard = new RobotRules();
+		boolean namedSeen = false;
+
+		final String USER_AGENT_ENTRY = "user-agent";
+		final String ALLOW_ENTRY = "allow";
+		final String DISALLOW_ENTRY = "disallow";
+		final String CRAWL_DELAY_ENTRY = "crawl-delay";
+
+		// the groups the current block of lines applies to
+		boolean inNamed = false;
+		boolean inWildcard = false;
+		boolean readingAgents = false;
+		Scanner reader = new Scanner(content);
+		while (reader.hasNextLine()) {
+			String line = reader.nextLine();
+			int comment = line.indexOf('#');
+			if (comment != -1) {
+				line = line.substring(0, comment);
+			}
+			line = line.trim();
+			// field names are case insensitive, paths are not
+			int colon = line.indexOf(':');
+			String field = (colon == -1) ? line.toLowerCase() : line.substring(0,
+					colon).trim().toLowerCase();
+			String value = (colon == -1) ? "" : line.substring(colon + 1).trim();
+
+			if (field.equals(USER_AGENT_ENTRY)) {
+				if (!readingAgents) {
+					// a new group starts
+					inNamed = false;
+					inWildcard = false;
+					readingAgents = true;
+				}
+				String agent = value.toLowerCase();
+				if (agent.equals(userAgent.toLowerCase())) {
+					inNamed = true;
+					namedSeen = true;
+				} else if (agent.equals("*")) {
+					inWildcard = true;
+				}
+				continue;
+			}
+			if (line.length() == 0) {
+				continue;
+			}
+			readingAgents = false;
+			if (field.equals(ALLOW_ENTRY)) {
+				if (inNamed) {
+					named.addRule(base, value, ALLOW);
+				}
+				if (inWildcard) {
+					wildcard.addRule(base, value, ALLOW);
+				}
+			} else if (field.equals(DISALLOW_ENTRY)) {
+				if (inNamed) {
+					named.addRule(base, value, DISALLOW);
+				}
+				if (inWildcard) {
+					wildcard.addRule(base, value, DISALLOW);
+				}
+			} else if (field.equals(CRAWL_DELAY_ENTRY)) {
+				try {
+					long delay = (long) (Double.parseDouble(value) * 1000);
+					if (inNamed) {
+						named.crawlDelay = delay;
+					}
+					if (inWildcard) {
+						wildcard.crawlDelay = delay;
+					}
+				} catch (NumberFormatException e) {
+					// ignore a malformed delay
+				}
+			}
+		}
+		return namedSeen ? named : wildcard;
+	}
+
+	/**
+	 * Checks that a path is allowed
+	 *
+	 * @param path
+	 *            the path, with the query if there is one
+	 * @return is the path allowed?
+	 */
+	public boolean isAllowed(String path) {
+		byte decision = NONE;
+		int longest = -1;
+		List<Node> nodes = new ArrayList<Node>();
+		List<Node> next = new ArrayList<Node>();
+		enter(nodes, this.root);
+		int i = 0;
+		while (!nodes.isEmpty()) {
+			boolean end = i == path.length();
+			for (Node node : nodes) {
+				// the longest rule decides, Allow on a tie, and the "$" of
+				// an anchored rule counts
+				byte rule = node.rule;
+				int length = node.length;
+				if (end && node.endRule != NONE) {
+					rule = node.endRule;
+					length++;
+				}
+				if (rule == NONE) {
+					continue;
+				}
+				if (length > longest) {
+					decision = rule;
+					longest = length;
+				} else if (length == longest) {
+					decision = mergeRule(decision, rule);
+				}
+			}
+			if (end) {
+				break;
+			}
+			char c = path.charAt(i++);
+			next.clear();
+			for (Node node : nodes) {
+				Node child = node.child(c);
+				if (child != null) {
+					enter(next, child);
+				}
+				if (node.wildcard) {
+					// a "*" takes the character and stays
+					enter(next, node);
+				}
+			}
+			List<Node> swap = nodes;
+			nodes = next;
+			next = swap;
+		}
+		return decision != DISALLOW;
+	}
+
+	/**
+	 * Adds a node the walk is at, and the "*" after it, which may match no
+	 * characters
+	 */
+	private static void enter(List<Node> nodes, Node node) {
+		while (node != null && !nodes.contains(node)) {
+			nodes.add(node);
+			node = node.star;
+		}
+	}
+
+	/**
+	 * @return the delay between fetching pages of the host in milliseconds
+	 */
+	public long getCrawlDelay() {
+		return this.crawlDelay;
+	}
+
+	/**
+	 * Builds a set of the urls of the Disallow rules. Hashing a URL looks its
+	 * host up, so the rules themselves never do.
+	 *
+	 * @return the urls disallowed by the rules
+	 */
+	public Set<URL> getDisallowedURLs() {
+		Set<URL> urls = new HashSet<URL>();
+		for (String url : this.disallowedURLs) {
+			try {
+				urls.add(new URL(url));
+			} catch (MalformedURLException e) {
+				// resolved from a url before, so it cannot be malformed
+			}
+		}
+		return Collections.unmodifiableSet(urls);
+	}
+
+	private void addRule(URL base, String value, byte rule) {
+		if (value.length() == 0) {
+			// an empty rule matches nothing
+			return;
+		}
+		boolean anchored = value.endsWith("$");
+		if (anchored) {
+			value = value.substring(0, value.length() - 1);
+		}
+		while (value.endsWith("*")) {
+			value = value.substring(0, value.length() - 1);
+		}
+		String path;
+		try {
+			URL url = new URL(base, value);
+			path = url.getFile();
+			if (rule == DISALLOW) {
+				this.disallowedURLs.add(url.toString());
+			}
+		} catch (MalformedURLException e) {
+			return;
+		}
+		Node node = this.root;
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c != '*') {
+				node = node.addChild(c);
+			} else if (!node.wildcard) {
+				// "**" is the same as "*"
+				if (node.star == null) {
+					node.star = new Node();
+					node.star.wildcard = true;
+					node.star.length = node.length + 1;
+				}
+				node = node.star;
+			}
+		}
+		if (anchored) {
+			node.endRule = mergeRule(node.endRule, rule);
+		} else {
+			node.rule = mergeRule(node.rule, rule);
+		}
+	}
+
+	/**
+	 * Allow wins over Disallow for the same path
+	 */
+	private static byte mergeRule(byte existing, byte rule) {
+		return (existing == ALLOW) ? ALLOW : rule;
+	}
+
+	/**
+	 * A node of the trie, one per character of a rule path
+	 */
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private byte rule = NONE;
+		private byte endRule = NONE;
+
+		/**
+		 * The node after a "*" here, or null
+		 */
+		private Node star;
+
+		/**
+		 * Is this the node of a "*", which matches any character?
+		 */
+		private boolean wildcard = false;
+
+		/**
+		 * Length of the rule path up to here
+		 */
+		private int length = 0;
+
+		Node child(char c) {
+			for (int i = 0; i < this.keys.length; i++) {
+				if (this.keys[i] == c) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+
+		Node addChild(char c) {
+			Node child = child(c);
+			if (child == null) {
+				int n = this.keys.length;
+				char[] keys = new char[n + 1];
+				Node[] children = new Node[n + 1];
+				System.arraycopy(this.keys, 0, keys, 0, n);
+				System.arraycopy(this.children, 0, children, 0, n);
+				child = new Node();
+				child.length = this.length + 1;
+				keys[n] = c;
+				children[n] = child;
+				this.keys = keys;
+				this.children = children;
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package webspider.core.crawler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every url a crawl has come across, keyed by its 64 bit fingerprint,
+ * together with the state the url is in. A url is recorded once, when it is
+ * first queued, so "have we seen this url" is a single probe however large
+ * the crawl grows.
+ * <p>
+ * The index is an open addressing hash table split into independently locked
+ * segments. It stores a long and a byte per url instead of a set entry and a
+ * url object in each of the link collections, plus a byte each for the
+ * url's link depth and the number of links to it found, which order the
+ * frontier.
+ * <p>
+ * An optional Bloom filter can sit in front of the table, which remains the
+ * exact store as it holds the state of each url. A state asked for a url
+ * the filter has definitely not seen is answered without locking a segment;
+ * only possible matches are confirmed against the table. A url queued is
+ * always inserted under the lock of its segment, as two workers may queue
+ * the same new url at once. The filter pays for its
+ * memory when most urls looked up are new, as in a broad crawl, and is off by
+ * default.
+ */
+public class SeenURLIndex {
+
+	/**
+	 * States a url can be in
+	 */
+	public static final byte QUEUED = 1;
+	public static final byte LOCAL = 2;
+	public static final byte EXTERNAL = 3;
+	public static final byte DEAD = 4;
+	public static final byte NON_PARSABLE = 5;
+	public static final byte DISALLOWED = 6;
+	public static final byte DUPLICATE = 7;
+
+	/**
+	 * State of a queued url taken from the frontier by a worker, before it is
+	 * classified. It is never journaled.
+	 */
+	public static final byte CLAIMED = 8;
+
+	/**
+	 * State of a url dropped without being fetched as it was over the crawl
+	 * budget when it was taken from the frontier
+	 */
+	public static final byte OVER_BUDGET = 9;
+
+	/**
+	 * Largest depth and link count stored, larger ones are stored as this
+	 */
+	public static final int MAX_STORED_COUNT = 255;
+
+	/**
+	 * Returned by getState for urls that have not been seen
+	 */
+	public static final byte UNSEEN = 0;
+
+	/**
+	 * Number of independently locked segments, a power of two
+	 */
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * The segments of the table
+	 */
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Filter checked before the table, or null
+	 */
+	private final BloomFilter filter;
+
+	/**
+	 * Number of urls the filter reported as possibly seen
+	 */
+	private final AtomicLong filterPositives = new AtomicLong();
+
+	/**
+	 * Number of those urls the table showed had not been seen
+	 */
+	private final AtomicLong falsePositives = new AtomicLong();
+
+	/**
+	 * Number of urls the filter reported as not seen
+	 */
+	private final AtomicLong filterNegatives = new AtomicLong();
+
+	public SeenURLIndex() {
+		this(null);
+	}
+
+	/**
+	 * @param filter
+	 *            filter to check before the table, or null for none
+	 */
+	public SeenURLIndex(BloomFilter filter) {
+		this.filter = filter;
+		for (int i = 0; i < SEGMENTS; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Records a url as queued, unless it has been seen before
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return true if the url had not been seen before
+	 */
+	public boolean markQueued(long fingerprint) {
+		return markQueued(fingerprint, 0);
+	}
+
+	/**
+	 * Records a url as queued at a link depth, unless it has been seen before
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @param depth
+	 *            number of links from a seed to the url
+	 * @return true if the url had not been seen before
+	 */
+	public boolean markQueued(long fingerprint, int depth) {
+		long key = key(fingerprint);
+		if (this.filter == null) {
+			return segmentFor(key).putIfAbsent(key, QUEUED, depth);
+		}
+		if (this.filter.mightContain(key)) {
+			this.filterPositives.incrementAndGet();
+			boolean added = segmentFor(key).putIfAbsent(key, QUEUED, depth);
+			if (added) {
+				this.falsePositives.incrementAndGet();
+			}
+			return added;
+		}
+		this.filterNegatives.incrementAndGet();
+		// set the filter first, so a negative answer always means unseen
+		this.filter.put(key);
+		return segmentFor(key).putIfAbsent(key, QUEUED, depth);
+	}
+
+	/**
+	 * Marks a queued url as taken from the frontier, so another copy of it
+	 * queued at a higher priority is not processed again
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return true if the url was queued and had not been taken before
+	 */
+	public boolean claim(long fingerprint) {
+		long key = key(fingerprint);
+		return segmentFor(key).replace(key, QUEUED, CLAIMED);
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return the link depth the url was queued at, at most MAX_STORED_COUNT
+	 */
+	public int getDepth(long fingerprint) {
+		long key = key(fingerprint);
+		return segmentFor(key).getDepth(key);
+	}
+
+	/**
+	 * Counts another link found to a url already seen
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return the number of links found to it, at most MAX_STORED_COUNT, or 0
+	 *         if it has not been seen
+	 */
+	public int addInLink(long fingerprint) {
+		long key = key(fingerprint);
+		return segmentFor(key).addInLink(key);
+	}
+
+	/**
+	 * Records the state a url has been classified as
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @param state
+	 *            the new state of the url
+	 */
+	public void setState(long fingerprint, byte state) {
+		long key = key(fingerprint);
+		if (this.filter != null && !this.filter.mightContain(key)) {
+			this.filter.put(key);
+		}
+		segmentFor(key).put(key, state);
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return the state of the url, or UNSEEN
+	 */
+	public byte getState(long fingerprint) {
+		long key = key(fingerprint);
+		if (this.filter != null && !this.filter.mightContain(key)) {
+			return UNSEEN;
+		}
+		return segmentFor(key).get(key);
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the url
+	 * @return has the url been seen?
+	 */
+	public boolean contains(long fingerprint) {
+		return getState(fingerprint) != UNSEEN;
+	}
+
+	/**
+	 * @return the number of urls seen
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the filter checked before the table, or null
+	 */
+	public BloomFilter getFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * The share of unseen urls the filter wrongly reported as possibly seen,
+	 * as observed while queueing urls
+	 * 
+	 * @return the observed false positive rate, between 0 and 1
+	 */
+	public double getObservedFalsePositiveRate() {
+		long unseen = this.falsePositives.get() + this.filterNegatives.get();
+		return (unseen == 0) ? 0 : (double) this.falsePositives.get() / unseen;
+	}
+
+	/**
+	 * @return the number of urls the filter reported as possibly seen
+	 */
+	public long getFilterPositives() {
+		return this.filterPositives.get();
+	}
+
+	/**
+	 * Zero marks an empty slot, so a zero fingerprint is stored as one
+	 */
+	private static long key(long fingerprint) {
+		return (fingerprint == 0) ? 1 : fingerprint;
+	}
+
+	private Segment segmentFor(long fingerprint) {
+		return this.segments[(int) (fingerprint >>> 60) & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * A linear probing table of fingerprints and states
+	 */
+	private static class Segment {
+		private long[] keys = new long[1024];
+		private byte[] states = new byte[1024];
+		private byte[] depths = new byte[1024];
+		private byte[] inLinks = new byte[1024];
+		private int size = 0;
+
+		synchronized boolean putIfAbsent(long key, byte state, int depth) {
+			int slot = slot(this.keys, key);
+			if (this.keys[slot] == key) {
+				return false;
+			}
+			this.depths[slot] = (byte) Math.min(MAX_STORED_COUNT, Math.max(0, depth));
+			this.inLinks[slot] = 1;
+			insert(slot, key, state);
+			return true;
+		}
+
+		synchronized boolean replace(long key, byte expected, byte state) {
+			int slot = slot(this.keys, key);
+			if (this.keys[slot] != key || this.states[slot] != expected) {
+				return false;
+			}
+			this.states[slot] = state;
+			return true;
+		}
+
+		synchronized int getDepth(long key) {
+			int slot = slot(this.keys, key);
+			return (this.keys[slot] == key) ? this.depths[slot] & 0xff : 0;
+		}
+
+		synchronized int addInLink(long key) {
+			int slot = slot(this.keys, key);
+			if (this.keys[slot] != key) {
+				return 0;
+			}
+			int count = this.inLinks[slot] & 0xff;
+			if (count < MAX_STORED_COUNT) {
+				this.inLinks[slot] = (byte) ++count;
+			}
+			return count;
+		}
+
+		synchronized void put(long key, byte state) {
+			int slot = slot(this.keys, key);
+			if (this.keys[slot] == key) {
+				this.states[slot] = state;
+			} else {
+				this.depths[slot] = 0;
+				this.inLinks[slot] = 0;
+				insert(slot, key, state);
+			}
+		}
+
+		synchronized byte get(long key) {
+			int slot = slot(this.keys, key);
+			return (this.keys[slot] == key) ? this.states[slot] : UNSEEN;
+		}
+
+		synchronized int size() {
+			return this.size;
+		}
+
+		private void insert(int slot, long key, byte state) {
+			this.keys[slot] = key;
+			this.states[slot] = state;
+			this.size++;
+			if (this.size * 2 > this.keys.length) {
+				grow();
+			}
+		}
+
+		private void grow() {
+			long[] oldKeys = this.keys;
+			byte[] oldStates = this.states;
+			byte[] oldDepths = this.depths;
+			byte[] oldInLinks = this.inLinks;
+			this.keys = new long[oldKeys.length * 2];
+			this.states = new byte[oldKeys.length * 2];
+			this.depths = new byte[oldKeys.length * 2];
+			this.inLinks = new byte[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int slot = slot(this.keys, oldKeys[i]);
+					this.keys[slot] = oldKeys[i];
+					this.states[slot] = oldStates[i];
+					this.depths[slot] = oldDepths[i];
+					this.inLinks[slot] = oldInLinks[i];
+				}
+			}
+		}
+
+		/**
+		 * Finds the slot holding a key, or the empty slot it belongs in
+		 */
+		private static int slot(long[] keys, long key) {
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while (keys[slot] != 0 && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private static int hash(long key) {
+			return (int) (key ^ (key >>> 29));
+		}
+	}
+}
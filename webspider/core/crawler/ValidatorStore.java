@@ -0,0 +1,361 @@
+package webspider.core.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps what the last crawl learned about each local page: its ETag and
+ * Last-Modified validators, a hash of its content, the SimHash of its text,
+ * the page it names with rel=canonical and the links found on it.
+ * A recrawl sends the validators as a conditional request, and when the
+ * server answers 304 Not Modified, or the content hashes the same, the stored
+ * links are used instead of parsing the page again.
+ * <p>
+ * The store is a binary file of records keyed by url fingerprint, read when
+ * the crawler is created and written when the crawl ends.
+ */
+public class ValidatorStore {
+
+	/**
+	 * FNV-1a 64 bit offset basis and prime, as used by UrlKey
+	 */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Version written at the start of the file
+	 */
+	private static final int VERSION = 3;
+
+	/**
+	 * The file the store is kept in
+	 */
+	private final File file;
+
+	/**
+	 * Validators of the last crawl, by url fingerprint
+	 */
+	private final Map<Long, Validators> previous = new HashMap<Long, Validators>();
+
+	/**
+	 * Validators of this crawl, by url fingerprint
+	 */
+	private final ConcurrentMap<Long, Validators> current = new ConcurrentHashMap<Long, Validators>();
+
+	/**
+	 * Number of pages answered with 304 Not Modified
+	 */
+	private final AtomicLong notModified = new AtomicLong();
+
+	/**
+	 * Number of pages downloaded whose content had not changed
+	 */
+	private final AtomicLong unchanged = new AtomicLong();
+
+	/**
+	 * Number of pages downloaded and parsed
+	 */
+	private final AtomicLong parsed = new AtomicLong();
+
+	/**
+	 * Opens the store kept in a file, reading the validators of the last
+	 * crawl if there are any
+	 *
+	 * @param path
+	 *            the file of the store
+	 */
+	public ValidatorStore(String path) {
+		this.file = new File(path);
+		if (this.file.exists()) {
+			try {
+				load();
+			} catch (IOException e) {
+				// start without validators rather than fail the crawl
+				e.printStackTrace();
+				this.previous.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the validators of a page from the last crawl
+	 *
+	 * @param url
+	 *            the page
+	 * @return the validators, or null if the page was not crawled
+	 */
+	public Validators get(UrlKey url) {
+		return this.previous.get(Long.valueOf(url.getFingerprint()));
+	}
+
+	/**
+	 * Records the validators of a page for the next crawl
+	 *
+	 * @param url
+	 *            the page
+	 * @param validators
+	 *            its validators
+	 */
+	public void put(UrlKey url, Validators validators) {
+		this.current.put(Long.valueOf(url.getFingerprint()), validators);
+	}
+
+	/**
+	 * Counts a page answered with 304 Not Modified
+	 */
+	public void countNotModified() {
+		this.notModified.incrementAndGet();
+	}
+
+	/**
+	 * Counts a page downloaded, and whether its content had changed
+	 *
+	 * @param changed
+	 *            was the content different from the last crawl?
+	 */
+	public void countDownloaded(boolean changed) {
+		(changed ? this.parsed : this.unchanged).incrementAndGet();
+	}
+
+	/**
+	 * Writes the store. Pages of the last crawl that were not visited again
+	 * are kept unless the crawl is complete, so a paused crawl loses nothing.
+	 *
+	 * @param complete
+	 *            did the crawl visit every page it could reach?
+	 * @throws IOException
+	 */
+	public synchronized void save(boolean complete) throws IOException {
+		Map<Long, Validators> entries = new HashMap<Long, Validators>();
+		if (!complete) {
+			entries.putAll(this.previous);
+		}
+		entries.putAll(this.current);
+		File dir = this.file.getAbsoluteFile().getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		File tmp = new File(this.file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<Long, Validators> entry : entries.entrySet()) {
+				out.writeLong(entry.getKey().longValue());
+				entry.getValue().write(out);
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), this.file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return a description of how many pages were not downloaded or not
+	 *         parsed again
+	 */
+	public String getStats() {
+		return "Not modified : " + this.notModified.get() + ", unchanged : "
+				+ this.unchanged.get() + ", parsed : " + this.parsed.get();
+	}
+
+	/**
+	 * Hashes the content of a page
+	 *
+	 * @param content
+	 *            the page content
+	 * @return the 64 bit FNV-1a hash of the content
+	 */
+	public static long hash(byte[] content) {
+		long hash = FNV_OFFSET;
+		for (byte b : content) {
+			hash ^= (b & 0xff);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(this.file)));
+		try {
+			if (in.readInt() != VERSION) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				long fingerprint = in.readLong();
+				this.previous.put(Long.valueOf(fingerprint), Validators.read(in));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * What is known about a page from the crawl that fetched it
+	 */
+	public static class Validators {
+
+		private final String etag;
+		private final String lastModified;
+		private final long contentHash;
+		private final long simHash;
+		private final int wordCount;
+		private final String canonical;
+		private final String[] links;
+
+		/**
+		 * @param etag
+		 *            the ETag header, or null
+		 * @param lastModified
+		 *            the Last-Modified header, or null
+		 * @param contentHash
+		 *            hash of the page content
+		 * @param simHash
+		 *            SimHash of the page text
+		 * @param wordCount
+		 *            number of words in the page text
+		 * @param canonical
+		 *            the url the page names with rel=canonical, or null
+		 * @param links
+		 *            the links found on the page
+		 */
+		public Validators(String etag, String lastModified, long contentHash,
+				long simHash, int wordCount, String canonical, String[] links) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentHash = contentHash;
+			this.simHash = simHash;
+			this.wordCount = wordCount;
+			this.canonical = canonical;
+			this.links = links;
+		}
+
+		/**
+		 * @return the headers of a conditional request for the page, or null
+		 *         if the server sent no validators
+		 */
+		public Map<String, String> getConditionalHeaders() {
+			if (this.etag == null && this.lastModified == null) {
+				return null;
+			}
+			Map<String, String> headers = new HashMap<String, String>();
+			if (this.etag != null) {
+				headers.put("If-None-Match", this.etag);
+			}
+			if (this.lastModified != null) {
+				headers.put("If-Modified-Since", this.lastModified);
+			}
+			return headers;
+		}
+
+		/**
+		 * @return hash of the page content
+		 */
+		public long getContentHash() {
+			return this.contentHash;
+		}
+
+		/**
+		 * @return the SimHash of the page text
+		 */
+		public long getSimHash() {
+			return this.simHash;
+		}
+
+		/**
+		 * @return the number of words in the page text
+		 */
+		public int getWordCount() {
+			return this.wordCount;
+		}
+
+		/**
+		 * @return the url the page names with rel=canonical, or null
+		 */
+		public String getCanonical() {
+			return this.canonical;
+		}
+
+		/**
+		 * @return the links found on the page
+		 */
+		public String[] getLinks() {
+			return this.links;
+		}
+
+		/**
+		 * Copies the validators with the headers of a newer response, which
+		 * may leave some of them out
+		 *
+		 * @param etag
+		 *            the new ETag header, or null to keep the old one
+		 * @param lastModified
+		 *            the new Last-Modified header, or null to keep the old one
+		 * @return the updated validators
+		 */
+		public Validators refresh(String etag, String lastModified) {
+			return new Validators((etag == null) ? this.etag : etag,
+					(lastModified == null) ? this.lastModified : lastModified,
+					this.contentHash, this.simHash, this.wordCount,
+					this.canonical, this.links);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			writeString(out, this.etag);
+			writeString(out, this.lastModified);
+			out.writeLong(this.contentHash);
+			out.writeLong(this.simHash);
+			out.writeInt(this.wordCount);
+			writeString(out, this.canonical);
+			out.writeInt(this.links.length);
+			for (String link : this.links) {
+				out.writeUTF(link);
+			}
+		}
+
+		static Validators read(DataInputStream in) throws IOException {
+			String etag = readString(in);
+			String lastModified = readString(in);
+			long contentHash = in.readLong();
+			long simHash = in.readLong();
+			int wordCount = in.readInt();
+			String canonical = readString(in);
+			String[] links = new String[in.readInt()];
+			for (int i = 0; i < links.length; i++) {
+				links[i] = in.readUTF();
+			}
+			return new Validators(etag, lastModified, contentHash, simHash,
+					wordCount, canonical, links);
+		}
+
+		private static void writeString(DataOutputStream out, String s)
+				throws IOException {
+			out.writeBoolean(s != null);
+			if (s != null) {
+				out.writeUTF(s);
+			}
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package webspider.core.crawler;
 
-import java.net.URL;
 import java.util.Collection;
 
 /**
@@ -16,12 +15,12 @@ public interface myIWSpider {
     public void resumeIWSpider ();
     public void killIWSpider ();
     /** it returns all the URLs internal to the site */
-    public Collection<URL> getLocalIWUrls();
+    public Collection<UrlKey> getLocalIWUrls();
     /** it returns all the URLs belonging to other sites*/
-    public Collection<URL> getExternalIWURLs();
-    public Collection<URL> getNonParsableIWURLs();
-    public Collection<URL> getDeadIWURLs();
-    public Collection<URL> getDisallowedIWURLs();
+    public Collection<UrlKey> getExternalIWURLs();
+    public Collection<UrlKey> getNonParsableIWURLs();
+    public Collection<UrlKey> getDeadIWURLs();
+    public Collection<UrlKey> getDisallowedIWURLs();
     
     
 }
\ No newline at end of file
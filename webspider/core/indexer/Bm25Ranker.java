@@ -0,0 +1,211 @@
+package webspider.core.indexer;
+
+import java.util.Collection;
+
+/**
+ * Ranks the pages matching a query with BM25. A page scores for each term
+ * of the query it holds, more the more often the term is on it and the
+ * rarer the term is, and less the longer the page is than the average:
+ *
+ * <pre>
+ * idf(t) * f(t, p) * (k1 + 1) / (f(t, p) + k1 * (1 - b + b * |p| / avg))
+ * idf(t) = ln(1 + (N - n(t) + 0.5) / (n(t) + 0.5))
+ * </pre>
+ *
+ * The frequencies of a term are read through a cursor on its posting list,
+ * which decodes only the blocks holding the pages scored, so scoring a
+ * common term costs about as much as the pages matching rather than its
+ * whole list. The best pages are kept in a min-heap bounded to the number
+ * wanted, so ranking a term on many pages takes memory for the few returned
+ * only.
+ */
+public class Bm25Ranker {
+
+	private final TermIndex index;
+
+	/**
+	 * How fast the score of a term stops growing with its frequency
+	 */
+	private final double k1;
+
+	/**
+	 * How much the length of a page counts, from 0 for not at all to 1
+	 */
+	private final double b;
+
+	/**
+	 * @param index
+	 *            the index searched
+	 * @param k1
+	 *            how fast the score of a term stops growing with its
+	 *            frequency, usually 1.2
+	 * @param b
+	 *            how much the length of a page counts, usually 0.75
+	 */
+	public Bm25Ranker(TermIndex index, double k1, double b) {
+		this.index = index;
+		this.k1 = k1;
+		this.b = b;
+	}
+
+	/**
+	 * Finds the best pages matching a query
+	 *
+	 * @param query
+	 *            the query
+	 * @param docs
+	 *            the IDs of the pages matching the query, in increasing order
+	 * @param k
+	 *            the number of pages wanted, or 0 or less for all
+	 * @return the IDs of the best pages, best first
+	 */
+	public int[] top(Query query, int[] docs, int k) {
+		double[] scores = score(query.getTerms(), docs);
+		TopPages top = new TopPages((k > 0) ? Math.min(k, docs.length)
+				: docs.length);
+		for (int i = 0; i < docs.length; i++) {
+			top.offer(docs[i], scores[i]);
+		}
+		return top.best();
+	}
+
+	/**
+	 * Scores pages for terms
+	 *
+	 * @param terms
+	 *            the terms
+	 * @param docs
+	 *            the IDs of the pages, in increasing order
+	 * @return the score of each page
+	 */
+	double[] score(Collection<String> terms, int[] docs) {
+		double[] scores = new double[docs.length];
+		int pages = this.index.getPageCount();
+		double average = (pages == 0) ? 0 : (double) this.index
+				.getTotalLength() / pages;
+		double[] norms = new double[docs.length];
+		for (int i = 0; i < docs.length; i++) {
+			// without lengths every page counts as of average length
+			norms[i] = this.k1
+					* ((average > 0) ? 1 - this.b + this.b
+							* this.index.getLength(docs[i]) / average : 1);
+		}
+		for (String term : terms) {
+			PostingList list = this.index.get(term);
+			if (list == null) {
+				continue;
+			}
+			double idf = Math.log(1 + (pages - list.size() + 0.5)
+					/ (list.size() + 0.5));
+			PostingList.Cursor cursor = list.cursor();
+			for (int i = 0; i < docs.length; i++) {
+				int doc = cursor.advance(docs[i]);
+				if (doc == PostingList.Cursor.END) {
+					break;
+				}
+				if (doc == docs[i]) {
+					double frequency = cursor.frequency();
+					scores[i] += idf * frequency * (this.k1 + 1)
+							/ (frequency + norms[i]);
+				}
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * A min-heap of the best pages offered, bounded to a number of them. The
+	 * worst kept is at the root, so a page better than it replaces it.
+	 * Pages scoring the same are ordered by ID.
+	 */
+	static class TopPages {
+		private final int[] docs;
+		private final double[] scores;
+		private int size = 0;
+
+		TopPages(int capacity) {
+			this.docs = new int[capacity];
+			this.scores = new double[capacity];
+		}
+
+		void offer(int doc, double score) {
+			if (this.size < this.docs.length) {
+				this.docs[this.size] = doc;
+				this.scores[this.size] = score;
+				siftUp(this.size++);
+			} else if (this.size > 0
+					&& worse(this.docs[0], this.scores[0], doc, score)) {
+				this.docs[0] = doc;
+				this.scores[0] = score;
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * Empties the heap
+		 *
+		 * @return the IDs of the pages kept, best first
+		 */
+		int[] best() {
+			int[] best = new int[this.size];
+			while (this.size > 0) {
+				best[this.size - 1] = this.docs[0];
+				this.size--;
+				this.docs[0] = this.docs[this.size];
+				this.scores[0] = this.scores[this.size];
+				siftDown(0);
+			}
+			return best;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!worse(i, parent)) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= this.size) {
+					return;
+				}
+				if (child + 1 < this.size && worse(child + 1, child)) {
+					child++;
+				}
+				if (!worse(child, i)) {
+					return;
+				}
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		private boolean worse(int i, int j) {
+			return worse(this.docs[i], this.scores[i], this.docs[j],
+					this.scores[j]);
+		}
+
+		/**
+		 * Is the first page worse than the second?
+		 */
+		private static boolean worse(int doc, double score, int otherDoc,
+				double otherScore) {
+			return (score != otherScore) ? score < otherScore : doc > otherDoc;
+		}
+
+		private void swap(int i, int j) {
+			int doc = this.docs[i];
+			double score = this.scores[i];
+			this.docs[i] = this.docs[j];
+			this.scores[i] = this.scores[j];
+			this.docs[j] = doc;
+			this.scores[j] = score;
+		}
+	}
+}
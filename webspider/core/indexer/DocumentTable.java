@@ -0,0 +1,124 @@
+package webspider.core.indexer;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives each page indexed a dense int ID, in the order the pages are
+ * indexed, and keeps the URL of each ID. Posting lists hold the IDs instead
+ * of the URLs, and pages are told apart by their URL strings, so no
+ * java.net.URL is hashed and no host name resolved. The table also keeps
+ * the length of each page in terms, for ranking.
+ * <p>
+ * A table is thread safe, so the workers of a parallel indexing share one.
+ */
+public class DocumentTable {
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] urls = new String[1024];
+	private int[] lengths = new int[1024];
+	private long totalLength = 0;
+	private int size = 0;
+
+	/**
+	 * Gets the ID of a page, giving it the next ID if it has none
+	 *
+	 * @param url
+	 *            the page
+	 * @return the ID
+	 */
+	public int idFor(URL url) {
+		return idFor(url.toString());
+	}
+
+	/**
+	 * Gets the ID of a page, giving it the next ID if it has none
+	 *
+	 * @param url
+	 *            the URL of the page
+	 * @return the ID
+	 */
+	public synchronized int idFor(String url) {
+		Integer id = this.ids.get(url);
+		if (id != null) {
+			return id.intValue();
+		}
+		if (this.size == this.urls.length) {
+			this.urls = Arrays.copyOf(this.urls, this.size * 2);
+			this.lengths = Arrays.copyOf(this.lengths, this.size * 2);
+		}
+		this.urls[this.size] = url;
+		this.ids.put(url, Integer.valueOf(this.size));
+		return this.size++;
+	}
+
+	/**
+	 * @param id
+	 *            the ID of a page
+	 * @return the URL of the page
+	 */
+	public synchronized String getUrl(int id) {
+		return this.urls[id];
+	}
+
+	/**
+	 * Sets the length of a page
+	 *
+	 * @param id
+	 *            the ID of the page
+	 * @param length
+	 *            the number of terms on the page
+	 */
+	public synchronized void setLength(int id, int length) {
+		this.totalLength += length - this.lengths[id];
+		this.lengths[id] = length;
+	}
+
+	/**
+	 * Adds to the length of a page
+	 *
+	 * @param id
+	 *            the ID of the page
+	 * @param length
+	 *            the number of terms to add
+	 */
+	public synchronized void addLength(int id, int length) {
+		setLength(id, this.lengths[id] + length);
+	}
+
+	/**
+	 * @param id
+	 *            the ID of a page
+	 * @return the number of terms on the page
+	 */
+	public synchronized int getLength(int id) {
+		return this.lengths[id];
+	}
+
+	/**
+	 * @return the number of terms on all pages
+	 */
+	public synchronized long getTotalLength() {
+		return this.totalLength;
+	}
+
+	/**
+	 * @return the number of pages
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Forgets every page
+	 */
+	public synchronized void clear() {
+		this.ids.clear();
+		this.urls = new String[1024];
+		this.lengths = new int[1024];
+		this.totalLength = 0;
+		this.size = 0;
+	}
+}
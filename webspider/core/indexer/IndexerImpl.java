@@ -3,29 +3,34 @@ package webspider.core.indexer;
 // Imports all the necessary packages
 import java.io.BufferedReader;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.swing.text.html.HTMLEditorKit;
-import javax.swing.text.html.parser.ParserDelegator;
 import webspider.Settings;
 import webspider.actions.SpiderActions;
-import webspider.core.crawler.Crawler;
+import webspider.core.crawler.FetchResponse;
+import webspider.core.crawler.FetchThreads;
+import webspider.core.crawler.Fetchers;
+import webspider.core.crawler.HostLimiter;
+import webspider.core.crawler.HostScheduler;
+import webspider.core.crawler.PageArchive;
+import webspider.core.crawler.RobotsCache;
 
 /**
  * This class is used to create an inverted vertex of a list of pages. A text
@@ -38,7 +43,7 @@ import webspider.core.crawler.Crawler;
  * @author Kushal Lyndon D'Souza
  * 
  */
-public class IndexerImpl extends HTMLEditorKit.ParserCallback {
+public class IndexerImpl {
 
 	// The variables used in the class are declared.
 
@@ -52,11 +57,6 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 */
 	String outputFileName;
 
-	/**
-	 * StringBuffer to which the lines from the url file are saved to.
-	 */
-	private StringBuffer s;
-
 	/**
 	 * URLs that have yet to be indexed.
 	 */
@@ -68,16 +68,51 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	private Collection<URL> fileUrlsProcessed = new HashSet<URL>();
 
 	/**
-	 * Index mapping the keywords to their repecive URLs in which they are
+	 * IDs of the pages indexed.
+	 */
+	private final DocumentTable documents = new DocumentTable();
+
+	/**
+	 * Index mapping the keywords to the IDs of the pages in which they are
 	 * contained.
 	 */
-	private Map<String, Set<URL>> index = new HashMap<String, Set<URL>>();
+	private final InvertedIndex index = new InvertedIndex(this.documents);
+
+	/**
+	 * Index searched, the one built or one opened from a binary index file.
+	 */
+	private TermIndex searchIndex = this.index;
 
 	/**
 	 * Stop words which are removed from the list of words retrieved from the
 	 * web pages.
 	 */
-	private Set<String> stopwords = new HashSet<String>();
+	private TermTable stopwords = new TermTable();
+
+	/**
+	 * Have the stop words been read? Searching an index only loaded reads
+	 * them too, so queries drop the words the index left out.
+	 */
+	private boolean stopwordsLoaded = false;
+
+	/**
+	 * The tokenizer of each thread indexing pages.
+	 */
+	private final ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>() {
+		@Override
+		protected Tokenizer initialValue() {
+			Tokenizer tokenizer = new Tokenizer(IndexerImpl.this.stopwords);
+			synchronized (IndexerImpl.this.allTokenizers) {
+				IndexerImpl.this.allTokenizers.add(tokenizer);
+			}
+			return tokenizer;
+		}
+	};
+
+	/**
+	 * Every tokenizer created, for the tokenizer statistics.
+	 */
+	private final Collection<Tokenizer> allTokenizers = new ArrayList<Tokenizer>();
 
 	/**
 	 * File containing the list of stop words.
@@ -141,11 +176,6 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 */
 	private int indexCount = 0;
 
-	/**
-	 * Delay before sending next connection request.
-	 */
-	private Long crawlDelay;
-
 	/**
 	 * Constructor for IndexerImpl class.
 	 * 
@@ -174,9 +204,13 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	}
 
 	/**
-	 * Reads a list of stop words from a file and saves these into a HashSet.
+	 * Reads a list of stop words from a file and saves these into a TermTable.
 	 */
 	public void addStopWords() {
+		if (this.stopwordsLoaded) {
+			return;
+		}
+		this.stopwordsLoaded = true;
 		try {
 			// Opens file to read stopwords from.
 			FileInputStream fsStream = new FileInputStream(this.stopFileName);
@@ -188,8 +222,8 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 			this.actions.getIndexerActions().updateStats();
 			// Reads stopwords line by line from the file.
 			while ((strLine = br.readLine()) != null) {
-				// Add stopwords to HashSet.
-				this.stopwords.add(strLine);
+				// Add stopwords to the table, in the case of the terms.
+				this.stopwords.add(strLine.trim().toLowerCase());
 			}
 			// Close FileInputStream, DataInputStream and BufferedReader.
 			br.close();
@@ -256,6 +290,8 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 		}
 		try {
 			// Update log message.
+			this.actions.log(Fetchers.getShared().getStats());
+			this.actions.log(getTokenizerStats());
 			this.actions.log("Writing index to outputfile " + outFileName);
 			// Call function to write index to file.
 			writeIndexToFile(outFileName);
@@ -274,45 +310,37 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 *             Input Output Exception might be thrown.
 	 */
 	private void processPages() throws IOException {
+		// Index pages on a pool of workers if parallel indexing is requested.
+		if (Settings.PARALLEL_INDEXING) {
+			processPagesInParallel();
+			return;
+		}
+		// Read the pages the crawler archived, and fetch only the rest.
+		if (Settings.PAGE_ARCHIVE) {
+			processArchivedPages(null);
+		}
+		// Fetch pages concurrently if a thread per fetch is requested.
+		if (Settings.VIRTUAL_THREADS) {
+			processPagesConcurrently();
+			return;
+		}
 
 		// Iterate through the list of URLs to be proceesed.
 		Iterator<URL> toProcessIterator = this.fileUrlsToProcess.iterator();
-		while (toProcessIterator.hasNext() && this.indexerRunning) {
-
-			URL url = toProcessIterator.next();
-
-			// Parse page content using the parser function
-			String[] pageContent = parser(url).split(" ");
-
-			// Add each word along with the URL to a Map with the keyword as
-			// the key and the set of URLs as the index.
-			for (String word : pageContent) {
-				// Check if the word is a stop word. If not, then add to index.
-				if (!this.stopwords.contains(word)) {
-					if (this.index.get(word) == null) {
-						Set<URL> set = new HashSet<URL>();
-						set.add(url);
-						this.index.put(word, set);
-					} else {
-						this.index.get(word).add(url);
-					}
-				}
-			}
-			// Remove from URLs to be processed.
-			toProcessIterator.remove();
-			// Add to URLs procccesed.
-			this.fileUrlsProcessed.add(url);
-			this.currentUrl = url.toString();
-			// Update GUI status message.
-			this.actions.getIndexerActions().updateStats();
-			// Update log message.
-			this.actions.log("Index for " + url.toString() + " has been created.");
-			// wait for crawl delay
-			try {
-				Thread.sleep(getProcessingDelay(url));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		HostScheduler<URL> scheduler = new HostScheduler<URL>();
+		try {
+			URL url;
+			while ((url = nextPage(toProcessIterator, scheduler)) != null) {
+				// Tokenize page content using the terms function
+				PageTerms pageContent = terms(url);
+				// Add the words of the page to the index.
+				addToIndex(url, pageContent);
 			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			// Pages still waiting for their host are processed on resume.
+			this.fileUrlsToProcess.addAll(scheduler.drain());
 		}
 		// Update processingPages status.
 		this.processingPages = false;
@@ -320,124 +348,322 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	}
 
 	/**
-	 * Gets the delay between processing pages
+	 * Indexes a list of pages the same way as the pages read from the input
+	 * file, from the page archive where it has them and from the network
+	 * otherwise.
 	 * 
-	 * @return
+	 * @param urls
+	 *            the pages to index.
+	 * @throws IOException
+	 *             Input Output Exception might be thrown.
 	 */
-	@SuppressWarnings("boxing")
-	private long getProcessingDelay(URL url) {
+	void indexPages(Collection<URL> urls) throws IOException {
+		this.fileUrlsToProcess.addAll(urls);
+		this.urlCount += urls.size();
+		this.processingPages = true;
+		processPages();
+		this.processingPages = false;
+	}
+
+	/**
+	 * Fetches, tokenizes and indexes the pages on a pool of INDEXER_THREADS
+	 * workers, each adding to a partial index of its own. The partial indexes
+	 * are merged into the index when flushed and at the end. Archived pages
+	 * are read in this thread and handed to the workers.
+	 * 
+	 * @throws IOException
+	 *             if an archive cannot be read.
+	 */
+	private void processPagesInParallel() throws IOException {
+		ParallelIndexer workers = new ParallelIndexer(this,
+				Settings.INDEXER_THREADS, Settings.INDEX_FLUSH_PAGES);
+		// Iterate through the list of URLs to be proceesed.
+		HostScheduler<URL> scheduler = new HostScheduler<URL>();
 		try {
-			if (this.crawlDelay == null) {
-				Crawler crawler = null;
-				URL defaultUrl = new URL(Settings.DEFAULT_URL);
-				if(url.getHost().equals(defaultUrl.getHost())){
-					crawler = new Crawler(this.actions);
-				} else {
-					crawler = new Crawler(this.actions, new URL(url.getProtocol()
-						+ "://" + url.getHost()));
+			// Read the pages the crawler archived, and fetch only the rest.
+			if (Settings.PAGE_ARCHIVE) {
+				processArchivedPages(workers);
+			}
+			Iterator<URL> toProcessIterator = this.fileUrlsToProcess.iterator();
+			URL url;
+			while ((url = nextPage(toProcessIterator, scheduler)) != null) {
+				workers.submit(url, null);
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			// Pages still waiting for their host are processed on resume.
+			this.fileUrlsToProcess.addAll(scheduler.drain());
+			// Wait for the pages in flight, also when paused.
+			workers.finish();
+		}
+		// Update processingPages status.
+		this.processingPages = false;
+	}
+
+	/**
+	 * Indexes the pages to be processed that the crawler archived, reading
+	 * each host's archive from disk in file order, and removes them from the
+	 * URLs to be processed.
+	 * 
+	 * @param workers
+	 *            the workers to hand the pages to, or null to index them in
+	 *            this thread.
+	 * @throws IOException
+	 *             if an archive cannot be read.
+	 */
+	private void processArchivedPages(final ParallelIndexer workers)
+			throws IOException {
+		// Group the URLs to be processed by host, as each has its archive.
+		Map<String, Map<String, URL>> byHost = new HashMap<String, Map<String, URL>>();
+		for (URL url : this.fileUrlsToProcess) {
+			Map<String, URL> urls = byHost.get(url.getHost());
+			if (urls == null) {
+				urls = new HashMap<String, URL>();
+				byHost.put(url.getHost(), urls);
+			}
+			urls.put(url.toString(), url);
+		}
+		int archived = 0;
+		for (Map.Entry<String, Map<String, URL>> host : byHost.entrySet()) {
+			final Map<String, URL> urls = host.getValue();
+			final Collection<URL> indexed = new ArrayList<URL>();
+			PageArchive.readPages(PageArchive.pathFor(host.getKey()),
+					urls.keySet(), new PageArchive.PageHandler() {
+						@Override
+						public boolean handlePage(String page, byte[] content) {
+							// Stop if paused, the rest is read on resume.
+							if (!IndexerImpl.this.indexerRunning) {
+								return false;
+							}
+							URL url = urls.get(page);
+							if (workers == null) {
+								addToIndex(url, terms(content));
+							} else {
+								workers.submit(url, content);
+							}
+							indexed.add(url);
+							return true;
+						}
+					});
+			this.fileUrlsToProcess.removeAll(indexed);
+			archived += indexed.size();
+		}
+		log(archived + " pages read from the page archive, "
+				+ this.fileUrlsToProcess.size() + " to fetch");
+	}
+
+	/**
+	 * Takes the next page whose host may be fetched from now, removing it
+	 * from the URLs to be processed. Pages whose host's crawl delay has not
+	 * passed yet are parked in the scheduler, so pages of other hosts go
+	 * first; only when nothing else is left does this wait for one.
+	 * 
+	 * @param toProcessIterator
+	 *            iterator over the URLs to be processed.
+	 * @param scheduler
+	 *            scheduler holding the parked pages.
+	 * @return the next page, or null if all are done or the indexer paused.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a host.
+	 */
+	private URL nextPage(Iterator<URL> toProcessIterator,
+			HostScheduler<URL> scheduler) throws InterruptedException {
+		while (this.indexerRunning) {
+			URL url = scheduler.pollReady();
+			if (url != null) {
+				return url;
+			}
+			if (!toProcessIterator.hasNext()) {
+				if (scheduler.getWaitingCount() == 0) {
+					return null;
+				}
+				url = scheduler.pollReady(100);
+				if (url != null) {
+					return url;
 				}
-				this.crawlDelay = crawler.getCrawlDelay();
+				continue;
 			}
-		} catch (MalformedURLException ex) {
-			ex.printStackTrace();
+			url = toProcessIterator.next();
+			toProcessIterator.remove();
+			long delay = getProcessingDelay(url);
+			if (scheduler.tryAcquire(url.getHost(), delay)) {
+				return url;
+			}
+			scheduler.defer(url.getHost(), url, delay);
+		}
+		return null;
+	}
+
+	/**
+	 * Fetches and parses every page in a thread of its own, a virtual thread
+	 * where the JVM has them, or else on a bounded pool of platform threads.
+	 * Fetches to the same host are limited by MAX_FETCHES_PER_HOST and spaced
+	 * by its crawl delay, so slow servers only hold up their own pages.
+	 */
+	private void processPagesConcurrently() {
+		log("Fetching in " + FetchThreads.describe());
+		ExecutorService executor = FetchThreads.newPerTaskExecutor("webIndexer-fetch");
+		final HostLimiter hostLimiter = new HostLimiter(Settings.MAX_FETCHES_PER_HOST);
+		// Iterate through the list of URLs to be proceesed.
+		Iterator<URL> toProcessIterator = this.fileUrlsToProcess.iterator();
+		HostScheduler<URL> scheduler = new HostScheduler<URL>();
+		try {
+			URL next;
+			while ((next = nextPage(toProcessIterator, scheduler)) != null) {
+				final URL url = next;
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						hostLimiter.acquire(url.getHost());
+						try {
+							addToIndex(url, terms(url));
+						} catch (IOException e) {
+							log("Could not index " + url + ": " + e.getMessage());
+						} finally {
+							hostLimiter.release(url.getHost());
+						}
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			// Pages still waiting for their host are processed on resume.
+			this.fileUrlsToProcess.addAll(scheduler.drain());
+		}
+		// Wait for the pages in flight, also when paused.
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
 		}
-		return this.crawlDelay;
+		// Update processingPages status.
+		this.processingPages = false;
 	}
 
 	/**
-	 * Parses a webpage by removing all the javascript code as well as css
-	 * styles and HTML/XML tags. It then returns only the text contained on the
-	 * page.
+	 * Adds the words of a page to the index.
 	 * 
 	 * @param url
 	 *            URL of the page.
-	 * @return String containing the text on the page.
-	 * @throws FileNotFoundException
-	 *             Throws exception if file is not found.
-	 * @throws IOException
-	 *             Throws IOException.
+	 * @param pageContent
+	 *            words on the page and how often each is on it.
 	 */
-	public String parser(URL url) throws FileNotFoundException, IOException {
-		// Open page to read content
-		InputStream is = url.openStream(); // throws an IOException
-		BufferedReader d = new BufferedReader(new InputStreamReader(is));
-		// Call parse function to parse content.
-		parse(d);
-		// Close the InputStream and the BufferedReader.
-		d.close();
-		is.close();
-		// Call deHtml to check for any remaining tags, special charecters,
-		// white spaces or links in the page.
-		return deHtml(getText());
+	synchronized void addToIndex(URL url, PageTerms pageContent) {
+		// Add the ID of the page to the postings of each keyword.
+		int doc = this.documents.idFor(url);
+		String[] words = pageContent.getTerms();
+		int[] frequencies = pageContent.getFrequencies();
+		for (int i = 0; i < words.length; i++) {
+			// Check if the word is a stop word. If not, then add to index.
+			if (!this.stopwords.contains(words[i])) {
+				this.index.add(words[i], doc, frequencies[i]);
+			}
+		}
+		// Record the length of the page for ranking.
+		this.documents.setLength(doc, pageContent.getLength());
+		pageIndexed(url);
 	}
 
 	/**
-	 * Fuction is used by the parser function. This function actually does
-	 * parsing of the webpage.It then removes the tags from the page returning
-	 * only the text contained on the page.
+	 * Adds the terms of a partial index to the index.
 	 * 
-	 * @param in
-	 *            Is an instance of the Reader class.
-	 * @throws IOException
-	 *             Throws IOException.
+	 * @param partial
+	 *            the terms and pages indexed by a worker.
 	 */
-	public void parse(Reader in) throws IOException {
-		// Instance of StringBuffere is created to store consecutive lines.
-		this.s = new StringBuffer();
-		// ParseDelegator is instantiated to parse the content.
-		ParserDelegator delegator = new ParserDelegator();
-		// the third parameter is TRUE to ignore charset directive
-		delegator.parse(in, this, true);
+	synchronized void mergeIntoIndex(PartialIndex partial) {
+		this.index.merge(partial.getIndex());
 	}
 
 	/**
-	 * Removes all the special charecters present in the string. This function
-	 * also checks for HTML tags and removes them. However, it will not remove
-	 * any javascript or css code from the page.
+	 * @return the IDs of the pages indexed.
+	 */
+	DocumentTable getDocuments() {
+		return this.documents;
+	}
+
+	/**
+	 * Records a page as indexed and updates the status.
 	 * 
-	 * @param string
-	 *            string containing text from a page.
+	 * @param url
+	 *            URL of the page.
+	 */
+	synchronized void pageIndexed(URL url) {
+		// Add to URLs procccesed.
+		this.fileUrlsProcessed.add(url);
+		this.currentUrl = url.toString();
+		// Update GUI status message.
+		this.actions.getIndexerActions().updateStats();
+		// Update log message.
+		this.actions.log("Index for " + url.toString() + " has been created.");
+	}
+
+	/**
+	 * Gets the delay between processing pages of a url's host
 	 * 
-	 * @return String which has had all the special charecters and any remaining
-	 *         HTML tages removed.
+	 * @return
 	 */
-	private String deHtml(String string) {
-		// User regular expression to remove links.
-		String noLinks = string
-				.replaceAll(
-						"(http|ftp|https):\\/\\/[\\w\\-_]+(\\.[\\w\\-_]+)+([\\w\\-\\.,@?^=%&amp;:/~\\+#]*[\\w\\-\\@?^=%&amp;/~\\+#])?",
-						"");
-		// Use regular expression to remove HTML tags.
-		String noHtml = noLinks.replaceAll("\\<.*?>", "");
-		// Use regular expression to remove special charecters.
-		String html = noHtml.replaceAll("[^A-Z|^a-z|^0-9|^\\s]+", "");
-		// Replaces the "|" charecter and multiple white space with single
-		// space, trims the ends.
-		String finalHtml = html.replaceAll("\\|", "").replaceAll("\\s+", " ")
-				.trim();
-		return finalHtml;
+	private long getProcessingDelay(URL url) {
+		// robots.txt is shared with the crawler, so it is not fetched again.
+		return RobotsCache.getShared().getRules(url).getCrawlDelay();
 	}
 
 	/**
-	 * Appends text to a given StringBuffer.
+	 * Fetches a webpage and gets its distinct terms.
 	 * 
-	 * @param text
-	 *            text to append to the StringBuffer
-	 * @param pos
-	 *            position at which text must be appended.
+	 * @param url
+	 *            URL of the page.
+	 * @return the terms of the page.
+	 * @throws FileNotFoundException
+	 *             Throws exception if the page is not found.
+	 * @throws IOException
+	 *             Throws IOException.
 	 */
-	@Override
-	public void handleText(char[] text, int pos) {
-		this.s.append(text).append(" ");
+	public PageTerms terms(URL url) throws FileNotFoundException, IOException {
+		FetchResponse response = Fetchers.getShared().fetch(url);
+		if (response.isError()) {
+			response.close();
+			throw new FileNotFoundException("HTTP " + response.getStatusCode()
+					+ " - " + url);
+		}
+		try {
+			return terms(response.getBody().readAllBytes());
+		} finally {
+			response.close();
+		}
 	}
 
 	/**
-	 * Converts the StringBuffer to a string.
+	 * Gets the distinct terms of the content of a webpage, as read from the
+	 * page archive or the network, and how often each is on it, in one pass
+	 * over its text with the tokenizer of the calling thread.
 	 * 
-	 * @return String returns the string.
+	 * @param content
+	 *            content of the page.
+	 * @return the terms of the page, in lower case and without stop words.
 	 */
-	public String getText() {
-		return this.s.toString();
+	public PageTerms terms(byte[] content) {
+		return this.tokenizers.get().pageTerms(content);
+	}
+
+	/**
+	 * Describes how fast the pages were tokenized.
+	 * 
+	 * @return the tokenizer statistics.
+	 */
+	public String getTokenizerStats() {
+		long bytes = 0;
+		long nanos = 0;
+		synchronized (this.allTokenizers) {
+			for (Tokenizer tokenizer : this.allTokenizers) {
+				bytes += tokenizer.getBytes();
+				nanos += tokenizer.getNanos();
+			}
+		}
+		return String.format("Tokenizer : %.1f MB, %.1f MB/s per thread",
+				bytes / 1e6, (nanos == 0) ? 0 : bytes * 1e3 / nanos);
 	}
 
 	/**
@@ -449,8 +675,23 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 * @return returns the index table
 	 */
 	public Map<String, Set<URL>> loadIndexTable(String fileName) {
+		// Close an index file opened before.
+		closeIndexFile();
 		// Clear index contents
 		this.index.clear();
+		this.documents.clear();
+		this.searchIndex = this.index;
+		if (IndexFile.isBinary(new File(fileName))) {
+			try {
+				// Map the index into memory, reading only its header.
+				this.searchIndex = IndexFile.open(new File(fileName));
+			} catch (IOException ex) {
+				// Log exception if thrown.
+				Logger.getLogger(IndexerImpl.class.getName()).log(Level.SEVERE,
+						null, ex);
+			}
+			return this.searchIndex.asMap();
+		}
 		try {
 			// Open file to read the index
 			FileInputStream fsStream;
@@ -466,13 +707,9 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 					String[] parts = strLine.split(" ");
 					// Keyword is the first element in the array.
 					String currentKeyword = parts[0];
-					Set<URL> urls = new HashSet<URL>();
-					// Add keyword and associated URLs to the index.
-					this.index.put(currentKeyword, urls);
-					for (int x = 1; x < parts.length; x++) {
-						URL url = new URL(parts[x]);
-						this.index.get(currentKeyword).add(url);
-					}
+					// Add keyword and the IDs of its URLs to the index.
+					this.index.put(currentKeyword,
+							IndexFile.parsePostings(parts, this.documents));
 
 				}
 				// Close FileInputStream, DataInputStream and BufferedReader.
@@ -489,23 +726,43 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 			Logger.getLogger(IndexerImpl.class.getName()).log(Level.SEVERE,
 					null, ex);
 		}
-		return this.index;
+		return this.index.asMap();
 	}
 
 	/**
-	 * Returns the list of pages containing a specific keyword
+	 * Returns the list of pages matching a query, one or more keywords
+	 * combined with AND, OR and NOT as described in Query. The pages are
+	 * ranked with BM25 and the best Settings.SEARCH_RESULTS returned, best
+	 * first.
 	 * 
 	 * @param keyword
-	 *            the keyword for which the list of pages must be returned
-	 * @return A list of pages containing the keyword
+	 *            the query for which the list of pages must be returned
+	 * @return A list of pages matching the query, or null if there are none
 	 */
 	public Set<URL> search(String keyword) {
-		// Search for keyword in index and return it if found, else return null.
-		if (this.index.containsKey(keyword)) {
-			Set<URL> urls = this.index.get(keyword);
-			return urls;
+		// The index has no stop words, so the query must drop them too.
+		addStopWords();
+		Query query;
+		try {
+			query = Query.parse(keyword, this.stopwords);
+		} catch (IllegalArgumentException e) {
+			log(e.getMessage());
+			return null;
 		}
-		return null;
+		// Search for the pages matching the query, else return null.
+		if (query == null) {
+			return null;
+		}
+		int[] docs = query.evaluate(this.searchIndex);
+		if (docs.length == 0) {
+			return null;
+		}
+		// Rank the pages and keep the best.
+		int[] best = new Bm25Ranker(this.searchIndex, Settings.BM25_K1,
+				Settings.BM25_B).top(query, docs, Settings.SEARCH_RESULTS);
+		log(docs.length + " pages match \"" + keyword + "\", showing the best "
+				+ best.length);
+		return this.searchIndex.getPages(best);
 	}
 
 	/**
@@ -518,18 +775,52 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 * 
 	 */
 	public void writeIndexToFile(String fileName) throws IOException {
+		if (Settings.BINARY_INDEX) {
+			// Write the binary index searches map into memory.
+			IndexFile.write(this.index, new File(fileName));
+			this.indexCount += this.index.size();
+			this.actions.getIndexerActions().updateStats();
+		} else {
+			writeTextIndex(fileName);
+		}
+		this.actions.log(this.index.getStats());
+		this.actions.log("Index written to file.");
+		this.actions.getIndexerActions().resetButtons();
+	}
+
+	/**
+	 * Closes the index file searched, if one was opened.
+	 */
+	private void closeIndexFile() {
+		if (this.searchIndex instanceof IndexFile) {
+			try {
+				((IndexFile) this.searchIndex).close();
+			} catch (IOException ex) {
+				// Log exception if thrown.
+				Logger.getLogger(IndexerImpl.class.getName()).log(Level.SEVERE,
+						null, ex);
+			}
+		}
+	}
+
+	/**
+	 * Writes the index in the text format, a keyword and its URLs a line.
+	 * 
+	 * @param fileName
+	 *            file name to write to.
+	 * @throws IOException
+	 *             IOException can be thrown.
+	 */
+	private void writeTextIndex(String fileName) throws IOException {
 		// Open FileWriter instance to write to a file.
 		FileWriter outputFile = new FileWriter(fileName);
 		PrintWriter out = new PrintWriter(outputFile);
 		// Iterate through index and add the list of URLs for each keyword.
-		Iterator<?> it = this.index.entrySet().iterator();
-		while (it.hasNext()) {
-			// Get next pair of keyword, URLs.
-			Map.Entry pairs = (Map.Entry) it.next();
+		for (String term : this.index.terms()) {
 			// Get keyword.
-			String keyword = ((String) pairs.getKey()).toLowerCase();
-			// Get URL.
-			HashSet<?> urlList = (HashSet<?>) pairs.getValue();
+			String keyword = term.toLowerCase();
+			// Get the IDs of the URLs.
+			int[] docs = this.index.get(term).toArray();
 			// Write keyword to file.
 			out.print(keyword);
 			// Increase keyword count.
@@ -537,10 +828,9 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 			// Update GUI status.
 			this.actions.getIndexerActions().updateStats();
 			out.print(" ");
-			Iterator<?> urlIt = urlList.iterator();
-			while (urlIt.hasNext()) {
+			for (int doc : docs) {
 				// Write URLs to file.
-				out.print(urlIt.next());
+				out.print(this.documents.getUrl(doc));
 				out.print(" ");
 			}
 			// Go to new line in file.
@@ -552,8 +842,6 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 		// Close PrintWriter and FileWriter.
 		out.close();
 		outputFile.close();
-		this.actions.log("Index written to file.");
-		this.actions.getIndexerActions().resetButtons();
 	}
 
 	/**
@@ -584,8 +872,9 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 * @return Set set of URLs that contain the keyword
 	 */
 	public Set<URL> startSearch(final String keyword) {
-		// Call the search function to search for a keyword.
-		this.searchResults = search(keyword.toLowerCase());
+		// Call the search function to search for a keyword. The query lower
+		// cases its keywords, leaving AND, OR and NOT as they are.
+		this.searchResults = search(keyword);
 		return this.searchResults;
 	}
 
@@ -598,8 +887,7 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 * 
 	 */
 	public Map<String, Set<URL>> startLoadIndex(final String filename) {
-		this.index = loadIndexTable(filename);
-		return this.index;
+		return loadIndexTable(filename);
 	}
 
 	/**
@@ -612,6 +900,16 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 		this.actions.log(text);
 	}
 
+	/**
+	 * Sets the file the stop words are read from, before they are read.
+	 * 
+	 * @param fileName
+	 *            file containing a stop word a line
+	 */
+	public void setStopFileName(String fileName) {
+		this.stopFileName = fileName;
+	}
+
 	/**
 	 * Set the state of indexerRunning.
 	 * 
@@ -741,7 +1039,7 @@ public class IndexerImpl extends HTMLEditorKit.ParserCallback {
 	 * @return returns the keyword count.
 	 */
 	public int getKeywordCount() {
-		return this.index.size();
+		return this.searchIndex.size();
 	}
 
 }
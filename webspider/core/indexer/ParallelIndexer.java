@@ -0,0 +1,189 @@
+package webspider.core.indexer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import webspider.Settings;
+import webspider.core.crawler.HostLimiter;
+
+/**
+ * Indexes pages on a pool of workers. Each worker fetches and tokenizes the
+ * pages it is given and adds them to a partial index of its own, so the
+ * workers never wait for each other on the index. Once a worker's partial
+ * index holds a number of pages it is flushed, and when every worker has
+ * flushed one the flushed partial indexes are merged into the indexer's
+ * index in a fork-join reduction. The rest are merged the same way at the
+ * end.
+ */
+class ParallelIndexer {
+
+	/**
+	 * The indexer the partial indexes are merged into
+	 */
+	private final IndexerImpl indexer;
+
+	private final ThreadPoolExecutor workers;
+
+	/**
+	 * Number of workers
+	 */
+	private final int threads;
+
+	/**
+	 * Number of pages in a partial index that flushes it
+	 */
+	private final int flushPages;
+
+	/**
+	 * Limits the fetches in flight to each host
+	 */
+	private final HostLimiter hostLimiter = new HostLimiter(
+			Settings.MAX_FETCHES_PER_HOST);
+
+	/**
+	 * The partial index of each worker, and all of them for the end
+	 */
+	private final ThreadLocal<PartialIndex> partial = new ThreadLocal<PartialIndex>();
+	private final List<PartialIndex> live = new ArrayList<PartialIndex>();
+
+	/**
+	 * Partial indexes flushed and not merged yet
+	 */
+	private final List<PartialIndex> flushed = new ArrayList<PartialIndex>();
+
+	/**
+	 * @param indexer
+	 *            the indexer the partial indexes are merged into
+	 * @param threads
+	 *            number of workers
+	 * @param flushPages
+	 *            number of pages in a partial index that flushes it
+	 */
+	ParallelIndexer(IndexerImpl indexer, int threads, int flushPages) {
+		this.indexer = indexer;
+		this.threads = Math.max(1, threads);
+		this.flushPages = Math.max(1, flushPages);
+		// a full queue runs the page in the submitting thread, which slows
+		// the submitting down instead of queueing every page in memory
+		this.workers = new ThreadPoolExecutor(this.threads, this.threads, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						this.threads * 4), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "webIndexer-worker-"
+								+ this.count.getAndIncrement());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Queues a page for indexing
+	 *
+	 * @param url
+	 *            the page
+	 * @param content
+	 *            the content of the page, or null to fetch it
+	 */
+	void submit(final URL url, final byte[] content) {
+		this.workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				index(url, content);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the pages queued and merges every partial index into the
+	 * indexer's index
+	 */
+	void finish() {
+		this.workers.shutdown();
+		try {
+			this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		List<PartialIndex> rest;
+		synchronized (this) {
+			rest = new ArrayList<PartialIndex>(this.flushed);
+			rest.addAll(this.live);
+			this.flushed.clear();
+			this.live.clear();
+		}
+		merge(rest);
+	}
+
+	/**
+	 * Fetches if needed, tokenizes and indexes a page in the worker's
+	 * partial index
+	 */
+	private void index(URL url, byte[] content) {
+		PageTerms terms;
+		if (content != null) {
+			terms = this.indexer.terms(content);
+		} else {
+			this.hostLimiter.acquire(url.getHost());
+			try {
+				terms = this.indexer.terms(url);
+			} catch (IOException e) {
+				this.indexer.log("Could not index " + url + ": "
+						+ e.getMessage());
+				return;
+			} finally {
+				this.hostLimiter.release(url.getHost());
+			}
+		}
+		PartialIndex index = this.partial.get();
+		if (index == null) {
+			index = new PartialIndex(this.indexer.getDocuments());
+			this.partial.set(index);
+			synchronized (this) {
+				this.live.add(index);
+			}
+		}
+		index.add(url, terms);
+		this.indexer.pageIndexed(url);
+		if (index.getPageCount() >= this.flushPages) {
+			this.partial.remove();
+			flush(index);
+		}
+	}
+
+	/**
+	 * Hands a full partial index off, and merges the flushed ones once there
+	 * is one for each worker
+	 */
+	private void flush(PartialIndex index) {
+		List<PartialIndex> ready = null;
+		synchronized (this) {
+			this.live.remove(index);
+			this.flushed.add(index);
+			if (this.flushed.size() >= this.threads) {
+				ready = new ArrayList<PartialIndex>(this.flushed);
+				this.flushed.clear();
+			}
+		}
+		if (ready != null) {
+			merge(ready);
+		}
+	}
+
+	private void merge(List<PartialIndex> partials) {
+		if (!partials.isEmpty()) {
+			this.indexer.mergeIntoIndex(PartialIndex.reduce(
+					this.indexer.getDocuments(), partials));
+		}
+	}
+}
@@ -0,0 +1,577 @@
+package webspider.core.indexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A boolean query over the terms of an index. Words are ANDed together,
+ * AND, OR and NOT (in capitals) combine them and parentheses group them,
+ * NOT binding tightest and OR loosest:
+ *
+ * <pre>
+ * spider web          pages with both words
+ * spider AND NOT web  pages with spider and without web
+ * (spider OR crawler) index
+ * </pre>
+ *
+ * Words are tokenized as pages are, so they are lower cased and stop words
+ * dropped.
+ * <p>
+ * The pages of an AND are found from its rarest part up. Only the rarest
+ * is evaluated in full; the posting list of each other term is searched for
+ * the IDs left with a cursor, which skips the blocks that cannot hold them
+ * and decodes only those that may, so the work follows the shortest list
+ * rather than the longest. Lists beyond an empty intersection are never
+ * read.
+ */
+public abstract class Query {
+
+	/**
+	 * Parses a query
+	 *
+	 * @param text
+	 *            the query
+	 * @param stopWords
+	 *            the terms to drop, in lower case, or null
+	 * @return the query, or null if it is blank or has no terms once the stop
+	 *         words are dropped
+	 * @throws IllegalArgumentException
+	 *             if the query is malformed
+	 */
+	public static Query parse(String text, TermTable stopWords) {
+		Parser parser = new Parser(text, stopWords);
+		if (parser.tokens.isEmpty()) {
+			return null;
+		}
+		Query query = parser.parseOr();
+		if (parser.position < parser.tokens.size()) {
+			throw new IllegalArgumentException("Unexpected "
+					+ parser.tokens.get(parser.position) + " in query: " + text);
+		}
+		return query;
+	}
+
+	/**
+	 * Finds the pages matching the query
+	 *
+	 * @param index
+	 *            the index to search
+	 * @return the IDs of the pages in increasing order
+	 */
+	public int[] evaluate(TermIndex index) {
+		return evaluate(new Lookup(index));
+	}
+
+	/**
+	 * @return the terms the pages matching are searched by, which are those
+	 *         not under a NOT, for ranking the pages
+	 */
+	public Set<String> getTerms() {
+		Set<String> terms = new LinkedHashSet<String>();
+		addTerms(terms);
+		return terms;
+	}
+
+	abstract int[] evaluate(Lookup lookup);
+
+	/**
+	 * Keeps the IDs of an array that match the query, or those that do not
+	 *
+	 * @param ids
+	 *            IDs in increasing order
+	 * @param keep
+	 *            true to keep the IDs matching, false to keep the others
+	 * @return the IDs kept, in increasing order
+	 */
+	int[] filter(int[] ids, boolean keep, Lookup lookup) {
+		int[] matching = evaluate(lookup);
+		return keep ? intersect(ids, matching) : difference(ids, matching);
+	}
+
+	abstract void addTerms(Set<String> terms);
+
+	/**
+	 * @return an upper bound of the number of pages matching, to order the
+	 *         parts of an AND by
+	 */
+	abstract long cost(Lookup lookup);
+
+	/**
+	 * Finds the IDs both arrays hold, galloping through the larger one
+	 *
+	 * @return the IDs in increasing order
+	 */
+	static int[] intersect(int[] a, int[] b) {
+		int[] small = (a.length <= b.length) ? a : b;
+		int[] large = (small == a) ? b : a;
+		int[] result = new int[small.length];
+		int n = 0;
+		int position = 0;
+		for (int id : small) {
+			position = gallop(large, position, id);
+			if (position == large.length) {
+				break;
+			}
+			if (large[position] == id) {
+				result[n++] = id;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Finds the IDs of one array the other does not hold, galloping through
+	 * the other
+	 *
+	 * @return the IDs in increasing order
+	 */
+	static int[] difference(int[] ids, int[] without) {
+		int[] result = new int[ids.length];
+		int n = 0;
+		int position = 0;
+		for (int id : ids) {
+			position = gallop(without, position, id);
+			if (position == without.length || without[position] != id) {
+				result[n++] = id;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Merges the IDs of two arrays
+	 *
+	 * @return the IDs in increasing order
+	 */
+	static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[n++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[n++] = b[j++];
+			} else {
+				result[n++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[n++] = a[i++];
+		}
+		while (j < b.length) {
+			result[n++] = b[j++];
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * Finds the first position from a start whose ID is not below a target,
+	 * doubling the step until it is passed and then searching binary
+	 *
+	 * @return the position, or the length of the array if every ID is below
+	 */
+	static int gallop(int[] ids, int from, int target) {
+		int bound = from;
+		int step = 1;
+		while (bound < ids.length && ids[bound] < target) {
+			from = bound + 1;
+			bound += step;
+			step <<= 1;
+		}
+		int high = Math.min(bound, ids.length);
+		while (from < high) {
+			int middle = (from + high) >>> 1;
+			if (ids[middle] < target) {
+				from = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Looks the posting list of each term up once in a search
+	 */
+	static class Lookup {
+		final TermIndex index;
+		private final Map<String, PostingList> lists = new HashMap<String, PostingList>();
+		private int[] all;
+
+		Lookup(TermIndex index) {
+			this.index = index;
+		}
+
+		PostingList get(String term) {
+			if (this.lists.containsKey(term)) {
+				return this.lists.get(term);
+			}
+			PostingList list = this.index.get(term);
+			this.lists.put(term, list);
+			return list;
+		}
+
+		/**
+		 * @return the IDs of every page, for a NOT on its own
+		 */
+		int[] all() {
+			if (this.all == null) {
+				this.all = new int[this.index.getPageCount()];
+				for (int i = 0; i < this.all.length; i++) {
+					this.all[i] = i;
+				}
+			}
+			return this.all;
+		}
+	}
+
+	/**
+	 * The pages a term is on
+	 */
+	static class Term extends Query {
+		final String term;
+
+		Term(String term) {
+			this.term = term;
+		}
+
+		@Override
+		int[] evaluate(Lookup lookup) {
+			PostingList list = lookup.get(this.term);
+			return (list == null) ? new int[0] : list.toArray();
+		}
+
+		@Override
+		int[] filter(int[] ids, boolean keep, Lookup lookup) {
+			PostingList list = lookup.get(this.term);
+			if (list == null) {
+				return keep ? new int[0] : ids;
+			}
+			PostingList.Cursor cursor = list.cursor();
+			int[] result = new int[ids.length];
+			int n = 0;
+			for (int id : ids) {
+				int doc = cursor.advance(id);
+				if ((doc == id) == keep) {
+					result[n++] = id;
+				} else if (keep && doc == PostingList.Cursor.END) {
+					break;
+				}
+			}
+			return Arrays.copyOf(result, n);
+		}
+
+		@Override
+		long cost(Lookup lookup) {
+			PostingList list = lookup.get(this.term);
+			return (list == null) ? 0 : list.size();
+		}
+
+		@Override
+		void addTerms(Set<String> terms) {
+			terms.add(this.term);
+		}
+
+		@Override
+		public String toString() {
+			return this.term;
+		}
+	}
+
+	/**
+	 * The pages matching all of a number of queries, and none of those
+	 * negated
+	 */
+	static class And extends Query {
+		final List<Query> parts;
+
+		And(List<Query> parts) {
+			this.parts = parts;
+		}
+
+		@Override
+		int[] evaluate(final Lookup lookup) {
+			List<Query> required = new ArrayList<Query>();
+			List<Query> excluded = new ArrayList<Query>();
+			for (Query part : this.parts) {
+				if (part instanceof Not) {
+					excluded.add(((Not) part).negated);
+				} else {
+					required.add(part);
+				}
+			}
+			final long[] costs = new long[required.size()];
+			Integer[] order = new Integer[required.size()];
+			for (int i = 0; i < order.length; i++) {
+				costs[i] = required.get(i).cost(lookup);
+				order[i] = Integer.valueOf(i);
+			}
+			// rarest first, so each intersection is at most as long as it
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Long.compare(costs[a.intValue()], costs[b.intValue()]);
+				}
+			});
+			int[] ids = null;
+			for (Integer i : order) {
+				Query part = required.get(i.intValue());
+				ids = (ids == null) ? part.evaluate(lookup) : part.filter(ids,
+						true, lookup);
+				if (ids.length == 0) {
+					return ids;
+				}
+			}
+			if (ids == null) {
+				ids = lookup.all();
+			}
+			for (Query part : excluded) {
+				if (ids.length == 0) {
+					break;
+				}
+				ids = part.filter(ids, false, lookup);
+			}
+			return ids;
+		}
+
+		@Override
+		long cost(Lookup lookup) {
+			long cost = Long.MAX_VALUE;
+			for (Query part : this.parts) {
+				if (!(part instanceof Not)) {
+					cost = Math.min(cost, part.cost(lookup));
+				}
+			}
+			return (cost == Long.MAX_VALUE) ? lookup.index.getPageCount() : cost;
+		}
+
+		@Override
+		void addTerms(Set<String> terms) {
+			for (Query part : this.parts) {
+				part.addTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(this.parts, " AND ");
+		}
+	}
+
+	/**
+	 * The pages matching any of a number of queries
+	 */
+	static class Or extends Query {
+		final List<Query> parts;
+
+		Or(List<Query> parts) {
+			this.parts = parts;
+		}
+
+		@Override
+		int[] evaluate(Lookup lookup) {
+			int[] ids = new int[0];
+			for (Query part : this.parts) {
+				ids = union(ids, part.evaluate(lookup));
+			}
+			return ids;
+		}
+
+		@Override
+		long cost(Lookup lookup) {
+			long cost = 0;
+			for (Query part : this.parts) {
+				cost += part.cost(lookup);
+			}
+			return cost;
+		}
+
+		@Override
+		void addTerms(Set<String> terms) {
+			for (Query part : this.parts) {
+				part.addTerms(terms);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(this.parts, " OR ");
+		}
+	}
+
+	/**
+	 * The pages not matching a query
+	 */
+	static class Not extends Query {
+		final Query negated;
+
+		Not(Query negated) {
+			this.negated = negated;
+		}
+
+		@Override
+		int[] evaluate(Lookup lookup) {
+			return difference(lookup.all(), this.negated.evaluate(lookup));
+		}
+
+		@Override
+		long cost(Lookup lookup) {
+			return lookup.index.getPageCount();
+		}
+
+		@Override
+		void addTerms(Set<String> terms) {
+			// the pages do not have the terms, so they do not rank them
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + this.negated;
+		}
+	}
+
+	private static String join(List<Query> parts, String operator) {
+		StringBuilder text = new StringBuilder("(");
+		for (Query part : parts) {
+			if (text.length() > 1) {
+				text.append(operator);
+			}
+			text.append(part);
+		}
+		return text.append(')').toString();
+	}
+
+	/**
+	 * Parses a query by recursive descent
+	 */
+	private static class Parser {
+		final List<String> tokens = new ArrayList<String>();
+		int position = 0;
+		private final String text;
+		private final Tokenizer tokenizer;
+		private final List<String> terms = new ArrayList<String>();
+
+		Parser(String text, TermTable stopWords) {
+			this.text = text;
+			StringBuilder word = new StringBuilder();
+			for (int i = 0; i <= text.length(); i++) {
+				char c = (i < text.length()) ? text.charAt(i) : ' ';
+				if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+					if (word.length() > 0) {
+						this.tokens.add(word.toString());
+						word.setLength(0);
+					}
+					if (c == '(' || c == ')') {
+						this.tokens.add(String.valueOf(c));
+					}
+				} else {
+					word.append(c);
+				}
+			}
+			this.tokenizer = new Tokenizer(stopWords);
+			this.tokenizer.setTermHandler(new Tokenizer.TermHandler() {
+				@Override
+				public void handleTerm(char[] term, int length) {
+					Parser.this.terms.add(new String(term, 0, length));
+				}
+			});
+		}
+
+		/**
+		 * query := and (OR and)*
+		 */
+		Query parseOr() {
+			List<Query> parts = new ArrayList<Query>();
+			add(parts, parseAnd());
+			while (accept("OR")) {
+				add(parts, parseAnd());
+			}
+			return combine(parts, false);
+		}
+
+		/**
+		 * and := unary ((AND)? unary)*
+		 */
+		Query parseAnd() {
+			List<Query> parts = new ArrayList<Query>();
+			add(parts, parseUnary());
+			while (this.position < this.tokens.size()) {
+				String token = this.tokens.get(this.position);
+				if (token.equals("OR") || token.equals(")")) {
+					break;
+				}
+				accept("AND");
+				add(parts, parseUnary());
+			}
+			return combine(parts, true);
+		}
+
+		/**
+		 * unary := NOT unary | ( query ) | word
+		 */
+		Query parseUnary() {
+			if (this.position == this.tokens.size()) {
+				throw new IllegalArgumentException("Query ends too soon: "
+						+ this.text);
+			}
+			String token = this.tokens.get(this.position++);
+			if (token.equals("NOT")) {
+				Query negated = parseUnary();
+				return (negated == null) ? null : new Not(negated);
+			}
+			if (token.equals("(")) {
+				Query query = parseOr();
+				if (!accept(")")) {
+					throw new IllegalArgumentException("Missing ) in query: "
+							+ this.text);
+				}
+				return query;
+			}
+			if (token.equals(")") || token.equals("AND") || token.equals("OR")) {
+				throw new IllegalArgumentException("Unexpected " + token
+						+ " in query: " + this.text);
+			}
+			// a word may hold several terms, or only stop words
+			this.terms.clear();
+			this.tokenizer.tokenize(token.toCharArray(), 0, token.length());
+			this.tokenizer.end();
+			List<Query> parts = new ArrayList<Query>();
+			for (String term : this.terms) {
+				parts.add(new Term(term));
+			}
+			return combine(parts, true);
+		}
+
+		private boolean accept(String token) {
+			if (this.position < this.tokens.size()
+					&& this.tokens.get(this.position).equals(token)) {
+				this.position++;
+				return true;
+			}
+			return false;
+		}
+
+		private static void add(List<Query> parts, Query part) {
+			if (part != null) {
+				parts.add(part);
+			}
+		}
+
+		private static Query combine(List<Query> parts, boolean and) {
+			if (parts.isEmpty()) {
+				return null;
+			}
+			if (parts.size() == 1) {
+				return parts.get(0);
+			}
+			return and ? new And(parts) : new Or(parts);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package webspider.core.indexer;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Terms mapped to the IDs of the pages they are on, whether built in memory
+ * or opened from an index file. Searches only go through this class, so
+ * they run the same on either.
+ */
+public abstract class TermIndex {
+
+	/**
+	 * @param term
+	 *            the term
+	 * @return the IDs of the pages the term is on, or null if it is on none
+	 */
+	public abstract PostingList get(String term);
+
+	/**
+	 * @param doc
+	 *            the ID of a page
+	 * @return the URL of the page
+	 */
+	public abstract String getUrl(int doc);
+
+	/**
+	 * @return the terms
+	 */
+	public abstract Set<String> terms();
+
+	/**
+	 * @return the number of terms
+	 */
+	public abstract int size();
+
+	/**
+	 * @return the number of pages
+	 */
+	public abstract int getPageCount();
+
+	/**
+	 * @param doc
+	 *            the ID of a page
+	 * @return the number of terms on the page, or 0 if it is not known
+	 */
+	public abstract int getLength(int doc);
+
+	/**
+	 * @return the number of terms on all pages
+	 */
+	public abstract long getTotalLength();
+
+	/**
+	 * @return true if there are no terms
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @param term
+	 *            the term
+	 * @return the pages the term is on, or null if it is on none
+	 */
+	public Set<URL> getPages(String term) {
+		PostingList list = get(term);
+		if (list == null) {
+			return null;
+		}
+		return new DocumentSet(list.toArray());
+	}
+
+	/**
+	 * @param docs
+	 *            the IDs of pages
+	 * @return the pages
+	 */
+	public Set<URL> getPages(int[] docs) {
+		return new DocumentSet(docs);
+	}
+
+	/**
+	 * A read-only view of the index as terms mapped to pages. The pages are
+	 * decoded each time a term is looked up.
+	 *
+	 * @return the view
+	 */
+	public Map<String, Set<URL>> asMap() {
+		return new AbstractMap<String, Set<URL>>() {
+			@Override
+			public Set<URL> get(Object term) {
+				return (term instanceof String) ? getPages((String) term)
+						: null;
+			}
+
+			@Override
+			public boolean containsKey(Object term) {
+				return (term instanceof String)
+						&& TermIndex.this.get((String) term) != null;
+			}
+
+			@Override
+			public int size() {
+				return TermIndex.this.size();
+			}
+
+			@Override
+			public Set<Map.Entry<String, Set<URL>>> entrySet() {
+				return new AbstractSet<Map.Entry<String, Set<URL>>>() {
+					@Override
+					public Iterator<Map.Entry<String, Set<URL>>> iterator() {
+						final Iterator<String> terms = TermIndex.this.terms().iterator();
+						return new Iterator<Map.Entry<String, Set<URL>>>() {
+							@Override
+							public boolean hasNext() {
+								return terms.hasNext();
+							}
+
+							@Override
+							public Map.Entry<String, Set<URL>> next() {
+								String term = terms.next();
+								return new AbstractMap.SimpleImmutableEntry<String, Set<URL>>(
+										term, getPages(term));
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return TermIndex.this.size();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * The pages of a posting list, made into URLs as they are iterated
+	 */
+	private class DocumentSet extends AbstractSet<URL> {
+		private final int[] docs;
+
+		DocumentSet(int[] docs) {
+			this.docs = docs;
+		}
+
+		@Override
+		public Iterator<URL> iterator() {
+			return new Iterator<URL>() {
+				private int next = 0;
+
+				@Override
+				public boolean hasNext() {
+					return this.next < DocumentSet.this.docs.length;
+				}
+
+				@Override
+				public URL next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					String url = getUrl(DocumentSet.this.docs[this.next++]);
+					try {
+						return new URL(url);
+					} catch (MalformedURLException e) {
+						// only URLs that parsed are given IDs
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return this.docs.length;
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package webspider.core.indexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import webspider.core.crawler.LinkExtractor;
+
+/**
+ * Splits the text of a page into terms in one pass over its characters. The
+ * text comes straight from the link extractor's callback, so tags, comments,
+ * scripts and styles never reach the tokenizer, and each character is
+ * classified as it goes by:
+ * <ul>
+ * <li>letters and digits are folded to lower case and added to the term</li>
+ * <li>white space and the end of a piece of text end the term</li>
+ * <li>anything else is left out, so "don't" is the term "dont"</li>
+ * <li>urls starting with http://, https:// or ftp:// are skipped</li>
+ * </ul>
+ * Terms are built in a buffer that is reused and handed out as slices of it,
+ * and stop words are dropped by looking the slice up, so no String is built
+ * for a term on the way.
+ * <p>
+ * A tokenizer is not thread safe, but it can tokenize any number of pages one
+ * after another.
+ */
+public class Tokenizer extends LinkExtractor.Callback {
+
+	/**
+	 * Receives the terms of a page
+	 */
+	public interface TermHandler {
+
+		/**
+		 * A term, in lower case and not a stop word
+		 *
+		 * @param term
+		 *            a buffer holding the term, only valid during the call
+		 * @param length
+		 *            number of characters of the term, from the start of the
+		 *            buffer
+		 */
+		public void handleTerm(char[] term, int length);
+	}
+
+	/**
+	 * Classes of the ASCII characters
+	 */
+	private static final byte OTHER = 0, TERM = 1, SPACE = 2;
+	private static final byte[] CLASSES = new byte[128];
+	static {
+		for (char c = 0; c < 128; c++) {
+			if (Character.isLetterOrDigit(c)) {
+				CLASSES[c] = TERM;
+			} else if (Character.isWhitespace(c)) {
+				CLASSES[c] = SPACE;
+			}
+		}
+	}
+
+	/**
+	 * Characters a url goes on with, after the scheme
+	 */
+	private static final String URL_CHARACTERS = "_-.,@?^=%&;:/~+#";
+
+	/**
+	 * States of the url check: in text, after "http:", after "http:/" and in
+	 * a url
+	 */
+	private static final int TEXT = 0, COLON = 1, SLASH = 2, URL = 3;
+
+	/**
+	 * The stop words, in lower case, or null
+	 */
+	private final TermTable stopWords;
+
+	/**
+	 * Finds the text of the pages
+	 */
+	private final LinkExtractor extractor = new LinkExtractor();
+
+	/**
+	 * Receives the terms
+	 */
+	private TermHandler handler;
+
+	/**
+	 * The term being read
+	 */
+	private char[] term = new char[64];
+	private int length = 0;
+	private int state = TEXT;
+
+	/**
+	 * The terms of every page seen, marked with the last page they were on
+	 */
+	private TermTable pageTerms;
+	private int page = 0;
+
+	/**
+	 * Bytes of the pages tokenized and the time it took
+	 */
+	private long bytes = 0;
+	private long nanos = 0;
+
+	/**
+	 * @param stopWords
+	 *            the terms to drop, in lower case, or null
+	 */
+	public Tokenizer(TermTable stopWords) {
+		this.stopWords = stopWords;
+	}
+
+	/**
+	 * Tokenizes the text of a page
+	 *
+	 * @param page
+	 *            the bytes of the page
+	 * @param handler
+	 *            receives the terms
+	 */
+	public void tokenize(byte[] page, TermHandler handler) {
+		long start = System.nanoTime();
+		this.handler = handler;
+		this.extractor.parse(page, this);
+		end();
+		this.bytes += page.length;
+		this.nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Gets the distinct terms of a page, in the order they first appear.
+	 * Each term is the same String every time this tokenizer finds it.
+	 *
+	 * @param page
+	 *            the bytes of the page
+	 * @return the terms
+	 */
+	public String[] distinctTerms(byte[] page) {
+		return pageTerms(page).getTerms();
+	}
+
+	/**
+	 * Gets the distinct terms of a page, in the order they first appear, and
+	 * counts how often each is on it. Each term is the same String every time
+	 * this tokenizer finds it.
+	 *
+	 * @param page
+	 *            the bytes of the page
+	 * @return the terms
+	 */
+	public PageTerms pageTerms(byte[] page) {
+		if (this.pageTerms == null) {
+			this.pageTerms = new TermTable();
+		}
+		TermCounter counter = new TermCounter(++this.page);
+		tokenize(page, counter);
+		return new PageTerms(
+				counter.terms.toArray(new String[counter.terms.size()]),
+				Arrays.copyOf(counter.frequencies, counter.terms.size()),
+				counter.length);
+	}
+
+	/**
+	 * Sets the handler receiving the terms of text fed with tokenize(char[],
+	 * int, int)
+	 *
+	 * @param handler
+	 *            receives the terms
+	 */
+	public void setTermHandler(TermHandler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Tokenizes a piece of text between two tags, which ends a term
+	 */
+	@Override
+	public void handleText(char[] text, int offset, int length) {
+		tokenize(text, offset, length);
+		end();
+	}
+
+	/**
+	 * Tokenizes a piece of text. A term at its end is only handed out by the
+	 * text after it or by end, so text can be fed in pieces.
+	 *
+	 * @param text
+	 *            buffer holding the text
+	 * @param offset
+	 *            start of the text
+	 * @param length
+	 *            number of characters
+	 */
+	public void tokenize(char[] text, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			char c = text[i];
+			if (this.state == URL) {
+				if (c < 128 && (CLASSES[c] == TERM || URL_CHARACTERS.indexOf(c) >= 0)) {
+					continue;
+				}
+				this.state = TEXT;
+			} else if (this.state != TEXT) {
+				if (c == '/') {
+					if (this.state == SLASH) {
+						// the scheme is not a term
+						this.length = 0;
+						this.state = URL;
+					} else {
+						this.state = SLASH;
+					}
+					continue;
+				}
+				this.state = TEXT;
+			}
+			byte type;
+			if (c < 128) {
+				type = CLASSES[c];
+			} else if (Character.isLetterOrDigit(c)) {
+				type = TERM;
+			} else if (Character.isSpaceChar(c)) {
+				type = SPACE;
+			} else {
+				type = OTHER;
+			}
+			if (type == TERM) {
+				if (this.length == this.term.length) {
+					char[] grown = new char[this.length * 2];
+					System.arraycopy(this.term, 0, grown, 0, this.length);
+					this.term = grown;
+				}
+				this.term[this.length++] = (c >= 'A' && c <= 'Z') ? (char) (c + 32)
+						: (c < 128) ? c : Character.toLowerCase(c);
+			} else if (type == SPACE) {
+				end();
+			} else if (c == ':' && isScheme()) {
+				this.state = COLON;
+			}
+		}
+	}
+
+	/**
+	 * Hands out the term being read, if any
+	 */
+	public void end() {
+		if (this.length > 0
+				&& (this.stopWords == null || !this.stopWords.contains(
+						this.term, 0, this.length))) {
+			this.handler.handleTerm(this.term, this.length);
+		}
+		this.length = 0;
+		this.state = TEXT;
+	}
+
+	/**
+	 * Collects the distinct terms of a page and counts them
+	 */
+	private class TermCounter implements TermHandler {
+		final int mark;
+		final List<String> terms = new ArrayList<String>();
+		int[] frequencies = new int[64];
+		int length = 0;
+
+		TermCounter(int mark) {
+			this.mark = mark;
+		}
+
+		@Override
+		public void handleTerm(char[] term, int termLength) {
+			int position = Tokenizer.this.pageTerms.position(term, 0,
+					termLength, this.mark, this.terms.size());
+			if (position == this.terms.size()) {
+				this.terms.add(Tokenizer.this.pageTerms.intern(term, 0,
+						termLength));
+				if (position == this.frequencies.length) {
+					this.frequencies = Arrays.copyOf(this.frequencies,
+							position * 2);
+				}
+			}
+			this.frequencies[position]++;
+			this.length++;
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the pages tokenized
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return the time spent tokenizing pages, in nanoseconds
+	 */
+	public long getNanos() {
+		return this.nanos;
+	}
+
+	/**
+	 * @return is the term read so far a url scheme?
+	 */
+	private boolean isScheme() {
+		return is("http") || is("https") || is("ftp");
+	}
+
+	private boolean is(String word) {
+		if (this.length != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < this.length; i++) {
+			if (this.term[i] != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}